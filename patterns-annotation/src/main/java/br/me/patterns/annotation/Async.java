@@ -0,0 +1,35 @@
+package br.me.patterns.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@link Singleton} whose public methods should also be callable without blocking the calling thread. The
+ * processor generates {@code <Type>Async_}, with a static method for every public method, not static or generic,
+ * declared by the type. It takes the same arguments, calls the method on the instance of {@code <Type>_} on an
+ * {@code Executor} and returns a {@code CompletableFuture} of its result, completed exceptionally with whatever the
+ * method throws.
+ *
+ * The generated class needs {@code java.util.concurrent.CompletableFuture}: Java 8, or API level 24 on Android.
+ *
+ * The executor is set with {@code <Type>Async_.setExecutor(executor)}. Until then, the calls run on a virtual thread
+ * each on Java 21 and later, or on a pool of at most {@link #threads()} daemon threads.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Async {
+
+    /**
+     * Threads of the default pool used without virtual threads. When zero, twice the number of available processors.
+     */
+    int threads() default 0;
+
+    /**
+     * When true, the calls made before the executor starts running the previous ones are queued and run one after the
+     * other by a single task, which saves a task per call. Meant for short methods, where handing each call to the
+     * executor costs more than the call itself: a slow call delays the others of its batch.
+     */
+    boolean batch() default false;
+}
@@ -8,4 +8,82 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.CLASS)
 @Target(ElementType.TYPE)
 public @interface Builder {
+
+    /**
+     * Generates {@code reset()}, {@code buildInto(target)} and a per-thread pool of builders
+     * ({@code acquire()} / {@code release()}), so that a loop recycling its builders and built objects
+     * does not allocate.
+     */
+    boolean reusable() default false;
+
+    /**
+     * Generates the built class with {@code private final} fields, a constructor taking every field and accessors
+     * instead of public mutable fields, so its instances can be shared between threads without locks or volatile.
+     * {@code build()} calls the constructor once, and a {@link #reusable()} builder has no {@code buildInto(target)}.
+     */
+    boolean immutable() default false;
+
+    /**
+     * Keeps the result of the first {@code toString()} of an {@link #immutable()} built object and returns it on
+     * later calls. Ignored for mutable built classes.
+     */
+    boolean cacheToString() default false;
+
+    /**
+     * Stores every {@code boolean} field of the built class as one bit of a shared {@code int} (or {@code long}
+     * words past 32 booleans) instead of one field each, which makes every instance smaller. The booleans are then
+     * read with {@code isX()} and, on mutable built classes, written with {@code setX(value)} instead of public fields;
+     * the builder is unchanged.
+     */
+    boolean packBooleans() default false;
+
+    /**
+     * Also generates {@code <Built>Batch}, a growable columnar store of built objects: one array per field and one
+     * bitset per {@code boolean} field, with index-based accessors, a flyweight cursor and conversion to and from
+     * arrays of built objects. Scanning one field of many records then reads contiguous memory.
+     */
+    boolean batch() default false;
+
+    /**
+     * Also generates {@code <Built>View}, a reusable flyweight over records laid out at fixed offsets of a
+     * {@code ByteBuffer}, direct or memory-mapped, with a {@code Writer} that appends records from builders. Records
+     * are read in place, without building objects. Only primitives, their boxes and {@code String} fields are
+     * supported.
+     */
+    boolean offHeap() default false;
+
+    /**
+     * Generates {@code toBuilder()} and one {@code withX(value)} per field on the built class. A wither returns the
+     * same instance when the value equals the current one, and otherwise a copy with that field changed, without
+     * going through a builder. On mutable built classes the copy and the original are then independent objects.
+     */
+    boolean withers() default false;
+
+    /**
+     * Maximum number of released builders kept by each thread when {@link #reusable()} is set. Builders released
+     * to a full pool are left to the garbage collector.
+     */
+    int poolSize() default 8;
+
+    /**
+     * Generates a compact binary codec on the built class: {@code writeTo} and static {@code readFrom} over
+     * {@code DataOutput}/{@code DataInput} and over {@code ByteBuffer}. Ints and longs are written as varints, strings as
+     * length-prefixed UTF-8 and nulls and booleans in a leading bitmap. Only primitives, their boxes and
+     * {@code String} fields are supported.
+     */
+    boolean codec() default false;
+
+    /**
+     * Also generates {@code <Built>Json}, which writes built objects as JSON to a {@code StringBuilder} or any
+     * {@code Appendable} and parses them from a {@code Reader} or a {@code CharSequence} into the builder, without
+     * reflection nor any library. Only primitives, their boxes and {@code String} fields are supported.
+     */
+    boolean json() default false;
+
+    /**
+     * Makes the built class {@code Externalizable} on top of {@link #codec()}, so {@code ObjectOutputStream} writes it
+     * with the generated codec instead of reflection. Ignored for {@link #immutable()} built classes, whose final
+     * fields cannot be read in place.
+     */
+    boolean externalizable() default false;
 }
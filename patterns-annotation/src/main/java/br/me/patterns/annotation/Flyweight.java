@@ -0,0 +1,28 @@
+package br.me.patterns.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an immutable value class whose instances repeat a lot, such as a colour or a coordinate. The processor
+ * generates {@code <Type>_} with a static {@code of(...)} factory that takes the fields in declaration order and
+ * returns the one instance holding those values, so equal values share an instance and compare by reference.
+ *
+ * The class needs final, non-private instance fields and a non-private constructor taking them in the same order,
+ * which {@code of(...)} calls for values it has not seen. Canonical instances are weakly referenced: a value nobody
+ * uses any more is dropped from the table, and the next {@code of(...)} with it creates a new instance. The generated
+ * class reports its hits, misses, live instances and dedup ratio.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Flyweight {
+
+    /**
+     * Number of distinct values the table holds before it grows, rounded up to a power of two, at most
+     * {@code 1 << 30}. Use the number of
+     * distinct values expected to avoid resizing while they are loaded.
+     */
+    int initialCapacity() default 256;
+}
@@ -0,0 +1,29 @@
+package br.me.patterns.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class, usually a {@link Singleton} service, whose public methods should report how often they are called and
+ * how long they take. The processor generates {@code <Type>Instrumented_}, a subclass that overrides every public
+ * method, not static, final or generic, declared by the type, and records each call in counters of its own. A
+ * {@link Singleton} with this annotation holds an instance of that subclass, which extends the {@code Memoized_}
+ * subclass when the type also has {@link Memoize} methods, so cached calls are measured as cached.
+ *
+ * The static {@code metrics()} of the generated class returns a snapshot per method: its calls, total time and a
+ * histogram of latencies in power-of-two buckets of nanoseconds. Counters are shared by every instance of the type.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Instrumented {
+
+    /**
+     * Whether calls are recorded. When false, e.g. {@code @Instrumented(enabled = BuildConfig.DEBUG)} in a release
+     * build, the generated {@code ENABLED} constant is false and every override only calls {@code super}. When true,
+     * recording can still be turned off at run time with {@code -Dpatterns.instrumented=false}, read once when the
+     * generated class is initialized.
+     */
+    boolean enabled() default true;
+}
@@ -0,0 +1,26 @@
+package br.me.patterns.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a {@code String} field of a {@link Builder} class whose values repeat a lot, such as a brand or a colour.
+ * The generated setter replaces each value with an equal instance seen before, so built objects share one
+ * {@code String} per distinct value and compare it by reference.
+ *
+ * Each field has its own table of {@link #capacity()} slots, indexed by the hash of the value. A value whose slot
+ * holds another value replaces it, so the table never grows and holds at most one instance per slot. The generated
+ * {@code <FIELD>_INTERNER} constant of the builder reports its hits and misses.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface Interned {
+
+    /**
+     * Number of slots of the table, rounded up to a power of two, at most {@code 1 << 30}. Use a few times the number of distinct values
+     * expected, so that they rarely share a slot.
+     */
+    int capacity() default 256;
+}
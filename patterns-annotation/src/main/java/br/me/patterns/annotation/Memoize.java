@@ -0,0 +1,27 @@
+package br.me.patterns.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a pure method, whose result only depends on its arguments, to be cached. The processor generates
+ * {@code <Type>Memoized_}, a subclass that overrides every marked method of the type and returns the result of an
+ * earlier call with equal arguments instead of calling it again. A {@link Singleton} with marked methods holds an
+ * instance of that subclass.
+ *
+ * Each method has its own bounded cache, kept in a public {@code <method>Cache} field that reports its hits, misses
+ * and evictions. Primitive arguments are stored as they are, without boxing. Exceptions are not cached.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface Memoize {
+
+    /**
+     * Maximum number of results kept, at most {@code 1 << 30}, rounded up to a power of two, four at least. The cache is split in sets of four
+     * results picked by the hash of the arguments; in a full set, a result that was not read since the set was last
+     * swept makes room for the new one.
+     */
+    int maxSize() default 1024;
+}
@@ -0,0 +1,52 @@
+package br.me.patterns.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class whose instances are expensive to create, such as holders of large buffers, to be recycled. The
+ * processor generates {@code <Type>_} with static {@code acquire()}, which returns a released instance or a new one,
+ * and {@code release(object)}, which resets the instance and keeps it for a later {@code acquire()}.
+ *
+ * The class needs a non-private constructor without parameters. An instance is reset by its own {@code reset()}
+ * method when the class declares one. Otherwise the generated reset restores the primitive, boxed and {@code String}
+ * fields to the values of a new instance and leaves final fields, such as buffers, as they are.
+ *
+ * When the processor runs with {@code -Apatterns.leakDetection=true}, usually only for debug builds, the generated
+ * class also remembers where each instance was acquired, reports instances collected without being released and
+ * rejects instances released twice.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Pooled {
+
+    /**
+     * Maximum number of released instances kept, at most {@code 1 << 30}, rounded up to a power of two for
+     * {@link Scope#GLOBAL}, per thread for {@link Scope#THREAD}. Instances released to a full pool are left to the garbage collector.
+     */
+    int capacity() default 64;
+
+    /**
+     * Who shares the released instances.
+     */
+    Scope scope() default Scope.GLOBAL;
+
+    enum Scope {
+        /**
+         * One pool shared by every thread, so an instance released on one thread can be acquired on another. It is
+         * split in stripes, one per processor rounded up to a power of two, each taken with {@code compareAndSet} and
+         * never waited for: each thread starts with a stripe picked by a hash of the thread and moves on to the next
+         * one when it is busy. The stripes are a cache line apart, so threads on different stripes do not slow each
+         * other down.
+         */
+        GLOBAL,
+
+        /**
+         * One pool per thread, kept in a {@code ThreadLocal}, without atomic operations. An instance released on
+         * another thread than the one that acquired it goes to the pool of the releasing thread.
+         */
+        THREAD
+    }
+}
@@ -8,4 +8,68 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.CLASS)
 @Target(ElementType.TYPE)
 public @interface Singleton {
+
+    /**
+     * How the generated {@code getInstance()} creates the single instance.
+     */
+    Strategy strategy() default Strategy.EAGER;
+
+    /**
+     * How many instances the generated class holds and who shares them. The {@link #strategy()} only applies
+     * to {@link Scope#GLOBAL}.
+     */
+    Scope scope() default Scope.GLOBAL;
+
+    /**
+     * Number of instances of a {@link Scope#STRIPED} singleton, rounded up to a power of two, at most
+     * {@code 1 << 30}. When zero, the
+     * number of available processors is used.
+     */
+    int stripes() default 0;
+
+    /**
+     * When the processor generates the {@code GeneratedSingletons} registry ({@code -Apatterns.registry=<package>}),
+     * marks this singleton to be created by {@code GeneratedSingletons.prewarm(Executor)}. Not allowed with
+     * {@link Scope#THREAD}, whose instance would only be created for a thread of the executor.
+     */
+    boolean prewarm() default false;
+
+    enum Strategy {
+        /**
+         * The instance is created when the generated class is initialized.
+         */
+        EAGER,
+
+        /**
+         * The instance is created on the first call to {@code getInstance()}, by a nested holder class
+         * (initialization-on-demand holder idiom). No synchronization on later calls.
+         */
+        LAZY_HOLDER,
+
+        /**
+         * The instance is created on the first call to {@code getInstance()}, guarded by double-checked locking
+         * on a volatile field.
+         */
+        DOUBLE_CHECKED
+    }
+
+    enum Scope {
+        /**
+         * One instance shared by every thread.
+         */
+        GLOBAL,
+
+        /**
+         * One instance per thread, kept in a {@code ThreadLocal}. The generated {@code remove()} drops the
+         * instance of the calling thread, e.g. before a pooled thread goes back to its pool.
+         */
+        THREAD,
+
+        /**
+         * A fixed number of instances, picked by a hash of the calling thread, for read-mostly state that
+         * should not be locked. A stripe is created without locking on first use, so a race may create and discard
+         * an extra instance. The generated {@code clear()} drops every stripe.
+         */
+        STRIPED
+    }
 }
@@ -0,0 +1,70 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.ConversorAssincronoAsync_;
+import br.me.patterns.benchmarks.model.ConversorEmLoteAsync_;
+import br.me.patterns.benchmarks.model.Conversor_;
+
+/**
+ * Converts {@link #CALLS} values directly, through {@code @Async} with one executor task per call and through
+ * {@code @Async(batch = true)}, waiting for every result, so the difference is the cost of handing the calls to the
+ * executor threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AsyncBenchmark {
+
+    static final int CALLS = 16;
+
+    @SuppressWarnings("unchecked")
+    final CompletableFuture<Double>[] futures = new CompletableFuture[CALLS];
+
+    double celsius = 21.5;
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public double direct() {
+        double sum = 0;
+        for (int i = 0; i < CALLS; i++) {
+            sum += Conversor_.getInstance().celsiusToFahrenheit(celsius + i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public double async() {
+        for (int i = 0; i < CALLS; i++) {
+            futures[i] = ConversorAssincronoAsync_.celsiusToFahrenheit(celsius + i);
+        }
+        return join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CALLS)
+    public double batch() {
+        for (int i = 0; i < CALLS; i++) {
+            futures[i] = ConversorEmLoteAsync_.celsiusToFahrenheit(celsius + i);
+        }
+        return join();
+    }
+
+    private double join() {
+        double sum = 0;
+        for (CompletableFuture<Double> future : futures) {
+            sum += future.join();
+        }
+        return sum;
+    }
+}
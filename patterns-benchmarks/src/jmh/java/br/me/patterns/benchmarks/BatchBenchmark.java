@@ -0,0 +1,98 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.Carro;
+import br.me.patterns.benchmarks.model.CarroBatch;
+import br.me.patterns.benchmarks.model.CarroBuilder_;
+
+/**
+ * Scans one field of a million records kept as {@code Carro[]} and as the columnar {@code CarroBatch}. The objects
+ * are created in random order, as records arriving over time would be, so consecutive array elements are not
+ * neighbours in the heap.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchBenchmark {
+
+    static final int RECORDS = 1_000_000;
+
+    Carro[] carros;
+    CarroBatch batch;
+
+    @Setup
+    public void setUp() {
+        List<Integer> order = new ArrayList<>(RECORDS);
+        for (int i = 0; i < RECORDS; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+
+        carros = new Carro[RECORDS];
+        CarroBuilder_ builder = new CarroBuilder_().setCor("Preto").setMarca("Ferrari");
+        for (int i : order) {
+            carros[i] = builder.setAnoFabricacao(1990 + i % 30).setArCondicionado(i % 3 == 0).build();
+        }
+        batch = CarroBatch.fromArray(carros);
+    }
+
+    @Benchmark
+    public long sumAnoFabricacao_objects() {
+        long sum = 0;
+        for (Carro carro : carros) {
+            sum += carro.anoFabricacao;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long sumAnoFabricacao_batch() {
+        long sum = 0;
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            sum += batch.getAnoFabricacao(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int countArCondicionado_objects() {
+        int count = 0;
+        for (Carro carro : carros) {
+            if (carro.arCondicionado) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int countArCondicionado_batch() {
+        int count = 0;
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            if (batch.isArCondicionado(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long sumAnoFabricacao_cursor() {
+        long[] sum = new long[1];
+        batch.forEach(cursor -> sum[0] += cursor.getAnoFabricacao());
+        return sum[0];
+    }
+}
@@ -0,0 +1,90 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.Carro;
+import br.me.patterns.benchmarks.model.CarroBuilder_;
+
+/**
+ * Cost of the generated {@code CarroBuilder_} set-chain plus {@code build()}, of the same chain on a pooled builder
+ * filling a recycled {@code Carro}, and of the generated {@code Carro.toString()} and {@code Carro.appendTo(StringBuilder)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BuilderBenchmark {
+
+    int anoFabricacao;
+    String cor;
+    String marca;
+    String combustivel;
+    String quilometragem;
+    Carro carro;
+    Carro recycledCarro;
+    StringBuilder logBuffer;
+
+    @Setup
+    public void setUp() {
+        anoFabricacao = 2013;
+        cor = "Preto";
+        marca = "Ferrari";
+        combustivel = "Diesel";
+        quilometragem = "15km";
+        carro = setChainAndBuild();
+        recycledCarro = new Carro();
+        logBuffer = new StringBuilder(512);
+    }
+
+    @Benchmark
+    public Carro setChainAndBuild() {
+        return new CarroBuilder_()
+                .setAnoFabricacao(anoFabricacao)
+                .setArCondicionado(true)
+                .setArQuente(true)
+                .setCombustivel(combustivel)
+                .setCor(cor)
+                .setMarca(marca)
+                .setQuilometragem(quilometragem)
+                .setRodasLigaLeve(true)
+                .setSensorEstacionamento(false)
+                .build();
+    }
+
+    @Benchmark
+    public Carro recycledBuild() {
+        CarroBuilder_ builder = CarroBuilder_.acquire();
+        Carro built = builder
+                .setAnoFabricacao(anoFabricacao)
+                .setArCondicionado(true)
+                .setArQuente(true)
+                .setCombustivel(combustivel)
+                .setCor(cor)
+                .setMarca(marca)
+                .setQuilometragem(quilometragem)
+                .setRodasLigaLeve(true)
+                .setSensorEstacionamento(false)
+                .buildInto(recycledCarro);
+        builder.release();
+
+        return built;
+    }
+
+    @Benchmark
+    public String carroToString() {
+        return carro.toString();
+    }
+
+    @Benchmark
+    public StringBuilder carroAppendTo() {
+        logBuffer.setLength(0);
+        return carro.appendTo(logBuffer);
+    }
+}
@@ -0,0 +1,98 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.Carro;
+import br.me.patterns.benchmarks.model.CarroBuilder_;
+
+/**
+ * Generated binary codec of {@code Carro} against {@code ObjectOutputStream}/{@code ObjectInputStream} for the same
+ * object. Each benchmark writes or reads one object; the stream benchmarks reuse their byte arrays, the buffer
+ * benchmarks reuse a heap {@code ByteBuffer}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+
+    Carro carro;
+    ByteArrayOutputStream bytes;
+    ByteBuffer buffer;
+    byte[] codecPayload;
+    byte[] serializedPayload;
+
+    @Setup
+    public void setUp() throws IOException {
+        carro = new CarroBuilder_()
+                .setAnoFabricacao(2019)
+                .setArCondicionado(true)
+                .setCombustivel("Diesel")
+                .setCor("Preto")
+                .setMarca("Ferrari")
+                .setQuilometragem("15km")
+                .build();
+        bytes = new ByteArrayOutputStream(1024);
+        buffer = ByteBuffer.allocate(1024);
+
+        codecWrite();
+        codecPayload = bytes.toByteArray();
+        objectOutputStreamWrite();
+        serializedPayload = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int codecWrite() throws IOException {
+        bytes.reset();
+        carro.writeTo(new DataOutputStream(bytes));
+        return bytes.size();
+    }
+
+    @Benchmark
+    public Carro codecRead() throws IOException {
+        return Carro.readFrom(new DataInputStream(new ByteArrayInputStream(codecPayload)));
+    }
+
+    @Benchmark
+    public int byteBufferWrite() {
+        buffer.clear();
+        carro.writeTo(buffer);
+        return buffer.position();
+    }
+
+    @Benchmark
+    public Carro byteBufferRead() {
+        return Carro.readFrom(ByteBuffer.wrap(codecPayload));
+    }
+
+    @Benchmark
+    public int objectOutputStreamWrite() throws IOException {
+        bytes.reset();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(carro);
+        }
+        return bytes.size();
+    }
+
+    @Benchmark
+    public Object objectInputStreamRead() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedPayload))) {
+            return in.readObject();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.Carro;
+import br.me.patterns.benchmarks.model.CarroBuilder_;
+import br.me.patterns.benchmarks.model.CarroImutavel;
+import br.me.patterns.benchmarks.model.CarroImutavelBuilder_;
+
+/**
+ * Generated {@code Carro.hashCode()} and {@code equals()} against the usual hand-written {@code Objects.hash} over
+ * the same fields, plus a {@code HashMap} lookup keyed by a mutable and by an immutable (memoized hash) built class.
+ * The lookup keys are equal to, but not the same instance as, the keys in the maps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EqualsHashCodeBenchmark {
+
+    Carro carro;
+    Carro equalCarro;
+    CarroImutavel carroImutavel;
+    CarroImutavel equalCarroImutavel;
+    Map<Carro, Integer> carros;
+    Map<CarroImutavel, Integer> carrosImutaveis;
+
+    @Setup
+    public void setUp() {
+        carros = new HashMap<>();
+        carrosImutaveis = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            carros.put(newCarro(2000 + i), i);
+            carrosImutaveis.put(newCarroImutavel(2000 + i), i);
+        }
+
+        carro = newCarro(2500);
+        equalCarro = newCarro(2500);
+        carroImutavel = newCarroImutavel(2500);
+        equalCarroImutavel = newCarroImutavel(2500);
+    }
+
+    private static Carro newCarro(int anoFabricacao) {
+        return new CarroBuilder_()
+                .setAnoFabricacao(anoFabricacao)
+                .setArCondicionado(true)
+                .setCombustivel("Diesel")
+                .setCor("Preto")
+                .setMarca("Ferrari")
+                .setQuilometragem("15km")
+                .build();
+    }
+
+    private static CarroImutavel newCarroImutavel(int anoFabricacao) {
+        return new CarroImutavelBuilder_()
+                .setAnoFabricacao(anoFabricacao)
+                .setArCondicionado(true)
+                .setCombustivel("Diesel")
+                .setCor("Preto")
+                .setMarca("Ferrari")
+                .setQuilometragem("15km")
+                .build();
+    }
+
+    @Benchmark
+    public int generatedHashCode() {
+        return carro.hashCode();
+    }
+
+    @Benchmark
+    public int objectsHash() {
+        return Objects.hash(carro.cor, carro.marca, carro.anoFabricacao, carro.modelo, carro.combustivel, carro.placa,
+                carro.quilometragem, carro.arCondicionado, carro.direcaoEletrica, carro.direcaoHidraulica,
+                carro.vidrosEletricos, carro.arQuente, carro.sensorEstacionamento, carro.rodasLigaLeve);
+    }
+
+    @Benchmark
+    public int memoizedHashCode() {
+        return carroImutavel.hashCode();
+    }
+
+    @Benchmark
+    public boolean generatedEquals() {
+        return carro.equals(equalCarro);
+    }
+
+    @Benchmark
+    public Integer hashMapGet() {
+        return carros.get(equalCarro);
+    }
+
+    @Benchmark
+    public Integer hashMapGetMemoized() {
+        return carrosImutaveis.get(equalCarroImutavel);
+    }
+}
@@ -0,0 +1,97 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.FichaTecnica;
+import br.me.patterns.benchmarks.model.FichaTecnica_;
+
+/**
+ * Creates a {@code FichaTecnica} from the fields of the next of {@value #ROWS} parsed rows, which hold
+ * {@value #DISTINCT} distinct values in fresh strings: with {@code new}, through the generated {@code FichaTecnica_.of}
+ * and through a hand-written interner, a {@code ConcurrentHashMap} from each value to its canonical instance.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FlyweightBenchmark {
+
+    static final int ROWS = 4096;
+    static final int DISTINCT = 120;
+
+    String[] marcas = new String[ROWS];
+    String[] modelos = new String[ROWS];
+    int[] anos = new int[ROWS];
+    String[] combustiveis = new String[ROWS];
+    int[] potencias = new int[ROWS];
+    ConcurrentHashMap<FichaTecnica, FichaTecnica> map;
+    int next;
+
+    @Setup
+    public void setUp() {
+        map = new ConcurrentHashMap<>();
+        for (int i = 0; i < ROWS; i++) {
+            marcas[i] = InternBenchmark.parse(getMarca(i));
+            modelos[i] = InternBenchmark.parse(getModelo(i));
+            anos[i] = getAnoModelo(i);
+            combustiveis[i] = InternBenchmark.parse(getCombustivel(i));
+            potencias[i] = getPotencia(i);
+        }
+    }
+
+    @Benchmark
+    public FichaTecnica allocated() {
+        int i = next();
+        return new FichaTecnica(marcas[i], modelos[i], anos[i], combustiveis[i], potencias[i]);
+    }
+
+    @Benchmark
+    public FichaTecnica flyweight() {
+        int i = next();
+        return FichaTecnica_.of(marcas[i], modelos[i], anos[i], combustiveis[i], potencias[i]);
+    }
+
+    @Benchmark
+    public FichaTecnica concurrentHashMap() {
+        int i = next();
+        FichaTecnica created = new FichaTecnica(marcas[i], modelos[i], anos[i], combustiveis[i], potencias[i]);
+        FichaTecnica canonical = map.putIfAbsent(created, created);
+        return canonical != null ? canonical : created;
+    }
+
+    private int next() {
+        next = (next + 1) & (ROWS - 1);
+        return next;
+    }
+
+    /**
+     * Row {@code i} of a table with {@value #DISTINCT} distinct values: 8 brands, 40 models, 10 years and 3 fuels.
+     */
+    static String getMarca(int i) {
+        return InternBenchmark.MARCAS[i % InternBenchmark.MARCAS.length];
+    }
+
+    static String getModelo(int i) {
+        return "Modelo " + i % 40;
+    }
+
+    static int getAnoModelo(int i) {
+        return 2010 + i % 10;
+    }
+
+    static String getCombustivel(int i) {
+        return InternBenchmark.COMBUSTIVEIS[i % InternBenchmark.COMBUSTIVEIS.length];
+    }
+
+    static int getPotencia(int i) {
+        return 70 + 10 * (i % 40 / 8);
+    }
+}
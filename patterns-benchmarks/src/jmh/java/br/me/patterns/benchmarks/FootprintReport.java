@@ -0,0 +1,74 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.info.GraphLayout;
+
+import br.me.patterns.benchmarks.model.Carro;
+import br.me.patterns.benchmarks.model.CarroBuilder_;
+import br.me.patterns.benchmarks.model.CarroCanonico;
+import br.me.patterns.benchmarks.model.CarroCanonicoBuilder_;
+import br.me.patterns.benchmarks.model.CarroCompacto;
+import br.me.patterns.benchmarks.model.CarroImutavel;
+import br.me.patterns.benchmarks.model.FichaTecnica;
+import br.me.patterns.benchmarks.model.FichaTecnica_;
+
+/**
+ * Prints the shallow size and field layout of the generated built classes, as computed by JOL for the running
+ * JVM. {@code CarroCompacto} is {@code CarroImutavel} with its booleans packed in one {@code int}.
+ *
+ * It then prints the retained size of {@value #RECORDS} records built from freshly parsed strings, with plain
+ * setters ({@code Carro}) and with the {@code @Interned} setters of {@code CarroCanonico}, and of as many
+ * {@code @Flyweight} technical sheets created with {@code new} and with {@code FichaTecnica_.of}.
+ */
+public class FootprintReport {
+
+    static final int RECORDS = 100_000;
+
+    public static void main(String[] args) {
+        for (Class<?> builtClass : new Class<?>[] {Carro.class, CarroImutavel.class, CarroCompacto.class}) {
+            ClassLayout layout = ClassLayout.parseClass(builtClass);
+            System.out.println(builtClass.getSimpleName() + ": " + layout.instanceSize() + " bytes");
+            System.out.println(layout.toPrintable());
+        }
+
+        Carro[] carros = new Carro[RECORDS];
+        CarroCanonico[] canonicos = new CarroCanonico[RECORDS];
+        CarroBuilder_ builder = new CarroBuilder_();
+        CarroCanonicoBuilder_ canonicoBuilder = new CarroCanonicoBuilder_();
+        for (int i = 0; i < RECORDS; i++) {
+            String cor = InternBenchmark.CORES[i % InternBenchmark.CORES.length];
+            String marca = InternBenchmark.MARCAS[i % InternBenchmark.MARCAS.length];
+            String combustivel = InternBenchmark.COMBUSTIVEIS[i % InternBenchmark.COMBUSTIVEIS.length];
+            String modelo = "Modelo " + i % 40;
+            String placa = "ABC" + (1000 + i);
+            carros[i] = builder.setCor(InternBenchmark.parse(cor)).setMarca(InternBenchmark.parse(marca))
+                    .setModelo(InternBenchmark.parse(modelo)).setCombustivel(InternBenchmark.parse(combustivel))
+                    .setPlaca(InternBenchmark.parse(placa)).build();
+            canonicos[i] = canonicoBuilder.setCor(InternBenchmark.parse(cor)).setMarca(InternBenchmark.parse(marca))
+                    .setModelo(InternBenchmark.parse(modelo)).setCombustivel(InternBenchmark.parse(combustivel))
+                    .setPlaca(InternBenchmark.parse(placa)).build();
+        }
+
+        System.out.println(RECORDS + " Carro: " + GraphLayout.parseInstance((Object) carros).totalSize() + " bytes");
+        System.out.println(RECORDS + " CarroCanonico: " + GraphLayout.parseInstance((Object) canonicos).totalSize() + " bytes");
+        System.out.println("CarroCanonicoBuilder_.MODELO_INTERNER: " + CarroCanonicoBuilder_.MODELO_INTERNER.hits() + " hits, "
+                + CarroCanonicoBuilder_.MODELO_INTERNER.misses() + " misses");
+
+        FichaTecnica[] fichas = new FichaTecnica[RECORDS];
+        FichaTecnica[] canonicas = new FichaTecnica[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            String marca = FlyweightBenchmark.getMarca(i);
+            String modelo = FlyweightBenchmark.getModelo(i);
+            String combustivel = FlyweightBenchmark.getCombustivel(i);
+            fichas[i] = new FichaTecnica(InternBenchmark.parse(marca), InternBenchmark.parse(modelo), FlyweightBenchmark.getAnoModelo(i),
+                    InternBenchmark.parse(combustivel), FlyweightBenchmark.getPotencia(i));
+            canonicas[i] = FichaTecnica_.of(InternBenchmark.parse(marca), InternBenchmark.parse(modelo), FlyweightBenchmark.getAnoModelo(i),
+                    InternBenchmark.parse(combustivel), FlyweightBenchmark.getPotencia(i));
+        }
+
+        System.out.println(RECORDS + " FichaTecnica (new): " + GraphLayout.parseInstance((Object) fichas).totalSize() + " bytes");
+        System.out.println(RECORDS + " FichaTecnica (of): " + GraphLayout.parseInstance((Object) canonicas).totalSize() + " bytes");
+        System.out.println("FichaTecnica_: " + FichaTecnica_.size() + " instances, " + FichaTecnica_.hits() + " hits, "
+                + FichaTecnica_.misses() + " misses, dedup ratio " + FichaTecnica_.dedupRatio());
+    }
+}
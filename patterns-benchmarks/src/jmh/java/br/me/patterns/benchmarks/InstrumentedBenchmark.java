@@ -0,0 +1,41 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.ConversorDesligado_;
+import br.me.patterns.benchmarks.model.ConversorInstrumentado_;
+import br.me.patterns.benchmarks.model.Conversor_;
+
+/**
+ * Calls a method that takes about a nanosecond on a plain singleton, on an {@code @Instrumented} one and on one with
+ * {@code @Instrumented(enabled = false)}, so the difference is the cost of the instrumentation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InstrumentedBenchmark {
+
+    double celsius = 21.5;
+
+    @Benchmark
+    public double plain() {
+        return Conversor_.getInstance().celsiusToFahrenheit(celsius);
+    }
+
+    @Benchmark
+    public double instrumented() {
+        return ConversorInstrumentado_.getInstance().celsiusToFahrenheit(celsius);
+    }
+
+    @Benchmark
+    public double disabled() {
+        return ConversorDesligado_.getInstance().celsiusToFahrenheit(celsius);
+    }
+}
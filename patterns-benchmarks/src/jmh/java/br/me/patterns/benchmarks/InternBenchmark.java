@@ -0,0 +1,58 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.Carro;
+import br.me.patterns.benchmarks.model.CarroBuilder_;
+import br.me.patterns.benchmarks.model.CarroCanonico;
+import br.me.patterns.benchmarks.model.CarroCanonicoBuilder_;
+
+/**
+ * Builds a record from freshly parsed strings, as a reader of text input would, with plain setters and with the
+ * {@code @Interned} setters of {@code CarroCanonico}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InternBenchmark {
+
+    static final String[] CORES = {"Preto", "Branco", "Prata", "Vermelho", "Azul"};
+    static final String[] MARCAS = {"Ferrari", "Fiat", "Volkswagen", "Chevrolet", "Ford", "Renault", "Toyota", "Honda"};
+    static final String[] COMBUSTIVEIS = {"Gasolina", "Etanol", "Flex"};
+
+    CarroBuilder_ builder = new CarroBuilder_();
+    CarroCanonicoBuilder_ canonicoBuilder = new CarroCanonicoBuilder_();
+    int record;
+
+    @Benchmark
+    public Carro buildParsed() {
+        int i = record++;
+        return builder.setCor(parse(CORES[i % CORES.length]))
+                .setMarca(parse(MARCAS[i % MARCAS.length]))
+                .setCombustivel(parse(COMBUSTIVEIS[i % COMBUSTIVEIS.length]))
+                .build();
+    }
+
+    @Benchmark
+    public CarroCanonico buildParsedInterned() {
+        int i = record++;
+        return canonicoBuilder.setCor(parse(CORES[i % CORES.length]))
+                .setMarca(parse(MARCAS[i % MARCAS.length]))
+                .setCombustivel(parse(COMBUSTIVEIS[i % COMBUSTIVEIS.length]))
+                .build();
+    }
+
+    /**
+     * A new copy, like a string cut out of an input line.
+     */
+    static String parse(String value) {
+        return new String(value.toCharArray());
+    }
+}
@@ -0,0 +1,75 @@
+package br.me.patterns.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.Carro;
+import br.me.patterns.benchmarks.model.CarroBuilder_;
+import br.me.patterns.benchmarks.model.CarroJson;
+
+/**
+ * Generated {@code CarroJson} against a reflective Jackson {@code ObjectMapper} for the same object. The mapper is
+ * created once, so its introspection cost is paid during warmup; the generated writer reuses one
+ * {@code StringBuilder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonBenchmark {
+
+    Carro carro;
+    ObjectMapper mapper;
+    StringBuilder out;
+    String json;
+
+    @Setup
+    public void setUp() {
+        carro = new CarroBuilder_()
+                .setAnoFabricacao(2019)
+                .setArCondicionado(true)
+                .setCombustivel("Diesel")
+                .setCor("Preto")
+                .setMarca("Ferrari")
+                .setQuilometragem("15km")
+                .build();
+        mapper = new ObjectMapper();
+        out = new StringBuilder(256);
+        json = CarroJson.toJson(carro);
+    }
+
+    @Benchmark
+    public String generatedWrite() {
+        return CarroJson.toJson(carro);
+    }
+
+    @Benchmark
+    public int generatedWriteReused() {
+        out.setLength(0);
+        return CarroJson.write(carro, out).length();
+    }
+
+    @Benchmark
+    public Carro generatedRead() {
+        return CarroJson.read(json);
+    }
+
+    @Benchmark
+    public String jacksonWrite() throws IOException {
+        return mapper.writeValueAsString(carro);
+    }
+
+    @Benchmark
+    public Carro jacksonRead() throws IOException {
+        return mapper.readValue(json, Carro.class);
+    }
+}
@@ -0,0 +1,131 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.MathSingleton;
+import br.me.patterns.benchmarks.model.MathSingleton_;
+
+/**
+ * {@code MathSingleton.distance}, a {@code @Memoize} haversine over four {@code double}s, computed every time, through
+ * the generated cache and through a hand-written {@code ConcurrentHashMap} keyed by a boxed point pair. Each call
+ * takes the next of 256 pairs that fit the cache ({@code hot}), or of 65,536 pairs that do not ({@code cold}). The
+ * {@code Threads} variants share the cache of the singleton, so its hit counter is updated from every thread.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MemoizeBenchmark {
+
+    static final int HOT = 256;
+    static final int COLD = 65_536;
+
+    MathSingleton math;
+    ConcurrentHashMap<Key, Double> map;
+    double[] coordinates;
+    int next;
+
+    @Setup
+    public void setUp() {
+        math = MathSingleton_.getInstance();
+        map = new ConcurrentHashMap<>();
+        coordinates = new double[COLD * 4];
+        Random random = new Random(42);
+        for (int i = 0; i < coordinates.length; i++) {
+            coordinates[i] = random.nextDouble() * 180 - 90;
+        }
+    }
+
+    @Benchmark
+    public double computed() {
+        int i = next(HOT);
+        return MathSingleton.haversine(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+    }
+
+    @Benchmark
+    public double memoized_hot() {
+        int i = next(HOT);
+        return math.distance(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public double memoized_hot_4Threads() {
+        return memoized_hot();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public double memoized_hot_maxThreads() {
+        return memoized_hot();
+    }
+
+    @Benchmark
+    public double memoized_cold() {
+        int i = next(COLD);
+        return math.distance(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+    }
+
+    @Benchmark
+    public double concurrentHashMap_hot() {
+        int i = next(HOT);
+        Key key = new Key(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+        Double distance = map.get(key);
+        if (distance == null) {
+            distance = MathSingleton.haversine(key.lat1, key.lon1, key.lat2, key.lon2);
+            map.put(key, distance);
+        }
+        return distance;
+    }
+
+    private int next(int pairs) {
+        next = (next + 1) & (pairs - 1);
+        return next * 4;
+    }
+
+    static final class Key {
+        final double lat1;
+        final double lon1;
+        final double lat2;
+        final double lon2;
+
+        Key(double lat1, double lon1, double lat2, double lon2) {
+            this.lat1 = lat1;
+            this.lon1 = lon1;
+            this.lat2 = lat2;
+            this.lon2 = lon2;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (! (o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return Double.doubleToLongBits(lat1) == Double.doubleToLongBits(other.lat1)
+                    && Double.doubleToLongBits(lon1) == Double.doubleToLongBits(other.lon1)
+                    && Double.doubleToLongBits(lat2) == Double.doubleToLongBits(other.lat2)
+                    && Double.doubleToLongBits(lon2) == Double.doubleToLongBits(other.lon2);
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(lat1);
+            bits = 31 * bits + Double.doubleToLongBits(lon1);
+            bits = 31 * bits + Double.doubleToLongBits(lat2);
+            bits = 31 * bits + Double.doubleToLongBits(lon2);
+            return (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.Carro;
+import br.me.patterns.benchmarks.model.CarroBuilder_;
+import br.me.patterns.benchmarks.model.CarroView;
+
+/**
+ * Loads and scans a million records kept in a memory-mapped file through the generated {@code CarroView}, against
+ * decoding the same records into objects with the binary codec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OffHeapBenchmark {
+
+    static final int RECORDS = 1_000_000;
+
+    File file;
+    MappedByteBuffer mapped;
+    ByteBuffer encoded;
+    CarroView view = new CarroView();
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("carros", ".bin");
+        encoded = ByteBuffer.allocate(RECORDS * 32);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            CarroView.Writer writer = new CarroView.Writer(
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, CarroView.bufferSize(RECORDS, 1024)), RECORDS);
+            CarroBuilder_ builder = new CarroBuilder_().setCor("Preto").setMarca("Ferrari");
+            for (int i = 0; i < RECORDS; i++) {
+                builder.setAnoFabricacao(1990 + i % 30).setArCondicionado(i % 3 == 0);
+                writer.write(builder);
+                builder.build().writeTo(encoded);
+            }
+        }
+        encoded.flip();
+        mapped = map();
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Single shot: a mapping is only released when its buffer is collected, so mapping in a loop would exhaust memory.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public int load_mapped() throws IOException {
+        return CarroView.count(map());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public Carro[] load_codec() {
+        ByteBuffer buffer = encoded.duplicate();
+        Carro[] carros = new Carro[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            carros[i] = Carro.readFrom(buffer);
+        }
+        return carros;
+    }
+
+    @Benchmark
+    public long sumAnoFabricacao_view() {
+        long sum = 0;
+        view.bind(mapped);
+        for (int i = 0, count = view.count(); i < count; i++) {
+            sum += view.wrap(i).getAnoFabricacao();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int countArCondicionado_view() {
+        int count = 0;
+        view.bind(mapped);
+        for (int i = 0, records = view.count(); i < records; i++) {
+            if (view.wrap(i).isArCondicionado()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,74 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.Pacote;
+import br.me.patterns.benchmarks.model.PacoteLocal;
+import br.me.patterns.benchmarks.model.PacoteLocal_;
+import br.me.patterns.benchmarks.model.Pacote_;
+
+/**
+ * Receives a {@value #RECEIVED}-byte message into a packet with an 8 KB buffer and checks its sum: in a new
+ * {@code Pacote}, in one taken from the shared pool of {@code Pacote_} and in one taken from the pool per thread of
+ * {@code PacoteLocal_}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PoolBenchmark {
+
+    static final int RECEIVED = 256;
+
+    byte[] message = new byte[RECEIVED];
+    long clock;
+
+    {
+        for (int i = 0; i < RECEIVED; i++) {
+            message[i] = (byte) (i * 31);
+        }
+    }
+
+    @Benchmark
+    public int allocated() {
+        Pacote pacote = new Pacote();
+        pacote.tamanho = RECEIVED;
+        pacote.recebidoEm = ++clock;
+        return receive(pacote.dados);
+    }
+
+    @Benchmark
+    public int pooledGlobal() {
+        Pacote pacote = Pacote_.acquire();
+        pacote.tamanho = RECEIVED;
+        pacote.recebidoEm = ++clock;
+        int sum = receive(pacote.dados);
+        Pacote_.release(pacote);
+        return sum;
+    }
+
+    @Benchmark
+    public int pooledThread() {
+        PacoteLocal pacote = PacoteLocal_.acquire();
+        pacote.tamanho = RECEIVED;
+        pacote.recebidoEm = ++clock;
+        int sum = receive(pacote.dados);
+        PacoteLocal_.release(pacote);
+        return sum;
+    }
+
+    private int receive(byte[] dados) {
+        System.arraycopy(message, 0, dados, 0, RECEIVED);
+        int sum = 0;
+        for (int i = 0; i < RECEIVED; i++) {
+            sum += dados[i];
+        }
+        return sum;
+    }
+}
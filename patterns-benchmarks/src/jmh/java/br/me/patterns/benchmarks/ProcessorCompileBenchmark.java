@@ -0,0 +1,232 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import br.me.patterns.annotation.processor.PatternsProcessor;
+
+/**
+ * Compile-time cost of {@link PatternsProcessor} on synthetic code bases: thousands of {@code @Singleton} types and
+ * {@code @Builder} types with 5 to 500 fields, compiled in-process with {@code -proc:only}. Every iteration is a
+ * single compilation, so the score is the wall time of one compilation.
+ *
+ * Besides the wall time of each compilation, the auxiliary counters report the bytes allocated by the compiling
+ * thread and the peak heap usage, both divided by the number of annotated types. The {@code parallel} parameter
+ * toggles the processor's parallel generation mode; allocations made on its worker threads are not part of
+ * {@code allocatedBytesPerType}. Larger code bases can be run with
+ * {@code -p singletons=...}, {@code -p builders=...} and {@code -p fields=...}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 2, time = 1, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.MILLISECONDS)
+public class ProcessorCompileBenchmark {
+
+    private static final int TYPES_PER_PACKAGE = 100;
+
+    @State(Scope.Benchmark)
+    public static class SingletonSources {
+        @Param({"1000", "10000"})
+        int singletons;
+
+        List<JavaFileObject> sources;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            sources = new ArrayList<>(singletons);
+            for (int i = 0; i < singletons; i++) {
+                String packageName = "synthetic.p" + (i / TYPES_PER_PACKAGE);
+                String className = "Service" + i;
+                sources.add(new SourceFile(packageName + "." + className, "" +
+                        "package " + packageName + ";\n" +
+                        "@br.me.patterns.annotation.Singleton\n" +
+                        "public class " + className + " {\n" +
+                        "    public int sum(int a, int b) { return a + b; }\n" +
+                        "    " + className + "() {}\n" +
+                        "}\n"));
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class BuilderSources {
+        @Param({"1000"})
+        int builders;
+
+        @Param({"5", "50", "500"})
+        int fields;
+
+        List<JavaFileObject> sources;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            String[] fieldTypes = {"String", "int", "boolean", "long", "double"};
+
+            sources = new ArrayList<>(builders);
+            for (int i = 0; i < builders; i++) {
+                String packageName = "synthetic.p" + (i / TYPES_PER_PACKAGE);
+                String className = "Model" + i + "Builder";
+                StringBuilder source = new StringBuilder()
+                        .append("package ").append(packageName).append(";\n")
+                        .append("@br.me.patterns.annotation.Builder\n")
+                        .append("public class ").append(className).append(" {\n");
+
+                for (int f = 0; f < fields; f++) {
+                    source.append("    ").append(fieldTypes[f % fieldTypes.length]).append(" field").append(f).append(";\n");
+                }
+
+                sources.add(new SourceFile(packageName + "." + className, source.append("}\n").toString()));
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ProcessorOptions {
+        @Param({"false", "true"})
+        String parallel;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PerTypeCounters {
+        public double allocatedBytesPerType;
+        public double peakHeapBytesPerType;
+    }
+
+    @Benchmark
+    public int singletons(SingletonSources sources, ProcessorOptions options, PerTypeCounters counters) {
+        return compile(sources.sources, options, counters);
+    }
+
+    @Benchmark
+    public int builders(BuilderSources sources, ProcessorOptions options, PerTypeCounters counters) {
+        return compile(sources.sources, options, counters);
+    }
+
+    private static int compile(List<JavaFileObject> sources, ProcessorOptions processorOptions, PerTypeCounters counters) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        InMemoryFileManager fileManager = new InMemoryFileManager(standardFileManager);
+        List<String> options = Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path"),
+                "-Apatterns.parallel=" + processorOptions.parallel);
+
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, sources);
+        task.setProcessors(Collections.singletonList(new PatternsProcessor()));
+
+        List<MemoryPoolMXBean> heapPools = getHeapPools();
+        long allocatedBefore = getAllocatedBytes();
+
+        if (! task.call()) {
+            throw new IllegalStateException("Compilation failed: " + diagnostics.getDiagnostics());
+        }
+
+        long allocated = getAllocatedBytes() - allocatedBefore;
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        counters.allocatedBytesPerType = (double) allocated / sources.size();
+        counters.peakHeapBytesPerType = (double) peakHeap / sources.size();
+
+        return fileManager.generatedFiles;
+    }
+
+    private static List<MemoryPoolMXBean> getHeapPools() {
+        System.gc();
+
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        return heapPools;
+    }
+
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static class SourceFile extends SimpleJavaFileObject {
+        private final String content;
+
+        SourceFile(String qualifiedName, String content) {
+            super(URI.create("string:///" + qualifiedName.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.content = content;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return content;
+        }
+    }
+
+    /**
+     * Keeps the generated sources in memory so that the file system does not dominate the measurement.
+     */
+    static class InMemoryFileManager extends ForwardingJavaFileManager<JavaFileManager> {
+        int generatedFiles;
+
+        InMemoryFileManager(JavaFileManager fileManager) {
+            super(fileManager);
+        }
+
+        @Override
+        public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+            generatedFiles++;
+
+            return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+                @Override
+                public OutputStream openOutputStream() {
+                    return content;
+                }
+
+                @Override
+                public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                    return content.toString();
+                }
+            };
+        }
+    }
+}
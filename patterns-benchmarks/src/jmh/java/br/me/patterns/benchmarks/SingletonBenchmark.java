@@ -0,0 +1,44 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.MathSingleton;
+import br.me.patterns.benchmarks.model.MathSingleton_;
+
+/**
+ * Throughput of the generated {@code MathSingleton_.getInstance()} when called from a growing number of threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SingletonBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public MathSingleton getInstance_1Thread() {
+        return MathSingleton_.getInstance();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public MathSingleton getInstance_2Threads() {
+        return MathSingleton_.getInstance();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public MathSingleton getInstance_4Threads() {
+        return MathSingleton_.getInstance();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public MathSingleton getInstance_maxThreads() {
+        return MathSingleton_.getInstance();
+    }
+}
@@ -0,0 +1,76 @@
+package br.me.patterns.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import br.me.patterns.benchmarks.model.CarroImutavel;
+import br.me.patterns.benchmarks.model.CarroImutavelBuilder_;
+
+/**
+ * Changes one field of an immutable {@code CarroImutavel} by re-setting every field on a new builder, through
+ * {@code toBuilder()} and through the generated wither. The changed copy is returned, so it escapes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WitherBenchmark {
+
+    CarroImutavel carro;
+    int anoFabricacao;
+
+    @Setup
+    public void setUp() {
+        carro = new CarroImutavelBuilder_()
+                .setAnoFabricacao(2000)
+                .setArCondicionado(true)
+                .setCombustivel("Diesel")
+                .setCor("Preto")
+                .setMarca("Ferrari")
+                .setQuilometragem("15km")
+                .setModelo("Enzo")
+                .setPlaca("ABC1234")
+                .build();
+    }
+
+    @Benchmark
+    public CarroImutavel copyThroughNewBuilder() {
+        return new CarroImutavelBuilder_()
+                .setCor(carro.getCor())
+                .setMarca(carro.getMarca())
+                .setAnoFabricacao(++anoFabricacao)
+                .setModelo(carro.getModelo())
+                .setCombustivel(carro.getCombustivel())
+                .setPlaca(carro.getPlaca())
+                .setQuilometragem(carro.getQuilometragem())
+                .setArCondicionado(carro.isArCondicionado())
+                .setDirecaoEletrica(carro.isDirecaoEletrica())
+                .setDirecaoHidraulica(carro.isDirecaoHidraulica())
+                .setVidrosEletricos(carro.isVidrosEletricos())
+                .setArQuente(carro.isArQuente())
+                .setSensorEstacionamento(carro.isSensorEstacionamento())
+                .setRodasLigaLeve(carro.isRodasLigaLeve())
+                .build();
+    }
+
+    @Benchmark
+    public CarroImutavel copyThroughToBuilder() {
+        return carro.toBuilder().setAnoFabricacao(++anoFabricacao).build();
+    }
+
+    @Benchmark
+    public CarroImutavel wither() {
+        return carro.withAnoFabricacao(++anoFabricacao);
+    }
+
+    @Benchmark
+    public CarroImutavel witherUnchanged() {
+        return carro.withAnoFabricacao(2000);
+    }
+}
@@ -0,0 +1,23 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Builder;
+
+@Builder(reusable = true, codec = true, batch = true, offHeap = true, json = true)
+public class CarroBuilder {
+
+    String cor;
+    String marca;
+    int anoFabricacao;
+    String modelo;
+    String combustivel;
+    String placa;
+    String quilometragem;
+    boolean arCondicionado;
+    boolean direcaoEletrica;
+    boolean direcaoHidraulica;
+    boolean vidrosEletricos;
+    boolean arQuente;
+    boolean sensorEstacionamento;
+    boolean rodasLigaLeve;
+
+}
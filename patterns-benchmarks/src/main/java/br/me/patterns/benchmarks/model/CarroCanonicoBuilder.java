@@ -0,0 +1,28 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Builder;
+import br.me.patterns.annotation.Interned;
+
+@Builder
+public class CarroCanonicoBuilder {
+
+    @Interned(capacity = 64)
+    String cor;
+    @Interned(capacity = 64)
+    String marca;
+    int anoFabricacao;
+    @Interned
+    String modelo;
+    @Interned(capacity = 16)
+    String combustivel;
+    String placa;
+    String quilometragem;
+    boolean arCondicionado;
+    boolean direcaoEletrica;
+    boolean direcaoHidraulica;
+    boolean vidrosEletricos;
+    boolean arQuente;
+    boolean sensorEstacionamento;
+    boolean rodasLigaLeve;
+
+}
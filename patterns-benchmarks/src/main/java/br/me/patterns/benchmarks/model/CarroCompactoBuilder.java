@@ -0,0 +1,23 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Builder;
+
+@Builder(immutable = true, packBooleans = true)
+public class CarroCompactoBuilder {
+
+    String cor;
+    String marca;
+    int anoFabricacao;
+    String modelo;
+    String combustivel;
+    String placa;
+    String quilometragem;
+    boolean arCondicionado;
+    boolean direcaoEletrica;
+    boolean direcaoHidraulica;
+    boolean vidrosEletricos;
+    boolean arQuente;
+    boolean sensorEstacionamento;
+    boolean rodasLigaLeve;
+
+}
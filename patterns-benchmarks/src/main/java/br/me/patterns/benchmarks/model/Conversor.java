@@ -0,0 +1,11 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Singleton;
+
+@Singleton
+public class Conversor {
+
+    public double celsiusToFahrenheit(double celsius) {
+        return celsius * 9 / 5 + 32;
+    }
+}
@@ -0,0 +1,16 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Async;
+import br.me.patterns.annotation.Singleton;
+
+/**
+ * {@link Conversor} called through its generated {@code ConversorAssincronoAsync_}, one executor task per call.
+ */
+@Singleton
+@Async
+public class ConversorAssincrono {
+
+    public double celsiusToFahrenheit(double celsius) {
+        return celsius * 9 / 5 + 32;
+    }
+}
@@ -0,0 +1,16 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Instrumented;
+import br.me.patterns.annotation.Singleton;
+
+/**
+ * {@link Conversor} with its instrumentation turned off, as in a release build.
+ */
+@Singleton
+@Instrumented(enabled = false)
+public class ConversorDesligado {
+
+    public double celsiusToFahrenheit(double celsius) {
+        return celsius * 9 / 5 + 32;
+    }
+}
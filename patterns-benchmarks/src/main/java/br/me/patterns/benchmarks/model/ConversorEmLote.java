@@ -0,0 +1,16 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Async;
+import br.me.patterns.annotation.Singleton;
+
+/**
+ * {@link ConversorAssincrono} with {@code batch = true}, so the calls queued before a task runs share that task.
+ */
+@Singleton
+@Async(batch = true)
+public class ConversorEmLote {
+
+    public double celsiusToFahrenheit(double celsius) {
+        return celsius * 9 / 5 + 32;
+    }
+}
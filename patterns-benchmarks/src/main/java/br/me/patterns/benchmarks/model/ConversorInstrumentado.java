@@ -0,0 +1,16 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Instrumented;
+import br.me.patterns.annotation.Singleton;
+
+/**
+ * {@link Conversor} with its calls timed.
+ */
+@Singleton
+@Instrumented
+public class ConversorInstrumentado {
+
+    public double celsiusToFahrenheit(double celsius) {
+        return celsius * 9 / 5 + 32;
+    }
+}
@@ -0,0 +1,44 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Flyweight;
+
+@Flyweight(initialCapacity = 1024)
+public class FichaTecnica {
+
+    final String marca;
+    final String modelo;
+    final int anoModelo;
+    final String combustivel;
+    final int potencia;
+
+    public FichaTecnica(String marca, String modelo, int anoModelo, String combustivel, int potencia) {
+        this.marca = marca;
+        this.modelo = modelo;
+        this.anoModelo = anoModelo;
+        this.combustivel = combustivel;
+        this.potencia = potencia;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (! (o instanceof FichaTecnica)) {
+            return false;
+        }
+
+        FichaTecnica other = (FichaTecnica) o;
+        return anoModelo == other.anoModelo && potencia == other.potencia && marca.equals(other.marca)
+                && modelo.equals(other.modelo) && combustivel.equals(other.combustivel);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = marca.hashCode();
+        result = 31 * result + modelo.hashCode();
+        result = 31 * result + anoModelo;
+        result = 31 * result + combustivel.hashCode();
+        return 31 * result + potencia;
+    }
+}
@@ -0,0 +1,13 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Pooled;
+
+@Pooled(capacity = 32)
+public class Pacote {
+
+    public static final int TAMANHO_MAXIMO = 8192;
+
+    public final byte[] dados = new byte[TAMANHO_MAXIMO];
+    public int tamanho;
+    public long recebidoEm = -1;
+}
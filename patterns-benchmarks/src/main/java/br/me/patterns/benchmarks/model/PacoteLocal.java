@@ -0,0 +1,14 @@
+package br.me.patterns.benchmarks.model;
+
+import br.me.patterns.annotation.Pooled;
+
+/**
+ * {@link Pacote} kept in a pool per thread.
+ */
+@Pooled(capacity = 32, scope = Pooled.Scope.THREAD)
+public class PacoteLocal {
+
+    public final byte[] dados = new byte[Pacote.TAMANHO_MAXIMO];
+    public int tamanho;
+    public long recebidoEm = -1;
+}
@@ -0,0 +1,164 @@
+package br.me.patterns.annotation.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.lang.model.element.Element;
+
+import br.me.patterns.annotation.processor.GenerationTask.RenderedFile;
+
+/**
+ * Persistent cache of rendered sources, keyed by a SHA-256 hash of the generator version and of the model
+ * fingerprint of an annotated element. The generator version is itself a hash of the processor classes, so that
+ * rebuilding the processor with any change invalidates every entry without anyone having to remember a version bump. A hit skips both the JavaPoet generation and the rendering of the element.
+ *
+ * Each entry is one file holding, for every generated class, a header line with its qualified name and the length
+ * of its source, followed by the source itself. Entries are written to a temporary file and then moved in place, so
+ * concurrent builds sharing the directory never read a partial entry.
+ */
+class GeneratedSourceCache {
+
+    /**
+     * SHA-256 of the jar or class directory the processor was loaded from, or {@code null} when it cannot be read, in
+     * which case the cache is disabled.
+     */
+    static final String GENERATOR_VERSION = getGeneratorVersion();
+
+    private final Path directory;
+
+    private GeneratedSourceCache(Path directory) {
+        this.directory = directory;
+    }
+
+    static GeneratedSourceCache forOption(String directory) {
+        if (directory == null || directory.trim().isEmpty() || GENERATOR_VERSION == null) {
+            return null;
+        }
+
+        return new GeneratedSourceCache(Paths.get(directory.trim()));
+    }
+
+    String key(String fingerprint) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(GENERATOR_VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the cached files, or {@code null} when there is no entry for the key.
+     */
+    List<RenderedFile> read(String key, Element originatingElement) throws IOException {
+        List<RenderedFile> files = new ArrayList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(getEntryPath(key), StandardCharsets.UTF_8)) {
+            String header;
+            while ((header = reader.readLine()) != null) {
+                int separator = header.lastIndexOf(' ');
+                String qualifiedName = header.substring(0, separator);
+                char[] source = new char[Integer.parseInt(header.substring(separator + 1))];
+
+                int read = 0;
+                while (read < source.length) {
+                    int count = reader.read(source, read, source.length - read);
+                    if (count < 0) {
+                        return null;
+                    }
+                    read += count;
+                }
+
+                files.add(new RenderedFile(qualifiedName, new String(source), originatingElement));
+            }
+        } catch (NoSuchFileException | NumberFormatException | StringIndexOutOfBoundsException e) {
+            return null;
+        }
+
+        return files.isEmpty() ? null : files;
+    }
+
+    void write(String key, List<RenderedFile> files) throws IOException {
+        Files.createDirectories(directory);
+        Path temporaryFile = Files.createTempFile(directory, key, ".tmp");
+
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                for (RenderedFile file : files) {
+                    writer.write(file.qualifiedName + " " + file.source.length() + "\n");
+                    writer.write(file.source);
+                }
+            }
+
+            Files.move(temporaryFile, getEntryPath(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private Path getEntryPath(String key) {
+        return directory.resolve(key + ".java.txt");
+    }
+
+    /**
+     * Hashes a jar as a whole, and a class directory file by file in path order together with their relative paths.
+     */
+    private static String getGeneratorVersion() {
+        try {
+            CodeSource codeSource = GeneratedSourceCache.class.getProtectionDomain().getCodeSource();
+            if (codeSource == null || codeSource.getLocation() == null) {
+                return null;
+            }
+
+            Path location = Paths.get(codeSource.getLocation().toURI());
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            if (Files.isDirectory(location)) {
+                List<Path> classFiles;
+                try (Stream<Path> paths = Files.walk(location)) {
+                    classFiles = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path classFile : classFiles) {
+                    digest.update(location.relativize(classFile).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                    digest.update(Files.readAllBytes(classFile));
+                }
+            } else {
+                digest.update(Files.readAllBytes(location));
+            }
+
+            return toHex(digest.digest());
+        } catch (IOException | URISyntaxException | IllegalArgumentException | SecurityException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package br.me.patterns.annotation.processor;
+
+import com.squareup.javapoet.JavaFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import javax.lang.model.element.Element;
+
+/**
+ * Generates and renders the files of one annotated element. A task only touches the immutable model captured by
+ * its generator, so it can run on any thread; writing the rendered files through the {@code Filer} stays on the
+ * javac thread.
+ *
+ * When a {@link GeneratedSourceCache} is given, the files rendered for the same model fingerprint are reused and
+ * nothing is generated.
+ */
+class GenerationTask implements Runnable {
+
+    final String pattern;
+    final Element element;
+    private final String fingerprint;
+    private final Supplier<JavaFile[]> generator;
+    private final GeneratedSourceCache cache;
+
+    final List<RenderedFile> files = new ArrayList<>();
+    long generateNanos;
+    long renderNanos;
+    boolean cached;
+    IOException cacheException;
+
+    GenerationTask(String pattern, Element element, String fingerprint, Supplier<JavaFile[]> generator, GeneratedSourceCache cache) {
+        this.pattern = pattern;
+        this.element = element;
+        this.fingerprint = fingerprint;
+        this.generator = generator;
+        this.cache = cache;
+    }
+
+    @Override
+    public void run() {
+        if (cache == null) {
+            generate();
+            return;
+        }
+
+        String key = cache.key(fingerprint);
+        try {
+            List<RenderedFile> cachedFiles = cache.read(key, element);
+            if (cachedFiles != null) {
+                files.addAll(cachedFiles);
+                cached = true;
+                return;
+            }
+
+            generate();
+            cache.write(key, files);
+        } catch (IOException e) {
+            cacheException = e;
+
+            if (files.isEmpty()) {
+                generate();
+            }
+        }
+    }
+
+    private void generate() {
+        long start = System.nanoTime();
+        JavaFile[] javaFiles = generator.get();
+        generateNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (JavaFile javaFile : javaFiles) {
+            files.add(new RenderedFile(javaFile));
+        }
+        renderNanos = System.nanoTime() - start;
+    }
+
+    static class RenderedFile {
+        final String qualifiedName;
+        final String source;
+        final Element[] originatingElements;
+
+        RenderedFile(JavaFile javaFile) {
+            this.qualifiedName = javaFile.packageName.isEmpty()
+                    ? javaFile.typeSpec.name
+                    : javaFile.packageName + "." + javaFile.typeSpec.name;
+            this.source = javaFile.toString();
+            this.originatingElements = javaFile.typeSpec.originatingElements.toArray(new Element[0]);
+        }
+
+        RenderedFile(String qualifiedName, String source, Element originatingElement) {
+            this.qualifiedName = qualifiedName;
+            this.source = source;
+            this.originatingElements = new Element[] {originatingElement};
+        }
+    }
+}
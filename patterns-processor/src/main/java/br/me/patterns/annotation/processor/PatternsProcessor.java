@@ -1,28 +1,138 @@
 package br.me.patterns.annotation.processor;
 
+import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.TypeName;
 
 import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
 import javax.annotation.processing.RoundEnvironment;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
 import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
 
+import br.me.patterns.annotation.Async;
 import br.me.patterns.annotation.Builder;
+import br.me.patterns.annotation.Flyweight;
+import br.me.patterns.annotation.Instrumented;
+import br.me.patterns.annotation.Interned;
+import br.me.patterns.annotation.Memoize;
+import br.me.patterns.annotation.Pooled;
 import br.me.patterns.annotation.Singleton;
+import br.me.patterns.annotation.processor.GenerationTask.RenderedFile;
+import br.me.patterns.annotation.processor.ProcessorMetrics.ElementMetrics;
+import br.me.patterns.annotation.processor.generator.AsyncGenerator;
+import br.me.patterns.annotation.processor.generator.BinaryCodecGenerator;
 import br.me.patterns.annotation.processor.generator.BuilderGenerator;
+import br.me.patterns.annotation.processor.generator.FlyweightGenerator;
+import br.me.patterns.annotation.processor.generator.InstrumentedGenerator;
+import br.me.patterns.annotation.processor.generator.MemoizeGenerator;
+import br.me.patterns.annotation.processor.generator.PoolGenerator;
+import br.me.patterns.annotation.processor.generator.RegistryGenerator;
 import br.me.patterns.annotation.processor.generator.SingletonGenerator;
+import br.me.patterns.annotation.processor.model.AsyncModel;
+import br.me.patterns.annotation.processor.model.BuilderModel;
+import br.me.patterns.annotation.processor.model.FieldModel;
+import br.me.patterns.annotation.processor.model.FlyweightModel;
+import br.me.patterns.annotation.processor.model.InstrumentedModel;
+import br.me.patterns.annotation.processor.model.MemoizeModel;
+import br.me.patterns.annotation.processor.model.PooledModel;
+import br.me.patterns.annotation.processor.model.SingletonModel;
 
 public class PatternsProcessor extends AbstractProcessor {
 
+    static final String METRICS_OPTION = "patterns.metrics";
+    static final String PARALLEL_OPTION = "patterns.parallel";
+    static final String CACHE_OPTION = "patterns.cache";
+    static final String REGISTRY_OPTION = "patterns.registry";
+    static final String LEAK_DETECTION_OPTION = "patterns.leakDetection";
+
+    static final String GRADLE_ISOLATING_OPTION = "org.gradle.annotation.processing.isolating";
+    static final String GRADLE_AGGREGATING_OPTION = "org.gradle.annotation.processing.aggregating";
+
+    private ProcessorMetrics metrics;
+    private ForkJoinPool generationPool;
+    private GeneratedSourceCache cache;
+    private String registryPackage;
+    private boolean leakDetection;
+    private final List<SingletonModel> registeredSingletons = new ArrayList<>();
+    private boolean registryWritten;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        metrics = ProcessorMetrics.forOption(processingEnv.getOptions().get(METRICS_OPTION));
+        generationPool = createGenerationPool(processingEnv.getOptions().get(PARALLEL_OPTION));
+        cache = GeneratedSourceCache.forOption(processingEnv.getOptions().get(CACHE_OPTION));
+        registryPackage = processingEnv.getOptions().get(REGISTRY_OPTION);
+        leakDetection = Boolean.parseBoolean(processingEnv.getOptions().get(LEAK_DETECTION_OPTION));
+    }
+
+    private boolean isRegistryEnabled() {
+        return registryPackage != null;
+    }
+
+    /**
+     * {@code -Apatterns.parallel=true} generates on as many threads as there are processors,
+     * {@code -Apatterns.parallel=<n>} on {@code n} threads. Any other value keeps generation on the javac thread.
+     */
+    private ForkJoinPool createGenerationPool(String parallelOption) {
+        if (parallelOption == null) {
+            return null;
+        }
+
+        int parallelism;
+        if (Boolean.parseBoolean(parallelOption)) {
+            parallelism = Runtime.getRuntime().availableProcessors();
+        } else {
+            try {
+                parallelism = Integer.parseInt(parallelOption.trim());
+            } catch (NumberFormatException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Valor invalido para " + PARALLEL_OPTION + ": " + parallelOption);
+                return null;
+            }
+        }
+
+        return parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
     @Override
     public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        metrics.beginRound();
+        int registeredBefore = registeredSingletons.size();
+        boolean claimed = processRound(annotations, roundEnvironment);
+        processRegistry(roundEnvironment, registeredSingletons.size() > registeredBefore);
+        metrics.endRound();
+
+        if (roundEnvironment.processingOver()) {
+            writeMetricsReport();
+            shutdownGenerationPool();
+        }
+
+        return claimed;
+    }
+
+    private boolean processRound(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
         if (annotations.size() > 0) {
             processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "annotations.size() : " + annotations.size());
             processAnnotations(roundEnvironment);
@@ -33,26 +143,501 @@ public class PatternsProcessor extends AbstractProcessor {
     }
 
     private void processAnnotations(RoundEnvironment roundEnvironment) {
+        List<GenerationTask> tasks = new ArrayList<>();
+
         for (Element element : roundEnvironment.getElementsAnnotatedWith(Singleton.class)) {
-            JavaFile javaFile = SingletonGenerator.generate(element);
-            writeFile(javaFile);
+            if (! checkSingletonType(element)) {
+                continue;
+            }
+
+            SingletonModel model = SingletonModel.from(element, processingEnv.getElementUtils());
+            registerSingleton(model);
+            tasks.add(new GenerationTask(Singleton.class.getSimpleName(), element, model.fingerprint(),
+                    () -> new JavaFile[] {SingletonGenerator.generate(model)}, cache));
         }
 
         for (Element element : roundEnvironment.getElementsAnnotatedWith(Builder.class)) {
-            JavaFile[] files = BuilderGenerator.generate(element);
+            BuilderModel model = BuilderModel.from(element);
+            checkSupportedFields(model);
+            tasks.add(new GenerationTask(Builder.class.getSimpleName(), element, model.fingerprint(),
+                    () -> BuilderGenerator.generate(model), cache));
+        }
+
+        Set<Element> memoizedTypes = new LinkedHashSet<>();
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(Memoize.class)) {
+            memoizedTypes.add(element.getEnclosingElement());
+        }
+
+        for (Element element : memoizedTypes) {
+            if (! checkMemoizedType((TypeElement) element)) {
+                continue;
+            }
+
+            MemoizeModel model = MemoizeModel.from(element);
+            tasks.add(new GenerationTask(Memoize.class.getSimpleName(), element, model.fingerprint(),
+                    () -> new JavaFile[] {MemoizeGenerator.generate(model)}, cache));
+        }
+
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(Instrumented.class)) {
+            if (! checkInstrumentedType((TypeElement) element)) {
+                continue;
+            }
+
+            InstrumentedModel model = InstrumentedModel.from(element);
+            tasks.add(new GenerationTask(Instrumented.class.getSimpleName(), element, model.fingerprint(),
+                    () -> new JavaFile[] {InstrumentedGenerator.generate(model)}, cache));
+        }
+
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(Async.class)) {
+            if (! checkAsyncType((TypeElement) element)) {
+                continue;
+            }
+
+            AsyncModel model = AsyncModel.from(element);
+            tasks.add(new GenerationTask(Async.class.getSimpleName(), element, model.fingerprint(),
+                    () -> new JavaFile[] {AsyncGenerator.generate(model)}, cache));
+        }
+
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(Flyweight.class)) {
+            if (! checkFlyweightType((TypeElement) element)) {
+                continue;
+            }
+
+            FlyweightModel model = FlyweightModel.from(element);
+            tasks.add(new GenerationTask(Flyweight.class.getSimpleName(), element, model.fingerprint(),
+                    () -> new JavaFile[] {FlyweightGenerator.generate(model)}, cache));
+        }
+
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(Pooled.class)) {
+            if (! checkPooledType((TypeElement) element)) {
+                continue;
+            }
+
+            PooledModel model = PooledModel.from(element, leakDetection);
+            tasks.add(new GenerationTask(Pooled.class.getSimpleName(), element, model.fingerprint(),
+                    () -> new JavaFile[] {PoolGenerator.generate(model)}, cache));
+        }
+
+        runGenerationTasks(tasks);
+
+        for (GenerationTask task : tasks) {
+            if (task.cacheException != null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Erro ao acessar o cache: " + task.cacheException, task.element);
+            }
+
+            ElementMetrics elementMetrics = metrics.beginElement(task.pattern, task.element.toString());
+            metrics.recordGenerate(elementMetrics, task.generateNanos);
+            metrics.recordRender(elementMetrics, task.renderNanos);
+            metrics.recordCached(elementMetrics, task.cached);
 
-            for (JavaFile file: files) {
-                writeFile(file);
+            for (RenderedFile file : task.files) {
+                writeFile(file, elementMetrics);
             }
         }
     }
 
-    private void writeFile(JavaFile javaFile) {
+    private void checkSupportedFields(BuilderModel model) {
+        for (FieldModel field : model.fields) {
+            if (field.interned && ! field.type.equals(ClassName.get(String.class))) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "@Interned so pode ser usado em campos String: " + field.type + " " + field.name, model.originatingElement);
+            }
+
+            if (field.interned && (field.internCapacity <= 0 || field.internCapacity > Utils.MAX_POWER_OF_TWO)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Capacidade invalida em @Interned: " + field.internCapacity + " " + field.name, model.originatingElement);
+            }
+
+            if (BinaryCodecGenerator.isSupported(field.type)) {
+                continue;
+            }
+
+            if (model.codec) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Tipo nao suportado pelo codec binario: " + field.type + " " + field.name, model.originatingElement);
+            }
+
+            if (model.offHeap) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Tipo nao suportado pelo layout off-heap: " + field.type + " " + field.name, model.originatingElement);
+            }
+
+            if (model.json) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Tipo nao suportado pelo JSON: " + field.type + " " + field.name, model.originatingElement);
+            }
+        }
+    }
+
+    /**
+     * The generated subclass overrides every {@code @Memoize} method and calls {@code super}, so the class and the
+     * methods have to be extensible, and the arguments have to be comparable with {@code equals}.
+     */
+    private boolean checkMemoizedType(TypeElement type) {
+        boolean valid = true;
+
+        boolean hasConstructor = false;
+        for (Element enclosedElement : type.getEnclosedElements()) {
+            hasConstructor |= enclosedElement.getKind() == ElementKind.CONSTRUCTOR && ! enclosedElement.getModifiers().contains(Modifier.PRIVATE);
+        }
+
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.FINAL) || ! type.getTypeParameters().isEmpty()
+                || (type.getNestingKind() == NestingKind.MEMBER && ! type.getModifiers().contains(Modifier.STATIC)) || ! hasConstructor) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Memoize so pode ser usado em classes nao finais, nao genericas e com construtor nao privado: " + type, type);
+            valid = false;
+        }
+
+        for (Element enclosedElement : type.getEnclosedElements()) {
+            if (enclosedElement.getKind() != ElementKind.METHOD || enclosedElement.getAnnotation(Memoize.class) == null) {
+                continue;
+            }
+
+            ExecutableElement method = (ExecutableElement) enclosedElement;
+            Set<Modifier> modifiers = method.getModifiers();
+            if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)
+                    || modifiers.contains(Modifier.ABSTRACT)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Metodo @Memoize nao pode ser private, static, final nem abstract: " + method, method);
+                valid = false;
+            }
+
+            if (method.getReturnType().getKind() == TypeKind.VOID || ! method.getTypeParameters().isEmpty()) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Metodo @Memoize precisa retornar um valor e nao pode ser generico: " + method, method);
+                valid = false;
+            }
+
+            int maxSize = method.getAnnotation(Memoize.class).maxSize();
+            if (maxSize <= 0 || maxSize > Utils.MAX_POWER_OF_TWO) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Tamanho invalido em @Memoize: " + maxSize + " " + method, method);
+                valid = false;
+            }
+
+            for (VariableElement parameter : method.getParameters()) {
+                if (parameter.asType().getKind() == TypeKind.ARRAY) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "Parametro array nao suportado por @Memoize: " + parameter.asType() + " " + parameter, method);
+                    valid = false;
+                }
+            }
+        }
+
+        return valid;
+    }
+
+    /**
+     * The generated subclass overrides the public methods and calls {@code super}, like the {@code Memoized_} one, which
+     * it extends when the class has {@code @Memoize} methods.
+     */
+    private boolean checkInstrumentedType(TypeElement type) {
+        boolean hasConstructor = false;
+        for (Element enclosedElement : type.getEnclosedElements()) {
+            hasConstructor |= enclosedElement.getKind() == ElementKind.CONSTRUCTOR && ! enclosedElement.getModifiers().contains(Modifier.PRIVATE);
+        }
+
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.FINAL) || ! type.getTypeParameters().isEmpty()
+                || (type.getNestingKind() == NestingKind.MEMBER && ! type.getModifiers().contains(Modifier.STATIC)) || ! hasConstructor) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Instrumented so pode ser usado em classes nao finais, nao genericas e com construtor nao privado: " + type, type);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Prewarming creates the instance on a thread of the executor, which would leave every other thread of a
+     * {@code THREAD} singleton without one.
+     */
+    private boolean checkSingletonType(Element type) {
+        boolean valid = true;
+
+        Singleton singleton = type.getAnnotation(Singleton.class);
+        if (singleton.prewarm() && singleton.scope() == Singleton.Scope.THREAD) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "prewarm nao pode ser usado com @Singleton(scope = THREAD): " + type, type);
+            valid = false;
+        }
+
+        if (singleton.stripes() > Utils.MAX_POWER_OF_TWO) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Numero de stripes invalido em @Singleton: " + singleton.stripes() + " " + type, type);
+            valid = false;
+        }
+
+        return valid;
+    }
+
+    /**
+     * The generated methods call the instance of the generated {@code *_} on other threads, so the singleton must not
+     * be one instance per thread.
+     */
+    private boolean checkAsyncType(TypeElement type) {
+        boolean valid = true;
+
+        Singleton singleton = type.getAnnotation(Singleton.class);
+        if (singleton == null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Async so pode ser usado em classes @Singleton: " + type, type);
+            valid = false;
+        } else if (singleton.scope() == Singleton.Scope.THREAD) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Async nao pode ser usado com @Singleton(scope = THREAD): " + type, type);
+            valid = false;
+        }
+
+        if (type.getAnnotation(Async.class).threads() < 0) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Numero de threads invalido em @Async: " + type.getAnnotation(Async.class).threads() + " " + type, type);
+            valid = false;
+        }
+
+        return valid;
+    }
+
+    /**
+     * {@code of(...)} compares the fields of the canonical instances and creates them with the constructor taking the
+     * fields in declaration order, so both have to be reachable from the generated class, and the fields must not
+     * change once the instance is shared.
+     */
+    private boolean checkFlyweightType(TypeElement type) {
+        boolean valid = true;
+
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT) || ! type.getTypeParameters().isEmpty()
+                || (type.getNestingKind() == NestingKind.MEMBER && ! type.getModifiers().contains(Modifier.STATIC))) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Flyweight so pode ser usado em classes concretas, nao genericas e nao internas: " + type, type);
+            valid = false;
+        }
+
+        if (type.getAnnotation(Singleton.class) != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Flyweight nao pode ser usado junto com @Singleton: " + type, type);
+            valid = false;
+        }
+
+        int initialCapacity = type.getAnnotation(Flyweight.class).initialCapacity();
+        if (initialCapacity <= 0 || initialCapacity > Utils.MAX_POWER_OF_TWO) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Capacidade invalida em @Flyweight: " + initialCapacity + " " + type, type);
+            valid = false;
+        }
+
+        List<TypeMirror> fieldTypes = new ArrayList<>();
+        for (Element enclosedElement : type.getEnclosedElements()) {
+            Set<Modifier> modifiers = enclosedElement.getModifiers();
+            if (enclosedElement.getKind() != ElementKind.FIELD || modifiers.contains(Modifier.STATIC)) {
+                continue;
+            }
+
+            fieldTypes.add(enclosedElement.asType());
+            if (! modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.PRIVATE)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Campo de @Flyweight precisa ser final e nao private: " + enclosedElement, enclosedElement);
+                valid = false;
+            }
+
+            if (enclosedElement.asType().getKind() == TypeKind.ARRAY) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Campo array nao suportado por @Flyweight: " + enclosedElement.asType() + " " + enclosedElement, enclosedElement);
+                valid = false;
+            }
+        }
+
+        boolean hasConstructor = false;
+        for (Element enclosedElement : type.getEnclosedElements()) {
+            if (enclosedElement.getKind() == ElementKind.CONSTRUCTOR && ! enclosedElement.getModifiers().contains(Modifier.PRIVATE)) {
+                hasConstructor |= isSameTypes(((ExecutableElement) enclosedElement).getParameters(), fieldTypes);
+            }
+        }
+
+        if (! hasConstructor) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Flyweight precisa de um construtor nao privado com os campos na ordem de declaracao: " + type, type);
+            valid = false;
+        }
+
+        return valid;
+    }
+
+    /**
+     * {@code acquire()} creates instances with the constructor without parameters, and the generated reset assigns the
+     * non-final fields from the generated class, so it only resets fields it can reach and copy by value.
+     */
+    private boolean checkPooledType(TypeElement type) {
+        boolean valid = true;
+
+        boolean hasConstructor = false;
+        for (Element enclosedElement : type.getEnclosedElements()) {
+            if (enclosedElement.getKind() == ElementKind.CONSTRUCTOR && ! enclosedElement.getModifiers().contains(Modifier.PRIVATE)) {
+                hasConstructor |= ((ExecutableElement) enclosedElement).getParameters().isEmpty();
+            }
+        }
+
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT) || ! type.getTypeParameters().isEmpty()
+                || (type.getNestingKind() == NestingKind.MEMBER && ! type.getModifiers().contains(Modifier.STATIC)) || ! hasConstructor) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Pooled so pode ser usado em classes concretas, nao genericas, nao internas e com construtor sem parametros nao privado: " + type, type);
+            valid = false;
+        }
+
+        if (type.getAnnotation(Singleton.class) != null || type.getAnnotation(Flyweight.class) != null) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "@Pooled nao pode ser usado junto com @Singleton nem @Flyweight: " + type, type);
+            valid = false;
+        }
+
+        int capacity = type.getAnnotation(Pooled.class).capacity();
+        if (capacity <= 0 || capacity > Utils.MAX_POWER_OF_TWO) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Capacidade invalida em @Pooled: " + capacity + " " + type, type);
+            valid = false;
+        }
+
+        ExecutableElement resetMethod = PooledModel.getResetMethod(type);
+        if (resetMethod != null) {
+            if (resetMethod.getModifiers().contains(Modifier.PRIVATE)) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "reset() de @Pooled nao pode ser private: " + type, resetMethod);
+                valid = false;
+            }
+
+            return valid;
+        }
+
+        for (Element enclosedElement : type.getEnclosedElements()) {
+            Set<Modifier> modifiers = enclosedElement.getModifiers();
+            if (enclosedElement.getKind() != ElementKind.FIELD || modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.FINAL)) {
+                continue;
+            }
+
+            if (modifiers.contains(Modifier.PRIVATE) || ! isValueType(enclosedElement.asType())) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "@Pooled precisa de um metodo reset() para o campo: " + enclosedElement, enclosedElement);
+                valid = false;
+            }
+        }
+
+        return valid;
+    }
+
+    private boolean isValueType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return true;
+        }
+
+        TypeName typeName = TypeName.get(type);
+        return typeName.isBoxedPrimitive() || typeName.equals(ClassName.get(String.class));
+    }
+
+    private boolean isSameTypes(List<? extends VariableElement> parameters, List<TypeMirror> types) {
+        if (parameters.size() != types.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < types.size(); i++) {
+            if (! processingEnv.getTypeUtils().isSameType(parameters.get(i).asType(), types.get(i))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void registerSingleton(SingletonModel model) {
+        if (! isRegistryEnabled()) {
+            return;
+        }
+
+        if (registryWritten) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Singleton gerado depois do registro " + RegistryGenerator.REGISTRY_CLASS_NAME + ", fora do registro", model.originatingElement);
+        } else if (! model.isPublic && ! model.packageName.equals(registryPackage)) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "Singleton nao publico fora do registro " + RegistryGenerator.REGISTRY_CLASS_NAME, model.originatingElement);
+        } else {
+            registeredSingletons.add(model);
+        }
+    }
+
+    /**
+     * The registry aggregates the singletons of every round, so it is written in the first round that finds no new
+     * singleton. The generated {@code *_} classes are only compiled in the following round, which keeps the registry
+     * out of the last round in the usual case.
+     */
+    private void processRegistry(RoundEnvironment roundEnvironment, boolean foundSingletons) {
+        if (! isRegistryEnabled() || registryWritten) {
+            return;
+        }
+
+        if (foundSingletons && ! roundEnvironment.processingOver()) {
+            return;
+        }
+
+        registryWritten = true;
+        ElementMetrics elementMetrics = metrics.beginElement(RegistryGenerator.REGISTRY_CLASS_NAME, registryPackage);
+
+        long start = System.nanoTime();
+        JavaFile javaFile = RegistryGenerator.generate(registryPackage, registeredSingletons);
+        metrics.recordGenerate(elementMetrics, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        RenderedFile file = new RenderedFile(javaFile);
+        metrics.recordRender(elementMetrics, System.nanoTime() - start);
+
+        writeFile(file, elementMetrics);
+    }
+
+    private void runGenerationTasks(List<GenerationTask> tasks) {
+        if (generationPool == null || tasks.size() < 2) {
+            for (GenerationTask task : tasks) {
+                task.run();
+            }
+
+            return;
+        }
+
+        List<ForkJoinTask<?>> submittedTasks = new ArrayList<>(tasks.size());
+        for (GenerationTask task : tasks) {
+            submittedTasks.add(generationPool.submit(task));
+        }
+
+        for (ForkJoinTask<?> submittedTask : submittedTasks) {
+            submittedTask.join();
+        }
+    }
+
+    private void writeFile(RenderedFile file, ElementMetrics elementMetrics) {
+        long start = System.nanoTime();
+
         try {
-            javaFile.writeTo(processingEnv.getFiler());
+            JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(file.qualifiedName, file.originatingElements);
+
+            try (Writer writer = sourceFile.openWriter()) {
+                writer.write(file.source);
+            }
         } catch (IOException e) {
             processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Erro ao gerar arquivo: " + e);
         }
+
+        metrics.recordWrite(elementMetrics, System.nanoTime() - start, file.source);
+    }
+
+    private void shutdownGenerationPool() {
+        if (generationPool != null) {
+            generationPool.shutdown();
+            generationPool = null;
+        }
+    }
+
+    private void writeMetricsReport() {
+        try {
+            metrics.writeReport();
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Erro ao gravar metricas: " + e);
+        }
     }
 
     @Override
@@ -60,12 +645,35 @@ public class PatternsProcessor extends AbstractProcessor {
         Set<String> types = new HashSet<>();
         Collections.addAll(types,
                 Singleton.class.getCanonicalName(),
-                Builder.class.getCanonicalName()
+                Builder.class.getCanonicalName(),
+                Interned.class.getCanonicalName(),
+                Memoize.class.getCanonicalName(),
+                Flyweight.class.getCanonicalName(),
+                Instrumented.class.getCanonicalName(),
+                Async.class.getCanonicalName(),
+                Pooled.class.getCanonicalName()
         );
 
         return Collections.unmodifiableSet(types);
     }
 
+    @Override
+    public Set<String> getSupportedOptions() {
+        Set<String> options = new HashSet<>();
+        Collections.addAll(options,
+                METRICS_OPTION,
+                PARALLEL_OPTION,
+                CACHE_OPTION,
+                REGISTRY_OPTION,
+                LEAK_DETECTION_OPTION
+        );
+
+        // Registered as "dynamic" for Gradle: the registry reads every singleton of the compilation.
+        options.add(processingEnv != null && isRegistryEnabled() ? GRADLE_AGGREGATING_OPTION : GRADLE_ISOLATING_OPTION);
+
+        return Collections.unmodifiableSet(options);
+    }
+
     @Override
     public SourceVersion getSupportedSourceVersion() {
         return SourceVersion.latestSupported();
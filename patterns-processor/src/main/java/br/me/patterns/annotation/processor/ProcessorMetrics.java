@@ -0,0 +1,191 @@
+package br.me.patterns.annotation.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects per-round and per-element timings of {@link PatternsProcessor} and writes them as a
+ * machine-readable report. The report is JSON when the target path ends with ".json" and CSV otherwise.
+ */
+public class ProcessorMetrics {
+
+    private final Path reportPath;
+    private final List<RoundMetrics> rounds = new ArrayList<>();
+    private final List<ElementMetrics> elements = new ArrayList<>();
+
+    private RoundMetrics currentRound;
+
+    private ProcessorMetrics(Path reportPath) {
+        this.reportPath = reportPath;
+    }
+
+    public static ProcessorMetrics forOption(String reportPath) {
+        if (reportPath == null || reportPath.trim().isEmpty()) {
+            return new ProcessorMetrics(null);
+        }
+
+        return new ProcessorMetrics(Paths.get(reportPath.trim()));
+    }
+
+    public boolean isEnabled() {
+        return reportPath != null;
+    }
+
+    public void beginRound() {
+        if (! isEnabled()) {
+            return;
+        }
+
+        currentRound = new RoundMetrics(rounds.size() + 1, System.nanoTime());
+        rounds.add(currentRound);
+    }
+
+    public void endRound() {
+        if (! isEnabled()) {
+            return;
+        }
+
+        currentRound.nanos = System.nanoTime() - currentRound.startNanos;
+    }
+
+    public ElementMetrics beginElement(String pattern, String element) {
+        if (! isEnabled()) {
+            return null;
+        }
+
+        ElementMetrics elementMetrics = new ElementMetrics(currentRound.round, pattern, element);
+        elements.add(elementMetrics);
+        currentRound.elements++;
+
+        return elementMetrics;
+    }
+
+    public void recordGenerate(ElementMetrics elementMetrics, long nanos) {
+        if (elementMetrics != null) {
+            elementMetrics.generateNanos += nanos;
+        }
+    }
+
+    public void recordRender(ElementMetrics elementMetrics, long nanos) {
+        if (elementMetrics != null) {
+            elementMetrics.renderNanos += nanos;
+        }
+    }
+
+    public void recordCached(ElementMetrics elementMetrics, boolean cached) {
+        if (elementMetrics != null) {
+            elementMetrics.cached = cached;
+        }
+    }
+
+    public void recordWrite(ElementMetrics elementMetrics, long nanos, String source) {
+        if (elementMetrics != null) {
+            elementMetrics.writeNanos += nanos;
+            elementMetrics.files++;
+            elementMetrics.bytes += source.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    public void writeReport() throws IOException {
+        if (! isEnabled()) {
+            return;
+        }
+
+        Path parent = reportPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        try (Writer writer = Files.newBufferedWriter(reportPath, StandardCharsets.UTF_8)) {
+            if (reportPath.toString().endsWith(".json")) {
+                writeJson(writer);
+            } else {
+                writeCsv(writer);
+            }
+        }
+    }
+
+    private void writeCsv(Writer writer) throws IOException {
+        writer.write("scope,round,pattern,element,total_ns,generate_ns,render_ns,write_ns,elements,files,bytes,cached\n");
+
+        for (RoundMetrics round : rounds) {
+            writer.write(String.format(Locale.ROOT, "round,%d,,,%d,,,,%d,,,\n", round.round, round.nanos, round.elements));
+        }
+
+        for (ElementMetrics element : elements) {
+            writer.write(String.format(Locale.ROOT, "element,%d,%s,%s,%d,%d,%d,%d,,%d,%d,%b\n",
+                    element.round, element.pattern, element.element, element.totalNanos(),
+                    element.generateNanos, element.renderNanos, element.writeNanos,
+                    element.files, element.bytes, element.cached));
+        }
+    }
+
+    private void writeJson(Writer writer) throws IOException {
+        long totalNanos = 0;
+        long totalFiles = 0;
+        long totalBytes = 0;
+
+        writer.write("{\n  \"rounds\": [");
+        for (int i = 0; i < rounds.size(); i++) {
+            RoundMetrics round = rounds.get(i);
+            totalNanos += round.nanos;
+            writer.write(String.format(Locale.ROOT, "%s\n    {\"round\": %d, \"totalNanos\": %d, \"elements\": %d}",
+                    i == 0 ? "" : ",", round.round, round.nanos, round.elements));
+        }
+
+        writer.write("\n  ],\n  \"elements\": [");
+        for (int i = 0; i < elements.size(); i++) {
+            ElementMetrics element = elements.get(i);
+            totalFiles += element.files;
+            totalBytes += element.bytes;
+            writer.write(String.format(Locale.ROOT, "%s\n    {\"round\": %d, \"pattern\": \"%s\", \"element\": \"%s\", "
+                            + "\"generateNanos\": %d, \"renderNanos\": %d, \"writeNanos\": %d, \"files\": %d, \"bytes\": %d, \"cached\": %b}",
+                    i == 0 ? "" : ",", element.round, element.pattern, element.element,
+                    element.generateNanos, element.renderNanos, element.writeNanos, element.files, element.bytes, element.cached));
+        }
+
+        writer.write(String.format(Locale.ROOT, "\n  ],\n  \"totals\": {\"totalNanos\": %d, \"elements\": %d, \"files\": %d, \"bytes\": %d}\n}\n",
+                totalNanos, elements.size(), totalFiles, totalBytes));
+    }
+
+    static class RoundMetrics {
+        final int round;
+        final long startNanos;
+        long nanos;
+        int elements;
+
+        RoundMetrics(int round, long startNanos) {
+            this.round = round;
+            this.startNanos = startNanos;
+        }
+    }
+
+    public static class ElementMetrics {
+        final int round;
+        final String pattern;
+        final String element;
+        long generateNanos;
+        long renderNanos;
+        long writeNanos;
+        int files;
+        long bytes;
+        boolean cached;
+
+        ElementMetrics(int round, String pattern, String element) {
+            this.round = round;
+            this.pattern = pattern;
+            this.element = element;
+        }
+
+        long totalNanos() {
+            return generateNanos + renderNanos + writeNanos;
+        }
+    }
+}
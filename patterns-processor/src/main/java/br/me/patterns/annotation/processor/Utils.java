@@ -1,11 +1,26 @@
 package br.me.patterns.annotation.processor;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
 import javax.lang.model.element.PackageElement;
 
+import br.me.patterns.annotation.processor.model.FieldModel;
+import br.me.patterns.annotation.processor.model.MethodModel;
+
 public class Utils {
 
+    /**
+     * Largest power of two an {@code int} holds, and so the largest table size or count a generator rounds up to.
+     */
+    public static final int MAX_POWER_OF_TWO = 1 << 30;
+
     public static PackageElement getPackage(Element element) {
         while (element.getKind() != ElementKind.PACKAGE) {
             element = element.getEnclosingElement();
@@ -14,4 +29,66 @@ public class Utils {
         return (PackageElement) element;
     }
 
+    /**
+     * @return whether the element and every type enclosing it are public, so it can be referenced from any package.
+     */
+    public static boolean isPublic(Element element) {
+        while (element.getKind() != ElementKind.PACKAGE) {
+            if (! element.getModifiers().contains(Modifier.PUBLIC)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the smallest power of two not below {@code value}, 1 for values below 2. {@code value} must not be above
+     * {@link #MAX_POWER_OF_TWO}, which the processor checks for every size it reads from an annotation.
+     */
+    public static int roundUpToPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    /**
+     * @return {@code name}, with a trailing {@code _} added while one of {@code fields} already uses it, for the locals
+     * of generated code that sits next to those fields or parameters.
+     */
+    public static String getUniqueName(String name, List<FieldModel> fields) {
+        for (FieldModel field : fields) {
+            if (field.name.equals(name)) {
+                return getUniqueName(name + "_", fields);
+            }
+        }
+
+        return name;
+    }
+
+    /**
+     * @return one name per method, for the members generated per method: the first method keeps its name, and the
+     * next ones with the same name get the lowest number from 2 up that neither another method nor an earlier name
+     * uses, once both go through {@code key}, e.g. a {@code f} overload becomes {@code f3} when there is a {@code f2}.
+     */
+    public static List<String> getOverloadNames(List<MethodModel> methods, Function<String, String> key) {
+        Set<String> reserved = new HashSet<>();
+        for (MethodModel method : methods) {
+            reserved.add(key.apply(method.name));
+        }
+
+        Set<String> used = new HashSet<>();
+        List<String> names = new ArrayList<>();
+        for (MethodModel method : methods) {
+            String name = method.name;
+            int overload = 1;
+            while (used.contains(key.apply(name)) || (overload > 1 && reserved.contains(key.apply(name)))) {
+                name = method.name + ++overload;
+            }
+            used.add(key.apply(name));
+            names.add(name);
+        }
+
+        return names;
+    }
+
 }
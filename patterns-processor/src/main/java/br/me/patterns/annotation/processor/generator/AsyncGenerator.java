@@ -0,0 +1,309 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.model.AsyncModel;
+import br.me.patterns.annotation.processor.model.FieldModel;
+import br.me.patterns.annotation.processor.model.MethodModel;
+
+/**
+ * Generates {@code <Type>Async_}, the companion of an {@code @Async} singleton that calls its methods on an
+ * {@code Executor} and returns {@code CompletableFuture}s.
+ *
+ * Every method hands a {@code Callable} to the same {@code submit}, which completes the future with the result or
+ * with anything thrown, checked exceptions included, and with the {@code RejectedExecutionException} of an executor
+ * that refuses the call. In batch mode, {@code submit} queues the call with its future in a {@code Call} instead,
+ * and only schedules a task to drain the queue when none is scheduled yet.
+ */
+public class AsyncGenerator {
+
+    static final String PATTERN_NAME = "Async";
+    static final String CREATED_CLASS_SUFFIX = "Async_";
+    static final String DEFAULT_EXECUTOR_CLASS_NAME = "DefaultExecutor";
+    static final String EXECUTOR_FIELD_NAME = "executor";
+    static final String SET_EXECUTOR_METHOD_NAME = "setExecutor";
+    static final String GET_EXECUTOR_METHOD_NAME = "getExecutor";
+    static final String SUBMIT_METHOD_NAME = "submit";
+    static final String DRAIN_METHOD_NAME = "drain";
+    static final String REJECT_METHOD_NAME = "reject";
+    static final String CALL_CLASS_NAME = "Call";
+    static final String KEEP_ALIVE_SECONDS = "60";
+
+    public static JavaFile generate(Element element) {
+        return generate(AsyncModel.from(element));
+    }
+
+    public static JavaFile generate(AsyncModel model) {
+        ClassName className = getTargetClassName(model.packageName, model.simpleName);
+        ClassName defaultExecutorClassName = className.nestedClass(DEFAULT_EXECUTOR_CLASS_NAME);
+        ClassName callClassName = className.nestedClass(CALL_CLASS_NAME);
+
+        TypeSpec.Builder asyncTypeSpec = TypeSpec.classBuilder(className);
+        if (model.isPublic) {
+            asyncTypeSpec.addModifiers(Modifier.PUBLIC);
+        }
+
+        asyncTypeSpec.addModifiers(Modifier.FINAL)
+                .addField(FieldSpec.builder(Executor.class, EXECUTOR_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.VOLATILE)
+                        .build());
+
+        if (model.batch) {
+            TypeName queueType = ParameterizedTypeName.get(ClassName.get(ConcurrentLinkedQueue.class),
+                    ParameterizedTypeName.get(callClassName, WildcardTypeName.subtypeOf(Object.class)));
+            asyncTypeSpec.addField(FieldSpec.builder(queueType, "QUEUE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                            .initializer("new $T()", queueType)
+                            .build())
+                    .addField(FieldSpec.builder(AtomicBoolean.class, "SCHEDULED", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                            .initializer("new $T()", AtomicBoolean.class)
+                            .build());
+        }
+
+        asyncTypeSpec.addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(SET_EXECUTOR_METHOD_NAME)
+                        .addJavadoc("Runs the later calls on {@code executor}, or on the default executor when null.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .addParameter(Executor.class, EXECUTOR_FIELD_NAME)
+                        .addStatement("$T.$L = $L", className, EXECUTOR_FIELD_NAME, EXECUTOR_FIELD_NAME)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(GET_EXECUTOR_METHOD_NAME)
+                        .addJavadoc("@return the executor given to {@code setExecutor}, or the default one, created on first use.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(Executor.class)
+                        .addStatement("$T executor = $T.$L", Executor.class, className, EXECUTOR_FIELD_NAME)
+                        .addStatement("return executor != null ? executor : $T.INSTANCE", defaultExecutorClassName)
+                        .build());
+
+        for (MethodModel method : model.methods) {
+            asyncTypeSpec.addMethod(getAsyncMethodSpec(model, method));
+        }
+
+        if (model.batch) {
+            asyncTypeSpec.addMethod(getBatchSubmitMethodSpec(className, callClassName))
+                    .addMethod(getDrainMethodSpec(callClassName))
+                    .addMethod(getRejectMethodSpec(callClassName))
+                    .addType(getCallTypeSpec(callClassName));
+        } else {
+            asyncTypeSpec.addMethod(getSubmitMethodSpec());
+        }
+
+        return JavaFile.builder(model.packageName, asyncTypeSpec
+                .addType(getDefaultExecutorTypeSpec(model, className, defaultExecutorClassName))
+                .addOriginatingElement(model.originatingElement)
+                .build())
+                .build();
+    }
+
+    public static ClassName getTargetClassName(String packageName, String simpleName) {
+        return ClassName.get(packageName, simpleName + CREATED_CLASS_SUFFIX);
+    }
+
+    /**
+     * The instance is taken on the executor, so a lazy singleton is also created off the calling thread.
+     */
+    private static MethodSpec getAsyncMethodSpec(AsyncModel model, MethodModel method) {
+        boolean isVoid = method.returnType.equals(TypeName.VOID);
+        TypeName resultType = isVoid ? ClassName.get(Void.class) : method.returnType.box();
+
+        MethodSpec.Builder asyncMethod = MethodSpec.methodBuilder(method.name)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), resultType));
+
+        for (FieldModel parameter : method.parameters) {
+            asyncMethod.addParameter(parameter.type, parameter.name);
+        }
+
+        CodeBlock call = CodeBlock.of("$T.getInstance().$L($L)", model.singletonClassName, method.name,
+                MemoizeGenerator.getArgumentsCode(method.parameters, ""));
+        if (! isVoid) {
+            return asyncMethod.addStatement("return $L(() -> $L)", SUBMIT_METHOD_NAME, call)
+                    .build();
+        }
+
+        return asyncMethod.addCode("return $L(() -> {\n$>", SUBMIT_METHOD_NAME)
+                .addStatement("$L", call)
+                .addStatement("return null")
+                .addCode("$<});\n")
+                .build();
+    }
+
+    private static MethodSpec getSubmitMethodSpec() {
+        TypeVariableName t = TypeVariableName.get("T");
+        TypeName futureType = ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), t);
+
+        return MethodSpec.methodBuilder(SUBMIT_METHOD_NAME)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addTypeVariable(t)
+                .returns(futureType)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Callable.class), t), "call")
+                .addStatement("$T future = new $T()", futureType, futureType)
+                .addCode("$T task = () -> {\n$>", Runnable.class)
+                .beginControlFlow("try")
+                .addStatement("future.complete(call.call())")
+                .nextControlFlow("catch ($T e)", Throwable.class)
+                .addStatement("future.completeExceptionally(e)")
+                .endControlFlow()
+                .addCode("$<};\n")
+                .beginControlFlow("try")
+                .addStatement("$L().execute(task)", GET_EXECUTOR_METHOD_NAME)
+                .nextControlFlow("catch ($T e)", RejectedExecutionException.class)
+                .addStatement("future.completeExceptionally(e)")
+                .endControlFlow()
+                .addStatement("return future")
+                .build();
+    }
+
+    /**
+     * A rejected drain fails every queued call, since the calls queued by other threads meanwhile found a drain
+     * scheduled and did not schedule one.
+     */
+    private static MethodSpec getBatchSubmitMethodSpec(ClassName className, ClassName callClassName) {
+        TypeVariableName t = TypeVariableName.get("T");
+        TypeName callType = ParameterizedTypeName.get(callClassName, t);
+
+        return MethodSpec.methodBuilder(SUBMIT_METHOD_NAME)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addTypeVariable(t)
+                .returns(ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), t))
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Callable.class), t), "call")
+                .addStatement("$T queued = new $T(call)", callType, callType)
+                .addStatement("QUEUE.offer(queued)")
+                .beginControlFlow("if (SCHEDULED.compareAndSet(false, true))")
+                .beginControlFlow("try")
+                .addStatement("$L().execute($T::$L)", GET_EXECUTOR_METHOD_NAME, className, DRAIN_METHOD_NAME)
+                .nextControlFlow("catch ($T e)", RejectedExecutionException.class)
+                .addStatement("$L(e)", REJECT_METHOD_NAME)
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return queued.future")
+                .build();
+    }
+
+    /**
+     * The flag is cleared before looking at the queue again, so a call queued meanwhile is either taken by this drain
+     * or schedules the next one.
+     */
+    private static MethodSpec getDrainMethodSpec(ClassName callClassName) {
+        return MethodSpec.methodBuilder(DRAIN_METHOD_NAME)
+                .addJavadoc("Runs the queued calls, in order, until none is left.\n")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .beginControlFlow("do")
+                .beginControlFlow("for ($T queued; (queued = QUEUE.poll()) != null; )",
+                        ParameterizedTypeName.get(callClassName, WildcardTypeName.subtypeOf(Object.class)))
+                .addStatement("queued.run()")
+                .endControlFlow()
+                .addStatement("SCHEDULED.set(false)")
+                .endControlFlow("while (! QUEUE.isEmpty() && SCHEDULED.compareAndSet(false, true))")
+                .build();
+    }
+
+    /**
+     * Clears the flag the same way as {@code drain}, so that no call is left in the queue without a drain scheduled.
+     */
+    private static MethodSpec getRejectMethodSpec(ClassName callClassName) {
+        return MethodSpec.methodBuilder(REJECT_METHOD_NAME)
+                .addJavadoc("Fails the queued calls with the rejection of the task that was to run them.\n")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(RejectedExecutionException.class, "rejection")
+                .beginControlFlow("do")
+                .beginControlFlow("for ($T queued; (queued = QUEUE.poll()) != null; )",
+                        ParameterizedTypeName.get(callClassName, WildcardTypeName.subtypeOf(Object.class)))
+                .addStatement("queued.future.completeExceptionally(rejection)")
+                .endControlFlow()
+                .addStatement("SCHEDULED.set(false)")
+                .endControlFlow("while (! QUEUE.isEmpty() && SCHEDULED.compareAndSet(false, true))")
+                .build();
+    }
+
+    private static TypeSpec getCallTypeSpec(ClassName callClassName) {
+        TypeVariableName t = TypeVariableName.get("T");
+        TypeName futureType = ParameterizedTypeName.get(ClassName.get(CompletableFuture.class), t);
+        TypeName callableType = ParameterizedTypeName.get(ClassName.get(Callable.class), t);
+
+        return TypeSpec.classBuilder(callClassName)
+                .addJavadoc("A queued call and the future of its result.\n")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addTypeVariable(t)
+                .addField(callableType, "call", Modifier.FINAL)
+                .addField(FieldSpec.builder(futureType, "future", Modifier.FINAL)
+                        .initializer("new $T()", futureType)
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(callableType, "call")
+                        .addStatement("this.call = call")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("run")
+                        .beginControlFlow("try")
+                        .addStatement("future.complete(call.call())")
+                        .nextControlFlow("catch ($T e)", Throwable.class)
+                        .addStatement("future.completeExceptionally(e)")
+                        .endControlFlow()
+                        .build())
+                .build();
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()} is looked up by reflection, so the generated class compiles
+     * and runs on Java 8 and Android, which get the pool.
+     */
+    private static TypeSpec getDefaultExecutorTypeSpec(AsyncModel model, ClassName className, ClassName defaultExecutorClassName) {
+        CodeBlock threads = model.threads > 0
+                ? CodeBlock.of("$L", model.threads)
+                : CodeBlock.of("2 * $T.getRuntime().availableProcessors()", Runtime.class);
+
+        return TypeSpec.classBuilder(defaultExecutorClassName)
+                .addJavadoc("A virtual thread per call on Java 21 and later, otherwise a pool of daemon threads that stop after\n"
+                        + "$L idle seconds. Created on the first call without an executor.\n", KEEP_ALIVE_SECONDS)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(Executor.class, "INSTANCE", Modifier.STATIC, Modifier.FINAL)
+                        .initializer("create()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("create")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .returns(Executor.class)
+                        .beginControlFlow("try")
+                        .addStatement("return ($T) $T.class.getMethod($S).invoke(null)", Executor.class, Executors.class,
+                                "newVirtualThreadPerTaskExecutor")
+                        .nextControlFlow("catch ($T e)", ReflectiveOperationException.class)
+                        .addStatement("int threads = $L", threads)
+                        .addStatement("$T created = new $T()", AtomicInteger.class, AtomicInteger.class)
+                        .addCode("$T pool = new $T(threads, threads, $L, $T.SECONDS, new $T<$T>(), runnable -> {\n$>",
+                                ThreadPoolExecutor.class, ThreadPoolExecutor.class, KEEP_ALIVE_SECONDS, TimeUnit.class,
+                                LinkedBlockingQueue.class, Runnable.class)
+                        .addStatement("$T thread = new $T(runnable, $S + created.incrementAndGet())", Thread.class, Thread.class,
+                                className.simpleName() + "-")
+                        .addStatement("thread.setDaemon(true)")
+                        .addStatement("return thread")
+                        .addCode("$<});\n")
+                        .addStatement("pool.allowCoreThreadTimeOut(true)")
+                        .addStatement("return pool")
+                        .endControlFlow()
+                        .build())
+                .build();
+    }
+}
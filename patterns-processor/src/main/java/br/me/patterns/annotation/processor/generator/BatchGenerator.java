@@ -0,0 +1,280 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.Arrays;
+
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.model.BuilderModel;
+import br.me.patterns.annotation.processor.model.FieldModel;
+
+/**
+ * Generates the {@code <Built>Batch} companion of a {@code @Builder(batch = true)} class: the same records stored
+ * column by column, one array per field and one bitset per boolean field, so that a scan over one field reads
+ * contiguous memory and no object is kept per row.
+ */
+public class BatchGenerator {
+
+    static final String CREATED_CLASS_SUFFIX = "Batch";
+    static final String CURSOR_CLASS_NAME = "Cursor";
+    static final String VISITOR_INTERFACE_NAME = "Visitor";
+    static final String DEFAULT_CAPACITY_FIELD_NAME = "DEFAULT_CAPACITY";
+    static final String ADD_METHOD_NAME = "add";
+    static final String GET_METHOD_NAME = "get";
+    static final String FOR_EACH_METHOD_NAME = "forEach";
+    static final String TO_ARRAY_METHOD_NAME = "toArray";
+    static final String FROM_ARRAY_METHOD_NAME = "fromArray";
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    static JavaFile generate(BuilderModel model, ClassName builtClassName, ClassName builderClassName) {
+        ClassName batchClassName = ClassName.get(model.packageName, builtClassName.simpleName() + CREATED_CLASS_SUFFIX);
+        ClassName cursorClassName = batchClassName.nestedClass(CURSOR_CLASS_NAME);
+        ClassName visitorClassName = batchClassName.nestedClass(VISITOR_INTERFACE_NAME);
+        Names names = new Names(model);
+
+        TypeSpec.Builder batchTypeSpec = TypeSpec.classBuilder(batchClassName)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(int.class, names.defaultCapacity, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", DEFAULT_CAPACITY)
+                        .build())
+                .addField(int.class, names.size, Modifier.PRIVATE)
+                .addField(int.class, names.capacity, Modifier.PRIVATE);
+
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder()
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "capacity")
+                .beginControlFlow("if (capacity < 0)")
+                .addStatement("throw new $T($S + capacity)", IllegalArgumentException.class, "capacity: ")
+                .endControlFlow()
+                .addStatement("this.$L = capacity", names.capacity);
+        MethodSpec.Builder grow = MethodSpec.methodBuilder("ensureCapacity")
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(int.class, "minCapacity")
+                .beginControlFlow("if (minCapacity <= $L)", names.capacity)
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("$L = $T.max(minCapacity, $L + ($L >> 1) + 1)", names.capacity, Math.class, names.capacity, names.capacity);
+        MethodSpec.Builder addBuilder = getAddMethodBuilder(names).addParameter(builderClassName, "builder");
+        MethodSpec.Builder addBuilt = getAddMethodBuilder(names).addParameter(builtClassName, "value");
+        CodeBlock.Builder clearReferences = CodeBlock.builder();
+        TypeSpec.Builder cursorTypeSpec = TypeSpec.classBuilder(cursorClassName)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addJavadoc("Flyweight over one row of the batch, moved by {@link $T#$L}.\n", batchClassName, FOR_EACH_METHOD_NAME)
+                .addField(int.class, names.index, Modifier.PRIVATE)
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+                .addMethod(MethodSpec.methodBuilder("index")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("return $L", names.index)
+                        .build());
+
+        for (FieldModel field : model.fields) {
+            boolean bitset = field.type.equals(TypeName.BOOLEAN);
+            TypeName columnType = bitset ? ArrayTypeName.of(long.class) : ArrayTypeName.of(field.type);
+
+            batchTypeSpec.addField(columnType, field.name, Modifier.PRIVATE);
+            if (bitset) {
+                constructor.addStatement("this.$L = new long[(capacity + 63) >>> 6]", field.name);
+                grow.addStatement("this.$L = $T.copyOf(this.$L, ($L + 63) >>> 6)", field.name, Arrays.class, field.name, names.capacity);
+            } else {
+                constructor.addStatement("this.$L = new $T[capacity]", field.name, getRawComponentType(field.type));
+                grow.addStatement("this.$L = $T.copyOf(this.$L, $L)", field.name, Arrays.class, field.name, names.capacity);
+            }
+            if (! field.isPrimitive()) {
+                clearReferences.addStatement("$T.fill(this.$L, 0, $L, null)", Arrays.class, field.name, names.size);
+            }
+
+            addBuilder.addCode(getColumnWriteCode(field, names.size, CodeBlock.of("builder.$L", field.name)));
+            addBuilt.addCode(getColumnWriteCode(field, names.size, BuilderGenerator.getFieldAccessCode(model, "value", field)));
+
+            String accessorName = BuilderGenerator.getAccessorName(field);
+            batchTypeSpec.addMethod(MethodSpec.methodBuilder(accessorName)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(field.type)
+                    .addParameter(int.class, names.index)
+                    .addStatement("checkIndex($L)", names.index)
+                    .addStatement("return $L", getColumnReadCode(field, names.index))
+                    .build());
+            batchTypeSpec.addMethod(MethodSpec.methodBuilder(BuilderGenerator.getSetterName(field))
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(int.class, names.index)
+                    .addParameter(field.type, field.name)
+                    .addStatement("checkIndex($L)", names.index)
+                    .addCode(getColumnWriteCode(field, names.index, CodeBlock.of("$L", field.name)))
+                    .build());
+            cursorTypeSpec.addMethod(MethodSpec.methodBuilder(accessorName)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(field.type)
+                    .addStatement("return $L", getColumnReadCode(field, names.index, ""))
+                    .build());
+        }
+
+        return JavaFile.builder(model.packageName, batchTypeSpec
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PUBLIC)
+                        .addStatement("this($L)", names.defaultCapacity)
+                        .build())
+                .addMethod(constructor.build())
+                .addMethod(MethodSpec.methodBuilder("size")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("return $L", names.size)
+                        .build())
+                .addMethod(grow.build())
+                .addMethod(addBuilder.addStatement("$L++", names.size).build())
+                .addMethod(addBuilt.addStatement("$L++", names.size).build())
+                .addMethod(getGetMethodSpec(model, names, builtClassName, builderClassName))
+                .addMethod(MethodSpec.methodBuilder(FOR_EACH_METHOD_NAME)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(visitorClassName, "visitor")
+                        .addStatement("$T cursor = new $T()", cursorClassName, cursorClassName)
+                        .beginControlFlow("for (int index = 0; index < $L; index++)", names.size)
+                        .addStatement("cursor.$L = index", names.index)
+                        .addStatement("visitor.visit(cursor)")
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(TO_ARRAY_METHOD_NAME)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(ArrayTypeName.of(builtClassName))
+                        .addStatement("$T[] values = new $T[$L]", builtClassName, builtClassName, names.size)
+                        .beginControlFlow("for (int index = 0; index < $L; index++)", names.size)
+                        .addStatement("values[index] = $L(index)", GET_METHOD_NAME)
+                        .endControlFlow()
+                        .addStatement("return values")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(FROM_ARRAY_METHOD_NAME)
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(batchClassName)
+                        .addParameter(ArrayTypeName.of(builtClassName), "values")
+                        .addStatement("$T batch = new $T(values.length)", batchClassName, batchClassName)
+                        .beginControlFlow("for ($T value : values)", builtClassName)
+                        .addStatement("batch.$L(value)", ADD_METHOD_NAME)
+                        .endControlFlow()
+                        .addStatement("return batch")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("clear")
+                        .addModifiers(Modifier.PUBLIC)
+                        .addCode(clearReferences.build())
+                        .addStatement("$L = 0", names.size)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("checkIndex")
+                        .addModifiers(Modifier.PRIVATE)
+                        .addParameter(int.class, "index")
+                        .beginControlFlow("if (index < 0 || index >= $L)", names.size)
+                        .addStatement("throw new $T($S + index + $S + $L)", IndexOutOfBoundsException.class, "index: ", ", size: ", names.size)
+                        .endControlFlow()
+                        .build())
+                .addType(cursorTypeSpec.build())
+                .addType(TypeSpec.interfaceBuilder(visitorClassName)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addMethod(MethodSpec.methodBuilder("visit")
+                                .addModifiers(Modifier.PUBLIC, Modifier.ABSTRACT)
+                                .addParameter(cursorClassName, "cursor")
+                                .build())
+                        .build())
+                .addOriginatingElement(model.originatingElement)
+                .build())
+                .build();
+    }
+
+    private static MethodSpec.Builder getAddMethodBuilder(Names names) {
+        return MethodSpec.methodBuilder(ADD_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC)
+                .addStatement("ensureCapacity($L + 1)", names.size);
+    }
+
+    /**
+     * Rows of mutable classes are copied straight into a new object; immutable ones go through their builder, which
+     * knows how to call the constructor.
+     */
+    private static MethodSpec getGetMethodSpec(BuilderModel model, Names names, ClassName builtClassName, ClassName builderClassName) {
+        MethodSpec.Builder get = MethodSpec.methodBuilder(GET_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(builtClassName)
+                .addParameter(int.class, names.index)
+                .addStatement("checkIndex($L)", names.index);
+
+        if (model.immutable) {
+            get.addStatement("$T builder = new $T()", builderClassName, builderClassName);
+            for (FieldModel field : model.fields) {
+                get.addStatement("builder.$L($L)", BuilderGenerator.getSetterName(field), getColumnReadCode(field, names.index));
+            }
+            return get.addStatement("return builder.build()").build();
+        }
+
+        get.addStatement("$T value = new $T()", builtClassName, builtClassName);
+        for (FieldModel field : model.fields) {
+            get.addStatement("$L", BuilderGenerator.getFieldAssignmentCode(model, "value", field, getColumnReadCode(field, names.index)));
+        }
+        return get.addStatement("return value").build();
+    }
+
+    /**
+     * Columns are read through {@code this}, since parameters named after the fields would shadow them; the cursor
+     * reads them from the enclosing batch.
+     */
+    private static CodeBlock getColumnReadCode(FieldModel field, String index) {
+        return getColumnReadCode(field, index, "this.");
+    }
+
+    private static CodeBlock getColumnReadCode(FieldModel field, String index, String qualifier) {
+        if (field.type.equals(TypeName.BOOLEAN)) {
+            return CodeBlock.of("($L$L[$L >>> 6] & (1L << $L)) != 0", qualifier, field.name, index, index);
+        }
+
+        return CodeBlock.of("$L$L[$L]", qualifier, field.name, index);
+    }
+
+    /**
+     * Bits are cleared as well as set, since the bit of a new row may still hold a row removed by {@code clear()}.
+     */
+    private static CodeBlock getColumnWriteCode(FieldModel field, String index, CodeBlock value) {
+        if (field.type.equals(TypeName.BOOLEAN)) {
+            return CodeBlock.builder()
+                    .beginControlFlow("if ($L)", value)
+                    .addStatement("this.$L[$L >>> 6] |= 1L << $L", field.name, index, index)
+                    .nextControlFlow("else")
+                    .addStatement("this.$L[$L >>> 6] &= ~(1L << $L)", field.name, index, index)
+                    .endControlFlow()
+                    .build();
+        }
+
+        return CodeBlock.builder().addStatement("this.$L[$L] = $L", field.name, index, value).build();
+    }
+
+    /**
+     * Arrays of a generic type are created from their erasure.
+     */
+    private static TypeName getRawComponentType(TypeName type) {
+        return type instanceof ParameterizedTypeName ? ((ParameterizedTypeName) type).rawType : type;
+    }
+
+    /**
+     * The columns are named after the fields, so the bookkeeping fields of the batch and the cursor, and the index
+     * parameters declared next to a parameter named after a field, take names none of the fields use.
+     */
+    private static class Names {
+        final String defaultCapacity;
+        final String size;
+        final String capacity;
+        final String index;
+
+        Names(BuilderModel model) {
+            defaultCapacity = Utils.getUniqueName(DEFAULT_CAPACITY_FIELD_NAME, model.fields);
+            size = Utils.getUniqueName("size", model.fields);
+            capacity = Utils.getUniqueName("capacity", model.fields);
+            index = Utils.getUniqueName("index", model.fields);
+        }
+    }
+}
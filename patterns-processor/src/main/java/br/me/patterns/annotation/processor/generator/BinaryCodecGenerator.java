@@ -0,0 +1,507 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.model.BuilderModel;
+import br.me.patterns.annotation.processor.model.FieldModel;
+
+/**
+ * Adds a reflection-free binary codec to a built class: {@code writeTo}/{@code readFrom} over {@link DataOutput}/
+ * {@link DataInput} and over {@link ByteBuffer}, plus {@link Externalizable} on request.
+ *
+ * The encoding is a bitmap followed by the non-null values in field declaration order. The bitmap holds one bit
+ * per reference field (set when null) and one bit per boolean value, least significant bit first. Integral values are
+ * zigzag varints (chars are plain varints and bytes are raw), floats and doubles are their big-endian bits, and
+ * strings are a varint byte length followed by UTF-8. There is no header: a payload can only be read by a class
+ * with the same fields.
+ */
+public class BinaryCodecGenerator {
+
+    static final String WRITE_TO_METHOD_NAME = "writeTo";
+    static final String READ_FROM_METHOD_NAME = "readFrom";
+    static final String FLAGS_VARIABLE_PREFIX = "flags";
+
+    private static final int FLAGS_PER_WORD = 64;
+    private static final int STRING_CHUNK_BYTES = 8192;
+
+    private static final TypeName STRING = ClassName.get(String.class);
+
+    /**
+     * @return whether a field of the given type can be encoded: primitives, their boxes and {@code String}.
+     */
+    public static boolean isSupported(TypeName type) {
+        return type.isPrimitive() || type.isBoxedPrimitive() || type.equals(STRING);
+    }
+
+    static void addCodecMethods(TypeSpec.Builder builtTypeSpec, BuilderModel model, ClassName builtClassName, ClassName builderClassName) {
+        List<FieldModel> fields = new ArrayList<>();
+        for (FieldModel field : model.fields) {
+            if (isSupported(field.type)) {
+                fields.add(field);
+            }
+        }
+
+        Flags flags = new Flags(fields);
+        boolean externalizable = model.externalizable && ! model.immutable;
+
+        for (Target target : Target.values()) {
+            builtTypeSpec.addMethod(getWriteToMethodSpec(target, model, fields, flags));
+            builtTypeSpec.addMethod(getReadFromMethodSpec(target, fields, flags, model, builtClassName, builderClassName));
+        }
+
+        if (externalizable) {
+            builtTypeSpec.addSuperinterface(Externalizable.class)
+                    .addMethod(MethodSpec.methodBuilder("writeExternal")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(ObjectOutput.class, "out")
+                            .addException(IOException.class)
+                            .addStatement("$L(out)", WRITE_TO_METHOD_NAME)
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("readExternal")
+                            .addAnnotation(Override.class)
+                            .addModifiers(Modifier.PUBLIC)
+                            .addParameter(ObjectInput.class, "in")
+                            .addException(IOException.class)
+                            .addCode(getReadFlagsCode(Target.DATA, flags))
+                            .addCode(getReadFieldsCode(Target.DATA, fields, flags,
+                                    (field, value) -> BuilderGenerator.getFieldAssignmentCode(model, "this", field,
+                                            InternerGenerator.getInternedValueCode(builderClassName, field, value))))
+                            .build());
+        }
+
+        for (Target target : Target.values()) {
+            addHelperMethods(builtTypeSpec, target, fields);
+        }
+    }
+
+    private static MethodSpec getWriteToMethodSpec(Target target, BuilderModel model, List<FieldModel> fields, Flags flags) {
+        MethodSpec.Builder writeTo = MethodSpec.methodBuilder(WRITE_TO_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC)
+                .addParameter(target.outputType, target.outputName);
+        if (target == Target.DATA) {
+            writeTo.addException(IOException.class);
+        }
+
+        for (int word = 0; word < flags.getWordCount(); word++) {
+            writeTo.addStatement("long $L = 0L", getFlagsName(word));
+        }
+        for (FieldModel field : fields) {
+            if (! field.isPrimitive()) {
+                writeTo.addStatement("if (this.$L == null) $L", field.name, flags.getSetCode(flags.getNullFlag(field)));
+            }
+            if (field.type.equals(TypeName.BOOLEAN)) {
+                writeTo.addStatement("if ($L) $L", BuilderGenerator.getFieldValueCode(model, "this", field), flags.getSetCode(flags.getValueFlag(field)));
+            } else if (field.type.equals(TypeName.BOOLEAN.box())) {
+                writeTo.addStatement("if (this.$L != null && this.$L) $L", field.name, field.name, flags.getSetCode(flags.getValueFlag(field)));
+            }
+        }
+        for (int word = 0; word < flags.getWordCount(); word++) {
+            for (int b = 0; b < flags.getByteCount(word); b++) {
+                writeTo.addStatement(target.writeByteFormat, target.outputName,
+                        b == 0 ? CodeBlock.of("(int) $L", getFlagsName(word)) : CodeBlock.of("(int) ($L >>> $L)", getFlagsName(word), 8 * b));
+            }
+        }
+
+        for (FieldModel field : fields) {
+            TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+            if (type.equals(TypeName.BOOLEAN)) {
+                continue;
+            }
+
+            CodeBlock write = getWriteValueCode(target, type, CodeBlock.of("this.$L", field.name));
+            if (field.isPrimitive()) {
+                writeTo.addStatement("$L", write);
+            } else {
+                writeTo.addStatement("if (this.$L != null) $L", field.name, write);
+            }
+        }
+
+        return writeTo.build();
+    }
+
+    private static CodeBlock getWriteValueCode(Target target, TypeName type, CodeBlock value) {
+        String out = target.outputName;
+        if (type.equals(TypeName.INT) || type.equals(TypeName.SHORT)) {
+            return CodeBlock.of("writeVarInt($L, ($L << 1) ^ ($L >> 31))", out, value, value);
+        } else if (type.equals(TypeName.CHAR)) {
+            return CodeBlock.of("writeVarInt($L, $L)", out, value);
+        } else if (type.equals(TypeName.LONG)) {
+            return CodeBlock.of("writeVarLong($L, ($L << 1) ^ ($L >> 63))", out, value, value);
+        } else if (type.equals(TypeName.BYTE)) {
+            return CodeBlock.of(target.writeByteFormat, out, value);
+        } else if (type.equals(TypeName.FLOAT)) {
+            return CodeBlock.of(target.writeFloatFormat, out, value);
+        } else if (type.equals(TypeName.DOUBLE)) {
+            return CodeBlock.of(target.writeDoubleFormat, out, value);
+        }
+
+        return CodeBlock.of("writeString($L, $L)", out, value);
+    }
+
+    /**
+     * Mutable classes are filled field by field; immutable classes go through their builder, which knows how to call
+     * the constructor.
+     */
+    private static MethodSpec getReadFromMethodSpec(Target target, List<FieldModel> fields, Flags flags, BuilderModel model,
+                                                    ClassName builtClassName, ClassName builderClassName) {
+        MethodSpec.Builder readFrom = MethodSpec.methodBuilder(READ_FROM_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(builtClassName)
+                .addParameter(target.inputType, target.inputName);
+        if (target == Target.DATA) {
+            readFrom.addException(IOException.class);
+        }
+
+        readFrom.addCode(getReadFlagsCode(target, flags));
+        if (model.immutable) {
+            readFrom.addStatement("$T builder = new $T()", builderClassName, builderClassName)
+                    .addCode(getReadFieldsCode(target, fields, flags,
+                            (field, value) -> CodeBlock.of("builder.$L($L)", BuilderGenerator.getSetterName(field), value)))
+                    .addStatement("return builder.build()");
+        } else {
+            String variableName = builtClassName.simpleName().toLowerCase();
+            readFrom.addStatement("$T $L = new $T()", builtClassName, variableName, builtClassName)
+                    .addCode(getReadFieldsCode(target, fields, flags,
+                            (field, value) -> BuilderGenerator.getFieldAssignmentCode(model, variableName, field,
+                                    InternerGenerator.getInternedValueCode(builderClassName, field, value))))
+                    .addStatement("return $L", variableName);
+        }
+
+        return readFrom.build();
+    }
+
+    private static CodeBlock getReadFlagsCode(Target target, Flags flags) {
+        CodeBlock.Builder code = CodeBlock.builder();
+        for (int word = 0; word < flags.getWordCount(); word++) {
+            for (int b = 0; b < flags.getByteCount(word); b++) {
+                CodeBlock readByte = CodeBlock.of(target.readUnsignedByteFormat, target.inputName);
+                if (b == 0) {
+                    code.addStatement("long $L = $L", getFlagsName(word), readByte);
+                } else {
+                    code.addStatement("$L |= (long) $L << $L", getFlagsName(word), readByte, 8 * b);
+                }
+            }
+        }
+
+        return code.build();
+    }
+
+    private static CodeBlock getReadFieldsCode(Target target, List<FieldModel> fields, Flags flags, Assignment assignment) {
+        CodeBlock.Builder code = CodeBlock.builder();
+
+        for (FieldModel field : fields) {
+            TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+            CodeBlock value = type.equals(TypeName.BOOLEAN)
+                    ? CodeBlock.of("$L", flags.getIsSetCode(flags.getValueFlag(field)))
+                    : getReadValueCode(target, type);
+            if (! field.isPrimitive()) {
+                value = CodeBlock.of("$L ? null : $L", flags.getIsSetCode(flags.getNullFlag(field)),
+                        field.type.isBoxedPrimitive() ? CodeBlock.of("$T.valueOf($L)", field.type, value) : value);
+            }
+
+            code.addStatement("$L", assignment.assign(field, value));
+        }
+
+        return code.build();
+    }
+
+    private static CodeBlock getReadValueCode(Target target, TypeName type) {
+        String in = target.inputName;
+        if (type.equals(TypeName.INT)) {
+            return CodeBlock.of("decodeZigZag(readVarInt($L))", in);
+        } else if (type.equals(TypeName.SHORT)) {
+            return CodeBlock.of("(short) decodeZigZag(readVarInt($L))", in);
+        } else if (type.equals(TypeName.CHAR)) {
+            return CodeBlock.of("(char) readVarInt($L)", in);
+        } else if (type.equals(TypeName.LONG)) {
+            return CodeBlock.of("decodeZigZag(readVarLong($L))", in);
+        } else if (type.equals(TypeName.BYTE)) {
+            return CodeBlock.of(target.readByteFormat, in);
+        } else if (type.equals(TypeName.FLOAT)) {
+            return CodeBlock.of(target.readFloatFormat, in);
+        } else if (type.equals(TypeName.DOUBLE)) {
+            return CodeBlock.of(target.readDoubleFormat, in);
+        }
+
+        return CodeBlock.of("readString($L)", in);
+    }
+
+    /**
+     * Only the helpers the fields need are generated, so a class without strings or longs carries none of them.
+     */
+    private static void addHelperMethods(TypeSpec.Builder builtTypeSpec, Target target, List<FieldModel> fields) {
+        boolean varInt = false;
+        boolean zigZagInt = false;
+        boolean varLong = false;
+        boolean string = false;
+        for (FieldModel field : fields) {
+            TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+            zigZagInt |= type.equals(TypeName.INT) || type.equals(TypeName.SHORT);
+            varInt |= zigZagInt || type.equals(TypeName.CHAR);
+            varLong |= type.equals(TypeName.LONG);
+            string |= type.equals(STRING);
+        }
+        varInt |= string;
+
+        if (varInt) {
+            builtTypeSpec.addMethod(MethodSpec.methodBuilder("writeVarInt")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addParameter(target.outputType, target.outputName)
+                    .addParameter(int.class, "value")
+                    .addExceptions(target.exceptions())
+                    .beginControlFlow("while ((value & ~0x7F) != 0)")
+                    .addStatement(target.writeByteFormat, target.outputName, "(value & 0x7F) | 0x80")
+                    .addStatement("value >>>= 7")
+                    .endControlFlow()
+                    .addStatement(target.writeByteFormat, target.outputName, "value")
+                    .build());
+            builtTypeSpec.addMethod(MethodSpec.methodBuilder("readVarInt")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .returns(int.class)
+                    .addParameter(target.inputType, target.inputName)
+                    .addExceptions(target.exceptions())
+                    .addStatement("int value = 0")
+                    .beginControlFlow("for (int shift = 0; shift < 32; shift += 7)")
+                    .addStatement("int b = $L", CodeBlock.of(target.readUnsignedByteFormat, target.inputName))
+                    .addStatement("value |= (b & 0x7F) << shift")
+                    .beginControlFlow("if ((b & 0x80) == 0)")
+                    .addStatement("return value")
+                    .endControlFlow()
+                    .endControlFlow()
+                    .addStatement("throw new $T($S)", target.malformedException, "Malformed varint")
+                    .build());
+        }
+
+        if (varLong) {
+            builtTypeSpec.addMethod(MethodSpec.methodBuilder("writeVarLong")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addParameter(target.outputType, target.outputName)
+                    .addParameter(long.class, "value")
+                    .addExceptions(target.exceptions())
+                    .beginControlFlow("while ((value & ~0x7FL) != 0)")
+                    .addStatement(target.writeByteFormat, target.outputName, "(int) ((value & 0x7F) | 0x80)")
+                    .addStatement("value >>>= 7")
+                    .endControlFlow()
+                    .addStatement(target.writeByteFormat, target.outputName, "(int) value")
+                    .build());
+            builtTypeSpec.addMethod(MethodSpec.methodBuilder("readVarLong")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .returns(long.class)
+                    .addParameter(target.inputType, target.inputName)
+                    .addExceptions(target.exceptions())
+                    .addStatement("long value = 0L")
+                    .beginControlFlow("for (int shift = 0; shift < 64; shift += 7)")
+                    .addStatement("int b = $L", CodeBlock.of(target.readUnsignedByteFormat, target.inputName))
+                    .addStatement("value |= (long) (b & 0x7F) << shift")
+                    .beginControlFlow("if ((b & 0x80) == 0)")
+                    .addStatement("return value")
+                    .endControlFlow()
+                    .endControlFlow()
+                    .addStatement("throw new $T($S)", target.malformedException, "Malformed varint")
+                    .build());
+        }
+
+        if (string) {
+            builtTypeSpec.addMethod(MethodSpec.methodBuilder("writeString")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addParameter(target.outputType, target.outputName)
+                    .addParameter(String.class, "value")
+                    .addExceptions(target.exceptions())
+                    .addStatement("byte[] bytes = value.getBytes($T.UTF_8)", StandardCharsets.class)
+                    .addStatement("writeVarInt($L, bytes.length)", target.outputName)
+                    .addStatement(target.writeBytesFormat, target.outputName, "bytes")
+                    .build());
+            builtTypeSpec.addMethod(getReadStringMethodSpec(target));
+        }
+
+        if (target == Target.DATA && zigZagInt) {
+            builtTypeSpec.addMethod(MethodSpec.methodBuilder("decodeZigZag")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .returns(int.class)
+                    .addParameter(int.class, "value")
+                    .addStatement("return (value >>> 1) ^ -(value & 1)")
+                    .build());
+        }
+        if (target == Target.DATA && varLong) {
+            builtTypeSpec.addMethod(MethodSpec.methodBuilder("decodeZigZag")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .returns(long.class)
+                    .addParameter(long.class, "value")
+                    .addStatement("return (value >>> 1) ^ -(value & 1)")
+                    .build());
+        }
+    }
+
+    /**
+     * The length is checked before allocating: a buffer must hold the whole string, and a stream is read in chunks,
+     * so that a corrupt length fails on the end of the stream rather than on a huge array.
+     */
+    private static MethodSpec getReadStringMethodSpec(Target target) {
+        MethodSpec.Builder readString = MethodSpec.methodBuilder("readString")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(String.class)
+                .addParameter(target.inputType, target.inputName)
+                .addExceptions(target.exceptions())
+                .addStatement("int length = readVarInt($L)", target.inputName);
+
+        if (target == Target.BUFFER) {
+            readString.beginControlFlow("if (length < 0 || length > $L.remaining())", target.inputName)
+                    .addStatement("throw new $T($S)", target.malformedException, "Malformed string length")
+                    .endControlFlow()
+                    .addStatement("byte[] bytes = new byte[length]")
+                    .addStatement(target.readBytesFormat, target.inputName, "bytes");
+        } else {
+            readString.beginControlFlow("if (length < 0)")
+                    .addStatement("throw new $T($S)", target.malformedException, "Malformed string length")
+                    .endControlFlow()
+                    .addStatement("byte[] bytes = new byte[$T.min(length, $L)]", Math.class, STRING_CHUNK_BYTES)
+                    .addStatement(target.readBytesFormat, target.inputName, "bytes")
+                    .beginControlFlow("while (bytes.length < length)")
+                    .addStatement("int read = bytes.length")
+                    .addStatement("bytes = $T.copyOf(bytes, read + $T.min(length - read, read))", Arrays.class, Math.class)
+                    .addStatement("$L.readFully(bytes, read, bytes.length - read)", target.inputName)
+                    .endControlFlow();
+        }
+
+        return readString.addStatement("return new $T(bytes, $T.UTF_8)", String.class, StandardCharsets.class)
+                .build();
+    }
+
+    private static String getFlagsName(int word) {
+        return FLAGS_VARIABLE_PREFIX + word;
+    }
+
+    /**
+     * Writes a decoded value to a field of the built object, directly or through a setter.
+     */
+    interface Assignment {
+        CodeBlock assign(FieldModel field, CodeBlock value);
+    }
+
+    /**
+     * Where the codec reads and writes, with the statements that differ between the two.
+     */
+    enum Target {
+        DATA(DataOutput.class, "out", DataInput.class, "in", IOException.class,
+                "$L.writeByte($L)", "$L.writeFloat($L)", "$L.writeDouble($L)", "$L.write($L)",
+                "$L.readUnsignedByte()", "$L.readByte()", "$L.readFloat()", "$L.readDouble()", "$L.readFully($L)"),
+        BUFFER(ByteBuffer.class, "buffer", ByteBuffer.class, "buffer", IllegalArgumentException.class,
+                "$L.put((byte) ($L))", "$L.putFloat($L)", "$L.putDouble($L)", "$L.put($L)",
+                "($L.get() & 0xFF)", "$L.get()", "$L.getFloat()", "$L.getDouble()", "$L.get($L)");
+
+        final Class<?> outputType;
+        final String outputName;
+        final Class<?> inputType;
+        final String inputName;
+        final Class<?> malformedException;
+        final String writeByteFormat;
+        final String writeFloatFormat;
+        final String writeDoubleFormat;
+        final String writeBytesFormat;
+        final String readUnsignedByteFormat;
+        final String readByteFormat;
+        final String readFloatFormat;
+        final String readDoubleFormat;
+        final String readBytesFormat;
+
+        Target(Class<?> outputType, String outputName, Class<?> inputType, String inputName, Class<?> malformedException,
+               String writeByteFormat, String writeFloatFormat, String writeDoubleFormat, String writeBytesFormat,
+               String readUnsignedByteFormat, String readByteFormat, String readFloatFormat, String readDoubleFormat,
+               String readBytesFormat) {
+            this.outputType = outputType;
+            this.outputName = outputName;
+            this.inputType = inputType;
+            this.inputName = inputName;
+            this.malformedException = malformedException;
+            this.writeByteFormat = writeByteFormat;
+            this.writeFloatFormat = writeFloatFormat;
+            this.writeDoubleFormat = writeDoubleFormat;
+            this.writeBytesFormat = writeBytesFormat;
+            this.readUnsignedByteFormat = readUnsignedByteFormat;
+            this.readByteFormat = readByteFormat;
+            this.readFloatFormat = readFloatFormat;
+            this.readDoubleFormat = readDoubleFormat;
+            this.readBytesFormat = readBytesFormat;
+        }
+
+        List<TypeName> exceptions() {
+            List<TypeName> exceptions = new ArrayList<>();
+            if (this == DATA) {
+                exceptions.add(ClassName.get(IOException.class));
+            }
+
+            return exceptions;
+        }
+    }
+
+    /**
+     * Position of every null and boolean bit in the bitmap, in field order; a boxed {@code Boolean} takes its null bit
+     * and then its value bit.
+     */
+    static class Flags {
+        private final Map<String, Integer> nullFlags = new HashMap<>();
+        private final Map<String, Integer> valueFlags = new HashMap<>();
+        private int count;
+
+        Flags(List<FieldModel> fields) {
+            for (FieldModel field : fields) {
+                if (! field.isPrimitive()) {
+                    nullFlags.put(field.name, count++);
+                }
+                if (field.type.equals(TypeName.BOOLEAN) || field.type.equals(TypeName.BOOLEAN.box())) {
+                    valueFlags.put(field.name, count++);
+                }
+            }
+        }
+
+        int getNullFlag(FieldModel field) {
+            return nullFlags.get(field.name);
+        }
+
+        int getValueFlag(FieldModel field) {
+            return valueFlags.get(field.name);
+        }
+
+        int getWordCount() {
+            return (count + FLAGS_PER_WORD - 1) / FLAGS_PER_WORD;
+        }
+
+        int getByteCount(int word) {
+            int flagsInWord = Math.min(FLAGS_PER_WORD, count - word * FLAGS_PER_WORD);
+            return (flagsInWord + 7) / 8;
+        }
+
+        CodeBlock getSetCode(int flag) {
+            return CodeBlock.of("$L |= $L", getFlagsName(flag / FLAGS_PER_WORD), getMask(flag));
+        }
+
+        CodeBlock getIsSetCode(int flag) {
+            return CodeBlock.of("($L & $L) != 0", getFlagsName(flag / FLAGS_PER_WORD), getMask(flag));
+        }
+
+        private static String getMask(int flag) {
+            return "0x" + Long.toHexString(1L << (flag % FLAGS_PER_WORD)) + "L";
+        }
+    }
+}
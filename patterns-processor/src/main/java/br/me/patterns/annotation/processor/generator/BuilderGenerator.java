@@ -1,97 +1,414 @@
 package br.me.patterns.annotation.processor.generator;
 
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.lang.model.element.Element;
 import javax.lang.model.element.Modifier;
-import javax.lang.model.type.TypeKind;
-import javax.lang.model.type.TypeMirror;
 
 import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.model.BuilderModel;
+import br.me.patterns.annotation.processor.model.FieldModel;
 
 public class BuilderGenerator {
 
     static final String PATTERN_NAME = "Builder";
     static final String CREATED_CLASS_SUFFIX = "_";
+    static final String DEFAULTS_FIELD_NAME = "DEFAULTS";
+    static final String POOL_SIZE_FIELD_NAME = "POOL_SIZE";
+    static final String POOL_FIELD_NAME = "POOL";
+    static final String POOLED_FIELD_NAME = "pooled";
+    static final String POOL_CLASS_NAME = "Pool";
+    static final String RESET_METHOD_NAME = "reset";
+    static final String BUILD_INTO_METHOD_NAME = "buildInto";
+    static final String ACQUIRE_METHOD_NAME = "acquire";
+    static final String RELEASE_METHOD_NAME = "release";
+    static final String APPEND_TO_METHOD_NAME = "appendTo";
+    static final String TO_STRING_CAPACITY_FIELD_NAME = "TO_STRING_CAPACITY";
+    static final String CACHED_TO_STRING_FIELD_NAME = "cachedToString";
+    static final String CACHED_HASH_CODE_FIELD_NAME = "cachedHashCode";
+    static final String FLAGS_FIELD_NAME = "flags";
+    static final String TO_BUILDER_METHOD_NAME = "toBuilder";
+    static final String COPY_METHOD_NAME = "copy";
+
+    /**
+     * A constructor may declare at most 255 parameter slots, including {@code this}; longs and doubles take two.
+     */
+    static final int MAX_CONSTRUCTOR_PARAMETER_SLOTS = 254;
 
     public static JavaFile[] generate(Element element) {
-        String targetFileName = getTargetFileName(element);
-        ClassName className = getTargetClassName(element, targetFileName);
+        return generate(BuilderModel.from(element));
+    }
 
-        BuilderClassHelper builderClassHelper = new BuilderClassHelper(element, className);
-        BuiltClassHelper builtClassHelper = new BuiltClassHelper(className);
+    public static JavaFile[] generate(BuilderModel model) {
+        ClassName className = getTargetClassName(model);
 
-        for (Element enclosedElement: element.getEnclosedElements()) {
-            if (! isElementToProcess(enclosedElement)) {
-                continue;
+        BuilderClassHelper builderClassHelper = new BuilderClassHelper(model.type, className);
+        BuiltClassHelper builtClassHelper = new BuiltClassHelper(className, model.immutable);
+
+        for (FieldModel field: model.fields) {
+            addBuilderMethodToBuilderClass(builderClassHelper, model, field, className);
+
+            if (isPackedBoolean(model, field)) {
+                addPackedBooleanToBuiltClass(builtClassHelper, model, field);
+            } else if (model.immutable) {
+                addFinalFieldToBuiltClass(builtClassHelper, field);
+            } else {
+                addFieldToBuiltClass(builtClassHelper, field);
             }
+        }
+
+        if (model.immutable) {
+            addConstructorToBuiltClassAndBuildMethodToBuilderClass(builderClassHelper, builtClassHelper, model, className);
+        } else {
+            addBuildMethodToBuilderClass(builderClassHelper, model, className);
+        }
+        addAppendToMethodsToBuiltClass(builtClassHelper, model);
+        addEqualsAndHashCodeMethodsToBuiltClass(builtClassHelper, model);
+        if (model.withers) {
+            addWitherMethodsToBuiltClass(builtClassHelper, model, className);
+        }
+        addToStringMethodToBuiltClass(builtClassHelper, model);
+
+        if (model.codec) {
+            BinaryCodecGenerator.addCodecMethods(builtClassHelper.builtTypeSpec, model,
+                    ClassName.get(model.packageName, getClassNameToBuild(className)), className);
+        }
+
+        InternerGenerator.addInternerMembers(builderClassHelper.builderTypeSpec, model, className);
+
+        if (model.reusable) {
+            addReusableMembersToBuilderClass(builderClassHelper, model, className);
+        }
+
+        JavaFile builderJavaFile = getJavaFile(model, builderClassHelper.builderTypeSpec.build());
+        JavaFile builtJavaFile = getJavaFile(model, builtClassHelper.builtTypeSpec.build());
 
-            addBuilderMethodToBuilderClass(builderClassHelper, enclosedElement, className);
-            addFieldToBuiltClass(builtClassHelper, enclosedElement);
+        ClassName builtClassName = ClassName.get(model.packageName, getClassNameToBuild(className));
+        List<JavaFile> javaFiles = new ArrayList<>(Arrays.asList(builderJavaFile, builtJavaFile));
+        if (model.batch) {
+            javaFiles.add(BatchGenerator.generate(model, builtClassName, className));
         }
 
-        addBuildMethodToBuilderClass(builderClassHelper, element, className);
-        addToStringMethodToBuiltClass(builtClassHelper);
+        if (model.offHeap) {
+            javaFiles.add(OffHeapViewGenerator.generate(model, builtClassName, className));
+        }
 
-        JavaFile builderJavaFile = getJavaFile(element, builderClassHelper.builderTypeSpec.build());
-        JavaFile builtJavaFile = getJavaFile(element, builtClassHelper.builtTypeSpec.build());
+        if (model.json) {
+            javaFiles.add(JsonGenerator.generate(model, builtClassName, className));
+        }
 
-        return new JavaFile[] {builderJavaFile, builtJavaFile};
+        return javaFiles.toArray(new JavaFile[0]);
     }
 
     static String getTargetFileName(Element element) {
         return element.getSimpleName().toString() + SingletonGenerator.CREATED_CLASS_SUFFIX;
     }
 
-    private static ClassName getTargetClassName(Element element, String targetFileName) {
-        return ClassName.get(Utils.getPackage(element).toString(), targetFileName);
-    }
-
-    private static boolean isElementToProcess(Element e) {
-        TypeMirror typeMirror = e.asType();
-        return typeMirror.getKind().isPrimitive() || typeMirror.getKind().equals(TypeKind.DECLARED);
+    private static ClassName getTargetClassName(BuilderModel model) {
+        return ClassName.get(model.packageName, model.simpleName + SingletonGenerator.CREATED_CLASS_SUFFIX);
     }
 
-    private static void addBuilderMethodToBuilderClass(BuilderClassHelper builderClassHelper, Element e, ClassName returnType) {
-        String fieldName = e.getSimpleName().toString();
-        TypeMirror builderParameter = e.asType();
-        String builderName = "set" + fieldName.substring(0, 1).toUpperCase() + fieldName.substring(1);
+    private static void addBuilderMethodToBuilderClass(BuilderClassHelper builderClassHelper, BuilderModel model, FieldModel field, ClassName returnType) {
+        String fieldName = field.name;
+        String builderName = getSetterName(field);
 
         MethodSpec builderMethodSpec = MethodSpec.methodBuilder(builderName)
                 .addModifiers(Modifier.PUBLIC)
                 .returns(returnType)
-                .addParameter(TypeName.get(builderParameter), fieldName)
-                .addStatement("super.$L=$L", fieldName, fieldName)
+                .addParameter(field.type, fieldName)
+                .addStatement("super.$L=$L", fieldName, InternerGenerator.getInternedValueCode(returnType, field, CodeBlock.of("$L", fieldName)))
                 .addStatement("return this")
                 .build();
 
         builderClassHelper.visit(builderMethodSpec);
-        builderClassHelper.visit(fieldName);
+        builderClassHelper.visit(getFieldAssignmentCode(model, getClassNameToBuild(returnType).toLowerCase(), field, CodeBlock.of("$L", fieldName)));
+    }
+
+    private static void addFieldToBuiltClass(BuiltClassHelper builtClassHelper, FieldModel field) {
+        String fieldName = field.name;
+
+        FieldSpec fieldSpec = FieldSpec.builder(field.type, fieldName)
+                .addModifiers(Modifier.PUBLIC)
+                .build();
+
+        builtClassHelper.visit(fieldSpec);
+        builtClassHelper.visit(field, CodeBlock.of("this.$L", fieldName));
     }
 
-    private static void addFieldToBuiltClass(BuiltClassHelper builtClassHelper, Element e) {
-        String fieldName = e.getSimpleName().toString();
-        TypeMirror fieldParameter = e.asType();
+    private static void addFinalFieldToBuiltClass(BuiltClassHelper builtClassHelper, FieldModel field) {
+        String fieldName = field.name;
+
+        FieldSpec fieldSpec = FieldSpec.builder(field.type, fieldName)
+                .addModifiers(Modifier.PRIVATE, Modifier.FINAL)
+                .build();
 
-        FieldSpec fieldSpec = FieldSpec.builder(TypeName.get(fieldParameter), fieldName)
+        MethodSpec accessorSpec = MethodSpec.methodBuilder(getAccessorName(field))
                 .addModifiers(Modifier.PUBLIC)
+                .returns(field.type)
+                .addStatement("return $L", fieldName)
                 .build();
 
         builtClassHelper.visit(fieldSpec);
-        builtClassHelper.visit(fieldName);
+        builtClassHelper.visit(accessorSpec);
+        builtClassHelper.visit(field, CodeBlock.of("this.$L", fieldName));
+    }
+
+    /**
+     * A packed boolean is one bit of a flags word, declared along with the first boolean of each word. It is read
+     * with {@code isX()} and, when the built class is mutable, written with {@code setX(value)}.
+     */
+    private static void addPackedBooleanToBuiltClass(BuiltClassHelper builtClassHelper, BuilderModel model, FieldModel field) {
+        int index = getPackedBooleanIndex(model, field);
+        String flagsName = getFlagsFieldName(model, index);
+        CodeBlock value = getFieldValueCode(model, "this", field);
+
+        if (index % getFlagsPerWord(model) == 0) {
+            FieldSpec.Builder flagsSpec = FieldSpec.builder(getFlagsType(model), flagsName, Modifier.PRIVATE);
+            if (model.immutable) {
+                flagsSpec.addModifiers(Modifier.FINAL);
+            }
+            builtClassHelper.visit(flagsSpec.build());
+        }
+
+        builtClassHelper.visit(MethodSpec.methodBuilder(getAccessorName(field))
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addStatement("return $L", value)
+                .build());
+
+        if (! model.immutable) {
+            builtClassHelper.visit(MethodSpec.methodBuilder(getSetterName(field))
+                    .addModifiers(Modifier.PUBLIC)
+                    .addParameter(boolean.class, field.name)
+                    .beginControlFlow("if ($L)", field.name)
+                    .addStatement("this.$L |= $L", flagsName, getFlagsMask(model, index))
+                    .nextControlFlow("else")
+                    .addStatement("this.$L &= ~$L", flagsName, getFlagsMask(model, index))
+                    .endControlFlow()
+                    .build());
+        }
+
+        builtClassHelper.visit(field, value);
+    }
+
+    static String getAccessorName(FieldModel field) {
+        String prefix = field.type.equals(TypeName.BOOLEAN) ? "is" : "get";
+        return prefix + field.name.substring(0, 1).toUpperCase() + field.name.substring(1);
+    }
+
+    static String getSetterName(FieldModel field) {
+        return "set" + field.name.substring(0, 1).toUpperCase() + field.name.substring(1);
+    }
+
+    /**
+     * {@code anoFabricacao} becomes {@code ANO_FABRICACAO}.
+     */
+    static String getConstantName(FieldModel field) {
+        return field.name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase();
+    }
+
+    static boolean isPackedBoolean(BuilderModel model, FieldModel field) {
+        return model.packBooleans && field.type.equals(TypeName.BOOLEAN);
+    }
+
+    /**
+     * Up to 32 booleans share an {@code int}; more than that are spread over {@code long} words.
+     */
+    private static int getFlagsPerWord(BuilderModel model) {
+        return getPackedBooleanCount(model) <= 32 ? 32 : 64;
+    }
+
+    private static TypeName getFlagsType(BuilderModel model) {
+        return getFlagsPerWord(model) == 32 ? TypeName.INT : TypeName.LONG;
+    }
+
+    private static int getPackedBooleanCount(BuilderModel model) {
+        int count = 0;
+        for (FieldModel field : model.fields) {
+            if (isPackedBoolean(model, field)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static int getPackedBooleanIndex(BuilderModel model, FieldModel packedField) {
+        int index = 0;
+        for (FieldModel field : model.fields) {
+            if (field == packedField) {
+                return index;
+            } else if (isPackedBoolean(model, field)) {
+                index++;
+            }
+        }
+
+        throw new IllegalArgumentException(packedField.name);
+    }
+
+    /**
+     * The words are named {@code flags}, or {@code flags0}, {@code flags1}... when there are several, with trailing
+     * {@code _} added to {@code flags} until none of those names is used by a field of the built class.
+     */
+    private static String getFlagsFieldName(BuilderModel model, int index) {
+        int words = (getPackedBooleanCount(model) + getFlagsPerWord(model) - 1) / getFlagsPerWord(model);
+        String name = FLAGS_FIELD_NAME;
+        while (! isUnusedFlagsName(model, name, words)) {
+            name += "_";
+        }
+
+        return words == 1 ? name : name + (index / getFlagsPerWord(model));
+    }
+
+    private static boolean isUnusedFlagsName(BuilderModel model, String name, int words) {
+        for (int word = 0; word < words; word++) {
+            String wordName = words == 1 ? name : name + word;
+            if (! Utils.getUniqueName(wordName, model.fields).equals(wordName)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static String getFlagsMask(BuilderModel model, int index) {
+        return getFlagsPerWord(model) == 32
+                ? "0x" + Integer.toHexString(1 << index)
+                : "0x" + Long.toHexString(1L << (index % 64)) + "L";
+    }
+
+    /**
+     * @return the expression reading a field of the built object {@code instance}.
+     */
+    static CodeBlock getFieldValueCode(BuilderModel model, String instance, FieldModel field) {
+        if (isPackedBoolean(model, field)) {
+            int index = getPackedBooleanIndex(model, field);
+            return CodeBlock.of("($L.$L & $L) != 0", instance, getFlagsFieldName(model, index), getFlagsMask(model, index));
+        }
+
+        return CodeBlock.of("$L.$L", instance, field.name);
     }
 
-    private static void addBuildMethodToBuilderClass(BuilderClassHelper builderClassHelper, Element element, ClassName className) {
+    /**
+     * @return the expression reading a field of the built object {@code instance} from another class, through its
+     * accessor when the field is not public.
+     */
+    static CodeBlock getFieldAccessCode(BuilderModel model, String instance, FieldModel field) {
+        if (model.immutable || isPackedBoolean(model, field)) {
+            return CodeBlock.of("$L.$L()", instance, getAccessorName(field));
+        }
+
+        return CodeBlock.of("$L.$L", instance, field.name);
+    }
+
+    /**
+     * @return the statement writing a field of the mutable built object {@code instance}.
+     */
+    static CodeBlock getFieldAssignmentCode(BuilderModel model, String instance, FieldModel field, CodeBlock value) {
+        if (isPackedBoolean(model, field)) {
+            return CodeBlock.of("$L.$L($L)", instance, getSetterName(field), value);
+        }
+
+        return CodeBlock.of("$L.$L = $L", instance, field.name, value);
+    }
+
+    /**
+     * The immutable built class gets a constructor taking every field, called once by {@code build()}. Classes with
+     * more fields than a constructor can declare take the builder itself instead.
+     */
+    private static void addConstructorToBuiltClassAndBuildMethodToBuilderClass(BuilderClassHelper builderClassHelper,
+                                                                                BuiltClassHelper builtClassHelper,
+                                                                                BuilderModel model, ClassName className) {
+        ClassName justCreatedClassName = ClassName.get(model.packageName, getClassNameToBuild(className));
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
+        CodeBlock.Builder constructorCall = CodeBlock.builder().add("new $T(", justCreatedClassName);
+
+        String source;
+        if (getParameterSlots(model.fields) <= MAX_CONSTRUCTOR_PARAMETER_SLOTS) {
+            source = "";
+            constructor.addModifiers(Modifier.PUBLIC);
+            for (int i = 0; i < model.fields.size(); i++) {
+                FieldModel field = model.fields.get(i);
+                constructor.addParameter(field.type, field.name);
+                constructorCall.add(i == 0 ? "$L" : ",$W$L", field.name);
+            }
+        } else {
+            source = "builder.";
+            constructor.addParameter(model.type, "builder");
+            constructorCall.add("this");
+        }
+
+        for (FieldModel field : model.fields) {
+            if (! isPackedBoolean(model, field)) {
+                constructor.addStatement("this.$L = $L$L", field.name, source, field.name);
+            }
+        }
+        addFlagsAssignmentsToConstructor(constructor, model, source);
+
+        builtClassHelper.visit(constructor.build());
+        builderClassHelper.visit(MethodSpec.methodBuilder("build")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(justCreatedClassName)
+                .addStatement("return $L", constructorCall.add(")").build())
+                .build());
+    }
+
+    /**
+     * Each flags word of an immutable built class is assigned once, with the bits of all its booleans.
+     */
+    private static void addFlagsAssignmentsToConstructor(MethodSpec.Builder constructor, BuilderModel model, String source) {
+        CodeBlock.Builder word = null;
+        String flagsName = null;
+        for (FieldModel field : model.fields) {
+            if (! isPackedBoolean(model, field)) {
+                continue;
+            }
+
+            int index = getPackedBooleanIndex(model, field);
+            String zero = getFlagsPerWord(model) == 32 ? "0" : "0L";
+            if (index % getFlagsPerWord(model) == 0) {
+                if (word != null) {
+                    constructor.addStatement("this.$L = $L", flagsName, word.build());
+                }
+                word = CodeBlock.builder();
+                flagsName = getFlagsFieldName(model, index);
+            } else {
+                word.add("$W| ");
+            }
+            word.add("($L$L ? $L : $L)", source, field.name, getFlagsMask(model, index), zero);
+        }
+
+        if (word != null) {
+            constructor.addStatement("this.$L = $L", flagsName, word.build());
+        }
+    }
+
+    private static int getParameterSlots(List<FieldModel> fields) {
+        int slots = 0;
+        for (FieldModel field : fields) {
+            slots += field.type.equals(TypeName.LONG) || field.type.equals(TypeName.DOUBLE) ? 2 : 1;
+        }
+
+        return slots;
+    }
+
+    private static void addBuildMethodToBuilderClass(BuilderClassHelper builderClassHelper, BuilderModel model, ClassName className) {
         String builtFileName = getClassNameToBuild(className);
-        ClassName justCreatedClassName = ClassName.get(Utils.getPackage(element).getQualifiedName().toString(), builtFileName);
+        ClassName justCreatedClassName = ClassName.get(model.packageName, builtFileName);
 
         String builtClassVarName = getClassNameToBuild(className).toLowerCase();
         MethodSpec.Builder buildMethod = MethodSpec.methodBuilder("build")
@@ -104,23 +421,373 @@ public class BuilderGenerator {
         builderClassHelper.visit(buildMethod.build());
     }
 
-    private static void addToStringMethodToBuiltClass(BuiltClassHelper builtClassHelper) {
+    /**
+     * Adds {@code reset()}, {@code buildInto(target)} and the per-thread pool behind {@code acquire()} and
+     * {@code release()}. The defaults are read from a pristine builder, so field initializers and the constructor
+     * of the annotated class are honored. The pool flag is renamed when the annotated class has a field of that name,
+     * which it would otherwise hide.
+     */
+    private static void addReusableMembersToBuilderClass(BuilderClassHelper builderClassHelper, BuilderModel model, ClassName className) {
+        ClassName justCreatedClassName = ClassName.get(model.packageName, getClassNameToBuild(className));
+        String builtClassVarName = getClassNameToBuild(className).toLowerCase();
+        ClassName poolClassName = className.nestedClass(POOL_CLASS_NAME);
+        String pooledName = Utils.getUniqueName(POOLED_FIELD_NAME, model.fields);
+
+        builderClassHelper.visit(FieldSpec.builder(int.class, POOL_SIZE_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", Math.max(model.poolSize, 0))
+                .build());
+        builderClassHelper.visit(FieldSpec.builder(className, DEFAULTS_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T()", className)
+                .build());
+        builderClassHelper.visit(getPoolFieldSpec(poolClassName));
+        builderClassHelper.visit(FieldSpec.builder(boolean.class, pooledName, Modifier.PRIVATE).build());
+
+        CodeBlock.Builder resetCode = CodeBlock.builder();
+        for (FieldModel field : model.fields) {
+            resetCode.addStatement("this.$L = $L.$L", field.name, DEFAULTS_FIELD_NAME, field.name);
+        }
+
+        builderClassHelper.visit(MethodSpec.methodBuilder(RESET_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(className)
+                .addCode(resetCode.build())
+                .addStatement("return this")
+                .build());
+
+        if (! model.immutable) {
+            builderClassHelper.visit(MethodSpec.methodBuilder(BUILD_INTO_METHOD_NAME)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(justCreatedClassName)
+                    .addParameter(justCreatedClassName, builtClassVarName)
+                    .addCode(builderClassHelper.getBuildMethodCodeBlock())
+                    .addStatement("return $L", builtClassVarName)
+                    .build());
+        }
+
+        builderClassHelper.visit(MethodSpec.methodBuilder(ACQUIRE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(className)
+                .addStatement("$T pool = $L.get()", poolClassName, POOL_FIELD_NAME)
+                .beginControlFlow("if (pool.size == 0)")
+                .addStatement("return new $T()", className)
+                .endControlFlow()
+                .addStatement("$T builder = pool.builders[--pool.size]", className)
+                .addStatement("pool.builders[pool.size] = null")
+                .addStatement("builder.$L = false", pooledName)
+                .addStatement("return builder")
+                .build());
+
+        builderClassHelper.visit(MethodSpec.methodBuilder(RELEASE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC)
+                .beginControlFlow("if ($L)", pooledName)
+                .addStatement("throw new $T($S)", IllegalStateException.class, className.simpleName() + " already released")
+                .endControlFlow()
+                .addStatement("$L()", RESET_METHOD_NAME)
+                .addStatement("$T pool = $L.get()", poolClassName, POOL_FIELD_NAME)
+                .beginControlFlow("if (pool.size < $L)", POOL_SIZE_FIELD_NAME)
+                .addStatement("$L = true", pooledName)
+                .addStatement("pool.builders[pool.size++] = this")
+                .endControlFlow()
+                .build());
+
+        builderClassHelper.visit(TypeSpec.classBuilder(poolClassName)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(ArrayTypeName.of(className), "builders", Modifier.FINAL)
+                        .initializer("new $T[$L]", className, POOL_SIZE_FIELD_NAME)
+                        .build())
+                .addField(int.class, "size")
+                .build());
+    }
+
+    private static FieldSpec getPoolFieldSpec(ClassName poolClassName) {
+        TypeName threadLocalType = ParameterizedTypeName.get(ClassName.get(ThreadLocal.class), poolClassName);
+        TypeSpec threadLocalInitializer = TypeSpec.anonymousClassBuilder("")
+                .superclass(threadLocalType)
+                .addMethod(MethodSpec.methodBuilder("initialValue")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .returns(poolClassName)
+                        .addStatement("return new $T()", poolClassName)
+                        .build())
+                .build();
+
+        return FieldSpec.builder(threadLocalType, POOL_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", threadLocalInitializer)
+                .build();
+    }
+
+    private static void addAppendToMethodsToBuiltClass(BuiltClassHelper builtClassHelper, BuilderModel model) {
+        builtClassHelper.visit(FieldSpec.builder(int.class, getToStringCapacityName(model), Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", builtClassHelper.toStringCapacity)
+                .build());
+
+        builtClassHelper.visit(MethodSpec.methodBuilder(APPEND_TO_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(StringBuilder.class)
+                .addParameter(StringBuilder.class, "builder")
+                .addCode(builtClassHelper.getAppendToCodeBlock())
+                .addStatement("return builder")
+                .build());
+
+        builtClassHelper.visit(MethodSpec.methodBuilder(APPEND_TO_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(Appendable.class)
+                .addParameter(Appendable.class, "appendable")
+                .addException(IOException.class)
+                .beginControlFlow("if (appendable instanceof $T)", StringBuilder.class)
+                .addStatement("return $L(($T) appendable)", APPEND_TO_METHOD_NAME, StringBuilder.class)
+                .endControlFlow()
+                .addCode(builtClassHelper.getAppendableCodeBlock())
+                .addStatement("return appendable")
+                .build());
+    }
+
+    /**
+     * Field-wise {@code equals} and {@code hashCode}. Primitives are compared and hashed without boxing, and the
+     * hash follows the same formula as {@code Objects.hash} over the fields in declaration order, without its
+     * varargs array. Immutable classes memoize the hash in a transient field; zero means "not computed yet".
+     */
+    private static void addEqualsAndHashCodeMethodsToBuiltClass(BuiltClassHelper builtClassHelper, BuilderModel model) {
+        CodeBlock.Builder comparisons = CodeBlock.builder();
+        for (FieldModel field : model.fields) {
+            if (isPackedBoolean(model, field)) {
+                int index = getPackedBooleanIndex(model, field);
+                if (index % getFlagsPerWord(model) == 0) {
+                    String flagsName = getFlagsFieldName(model, index);
+                    comparisons.add(comparisons.isEmpty() ? "$L" : "$W&& $L", CodeBlock.of("this.$L == other.$L", flagsName, flagsName));
+                }
+            } else if (field.isPrimitive()) {
+                comparisons.add(comparisons.isEmpty() ? "$L" : "$W&& $L", getPrimitiveEqualsCode(field));
+            }
+        }
+        for (FieldModel field : model.fields) {
+            if (! field.isPrimitive()) {
+                comparisons.add(comparisons.isEmpty() ? "$L" : "$W&& $L",
+                        CodeBlock.of("(this.$L == null ? other.$L == null : this.$L.equals(other.$L))", field.name, field.name, field.name, field.name));
+            }
+        }
+
+        ClassName builtClassName = ClassName.get(model.packageName, getClassNameToBuild(getTargetClassName(model)));
+        MethodSpec.Builder equalsMethod = MethodSpec.methodBuilder("equals")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(boolean.class)
+                .addParameter(Object.class, "o")
+                .beginControlFlow("if (this == o)")
+                .addStatement("return true")
+                .endControlFlow()
+                .beginControlFlow("if (o == null || getClass() != o.getClass())")
+                .addStatement("return false")
+                .endControlFlow();
+
+        if (comparisons.isEmpty()) {
+            equalsMethod.addStatement("return true");
+        } else {
+            equalsMethod.addStatement("$T other = ($T) o", builtClassName, builtClassName)
+                    .addStatement("return $L", comparisons.build());
+        }
+
+        builtClassHelper.visit(equalsMethod.build());
+        builtClassHelper.visit(getHashCodeMethodSpec(builtClassHelper, model));
+    }
+
+    /**
+     * {@code toBuilder()} copies every field into a new builder. Each {@code withX(value)} returns {@code this} when
+     * the value equals the current one, and otherwise one new built object: a call to the all-args constructor for
+     * immutable classes, a field-by-field {@code copy()} for mutable ones.
+     */
+    private static void addWitherMethodsToBuiltClass(BuiltClassHelper builtClassHelper, BuilderModel model, ClassName className) {
+        ClassName builtClassName = ClassName.get(model.packageName, getClassNameToBuild(className));
+        boolean constructorCall = model.immutable && getParameterSlots(model.fields) <= MAX_CONSTRUCTOR_PARAMETER_SLOTS;
+
+        MethodSpec.Builder toBuilder = MethodSpec.methodBuilder(TO_BUILDER_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(className)
+                .addStatement("$T builder = new $T()", className, className);
+        for (FieldModel field : model.fields) {
+            toBuilder.addStatement("builder.$L = $L", field.name, getFieldValueCode(model, "this", field));
+        }
+        builtClassHelper.visit(toBuilder.addStatement("return builder").build());
+
+        if (! model.immutable) {
+            MethodSpec.Builder copy = MethodSpec.methodBuilder(COPY_METHOD_NAME)
+                    .addModifiers(Modifier.PRIVATE)
+                    .returns(builtClassName)
+                    .addStatement("$T copy = new $T()", builtClassName, builtClassName);
+            for (FieldModel field : model.fields) {
+                if (! isPackedBoolean(model, field)) {
+                    copy.addStatement("copy.$L = this.$L", field.name, field.name);
+                } else if (getPackedBooleanIndex(model, field) % getFlagsPerWord(model) == 0) {
+                    String flagsName = getFlagsFieldName(model, getPackedBooleanIndex(model, field));
+                    copy.addStatement("copy.$L = this.$L", flagsName, flagsName);
+                }
+            }
+            builtClassHelper.visit(copy.addStatement("return copy").build());
+        }
+
+        for (FieldModel field : model.fields) {
+            MethodSpec.Builder wither = MethodSpec.methodBuilder("with" + field.name.substring(0, 1).toUpperCase() + field.name.substring(1))
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(builtClassName)
+                    .addParameter(field.type, field.name)
+                    .beginControlFlow("if ($L)", getUnchangedCode(model, field))
+                    .addStatement("return this")
+                    .endControlFlow();
+
+            if (constructorCall) {
+                CodeBlock.Builder arguments = CodeBlock.builder();
+                for (FieldModel argument : model.fields) {
+                    arguments.add(arguments.isEmpty() ? "$L" : ",$W$L",
+                            argument == field ? CodeBlock.of("$L", field.name) : getFieldValueCode(model, "this", argument));
+                }
+                wither.addStatement("return new $T($L)", builtClassName, arguments.build());
+            } else if (model.immutable) {
+                wither.addStatement("return $L().$L($L).build()", TO_BUILDER_METHOD_NAME, getSetterName(field), field.name);
+            } else {
+                wither.addStatement("$T copy = $L()", builtClassName, COPY_METHOD_NAME)
+                        .addStatement("$L", getFieldAssignmentCode(model, "copy", field, CodeBlock.of("$L", field.name)))
+                        .addStatement("return copy");
+            }
+
+            builtClassHelper.visit(wither.build());
+        }
+    }
+
+    /**
+     * Same comparison as {@code equals}, between the parameter of a wither and the field it replaces.
+     */
+    private static CodeBlock getUnchangedCode(BuilderModel model, FieldModel field) {
+        CodeBlock current = getFieldValueCode(model, "this", field);
+        if (field.type.equals(TypeName.FLOAT)) {
+            return CodeBlock.of("$T.floatToIntBits($L) == $T.floatToIntBits($L)", Float.class, field.name, Float.class, current);
+        } else if (field.type.equals(TypeName.DOUBLE)) {
+            return CodeBlock.of("$T.doubleToLongBits($L) == $T.doubleToLongBits($L)", Double.class, field.name, Double.class, current);
+        } else if (field.isPrimitive()) {
+            return CodeBlock.of("$L == $L", field.name, isPackedBoolean(model, field) ? CodeBlock.of("($L)", current) : current);
+        }
+
+        return CodeBlock.of("$L == null ? $L == null : $L.equals($L)", field.name, current, field.name, current);
+    }
+
+    private static CodeBlock getPrimitiveEqualsCode(FieldModel field) {
+        if (field.type.equals(TypeName.FLOAT)) {
+            return CodeBlock.of("$T.floatToIntBits(this.$L) == $T.floatToIntBits(other.$L)", Float.class, field.name, Float.class, field.name);
+        } else if (field.type.equals(TypeName.DOUBLE)) {
+            return CodeBlock.of("$T.doubleToLongBits(this.$L) == $T.doubleToLongBits(other.$L)", Double.class, field.name, Double.class, field.name);
+        }
+
+        return CodeBlock.of("this.$L == other.$L", field.name, field.name);
+    }
+
+    private static MethodSpec getHashCodeMethodSpec(BuiltClassHelper builtClassHelper, BuilderModel model) {
+        MethodSpec.Builder hashCodeMethod = MethodSpec.methodBuilder("hashCode")
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class);
+
+        String cachedName = Utils.getUniqueName(CACHED_HASH_CODE_FIELD_NAME, model.fields);
+        if (model.immutable) {
+            builtClassHelper.visit(FieldSpec.builder(int.class, cachedName, Modifier.PRIVATE, Modifier.TRANSIENT).build());
+            hashCodeMethod.addStatement("int result = $L", cachedName)
+                    .beginControlFlow("if (result != 0)")
+                    .addStatement("return result")
+                    .endControlFlow()
+                    .addStatement("result = 1");
+        } else {
+            hashCodeMethod.addStatement("int result = 1");
+        }
+
+        boolean declaredBits = false;
+        for (FieldModel field : model.fields) {
+            TypeName type = field.type;
+            if (type.equals(TypeName.BOOLEAN)) {
+                hashCodeMethod.addStatement("result = 31 * result + ($L ? 1231 : 1237)", getFieldValueCode(model, "this", field));
+            } else if (type.equals(TypeName.LONG)) {
+                hashCodeMethod.addStatement("result = 31 * result + (int) (this.$L ^ (this.$L >>> 32))", field.name, field.name);
+            } else if (type.equals(TypeName.FLOAT)) {
+                hashCodeMethod.addStatement("result = 31 * result + $T.floatToIntBits(this.$L)", Float.class, field.name);
+            } else if (type.equals(TypeName.DOUBLE)) {
+                hashCodeMethod.addStatement(declaredBits ? "bits = $T.doubleToLongBits(this.$L)" : "long bits = $T.doubleToLongBits(this.$L)", Double.class, field.name)
+                        .addStatement("result = 31 * result + (int) (bits ^ (bits >>> 32))");
+                declaredBits = true;
+            } else if (field.isPrimitive()) {
+                hashCodeMethod.addStatement("result = 31 * result + this.$L", field.name);
+            } else {
+                hashCodeMethod.addStatement("result = 31 * result + (this.$L == null ? 0 : this.$L.hashCode())", field.name, field.name);
+            }
+        }
+
+        if (model.immutable) {
+            hashCodeMethod.addStatement("$L = result", cachedName);
+        }
+
+        return hashCodeMethod.addStatement("return result").build();
+    }
+
+    /**
+     * {@code toString()} fills a buffer presized from the field types, so it does not grow while appending. When
+     * cached, the string is kept in a transient field; racing threads may build it twice, but always publish an equal
+     * immutable {@code String}.
+     */
+    private static void addToStringMethodToBuiltClass(BuiltClassHelper builtClassHelper, BuilderModel model) {
+        String capacityName = getToStringCapacityName(model);
         MethodSpec.Builder toStringMethodBuilder = MethodSpec.methodBuilder("toString")
                 .returns(String.class)
                 .addModifiers(Modifier.PUBLIC)
-                .addAnnotation(Override.class)
-                .addStatement(builtClassHelper.getToStringCodeBlock());
+                .addAnnotation(Override.class);
+
+        if (model.immutable && model.cacheToString) {
+            String cachedName = Utils.getUniqueName(CACHED_TO_STRING_FIELD_NAME, model.fields);
+            builtClassHelper.visit(FieldSpec.builder(String.class, cachedName, Modifier.PRIVATE, Modifier.TRANSIENT).build());
+            toStringMethodBuilder
+                    .addStatement("$T result = $L", String.class, cachedName)
+                    .beginControlFlow("if (result == null)")
+                    .addStatement("result = $L(new $T($L)).toString()", APPEND_TO_METHOD_NAME, StringBuilder.class, capacityName)
+                    .addStatement("$L = result", cachedName)
+                    .endControlFlow()
+                    .addStatement("return result");
+        } else {
+            toStringMethodBuilder
+                    .addStatement("return $L(new $T($L)).toString()", APPEND_TO_METHOD_NAME, StringBuilder.class, capacityName);
+        }
 
         builtClassHelper.visit(toStringMethodBuilder.build());
     }
 
+    /**
+     * The built class declares the fields of the model, so its own constants and caches take names none of them use.
+     */
+    private static String getToStringCapacityName(BuilderModel model) {
+        return Utils.getUniqueName(TO_STRING_CAPACITY_FIELD_NAME, model.fields);
+    }
+
+    /**
+     * Rough printed length of a value of the given type, used to presize the {@code toString()} buffer.
+     */
+    static int getEstimatedLength(TypeName type) {
+        if (type.equals(TypeName.BOOLEAN)) {
+            return 5;
+        } else if (type.equals(TypeName.CHAR)) {
+            return 1;
+        } else if (type.equals(TypeName.BYTE) || type.equals(TypeName.SHORT)) {
+            return 6;
+        } else if (type.equals(TypeName.INT)) {
+            return 11;
+        } else if (type.equals(TypeName.LONG)) {
+            return 20;
+        } else if (type.equals(TypeName.FLOAT) || type.equals(TypeName.DOUBLE)) {
+            return 24;
+        }
+
+        return 16;
+    }
+
     static class BuilderClassHelper {
         ClassName className;
         TypeSpec.Builder builderTypeSpec;
         CodeBlock.Builder buildMethodBuilder;
 
-        BuilderClassHelper(Element element, ClassName className) {
-            TypeName type = TypeName.get(element.asType());
+        BuilderClassHelper(TypeName type, ClassName className) {
             this.className = className;
             builderTypeSpec = getBuilderClassTypeSpec(type, className);
             buildMethodBuilder = CodeBlock.builder();
@@ -130,9 +797,16 @@ public class BuilderGenerator {
             builderTypeSpec.addMethod(methodSpec);
         }
 
-        void visit(String fieldName) {
-            String builtClassVarName = getClassNameToBuild(className).toLowerCase();
-            buildMethodBuilder.add("$L.$L = $L;\n", builtClassVarName, fieldName, fieldName);
+        void visit(FieldSpec fieldSpec) {
+            builderTypeSpec.addField(fieldSpec);
+        }
+
+        void visit(TypeSpec typeSpec) {
+            builderTypeSpec.addType(typeSpec);
+        }
+
+        void visit(CodeBlock buildStatement) {
+            buildMethodBuilder.addStatement("$L", buildStatement);
         }
 
         CodeBlock getBuildMethodCodeBlock() {
@@ -142,15 +816,16 @@ public class BuilderGenerator {
 
     static class BuiltClassHelper {
         TypeSpec.Builder builtTypeSpec;
-        CodeBlock.Builder toStringBuilder;
-
-        BuiltClassHelper(ClassName className) {
-            builtTypeSpec = getBuiltClassTypeSpec(className);
-            String builtFileName = getClassNameToBuild(className);
-            toStringBuilder = CodeBlock.builder()
-                    .add("return \"\" + \n")
-                    .indent()
-                    .add("\"$L {\" +", builtFileName);
+        CodeBlock.Builder appendToBuilder;
+        CodeBlock.Builder appendableBuilder;
+        int toStringCapacity;
+
+        BuiltClassHelper(ClassName className, boolean immutable) {
+            builtTypeSpec = immutable ? getImmutableBuiltClassTypeSpec(className) : getBuiltClassTypeSpec(className);
+            String header = getClassNameToBuild(className) + " {";
+            appendToBuilder = CodeBlock.builder().addStatement("builder.append($S)", header);
+            appendableBuilder = CodeBlock.builder().addStatement("appendable.append($S)", header);
+            toStringCapacity = header.length() + 1;
         }
 
         void visit(FieldSpec fieldSpec) {
@@ -161,13 +836,25 @@ public class BuilderGenerator {
             builtTypeSpec.addMethod(methodSpec);
         }
 
-        void visit(String fieldName) {
-            toStringBuilder.add("\n\"$L=\" + $L + \",\" +", fieldName, fieldName);
+        void visit(FieldModel field, CodeBlock value) {
+            String label = field.name + "=";
+            appendToBuilder.addStatement("builder.append($S).append($L).append(',')", label, value);
+
+            if (field.type.equals(TypeName.CHAR)) {
+                appendableBuilder.addStatement("appendable.append($S).append($L).append(',')", label, value);
+            } else {
+                appendableBuilder.addStatement("appendable.append($S).append($T.valueOf($L)).append(',')", label, String.class, value);
+            }
+
+            toStringCapacity += label.length() + getEstimatedLength(field.type) + 1;
+        }
+
+        CodeBlock getAppendToCodeBlock() {
+            return appendToBuilder.build().toBuilder().addStatement("builder.append('}')").build();
         }
 
-        CodeBlock getToStringCodeBlock() {
-            toStringBuilder.add("\n\"}\"");
-            return toStringBuilder.build();
+        CodeBlock getAppendableCodeBlock() {
+            return appendableBuilder.build().toBuilder().addStatement("appendable.append('}')").build();
         }
     }
 
@@ -198,11 +885,23 @@ public class BuilderGenerator {
                 .addMethod(constructor);
     }
 
+    static TypeSpec.Builder getImmutableBuiltClassTypeSpec(ClassName className) {
+        String builtFileName = getClassNameToBuild(className);
+
+        return TypeSpec.classBuilder(builtFileName)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addSuperinterface(Serializable.class);
+    }
+
     static MethodSpec getConstructorSpec() {
         return MethodSpec.constructorBuilder().addModifiers(Modifier.PUBLIC).build();
     }
 
-    private static JavaFile getJavaFile(Element element, TypeSpec typeSpec) {
-        return JavaFile.builder(Utils.getPackage(element).getQualifiedName().toString(), typeSpec).build();
+    private static JavaFile getJavaFile(BuilderModel model, TypeSpec typeSpec) {
+        TypeSpec isolatedTypeSpec = typeSpec.toBuilder()
+                .addOriginatingElement(model.originatingElement)
+                .build();
+
+        return JavaFile.builder(model.packageName, isolatedTypeSpec).build();
     }
 }
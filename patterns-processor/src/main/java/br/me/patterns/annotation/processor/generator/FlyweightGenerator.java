@@ -0,0 +1,366 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.model.FieldModel;
+import br.me.patterns.annotation.processor.model.FlyweightModel;
+
+/**
+ * Generates {@code <Type>_}, the factory of the canonical instances of a {@code @Flyweight} class.
+ *
+ * The instances live in a table split in {@link #SEGMENTS} segments by the high bits of the hash of their fields. Each
+ * segment is a chained hash table of weak references that keep the hash of their value, and the fields of the value
+ * are compared with the arguments of {@code of(...)} directly, so no key is created. Lookups read the table without
+ * locking; a miss locks its segment, looks again and creates the instance, after dropping the entries whose value
+ * was collected. Hits are counted on one striped {@code Counter} for all segments, so that lookups on other threads
+ * do not write to the same cache line.
+ */
+public class FlyweightGenerator {
+
+    static final String PATTERN_NAME = "Flyweight";
+    static final String CREATED_CLASS_SUFFIX = "_";
+    static final String SEGMENT_CLASS_NAME = "Segment";
+    static final String ENTRY_CLASS_NAME = "Entry";
+    static final String SEGMENTS_FIELD_NAME = "SEGMENTS";
+    static final String HITS_FIELD_NAME = "HITS";
+    static final String OF_METHOD_NAME = "of";
+    static final String HASH_METHOD_NAME = MemoizeGenerator.HASH_METHOD_NAME;
+    static final int SEGMENTS = 16;
+
+    public static JavaFile generate(Element element) {
+        return generate(FlyweightModel.from(element));
+    }
+
+    public static JavaFile generate(FlyweightModel model) {
+        ClassName className = getTargetClassName(model.packageName, model.simpleName);
+        ClassName segmentClassName = className.nestedClass(SEGMENT_CLASS_NAME);
+        ClassName entryClassName = className.nestedClass(ENTRY_CLASS_NAME);
+        ClassName counterClassName = className.nestedClass(SingletonGenerator.COUNTER_CLASS_NAME);
+        Names names = new Names(model.fields);
+
+        TypeSpec.Builder flyweightTypeSpec = TypeSpec.classBuilder(className);
+        if (model.isPublic) {
+            flyweightTypeSpec.addModifiers(Modifier.PUBLIC);
+        }
+
+        flyweightTypeSpec.addModifiers(Modifier.FINAL)
+                .addField(FieldSpec.builder(int.class, "SEGMENT_SHIFT", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS))
+                        .build())
+                .addField(FieldSpec.builder(ArrayTypeName.of(segmentClassName), SEGMENTS_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T[1 << (32 - SEGMENT_SHIFT)]", segmentClassName)
+                        .build())
+                .addField(FieldSpec.builder(counterClassName, HITS_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T()", counterClassName)
+                        .build())
+                .addStaticBlock(CodeBlock.builder()
+                        .beginControlFlow("for (int i = 0; i < $L.length; i++)", SEGMENTS_FIELD_NAME)
+                        .addStatement("$L[i] = new $T($L)", SEGMENTS_FIELD_NAME, segmentClassName, getSegmentCapacity(model.initialCapacity))
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .build())
+                .addMethod(getOfMethodSpec(model, className, names))
+                .addMethod(MemoizeGenerator.getHashMethodSpec(model.fields, names.hash))
+                .addMethod(MethodSpec.methodBuilder("hits")
+                        .addJavadoc("Calls of {@code of} that returned an existing instance.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(long.class)
+                        .addStatement("return $L.get()", HITS_FIELD_NAME)
+                        .build())
+                .addMethod(getStatisticMethodSpec("misses",
+                        "Calls of {@code of} that created an instance.\n"))
+                .addMethod(MethodSpec.methodBuilder("size")
+                        .addJavadoc("Instances in the table, including collected ones not dropped yet.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(int.class)
+                        .addStatement("int size = 0")
+                        .beginControlFlow("for ($T segment : $L)", segmentClassName, SEGMENTS_FIELD_NAME)
+                        .addStatement("size += segment.count")
+                        .endControlFlow()
+                        .addStatement("return size")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("dedupRatio")
+                        .addJavadoc("Calls of {@code of} per instance created, 1 when no value was asked for twice.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(double.class)
+                        .addStatement("long misses = misses()")
+                        .addStatement("return misses == 0 ? 1 : (double) (hits() + misses) / misses")
+                        .build())
+                .addType(getSegmentTypeSpec(model, className, segmentClassName, entryClassName, names))
+                .addType(getEntryTypeSpec(model.type, entryClassName))
+                .addType(SingletonGenerator.getCounterTypeSpec());
+
+        return JavaFile.builder(model.packageName, flyweightTypeSpec
+                .addOriginatingElement(model.originatingElement)
+                .build())
+                .build();
+    }
+
+    public static ClassName getTargetClassName(String packageName, String simpleName) {
+        return ClassName.get(packageName, simpleName + CREATED_CLASS_SUFFIX);
+    }
+
+    /**
+     * @return the table length of each segment, a power of two, so that {@code initialCapacity} values spread over the
+     * segments stay under the load factor of 3/4.
+     */
+    static int getSegmentCapacity(int initialCapacity) {
+        int perSegment = (Math.max(initialCapacity, 1) + SEGMENTS - 1) / SEGMENTS;
+        int length = perSegment + perSegment / 3 + 1;
+        return Math.max(2, Utils.roundUpToPowerOfTwo(length));
+    }
+
+    private static MethodSpec getOfMethodSpec(FlyweightModel model, ClassName className, Names names) {
+        MethodSpec.Builder of = MethodSpec.methodBuilder(OF_METHOD_NAME)
+                .addJavadoc("@return the instance holding these values, created by the first call with them.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(model.type);
+
+        for (FieldModel field : model.fields) {
+            of.addParameter(field.type, field.name);
+        }
+
+        // the constants are qualified, since a parameter may hide them
+        return of.addStatement("int $L = $L($L)", names.hash, HASH_METHOD_NAME,
+                        MemoizeGenerator.getArgumentsCode(model.fields, ""))
+                .addStatement("return $T.$L[$L >>> $T.SEGMENT_SHIFT].get($L$L)", className, SEGMENTS_FIELD_NAME, names.hash, className,
+                        names.hash, MemoizeGenerator.getArgumentsCode(model.fields, ", "))
+                .build();
+    }
+
+    private static MethodSpec getStatisticMethodSpec(String fieldName, String javadoc) {
+        return MethodSpec.methodBuilder(fieldName)
+                .addJavadoc(javadoc)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(long.class)
+                .addStatement("long $L = 0", fieldName)
+                .beginControlFlow("for ($L segment : $L)", SEGMENT_CLASS_NAME, SEGMENTS_FIELD_NAME)
+                .addStatement("$L += segment.$L", fieldName, fieldName)
+                .endControlFlow()
+                .addStatement("return $L", fieldName)
+                .build();
+    }
+
+    private static TypeSpec getSegmentTypeSpec(FlyweightModel model, ClassName className, ClassName segmentClassName,
+                                               ClassName entryClassName, Names names) {
+        TypeName tableType = ParameterizedTypeName.get(ClassName.get(AtomicReferenceArray.class), entryClassName);
+        TypeName queueType = ParameterizedTypeName.get(ClassName.get(ReferenceQueue.class), model.type);
+        TypeName referenceType = ParameterizedTypeName.get(ClassName.get(Reference.class), WildcardTypeName.subtypeOf(model.type));
+
+        return TypeSpec.classBuilder(SEGMENT_CLASS_NAME)
+                .addJavadoc("Chained hash table of the instances whose hash starts with the index of the segment. Written\n"
+                        + "under its lock, read without it.\n")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(queueType, "queue", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", queueType)
+                        .build())
+                .addField(tableType, "table", Modifier.PRIVATE, Modifier.VOLATILE)
+                .addField(int.class, "count", Modifier.VOLATILE)
+                .addField(long.class, "misses", Modifier.VOLATILE)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(int.class, "capacity")
+                        .addStatement("this.table = new $T(capacity)", tableType)
+                        .build())
+                .addMethod(getGetMethodSpec(model, className, entryClassName, names))
+                .addMethod(getCreateMethodSpec(model, className, entryClassName, names))
+                .addMethod(MethodSpec.methodBuilder("purge")
+                        .addModifiers(Modifier.PRIVATE)
+                        .beginControlFlow("for ($T cleared; (cleared = queue.poll()) != null; )", referenceType)
+                        .addStatement("remove(($T) cleared)", entryClassName)
+                        .endControlFlow()
+                        .build())
+                .addMethod(getRemoveMethodSpec(entryClassName, tableType))
+                .addMethod(getResizeMethodSpec(model.type, entryClassName, tableType))
+                .build();
+    }
+
+    /**
+     * Looks for the instance without locking. Entries inserted or resized concurrently may be missed, which only
+     * sends the call to {@code create}, where it looks again under the lock.
+     */
+    private static MethodSpec getGetMethodSpec(FlyweightModel model, ClassName className, ClassName entryClassName, Names names) {
+        TypeName tableType = ParameterizedTypeName.get(ClassName.get(AtomicReferenceArray.class), entryClassName);
+        MethodSpec.Builder get = MethodSpec.methodBuilder("get")
+                .returns(model.type)
+                .addParameter(int.class, names.hash);
+
+        for (FieldModel field : model.fields) {
+            get.addParameter(field.type, field.name);
+        }
+
+        // fields and constants are qualified, since the parameters may hide them
+        return get.addStatement("$T $L = this.table", tableType, names.table)
+                .beginControlFlow("for ($T $L = $L.get($L & ($L.length() - 1)); $L != null; $L = $L.next)", entryClassName, names.entry,
+                        names.table, names.hash, names.table, names.entry, names.entry, names.entry)
+                .addStatement("$T $L", model.type, names.value)
+                .beginControlFlow("if ($L)", getMatchesCode(model.fields, names))
+                .addStatement("$T.$L.$L()", className, HITS_FIELD_NAME, SingletonGenerator.INCREMENT_METHOD_NAME)
+                .addStatement("return $L", names.value)
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return create($L$L)", names.hash, MemoizeGenerator.getArgumentsCode(model.fields, ", "))
+                .build();
+    }
+
+    private static MethodSpec getCreateMethodSpec(FlyweightModel model, ClassName className, ClassName entryClassName,
+                                                  Names names) {
+        TypeName tableType = ParameterizedTypeName.get(ClassName.get(AtomicReferenceArray.class), entryClassName);
+        MethodSpec.Builder create = MethodSpec.methodBuilder("create")
+                .addModifiers(Modifier.PRIVATE, Modifier.SYNCHRONIZED)
+                .returns(model.type)
+                .addParameter(int.class, names.hash);
+
+        for (FieldModel field : model.fields) {
+            create.addParameter(field.type, field.name);
+        }
+
+        return create.addStatement("purge()")
+                .addStatement("$T $L = this.table", tableType, names.table)
+                .addStatement("int $L = $L & ($L.length() - 1)", names.index, names.hash, names.table)
+                .addStatement("$T $L = $L.get($L)", entryClassName, names.head, names.table, names.index)
+                .beginControlFlow("for ($T $L = $L; $L != null; $L = $L.next)", entryClassName, names.entry, names.head, names.entry,
+                        names.entry, names.entry)
+                .addStatement("$T $L", model.type, names.value)
+                .beginControlFlow("if ($L)", getMatchesCode(model.fields, names))
+                .addStatement("$T.$L.$L()", className, HITS_FIELD_NAME, SingletonGenerator.INCREMENT_METHOD_NAME)
+                .addStatement("return $L", names.value)
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("$T $L = new $T($L)", model.type, names.value, model.type, MemoizeGenerator.getArgumentsCode(model.fields, ""))
+                .addStatement("$L.set($L, new $T($L, $L, $L, this.queue))", names.table, names.index, entryClassName, names.value,
+                        names.hash, names.head)
+                .addStatement("this.misses++")
+                .beginControlFlow("if (++this.count > $L.length() - ($L.length() >>> 2))", names.table, names.table)
+                .addStatement("resize($L)", names.table)
+                .endControlFlow()
+                .addStatement("return $L", names.value)
+                .build();
+    }
+
+    /**
+     * Readers going through the entry being unlinked keep following its {@code next}, which is left untouched.
+     */
+    private static MethodSpec getRemoveMethodSpec(ClassName entryClassName, TypeName tableType) {
+        return MethodSpec.methodBuilder("remove")
+                .addJavadoc("Unlinks {@code cleared}, unless a resize already dropped it.\n")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(entryClassName, "cleared")
+                .addStatement("$T table = this.table", tableType)
+                .addStatement("int index = cleared.hash & (table.length() - 1)")
+                .addStatement("$T previous = null", entryClassName)
+                .beginControlFlow("for ($T entry = table.get(index); entry != null; previous = entry, entry = entry.next)", entryClassName)
+                .beginControlFlow("if (entry == cleared)")
+                .beginControlFlow("if (previous == null)")
+                .addStatement("table.set(index, entry.next)")
+                .nextControlFlow("else")
+                .addStatement("previous.next = entry.next")
+                .endControlFlow()
+                .addStatement("count--")
+                .addStatement("return")
+                .endControlFlow()
+                .endControlFlow()
+                .build();
+    }
+
+    /**
+     * The live entries are copied to a new table, so that readers of the old one still see complete chains. The
+     * entries left behind are not found by {@code remove} when their value is collected.
+     */
+    private static MethodSpec getResizeMethodSpec(TypeName type, ClassName entryClassName, TypeName tableType) {
+        return MethodSpec.methodBuilder("resize")
+                .addModifiers(Modifier.PRIVATE)
+                .addParameter(tableType, "table")
+                .addStatement("$T resized = new $T(table.length() * 2)", tableType, tableType)
+                .addStatement("int live = 0")
+                .beginControlFlow("for (int i = 0; i < table.length(); i++)")
+                .beginControlFlow("for ($T entry = table.get(i); entry != null; entry = entry.next)", entryClassName)
+                .addStatement("$T value = entry.get()", type)
+                .beginControlFlow("if (value != null)")
+                .addStatement("int index = entry.hash & (resized.length() - 1)")
+                .addStatement("resized.set(index, new $T(value, entry.hash, resized.get(index), queue))", entryClassName)
+                .addStatement("live++")
+                .endControlFlow()
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("this.table = resized")
+                .addStatement("this.count = live")
+                .build();
+    }
+
+    private static TypeSpec getEntryTypeSpec(TypeName type, ClassName entryClassName) {
+        TypeName queueType = ParameterizedTypeName.get(ClassName.get(ReferenceQueue.class), type);
+
+        return TypeSpec.classBuilder(ENTRY_CLASS_NAME)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .superclass(ParameterizedTypeName.get(ClassName.get(WeakReference.class), type))
+                .addField(int.class, "hash", Modifier.FINAL)
+                .addField(entryClassName, "next", Modifier.VOLATILE)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(type, "value")
+                        .addParameter(int.class, "hash")
+                        .addParameter(entryClassName, "next")
+                        .addParameter(queueType, "queue")
+                        .addStatement("super(value, queue)")
+                        .addStatement("this.hash = hash")
+                        .addStatement("this.next = next")
+                        .build())
+                .build();
+    }
+
+    /**
+     * Assigns the value of the entry while checking it, and compares the fields like {@code @Memoize} compares
+     * arguments: like {@code equals} of the boxed values.
+     */
+    private static CodeBlock getMatchesCode(List<FieldModel> fields, Names names) {
+        CodeBlock.Builder matches = CodeBlock.builder()
+                .add("$L.hash == $L && ($L = $L.get()) != null", names.entry, names.hash, names.value, names.entry);
+
+        for (FieldModel field : fields) {
+            matches.add(" && $L", MemoizeGenerator.getEqualsCode(field, names.value));
+        }
+
+        return matches.build();
+    }
+
+    /**
+     * Names of the locals of the generated code that sit next to the fields passed as parameters.
+     */
+    private static class Names {
+        final String hash;
+        final String table;
+        final String index;
+        final String head;
+        final String entry;
+        final String value;
+
+        Names(List<FieldModel> fields) {
+            hash = Utils.getUniqueName("hash", fields);
+            table = Utils.getUniqueName("table", fields);
+            index = Utils.getUniqueName("index", fields);
+            head = Utils.getUniqueName("head", fields);
+            entry = Utils.getUniqueName("entry", fields);
+            value = Utils.getUniqueName("value", fields);
+        }
+    }
+}
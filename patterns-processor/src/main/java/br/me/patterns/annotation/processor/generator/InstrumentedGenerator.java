@@ -0,0 +1,303 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.model.FieldModel;
+import br.me.patterns.annotation.processor.model.InstrumentedModel;
+import br.me.patterns.annotation.processor.model.MethodModel;
+
+/**
+ * Generates {@code <Type>Instrumented_}, a subclass that times the public methods of an {@code @Instrumented} class.
+ *
+ * Each method has a nested {@code Metrics} instance holding, per stripe of threads, its total time and a histogram of
+ * {@link #BUCKETS} power-of-two buckets in an {@code AtomicLongArray}. The number of calls is the sum of the buckets, so
+ * a call costs two {@code System.nanoTime()} and two uncontended atomic additions. The stripes are padded apart so that
+ * threads recording on different stripes do not share cache lines.
+ */
+public class InstrumentedGenerator {
+
+    static final String PATTERN_NAME = "Instrumented";
+    static final String CREATED_CLASS_SUFFIX = "Instrumented_";
+    static final String METRICS_CLASS_NAME = "Metrics";
+    static final String SNAPSHOT_CLASS_NAME = "Snapshot";
+    static final String METRICS_FIELD_SUFFIX = "_METRICS";
+    static final String ENABLED_FIELD_NAME = "ENABLED";
+    static final String ENABLED_PROPERTY = "patterns.instrumented";
+    static final String METRICS_METHOD_NAME = "metrics";
+    static final String RECORD_METHOD_NAME = "record";
+    static final int BUCKETS = 40;
+    /**
+     * Longs between the last bucket of a stripe and the total of the next one, a cache line of 64 bytes.
+     */
+    static final int PADDING = 8;
+
+    public static JavaFile generate(Element element) {
+        return generate(InstrumentedModel.from(element));
+    }
+
+    public static JavaFile generate(InstrumentedModel model) {
+        ClassName className = getTargetClassName(model.packageName, model.simpleName);
+        ClassName metricsClassName = className.nestedClass(METRICS_CLASS_NAME);
+        ClassName snapshotClassName = metricsClassName.nestedClass(SNAPSHOT_CLASS_NAME);
+
+        TypeSpec.Builder instrumentedTypeSpec = TypeSpec.classBuilder(className)
+                .addModifiers(Modifier.PUBLIC)
+                .superclass(model.superType)
+                .addField(FieldSpec.builder(boolean.class, ENABLED_FIELD_NAME, Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                        .addJavadoc("Whether calls are recorded, read once. When false, the overrides only call {@code super}.\n")
+                        .initializer(model.enabled
+                                ? CodeBlock.of("! $S.equals($T.getProperty($S))", "false", System.class, ENABLED_PROPERTY)
+                                : CodeBlock.of("false"))
+                        .build());
+
+        for (MethodModel constructor : model.constructors) {
+            instrumentedTypeSpec.addMethod(MemoizeGenerator.getConstructorSpec(constructor));
+        }
+
+        TypeName snapshotsType = ParameterizedTypeName.get(ClassName.get(Map.class), ClassName.get(String.class), snapshotClassName);
+        TypeName linkedSnapshotsType = ParameterizedTypeName.get(ClassName.get(LinkedHashMap.class), ClassName.get(String.class), snapshotClassName);
+        MethodSpec.Builder metricsMethod = MethodSpec.methodBuilder(METRICS_METHOD_NAME)
+                .addJavadoc("@return the calls and latency of every instrumented method until now, by signature, in declaration\n"
+                        + "order.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(snapshotsType)
+                .addStatement("$T metrics = new $T()", snapshotsType, linkedSnapshotsType);
+
+        List<String> metricsNames = Utils.getOverloadNames(model.methods, InstrumentedGenerator::getConstantName);
+        for (int i = 0; i < model.methods.size(); i++) {
+            MethodModel method = model.methods.get(i);
+            String metricsFieldName = getConstantName(metricsNames.get(i)) + METRICS_FIELD_SUFFIX;
+            instrumentedTypeSpec.addField(FieldSpec.builder(metricsClassName, metricsFieldName, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                            .initializer("new $T($S)", metricsClassName, getSignature(method))
+                            .build())
+                    .addMethod(getOverrideMethodSpec(method, metricsFieldName));
+            metricsMethod.addStatement("metrics.put($L.name, $L.snapshot())", metricsFieldName, metricsFieldName);
+        }
+
+        return JavaFile.builder(model.packageName, instrumentedTypeSpec
+                .addMethod(metricsMethod
+                        .addStatement("return $T.unmodifiableMap(metrics)", Collections.class)
+                        .build())
+                .addType(getMetricsTypeSpec(metricsClassName, snapshotClassName))
+                .addOriginatingElement(model.originatingElement)
+                .build())
+                .build();
+    }
+
+    public static ClassName getTargetClassName(String packageName, String simpleName) {
+        return ClassName.get(packageName, simpleName + CREATED_CLASS_SUFFIX);
+    }
+
+    /**
+     * @return {@code sumOfSquares} as {@code SUM_OF_SQUARES}.
+     */
+    static String getConstantName(String name) {
+        StringBuilder constantName = new StringBuilder();
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                constantName.append('_');
+            }
+            constantName.append(Character.toUpperCase(c));
+        }
+
+        return constantName.toString();
+    }
+
+    /**
+     * @return {@code name(Type, Type)}, with the simple names of the parameter types, to tell overloads apart.
+     */
+    static String getSignature(MethodModel method) {
+        StringBuilder signature = new StringBuilder(method.name).append('(');
+        for (int i = 0; i < method.parameters.size(); i++) {
+            signature.append(i == 0 ? "" : ", ").append(getSimpleName(method.parameters.get(i).type));
+        }
+
+        return signature.append(')').toString();
+    }
+
+    private static String getSimpleName(TypeName type) {
+        if (type instanceof ClassName) {
+            return ((ClassName) type).simpleName();
+        }
+        if (type instanceof ArrayTypeName) {
+            return getSimpleName(((ArrayTypeName) type).componentType) + "[]";
+        }
+        if (type instanceof ParameterizedTypeName) {
+            StringBuilder simpleName = new StringBuilder(((ParameterizedTypeName) type).rawType.simpleName()).append('<');
+            for (int i = 0; i < ((ParameterizedTypeName) type).typeArguments.size(); i++) {
+                simpleName.append(i == 0 ? "" : ", ").append(getSimpleName(((ParameterizedTypeName) type).typeArguments.get(i)));
+            }
+            return simpleName.append('>').toString();
+        }
+
+        return type.toString();
+    }
+
+    /**
+     * The time is recorded in {@code finally}, so calls that throw are counted too.
+     */
+    private static MethodSpec getOverrideMethodSpec(MethodModel method, String metricsFieldName) {
+        MethodSpec.Builder override = MethodSpec.methodBuilder(method.name)
+                .addAnnotation(Override.class)
+                .addModifiers(Modifier.PUBLIC)
+                .returns(method.returnType);
+
+        for (FieldModel parameter : method.parameters) {
+            override.addParameter(parameter.type, parameter.name);
+        }
+
+        CodeBlock superCall = CodeBlock.of("super.$L($L)", method.name, MemoizeGenerator.getArgumentsCode(method.parameters, ""));
+        CodeBlock statement = method.returnType.equals(TypeName.VOID)
+                ? superCall
+                : CodeBlock.of("return $L", superCall);
+        String start = Utils.getUniqueName("start", method.parameters);
+
+        override.addExceptions(method.thrownTypes)
+                .beginControlFlow("if (! $L)", ENABLED_FIELD_NAME)
+                .addStatement(statement);
+        if (method.returnType.equals(TypeName.VOID)) {
+            override.addStatement("return");
+        }
+
+        return override.endControlFlow()
+                .addStatement("long $L = $T.nanoTime()", start, System.class)
+                .beginControlFlow("try")
+                .addStatement(statement)
+                .nextControlFlow("finally")
+                .addStatement("$L.$L($T.nanoTime() - $L)", metricsFieldName, RECORD_METHOD_NAME, System.class, start)
+                .endControlFlow()
+                .build();
+    }
+
+    private static TypeSpec getMetricsTypeSpec(ClassName metricsClassName, ClassName snapshotClassName) {
+        return TypeSpec.classBuilder(metricsClassName)
+                .addJavadoc("Calls and latency of one method, added up over {@code STRIPES} stripes of threads. A stripe is\n"
+                        + "the total time followed by the calls in each bucket.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(int.class, "BUCKETS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", BUCKETS)
+                        .build())
+                .addField(FieldSpec.builder(int.class, "STRIDE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("1 + BUCKETS + $L", PADDING)
+                        .build())
+                .addField(FieldSpec.builder(int.class, SingletonGenerator.STRIPES_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer(SingletonGenerator.getStripesInitializer(0))
+                        .build())
+                .addField(String.class, "name", Modifier.FINAL)
+                .addField(FieldSpec.builder(AtomicLongArray.class, "cells", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T($L * STRIDE)", AtomicLongArray.class, SingletonGenerator.STRIPES_FIELD_NAME)
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(String.class, "name")
+                        .addStatement("this.name = name")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(RECORD_METHOD_NAME)
+                        .addParameter(long.class, "nanos")
+                        .addStatement("int stripe = $L() * STRIDE", SingletonGenerator.STRIPE_INDEX_METHOD_NAME)
+                        .addStatement("cells.getAndAdd(stripe, nanos)")
+                        .addStatement("cells.getAndIncrement(stripe + 1 + $T.min(64 - $T.numberOfLeadingZeros(nanos), BUCKETS - 1))",
+                                Math.class, Long.class)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("snapshot")
+                        .addJavadoc("Adds up the stripes cell by cell, so calls recorded meanwhile may be counted in the total time\n"
+                                + "and not in the buckets, or the other way around.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(snapshotClassName)
+                        .addStatement("long totalNanos = 0")
+                        .addStatement("long[] buckets = new long[BUCKETS]")
+                        .beginControlFlow("for (int stripe = 0; stripe < $L * STRIDE; stripe += STRIDE)", SingletonGenerator.STRIPES_FIELD_NAME)
+                        .addStatement("totalNanos += cells.get(stripe)")
+                        .beginControlFlow("for (int i = 0; i < BUCKETS; i++)")
+                        .addStatement("buckets[i] += cells.get(stripe + 1 + i)")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return new $T(name, totalNanos, buckets)", snapshotClassName)
+                        .build())
+                .addMethod(SingletonGenerator.getStripeIndexMethodSpec())
+                .addType(getSnapshotTypeSpec(snapshotClassName))
+                .build();
+    }
+
+    private static TypeSpec getSnapshotTypeSpec(ClassName snapshotClassName) {
+        return TypeSpec.classBuilder(snapshotClassName)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addField(String.class, "name", Modifier.PUBLIC, Modifier.FINAL)
+                .addField(long.class, "count", Modifier.PUBLIC, Modifier.FINAL)
+                .addField(long.class, "totalNanos", Modifier.PUBLIC, Modifier.FINAL)
+                .addField(long[].class, "buckets", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(String.class, "name")
+                        .addParameter(long.class, "totalNanos")
+                        .addParameter(long[].class, "buckets")
+                        .addStatement("long count = 0")
+                        .beginControlFlow("for (long bucket : buckets)")
+                        .addStatement("count += bucket")
+                        .endControlFlow()
+                        .addStatement("this.name = name")
+                        .addStatement("this.count = count")
+                        .addStatement("this.totalNanos = totalNanos")
+                        .addStatement("this.buckets = buckets")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("meanNanos")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(double.class)
+                        .addStatement("return count == 0 ? 0 : (double) totalNanos / count")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("bucketCount")
+                        .addJavadoc("@return the calls that took no time for bucket 0, and from {@code 2^(bucket-1)} up to\n"
+                                + "{@code 2^bucket} nanoseconds for the others. The last bucket counts every longer call too.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addParameter(int.class, "bucket")
+                        .addStatement("return buckets[bucket]")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("buckets")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("return buckets.length")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("percentileNanos")
+                        .addJavadoc("@return the upper bound of the bucket holding the given percentile, between 0 and 100, so\n"
+                                + "the real latency is at most this and more than half of it.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addParameter(double.class, "percentile")
+                        .addStatement("long rank = (long) $T.ceil(count * percentile / 100)", Math.class)
+                        .addStatement("long calls = 0")
+                        .beginControlFlow("for (int i = 0; i < buckets.length; i++)")
+                        .addStatement("calls += buckets[i]")
+                        .beginControlFlow("if (calls >= rank && calls > 0)")
+                        .addStatement("return i == 0 ? 0 : 1L << i")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return 0")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("toString")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(String.class)
+                        .addStatement("return name + $S + count + $S + (long) meanNanos() + $S + percentileNanos(50) + $S + percentileNanos(99) + $S",
+                                ": ", " calls, mean ", " ns, p50 <= ", " ns, p99 <= ", " ns")
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,134 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.model.BuilderModel;
+import br.me.patterns.annotation.processor.model.FieldModel;
+
+/**
+ * Adds the canonicalization tables of the {@code @Interned} fields of a {@code @Builder} class to its builder: a
+ * nested {@code Interner} class and one {@code <FIELD>_INTERNER} constant per field, used by the setters.
+ *
+ * An interner is a direct-mapped table: the hash of a value picks one slot, an equal value found there is returned
+ * and any other value takes the slot. It never grows nor locks, and a lost race only costs a later miss.
+ */
+public class InternerGenerator {
+
+    static final String INTERNER_CLASS_NAME = "Interner";
+    static final String INTERNER_FIELD_SUFFIX = "_INTERNER";
+    static final String INTERN_METHOD_NAME = "intern";
+
+    static void addInternerMembers(TypeSpec.Builder builderTypeSpec, BuilderModel model, ClassName builderClassName) {
+        ClassName internerClassName = builderClassName.nestedClass(INTERNER_CLASS_NAME);
+        boolean interned = false;
+
+        for (FieldModel field : model.fields) {
+            if (! field.interned) {
+                continue;
+            }
+
+            interned = true;
+            builderTypeSpec.addField(FieldSpec.builder(internerClassName, getInternerFieldName(field),
+                            Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T($L)", internerClassName, getTableSize(field.internCapacity))
+                    .build());
+        }
+
+        if (interned) {
+            builderTypeSpec.addType(getInternerTypeSpec(internerClassName));
+        }
+    }
+
+    /**
+     * @return {@code value} routed through the interner of {@code field}, or {@code value} itself when the field is
+     * not interned.
+     */
+    static CodeBlock getInternedValueCode(ClassName builderClassName, FieldModel field, CodeBlock value) {
+        if (! field.interned) {
+            return value;
+        }
+
+        return CodeBlock.of("$T.$L.$L($L)", builderClassName, getInternerFieldName(field), INTERN_METHOD_NAME, value);
+    }
+
+    static String getInternerFieldName(FieldModel field) {
+        return BuilderGenerator.getConstantName(field) + INTERNER_FIELD_SUFFIX;
+    }
+
+    private static int getTableSize(int capacity) {
+        return Utils.roundUpToPowerOfTwo(capacity);
+    }
+
+    /**
+     * Every setter call counts a hit or a miss, on striped counters, since the interner is shared by all the threads
+     * building records.
+     */
+    private static TypeSpec getInternerTypeSpec(ClassName internerClassName) {
+        TypeName tableType = ParameterizedTypeName.get(AtomicReferenceArray.class, String.class);
+        ClassName counterClassName = internerClassName.nestedClass(SingletonGenerator.COUNTER_CLASS_NAME);
+
+        return TypeSpec.classBuilder(INTERNER_CLASS_NAME)
+                .addJavadoc("Bounded table of canonical strings; {@code size} is a power of two.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addField(tableType, "table", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(int.class, "mask", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(FieldSpec.builder(counterClassName, "hits", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", counterClassName)
+                        .build())
+                .addField(FieldSpec.builder(counterClassName, "misses", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", counterClassName)
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(int.class, "size")
+                        .addStatement("this.table = new $T(size)", tableType)
+                        .addStatement("this.mask = size - 1")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(INTERN_METHOD_NAME)
+                        .addJavadoc("@return an instance equal to {@code value} seen before, or {@code value}.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(String.class)
+                        .addParameter(String.class, "value")
+                        .beginControlFlow("if (value == null)")
+                        .addStatement("return null")
+                        .endControlFlow()
+                        .addStatement("int hash = value.hashCode()")
+                        .addStatement("int index = (hash ^ (hash >>> 16)) & mask")
+                        .addStatement("String canonical = table.get(index)")
+                        .beginControlFlow("if (canonical != null && canonical.equals(value))")
+                        .addStatement("hits.$L()", SingletonGenerator.INCREMENT_METHOD_NAME)
+                        .addStatement("return canonical")
+                        .endControlFlow()
+                        .addStatement("table.lazySet(index, value)")
+                        .addStatement("misses.$L()", SingletonGenerator.INCREMENT_METHOD_NAME)
+                        .addStatement("return value")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("hits")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addStatement("return hits.get()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("misses")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addStatement("return misses.get()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("size")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("return table.length()")
+                        .build())
+                .addType(SingletonGenerator.getCounterTypeSpec())
+                .build();
+    }
+}
@@ -0,0 +1,697 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.model.BuilderModel;
+import br.me.patterns.annotation.processor.model.FieldModel;
+
+/**
+ * Generates the {@code <Built>Json} companion of a {@code @Builder(json = true)} class, which writes built objects as
+ * JSON objects and parses them back into the builder without reflection.
+ *
+ * The writer appends one constant per field holding its quoted name with the separators around it, so that no
+ * name is escaped at run time. The parser reads a {@code Reader} or a {@code CharSequence} through a small buffered
+ * tokenizer. Member names are matched in place against {@code NAMES}, trying the field after the previous member
+ * first, so an object written in field order is dispatched with one comparison per member and no allocation; unknown
+ * members are skipped.
+ */
+public class JsonGenerator {
+
+    static final String CREATED_CLASS_SUFFIX = "Json";
+    static final String PARSER_CLASS_NAME = "Parser";
+    static final String WRITE_METHOD_NAME = "write";
+    static final String READ_METHOD_NAME = "read";
+    static final String TO_JSON_METHOD_NAME = "toJson";
+    static final String NAMES_FIELD_NAME = "NAMES";
+
+    private static final TypeName STRING = ClassName.get(String.class);
+    private static final ClassName STRING_BUILDER = ClassName.get(StringBuilder.class);
+    private static final ClassName APPENDABLE = ClassName.get(Appendable.class);
+
+    private static final int VALUE_CAPACITY = 8;
+
+    static JavaFile generate(BuilderModel model, ClassName builtClassName, ClassName builderClassName) {
+        ClassName jsonClassName = ClassName.get(model.packageName, builtClassName.simpleName() + CREATED_CLASS_SUFFIX);
+        ClassName parserClassName = jsonClassName.nestedClass(PARSER_CLASS_NAME);
+        List<FieldModel> fields = model.fields;
+        List<String> fragmentNames = getFragmentNames(fields);
+
+        TypeSpec.Builder jsonTypeSpec = TypeSpec.classBuilder(jsonClassName)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+
+        int capacity = 2;
+        for (int i = 0; i < fields.size(); i++) {
+            String fragment = (i == 0 ? "{" : ",") + "\"" + fields.get(i).name + "\":";
+            capacity += fragment.length() + VALUE_CAPACITY;
+            jsonTypeSpec.addField(FieldSpec.builder(String.class, fragmentNames.get(i), Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("$S", fragment)
+                    .build());
+        }
+
+        CodeBlock.Builder names = CodeBlock.builder();
+        for (int i = 0; i < fields.size(); i++) {
+            names.add(i == 0 ? "$S" : ", $S", fields.get(i).name);
+        }
+
+        jsonTypeSpec.addField(FieldSpec.builder(String[].class, NAMES_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("{$L}", names.build())
+                        .build())
+                .addField(FieldSpec.builder(int.class, "CAPACITY", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", capacity)
+                        .build())
+                .addField(FieldSpec.builder(String.class, "HEX_DIGITS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$S", "0123456789abcdef")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(TO_JSON_METHOD_NAME)
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(String.class)
+                        .addParameter(builtClassName, "value")
+                        .addStatement("return $L(value, new $T(CAPACITY)).toString()", WRITE_METHOD_NAME, StringBuilder.class)
+                        .build())
+                .addMethod(getWriteMethodSpec(model, fragmentNames, builtClassName, STRING_BUILDER))
+                .addMethod(getWriteMethodSpec(model, fragmentNames, builtClassName, APPENDABLE))
+                .addMethod(MethodSpec.methodBuilder(READ_METHOD_NAME)
+                        .addJavadoc("Reads one JSON object from {@code in}. Input is read ahead in blocks, so what follows the object is consumed.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(builtClassName)
+                        .addParameter(Reader.class, "in")
+                        .addException(IOException.class)
+                        .addStatement("return $L(new $T(in))", READ_METHOD_NAME, parserClassName)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(READ_METHOD_NAME)
+                        .addJavadoc("Reads {@code json}, which must hold exactly one JSON object.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(builtClassName)
+                        .addParameter(CharSequence.class, "json")
+                        .beginControlFlow("try")
+                        .addStatement("$T parser = new $T(json.toString().toCharArray())", parserClassName, parserClassName)
+                        .addStatement("$T value = $L(parser)", builtClassName, READ_METHOD_NAME)
+                        .addStatement("parser.end()")
+                        .addStatement("return value")
+                        .nextControlFlow("catch ($T e)", IOException.class)
+                        .addStatement("throw new $T(e.getMessage(), e)", IllegalArgumentException.class)
+                        .endControlFlow()
+                        .build())
+                .addMethod(getReadMethodSpec(model, builtClassName, builderClassName, parserClassName));
+
+        for (TypeName output : new TypeName[] {STRING_BUILDER, APPENDABLE}) {
+            jsonTypeSpec.addMethod(getWriteStringMethodSpec(output));
+        }
+
+        return JavaFile.builder(model.packageName, jsonTypeSpec
+                .addType(getParserTypeSpec(fields))
+                .addOriginatingElement(model.originatingElement)
+                .build())
+                .build();
+    }
+
+    /**
+     * The {@code StringBuilder} overload appends numbers without creating strings; the {@code Appendable} one, used
+     * for writers, delegates to it when given a {@code StringBuilder}.
+     */
+    private static MethodSpec getWriteMethodSpec(BuilderModel model, List<String> fragmentNames, ClassName builtClassName,
+            ClassName output) {
+        boolean appendable = output.equals(APPENDABLE);
+        MethodSpec.Builder write = MethodSpec.methodBuilder(WRITE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(output)
+                .addParameter(builtClassName, "value")
+                .addParameter(output, "out");
+        if (appendable) {
+            write.addException(IOException.class)
+                    .beginControlFlow("if (out instanceof $T)", StringBuilder.class)
+                    .addStatement("return $L(value, ($T) out)", WRITE_METHOD_NAME, StringBuilder.class)
+                    .endControlFlow();
+        }
+
+        for (int i = 0; i < model.fields.size(); i++) {
+            FieldModel field = model.fields.get(i);
+            write.addStatement("out.append($L)", fragmentNames.get(i));
+            CodeBlock access = BuilderGenerator.getFieldAccessCode(model, "value", field);
+            if (field.isPrimitive()) {
+                write.addCode(getWriteValueCode(field, field.type, access, appendable));
+            } else {
+                write.beginControlFlow("if ($L == null)", access)
+                        .addStatement("out.append($S)", "null")
+                        .nextControlFlow("else")
+                        .addCode(getWriteValueCode(field, field.type.isBoxedPrimitive() ? field.type.unbox() : field.type, access, appendable))
+                        .endControlFlow();
+            }
+        }
+
+        return write.addStatement("out.append($S)", model.fields.isEmpty() ? "{}" : "}")
+                .addStatement("return out")
+                .build();
+    }
+
+    private static CodeBlock getWriteValueCode(FieldModel field, TypeName type, CodeBlock access, boolean appendable) {
+        CodeBlock.Builder code = CodeBlock.builder();
+        if (field.type.isBoxedPrimitive()) {
+            access = CodeBlock.of("$L.$LValue()", access, type);
+        }
+
+        if (type.equals(STRING)) {
+            code.addStatement("writeString(out, $L)", access);
+        } else if (type.equals(TypeName.CHAR)) {
+            code.addStatement("writeString(out, $T.valueOf($L))", String.class, access);
+        } else if (type.equals(TypeName.FLOAT) || type.equals(TypeName.DOUBLE)) {
+            TypeName boxed = type.box();
+            code.beginControlFlow("if ($T.isNaN($L) || $T.isInfinite($L))", boxed, access, boxed, access)
+                    .addStatement("throw new $T($S + $L)", IllegalArgumentException.class, "Not a JSON number in " + field.name + ": ", access)
+                    .endControlFlow()
+                    .addStatement("$L", getAppendCode(access, appendable));
+        } else {
+            code.addStatement("$L", getAppendCode(access, appendable));
+        }
+
+        return code.build();
+    }
+
+    private static CodeBlock getAppendCode(CodeBlock access, boolean appendable) {
+        return appendable ? CodeBlock.of("out.append($T.valueOf($L))", String.class, access) : CodeBlock.of("out.append($L)", access);
+    }
+
+    private static MethodSpec getReadMethodSpec(BuilderModel model, ClassName builtClassName, ClassName builderClassName,
+                                                ClassName parserClassName) {
+        CodeBlock.Builder cases = CodeBlock.builder().beginControlFlow("switch (member)");
+        for (int i = 0; i < model.fields.size(); i++) {
+            FieldModel field = model.fields.get(i);
+            TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+            CodeBlock value = getReadValueCode(type);
+            if (field.type.isBoxedPrimitive()) {
+                value = CodeBlock.of("parser.readNull() ? null : $T.valueOf($L)", field.type, value);
+            } else if (! field.isPrimitive()) {
+                value = CodeBlock.of("parser.readNull() ? null : $L", value);
+            }
+
+            cases.add("case $L:\n", i)
+                    .indent()
+                    .addStatement("builder.$L($L)", BuilderGenerator.getSetterName(field), value)
+                    .addStatement("break")
+                    .unindent();
+        }
+        cases.add("default:\n")
+                .indent()
+                .addStatement("parser.skipValue()")
+                .unindent()
+                .endControlFlow();
+
+        return MethodSpec.methodBuilder(READ_METHOD_NAME)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(builtClassName)
+                .addParameter(parserClassName, "parser")
+                .addException(IOException.class)
+                .addStatement("$T builder = new $T()", builderClassName, builderClassName)
+                .addStatement("parser.expect('{')")
+                .beginControlFlow("if (! parser.consume('}'))")
+                .addStatement("int expected = 0")
+                .beginControlFlow("do")
+                .addStatement("int member = parser.readName($L, expected)", NAMES_FIELD_NAME)
+                .addStatement("parser.expect(':')")
+                .addCode(cases.build())
+                .addStatement("expected = member + 1")
+                .endControlFlow("while (parser.consume(','))")
+                .addStatement("parser.expect('}')")
+                .endControlFlow()
+                .addStatement("return builder.build()")
+                .build();
+    }
+
+    private static CodeBlock getReadValueCode(TypeName type) {
+        if (type.equals(STRING)) {
+            return CodeBlock.of("parser.readString()");
+        } else if (type.equals(TypeName.BOOLEAN)) {
+            return CodeBlock.of("parser.readBoolean()");
+        } else if (type.equals(TypeName.CHAR)) {
+            return CodeBlock.of("parser.readChar()");
+        } else if (type.equals(TypeName.DOUBLE)) {
+            return CodeBlock.of("parser.readDouble()");
+        } else if (type.equals(TypeName.FLOAT)) {
+            return CodeBlock.of("(float) parser.readDouble()");
+        } else if (type.equals(TypeName.LONG)) {
+            return CodeBlock.of("parser.readLong($T.MIN_VALUE, $T.MAX_VALUE)", Long.class, Long.class);
+        }
+
+        TypeName boxed = type.box();
+        return CodeBlock.of("($T) parser.readLong($T.MIN_VALUE, $T.MAX_VALUE)", type, boxed, boxed);
+    }
+
+    private static MethodSpec getWriteStringMethodSpec(TypeName output) {
+        MethodSpec.Builder writeString = MethodSpec.methodBuilder("writeString")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addParameter(output, "out")
+                .addParameter(String.class, "value");
+        if (output.equals(APPENDABLE)) {
+            writeString.addException(IOException.class);
+        }
+
+        return writeString.addStatement("out.append('\"')")
+                .addStatement("int start = 0")
+                .beginControlFlow("for (int i = 0; i < value.length(); i++)")
+                .addStatement("char c = value.charAt(i)")
+                .beginControlFlow("if (c >= 0x20 && c != '\"' && c != '\\\\')")
+                .addStatement("continue")
+                .endControlFlow()
+                .addStatement("out.append(value, start, i)")
+                .addStatement("start = i + 1")
+                .beginControlFlow("switch (c)")
+                .addCode("case '\"':\n$>").addStatement("out.append($S)", "\\\"").addStatement("break").addCode("$<")
+                .addCode("case '\\\\':\n$>").addStatement("out.append($S)", "\\\\").addStatement("break").addCode("$<")
+                .addCode("case '\\n':\n$>").addStatement("out.append($S)", "\\n").addStatement("break").addCode("$<")
+                .addCode("case '\\r':\n$>").addStatement("out.append($S)", "\\r").addStatement("break").addCode("$<")
+                .addCode("case '\\t':\n$>").addStatement("out.append($S)", "\\t").addStatement("break").addCode("$<")
+                .addCode("default:\n$>")
+                .addStatement("out.append($S).append(HEX_DIGITS.charAt(c >> 4)).append(HEX_DIGITS.charAt(c & 0xf))", "\\u00")
+                .addCode("$<")
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("out.append(value, start, value.length()).append('\"')")
+                .build();
+    }
+
+    /**
+     * Tokenizer over a buffered {@code Reader}, or over a whole array of chars when {@code reader} is null.
+     */
+    private static TypeSpec getParserTypeSpec(List<FieldModel> fields) {
+        boolean numbers = false;
+        boolean booleans = false;
+        boolean chars = false;
+        for (FieldModel field : fields) {
+            TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+            numbers |= type.isPrimitive() && ! type.equals(TypeName.BOOLEAN) && ! type.equals(TypeName.CHAR);
+            booleans |= type.equals(TypeName.BOOLEAN);
+            chars |= type.equals(TypeName.CHAR);
+        }
+
+        TypeSpec.Builder parser = TypeSpec.classBuilder(PARSER_CLASS_NAME)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addField(Reader.class, "reader", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(char[].class, "buffer", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(FieldSpec.builder(StringBuilder.class, "text", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", StringBuilder.class)
+                        .build())
+                .addField(int.class, "position", Modifier.PRIVATE)
+                .addField(int.class, "limit", Modifier.PRIVATE)
+                .addField(int.class, "consumed", Modifier.PRIVATE)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(Reader.class, "reader")
+                        .addStatement("this.reader = reader")
+                        .addStatement("this.buffer = new char[1024]")
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(char[].class, "chars")
+                        .addStatement("this.reader = null")
+                        .addStatement("this.buffer = chars")
+                        .addStatement("this.limit = chars.length")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("peek")
+                        .addJavadoc("@return the next char without consuming it, or -1 at the end of the input.\n")
+                        .returns(int.class)
+                        .addException(IOException.class)
+                        .beginControlFlow("if (position == limit)")
+                        .beginControlFlow("if (reader == null)")
+                        .addStatement("return -1")
+                        .endControlFlow()
+                        .addStatement("consumed += limit")
+                        .addStatement("position = 0")
+                        .addStatement("limit = Math.max(reader.read(buffer, 0, buffer.length), 0)")
+                        .beginControlFlow("if (limit == 0)")
+                        .addStatement("return -1")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return buffer[position]")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("next")
+                        .returns(char.class)
+                        .addException(IOException.class)
+                        .beginControlFlow("if (peek() < 0)")
+                        .addStatement("throw error($S)", "unexpected end of input")
+                        .endControlFlow()
+                        .addStatement("return buffer[position++]")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("skipWhitespace")
+                        .returns(int.class)
+                        .addException(IOException.class)
+                        .addStatement("int c = peek()")
+                        .beginControlFlow("while (c == ' ' || c == '\\n' || c == '\\r' || c == '\\t')")
+                        .addStatement("position++")
+                        .addStatement("c = peek()")
+                        .endControlFlow()
+                        .addStatement("return c")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("expect")
+                        .addException(IOException.class)
+                        .addParameter(char.class, "expected")
+                        .beginControlFlow("if (skipWhitespace() != expected)")
+                        .addStatement("throw error(\"expected '\" + expected + \"'\")")
+                        .endControlFlow()
+                        .addStatement("position++")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("consume")
+                        .returns(boolean.class)
+                        .addException(IOException.class)
+                        .addParameter(char.class, "expected")
+                        .beginControlFlow("if (skipWhitespace() != expected)")
+                        .addStatement("return false")
+                        .endControlFlow()
+                        .addStatement("position++")
+                        .addStatement("return true")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("end")
+                        .addException(IOException.class)
+                        .beginControlFlow("if (skipWhitespace() >= 0)")
+                        .addStatement("throw error($S)", "unexpected content after the object")
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("readLiteral")
+                        .addException(IOException.class)
+                        .addParameter(String.class, "literal")
+                        .addStatement("skipWhitespace()")
+                        .beginControlFlow("for (int i = 0; i < literal.length(); i++)")
+                        .beginControlFlow("if (next() != literal.charAt(i))")
+                        .addStatement("throw error(\"expected \" + literal)")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("readNull")
+                        .addJavadoc("Consumes {@code null} if it comes next.\n")
+                        .returns(boolean.class)
+                        .addException(IOException.class)
+                        .beginControlFlow("if (skipWhitespace() != 'n')")
+                        .addStatement("return false")
+                        .endControlFlow()
+                        .addStatement("readLiteral($S)", "null")
+                        .addStatement("return true")
+                        .build())
+                .addMethod(getReadStringMethodSpec())
+                .addMethod(getReadEscapedMethodSpec())
+                .addMethod(MethodSpec.methodBuilder("readName")
+                        .addJavadoc("@return the index of the member name read in {@code names}, or -1 when it is not there.\n")
+                        .returns(int.class)
+                        .addException(IOException.class)
+                        .addParameter(String[].class, "names")
+                        .addParameter(int.class, "expected")
+                        .addStatement("expect('\"')")
+                        .addStatement("int start = position")
+                        .addStatement("char[] chars = buffer")
+                        .beginControlFlow("while (position < limit && buffer[position] >= 0x20 && buffer[position] != '\"' && buffer[position] != '\\\\')")
+                        .addStatement("position++")
+                        .endControlFlow()
+                        .addStatement("int length = position - start")
+                        .beginControlFlow("if (position < limit && buffer[position] == '\"')")
+                        .addStatement("position++")
+                        .nextControlFlow("else")
+                        .addComment("escaped or split by a refill: decoded the slow way")
+                        .addStatement("chars = readEscaped(start).toCharArray()")
+                        .addStatement("start = 0")
+                        .addStatement("length = chars.length")
+                        .endControlFlow()
+                        .beginControlFlow("if (expected < names.length && matches(names[expected], chars, start, length))")
+                        .addStatement("return expected")
+                        .endControlFlow()
+                        .beginControlFlow("for (int i = 0; i < names.length; i++)")
+                        .beginControlFlow("if (matches(names[i], chars, start, length))")
+                        .addStatement("return i")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return -1")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("matches")
+                        .addModifiers(Modifier.STATIC)
+                        .returns(boolean.class)
+                        .addParameter(String.class, "name")
+                        .addParameter(char[].class, "chars")
+                        .addParameter(int.class, "start")
+                        .addParameter(int.class, "length")
+                        .beginControlFlow("if (name.length() != length)")
+                        .addStatement("return false")
+                        .endControlFlow()
+                        .beginControlFlow("for (int i = 0; i < length; i++)")
+                        .beginControlFlow("if (name.charAt(i) != chars[start + i])")
+                        .addStatement("return false")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return true")
+                        .build());
+
+        if (chars) {
+            parser.addMethod(MethodSpec.methodBuilder("readChar")
+                    .returns(char.class)
+                    .addException(IOException.class)
+                    .addStatement("String value = readString()")
+                    .beginControlFlow("if (value.length() != 1)")
+                    .addStatement("throw error($S)", "expected a single char")
+                    .endControlFlow()
+                    .addStatement("return value.charAt(0)")
+                    .build());
+        }
+
+        if (booleans) {
+            parser.addMethod(MethodSpec.methodBuilder("readBoolean")
+                    .returns(boolean.class)
+                    .addException(IOException.class)
+                    .beginControlFlow("if (skipWhitespace() == 't')")
+                    .addStatement("readLiteral($S)", "true")
+                    .addStatement("return true")
+                    .endControlFlow()
+                    .addStatement("readLiteral($S)", "false")
+                    .addStatement("return false")
+                    .build());
+        }
+
+        if (numbers) {
+            parser.addMethod(MethodSpec.methodBuilder("readLong")
+                    .returns(long.class)
+                    .addException(IOException.class)
+                    .addParameter(long.class, "min")
+                    .addParameter(long.class, "max")
+                    .addStatement("boolean negative = skipWhitespace() == '-'")
+                    .beginControlFlow("if (negative)")
+                    .addStatement("position++")
+                    .endControlFlow()
+                    .addComment("accumulated negatively, so that Long.MIN_VALUE fits")
+                    .addStatement("long value = 0")
+                    .addStatement("int digits = 0")
+                    .addStatement("int c = peek()")
+                    .beginControlFlow("while (c >= '0' && c <= '9')")
+                    .beginControlFlow("if (digits == 1 && value == 0)")
+                    .addStatement("throw error($S)", "number with a leading zero")
+                    .endControlFlow()
+                    .beginControlFlow("if (value < Long.MIN_VALUE / 10 || value * 10 < Long.MIN_VALUE + (c - '0'))")
+                    .addStatement("throw error($S)", "number out of range")
+                    .endControlFlow()
+                    .addStatement("value = value * 10 - (c - '0')")
+                    .addStatement("digits++")
+                    .addStatement("position++")
+                    .addStatement("c = peek()")
+                    .endControlFlow()
+                    .beginControlFlow("if (digits == 0)")
+                    .addStatement("throw error($S)", "expected a value")
+                    .nextControlFlow("else if (c == '.' || c == 'e' || c == 'E')")
+                    .addStatement("throw error($S)", "not an integer")
+                    .nextControlFlow("else if (! negative && value == Long.MIN_VALUE)")
+                    .addStatement("throw error($S)", "number out of range")
+                    .endControlFlow()
+                    .addStatement("value = negative ? value : -value")
+                    .beginControlFlow("if (value < min || value > max)")
+                    .addStatement("throw error($S)", "number out of range")
+                    .endControlFlow()
+                    .addStatement("return value")
+                    .build());
+            parser.addMethod(MethodSpec.methodBuilder("readDouble")
+                    .returns(double.class)
+                    .addException(IOException.class)
+                    .addStatement("return Double.parseDouble(readNumber())")
+                    .build());
+        }
+
+        return parser.addMethod(MethodSpec.methodBuilder("readNumber")
+                        .addJavadoc("Reads a number as the JSON grammar spells it: no plus sign before it, no leading zeros, and\n"
+                                + "digits on both sides of the point and in the exponent.\n")
+                        .returns(String.class)
+                        .addException(IOException.class)
+                        .addStatement("skipWhitespace()")
+                        .addStatement("text.setLength(0)")
+                        .beginControlFlow("if (peek() == '-')")
+                        .addStatement("text.append(next())")
+                        .endControlFlow()
+                        .addStatement("int start = text.length()")
+                        .addStatement("int digits = readDigits()")
+                        .beginControlFlow("if (digits == 0)")
+                        .addStatement("throw error($S)", "expected a value")
+                        .nextControlFlow("else if (digits > 1 && text.charAt(start) == '0')")
+                        .addStatement("throw error($S)", "number with a leading zero")
+                        .endControlFlow()
+                        .beginControlFlow("if (peek() == '.')")
+                        .addStatement("text.append(next())")
+                        .beginControlFlow("if (readDigits() == 0)")
+                        .addStatement("throw error($S)", "expected a digit after the point")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("int c = peek()")
+                        .beginControlFlow("if (c == 'e' || c == 'E')")
+                        .addStatement("text.append(next())")
+                        .addStatement("c = peek()")
+                        .beginControlFlow("if (c == '+' || c == '-')")
+                        .addStatement("text.append(next())")
+                        .endControlFlow()
+                        .beginControlFlow("if (readDigits() == 0)")
+                        .addStatement("throw error($S)", "expected a digit in the exponent")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return text.toString()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("readDigits")
+                        .addJavadoc("Appends the digits that come next to {@code text}.\n\n@return how many there were.\n")
+                        .returns(int.class)
+                        .addException(IOException.class)
+                        .addStatement("int start = text.length()")
+                        .addStatement("int c = peek()")
+                        .beginControlFlow("while (c >= '0' && c <= '9')")
+                        .addStatement("text.append((char) c)")
+                        .addStatement("position++")
+                        .addStatement("c = peek()")
+                        .endControlFlow()
+                        .addStatement("return text.length() - start")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("skipValue")
+                        .addJavadoc("Skips the value of an unknown member, nested objects and arrays included.\n")
+                        .addException(IOException.class)
+                        .addStatement("int c = skipWhitespace()")
+                        .beginControlFlow("if (c == '\"')")
+                        .addStatement("readString()")
+                        .nextControlFlow("else if (c == '{')")
+                        .addStatement("position++")
+                        .beginControlFlow("if (! consume('}'))")
+                        .beginControlFlow("do")
+                        .addStatement("readString()")
+                        .addStatement("expect(':')")
+                        .addStatement("skipValue()")
+                        .endControlFlow("while (consume(','))")
+                        .addStatement("expect('}')")
+                        .endControlFlow()
+                        .nextControlFlow("else if (c == '[')")
+                        .addStatement("position++")
+                        .beginControlFlow("if (! consume(']'))")
+                        .beginControlFlow("do")
+                        .addStatement("skipValue()")
+                        .endControlFlow("while (consume(','))")
+                        .addStatement("expect(']')")
+                        .endControlFlow()
+                        .nextControlFlow("else if (c == 't')")
+                        .addStatement("readLiteral($S)", "true")
+                        .nextControlFlow("else if (c == 'f')")
+                        .addStatement("readLiteral($S)", "false")
+                        .nextControlFlow("else if (c == 'n')")
+                        .addStatement("readLiteral($S)", "null")
+                        .nextControlFlow("else")
+                        .addStatement("readNumber()")
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("error")
+                        .returns(IOException.class)
+                        .addParameter(String.class, "message")
+                        .addStatement("return new $T(\"Malformed JSON at \" + (consumed + position) + \": \" + message)", IOException.class)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Strings without escapes that lie whole in the buffer are created straight from it; the others are decoded by
+     * {@code readEscaped}, which continues from the chars already scanned.
+     */
+    private static MethodSpec getReadStringMethodSpec() {
+        return MethodSpec.methodBuilder("readString")
+                .returns(String.class)
+                .addException(IOException.class)
+                .addStatement("expect('\"')")
+                .addStatement("int start = position")
+                .beginControlFlow("while (position < limit)")
+                .addStatement("char c = buffer[position]")
+                .beginControlFlow("if (c == '\"')")
+                .addStatement("return new String(buffer, start, position++ - start)")
+                .nextControlFlow("else if (c == '\\\\' || c < 0x20)")
+                .addStatement("break")
+                .endControlFlow()
+                .addStatement("position++")
+                .endControlFlow()
+                .addStatement("return readEscaped(start)")
+                .build();
+    }
+
+    private static MethodSpec getReadEscapedMethodSpec() {
+        return MethodSpec.methodBuilder("readEscaped")
+                .returns(String.class)
+                .addException(IOException.class)
+                .addParameter(int.class, "start")
+                .addStatement("text.setLength(0)")
+                .addStatement("text.append(buffer, start, position - start)")
+                .beginControlFlow("while (true)")
+                .addStatement("char c = next()")
+                .beginControlFlow("if (c == '\"')")
+                .addStatement("return text.toString()")
+                .nextControlFlow("else if (c < 0x20)")
+                .addStatement("throw error($S)", "control character in string")
+                .nextControlFlow("else if (c != '\\\\')")
+                .addStatement("text.append(c)")
+                .addStatement("continue")
+                .endControlFlow()
+                .addStatement("c = next()")
+                .beginControlFlow("switch (c)")
+                .addCode("case '\"':\n").addCode("case '\\\\':\n").addCode("case '/':\n")
+                .addCode("$>").addStatement("text.append(c)").addStatement("break").addCode("$<")
+                .addCode("case 'b':\n$>").addStatement("text.append('\\b')").addStatement("break").addCode("$<")
+                .addCode("case 'f':\n$>").addStatement("text.append('\\f')").addStatement("break").addCode("$<")
+                .addCode("case 'n':\n$>").addStatement("text.append('\\n')").addStatement("break").addCode("$<")
+                .addCode("case 'r':\n$>").addStatement("text.append('\\r')").addStatement("break").addCode("$<")
+                .addCode("case 't':\n$>").addStatement("text.append('\\t')").addStatement("break").addCode("$<")
+                .addCode("case 'u':\n$>")
+                .addStatement("int code = 0")
+                .beginControlFlow("for (int i = 0; i < 4; i++)")
+                .addStatement("int digit = Character.digit(next(), 16)")
+                .beginControlFlow("if (digit < 0)")
+                .addStatement("throw error($S)", "invalid unicode escape")
+                .endControlFlow()
+                .addStatement("code = code << 4 | digit")
+                .endControlFlow()
+                .addStatement("text.append((char) code)")
+                .addStatement("break")
+                .addCode("$<")
+                .addCode("default:\n$>")
+                .addStatement("throw error(\"invalid escape: \\\\\" + c)")
+                .addCode("$<")
+                .endControlFlow()
+                .endControlFlow()
+                .build();
+    }
+
+    /**
+     * Fields such as {@code fooBar} and {@code foo_bar} share a constant name, so the later ones get underscores
+     * appended until their fragment names are unique.
+     */
+    private static List<String> getFragmentNames(List<FieldModel> fields) {
+        List<String> fragmentNames = new ArrayList<>();
+        for (FieldModel field : fields) {
+            String name = BuilderGenerator.getConstantName(field) + "_NAME";
+            while (fragmentNames.contains(name)) {
+                name += "_";
+            }
+            fragmentNames.add(name);
+        }
+        return fragmentNames;
+    }
+}
@@ -0,0 +1,373 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.model.FieldModel;
+import br.me.patterns.annotation.processor.model.MemoizeModel;
+import br.me.patterns.annotation.processor.model.MethodModel;
+
+/**
+ * Generates {@code <Type>Memoized_}, a subclass that caches the results of the {@code @Memoize} methods of a class.
+ *
+ * Each method gets a nested {@code <Method>Cache} class with an {@code Entry} holding its arguments and result in
+ * fields of their own types, so keys are neither boxed nor wrapped. The cache is set-associative: the hash of the
+ * arguments picks a set of {@link #WAYS} slots of an {@code AtomicReferenceArray}, and a full set evicts with CLOCK
+ * (second chance): a hit marks its entry, and an insertion replaces the first unmarked entry while unmarking the
+ * entries it skips. Slots are replaced with {@code compareAndSet} and never locked; an insertion that loses a race is
+ * dropped. Hits are counted on a striped {@code Counter} shared by the caches, so that threads hitting the same cache
+ * do not write to the same cache line.
+ */
+public class MemoizeGenerator {
+
+    static final String PATTERN_NAME = "Memoize";
+    static final String CREATED_CLASS_SUFFIX = "Memoized_";
+    static final String CACHE_CLASS_SUFFIX = "Cache";
+    static final String ENTRY_CLASS_NAME = "Entry";
+    static final String VALUE_FIELD_NAME = "value";
+    static final String HASH_METHOD_NAME = "hash";
+    static final String GET_METHOD_NAME = "get";
+    static final String PUT_METHOD_NAME = "put";
+    static final int WAYS = 4;
+
+    public static JavaFile generate(Element element) {
+        return generate(MemoizeModel.from(element));
+    }
+
+    public static JavaFile generate(MemoizeModel model) {
+        ClassName className = getTargetClassName(model.packageName, model.simpleName);
+        TypeSpec.Builder memoizedTypeSpec = TypeSpec.classBuilder(className)
+                .addModifiers(Modifier.PUBLIC)
+                .superclass(model.type);
+
+        for (MethodModel constructor : model.constructors) {
+            memoizedTypeSpec.addMethod(getConstructorSpec(constructor));
+        }
+
+        ClassName counterClassName = className.nestedClass(SingletonGenerator.COUNTER_CLASS_NAME);
+        List<String> cacheNames = Utils.getOverloadNames(model.methods, MemoizeGenerator::capitalize);
+        for (int i = 0; i < model.methods.size(); i++) {
+            MethodModel method = model.methods.get(i);
+            String cacheName = cacheNames.get(i);
+            ClassName cacheClassName = className.nestedClass(capitalize(cacheName) + CACHE_CLASS_SUFFIX);
+            memoizedTypeSpec.addField(FieldSpec.builder(cacheClassName, cacheName + CACHE_CLASS_SUFFIX, Modifier.PUBLIC, Modifier.FINAL)
+                            .initializer("new $T($L)", cacheClassName, getSets(method.maxSize))
+                            .build())
+                    .addMethod(getOverrideMethodSpec(method, cacheClassName, cacheName + CACHE_CLASS_SUFFIX))
+                    .addType(getCacheTypeSpec(method, cacheClassName, counterClassName));
+        }
+
+        return JavaFile.builder(model.packageName, memoizedTypeSpec
+                .addType(SingletonGenerator.getCounterTypeSpec())
+                .addOriginatingElement(model.originatingElement)
+                .build())
+                .build();
+    }
+
+    public static ClassName getTargetClassName(String packageName, String simpleName) {
+        return ClassName.get(packageName, simpleName + CREATED_CLASS_SUFFIX);
+    }
+
+    static int getSets(int maxSize) {
+        int sets = (Math.max(maxSize, 1) + WAYS - 1) / WAYS;
+        return Utils.roundUpToPowerOfTwo(sets);
+    }
+
+    static MethodSpec getConstructorSpec(MethodModel constructor) {
+        MethodSpec.Builder constructorSpec = MethodSpec.constructorBuilder();
+        if (constructor.visibility != null) {
+            constructorSpec.addModifiers(constructor.visibility);
+        }
+
+        for (FieldModel parameter : constructor.parameters) {
+            constructorSpec.addParameter(parameter.type, parameter.name);
+        }
+
+        return constructorSpec.addExceptions(constructor.thrownTypes)
+                .addStatement("super($L)", getArgumentsCode(constructor.parameters, ""))
+                .build();
+    }
+
+    private static MethodSpec getOverrideMethodSpec(MethodModel method, ClassName cacheClassName, String cacheFieldName) {
+        MethodSpec.Builder override = MethodSpec.methodBuilder(method.name)
+                .addAnnotation(Override.class)
+                .returns(method.returnType);
+        if (method.visibility != null) {
+            override.addModifiers(method.visibility);
+        }
+
+        for (FieldModel parameter : method.parameters) {
+            override.addParameter(parameter.type, parameter.name);
+        }
+
+        CodeBlock arguments = getArgumentsCode(method.parameters, "");
+        ClassName entryClassName = cacheClassName.nestedClass(ENTRY_CLASS_NAME);
+        Names names = new Names(method.parameters);
+
+        return override.addExceptions(method.thrownTypes)
+                .addStatement("int $L = $T.$L($L)", names.hash, cacheClassName, HASH_METHOD_NAME, arguments)
+                .addStatement("$T $L = $L.$L($L$L)", entryClassName, names.entry, cacheFieldName, GET_METHOD_NAME, names.hash,
+                        getArgumentsCode(method.parameters, ", "))
+                .beginControlFlow("if ($L != null)", names.entry)
+                .addStatement("return $L.$L", names.entry, names.value)
+                .endControlFlow()
+                .addStatement("$T $L = super.$L($L)", method.returnType, names.value, method.name, arguments)
+                .addStatement("$L.$L($L, new $T($L$L))", cacheFieldName, PUT_METHOD_NAME, names.hash, entryClassName, arguments,
+                        method.parameters.isEmpty() ? names.value : ", " + names.value)
+                .addStatement("return $L", names.value)
+                .build();
+    }
+
+    private static TypeSpec getCacheTypeSpec(MethodModel method, ClassName cacheClassName, ClassName counterClassName) {
+        ClassName entryClassName = cacheClassName.nestedClass(ENTRY_CLASS_NAME);
+        Names names = new Names(method.parameters);
+        TypeName entriesType = ParameterizedTypeName.get(ClassName.get(AtomicReferenceArray.class), entryClassName);
+
+        return TypeSpec.classBuilder(cacheClassName)
+                .addJavadoc("Results of {@code $L}, in sets of $L entries picked by the hash of the arguments.\n", method.name, WAYS)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(int.class, "WAYS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", WAYS)
+                        .build())
+                .addField(entriesType, "entries", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(int.class, "mask", Modifier.PRIVATE, Modifier.FINAL)
+                .addField(FieldSpec.builder(counterClassName, "hits", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", counterClassName)
+                        .build())
+                .addField(FieldSpec.builder(AtomicLong.class, "misses", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", AtomicLong.class)
+                        .build())
+                .addField(FieldSpec.builder(AtomicLong.class, "evictions", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T()", AtomicLong.class)
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(int.class, "sets")
+                        .addStatement("this.entries = new $T(sets * WAYS)", entriesType)
+                        .addStatement("this.mask = sets - 1")
+                        .build())
+                .addMethod(getHashMethodSpec(method.parameters, names.hash))
+                .addMethod(getGetMethodSpec(method.parameters, entryClassName, names))
+                .addMethod(getPutMethodSpec(entryClassName, names))
+                .addMethod(MethodSpec.methodBuilder("hits")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addStatement("return hits.get()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("misses")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addStatement("return misses.get()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("evictions")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(long.class)
+                        .addStatement("return evictions.get()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("size")
+                        .addJavadoc("@return the number of cached results, counted slot by slot.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("int size = 0")
+                        .beginControlFlow("for (int i = 0; i < entries.length(); i++)")
+                        .beginControlFlow("if (entries.get(i) != null)")
+                        .addStatement("size++")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return size")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("capacity")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("return entries.length()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("clear")
+                        .addModifiers(Modifier.PUBLIC)
+                        .beginControlFlow("for (int i = 0; i < entries.length(); i++)")
+                        .addStatement("entries.set(i, null)")
+                        .endControlFlow()
+                        .build())
+                .addType(getEntryTypeSpec(method, names))
+                .build();
+    }
+
+    /**
+     * Spreads the combined hash of the arguments, so that its low bits can pick a set.
+     */
+    static MethodSpec getHashMethodSpec(List<FieldModel> parameters, String hashName) {
+        MethodSpec.Builder hash = MethodSpec.methodBuilder(HASH_METHOD_NAME)
+                .addModifiers(Modifier.STATIC)
+                .returns(int.class)
+                .addStatement("int $L = 1", hashName);
+
+        for (FieldModel parameter : parameters) {
+            hash.addParameter(parameter.type, parameter.name)
+                    .addStatement("$L = 31 * $L + $L", hashName, hashName, getHashCode(parameter));
+        }
+
+        return hash.addStatement("$L *= 0x9E3779B9", hashName)
+                .addStatement("return $L ^ ($L >>> 16)", hashName, hashName)
+                .build();
+    }
+
+    static CodeBlock getHashCode(FieldModel parameter) {
+        TypeName type = parameter.type;
+        String name = parameter.name;
+        if (type.equals(TypeName.BOOLEAN)) {
+            return CodeBlock.of("($L ? 1231 : 1237)", name);
+        } else if (type.equals(TypeName.LONG)) {
+            return CodeBlock.of("(int) ($L ^ ($L >>> 32))", name, name);
+        } else if (type.equals(TypeName.FLOAT)) {
+            return CodeBlock.of("$T.floatToIntBits($L)", Float.class, name);
+        } else if (type.equals(TypeName.DOUBLE)) {
+            return CodeBlock.of("(int) ($T.doubleToLongBits($L) ^ ($T.doubleToLongBits($L) >>> 32))", Double.class, name, Double.class, name);
+        } else if (type.isPrimitive()) {
+            return CodeBlock.of("$L", name);
+        }
+
+        return CodeBlock.of("($L == null ? 0 : $L.hashCode())", name, name);
+    }
+
+    /**
+     * A hit marks its entry only when it is not marked yet, so that hot entries are not written on every read.
+     */
+    private static MethodSpec getGetMethodSpec(List<FieldModel> parameters, ClassName entryClassName, Names names) {
+        MethodSpec.Builder get = MethodSpec.methodBuilder(GET_METHOD_NAME)
+                .returns(entryClassName)
+                .addParameter(int.class, names.hash);
+
+        CodeBlock.Builder matches = CodeBlock.builder().add("$L != null", names.entry);
+        for (FieldModel parameter : parameters) {
+            get.addParameter(parameter.type, parameter.name);
+            matches.add(" && $L", getEqualsCode(parameter, names.entry));
+        }
+
+        // fields are qualified, since the parameters may hide them
+        return get.addStatement("int $L = ($L & this.mask) * WAYS", names.base, names.hash)
+                .beginControlFlow("for (int $L = $L; $L < $L + WAYS; $L++)", names.index, names.base, names.index, names.base, names.index)
+                .addStatement("$T $L = this.entries.get($L)", entryClassName, names.entry, names.index)
+                .beginControlFlow("if ($L)", matches.build())
+                .beginControlFlow("if (! $L.$L)", names.entry, names.referenced)
+                .addStatement("$L.$L = true", names.entry, names.referenced)
+                .endControlFlow()
+                .addStatement("this.hits.$L()", SingletonGenerator.INCREMENT_METHOD_NAME)
+                .addStatement("return $L", names.entry)
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("this.misses.incrementAndGet()")
+                .addStatement("return null")
+                .build();
+    }
+
+    /**
+     * Same comparison as {@code equals} of the boxed arguments.
+     */
+    static CodeBlock getEqualsCode(FieldModel parameter, String entry) {
+        String name = parameter.name;
+        if (parameter.type.equals(TypeName.FLOAT)) {
+            return CodeBlock.of("$T.floatToIntBits($L.$L) == $T.floatToIntBits($L)", Float.class, entry, name, Float.class, name);
+        } else if (parameter.type.equals(TypeName.DOUBLE)) {
+            return CodeBlock.of("$T.doubleToLongBits($L.$L) == $T.doubleToLongBits($L)", Double.class, entry, name, Double.class, name);
+        } else if (parameter.isPrimitive()) {
+            return CodeBlock.of("$L.$L == $L", entry, name, name);
+        }
+
+        return CodeBlock.of("($L.$L == $L || ($L != null && $L.equals($L.$L)))", entry, name, name, name, name, entry, name);
+    }
+
+    /**
+     * An empty slot of the set is taken first. Otherwise the set is swept twice at most: a marked entry is unmarked
+     * and skipped, and the first unmarked one is replaced.
+     */
+    private static MethodSpec getPutMethodSpec(ClassName entryClassName, Names names) {
+        return MethodSpec.methodBuilder(PUT_METHOD_NAME)
+                .addParameter(int.class, "hash")
+                .addParameter(entryClassName, "created")
+                .addStatement("int base = (hash & mask) * WAYS")
+                .beginControlFlow("for (int i = base; i < base + WAYS; i++)")
+                .beginControlFlow("if (entries.get(i) == null && entries.compareAndSet(i, null, created))")
+                .addStatement("return")
+                .endControlFlow()
+                .endControlFlow()
+                .beginControlFlow("for (int sweep = 0; sweep < 2; sweep++)")
+                .beginControlFlow("for (int i = base; i < base + WAYS; i++)")
+                .addStatement("$T entry = entries.get(i)", entryClassName)
+                .beginControlFlow("if (entry == null || ! entry.$L)", names.referenced)
+                .beginControlFlow("if (entries.compareAndSet(i, entry, created) && entry != null)")
+                .addStatement("evictions.incrementAndGet()")
+                .endControlFlow()
+                .addStatement("return")
+                .endControlFlow()
+                .addStatement("entry.$L = false", names.referenced)
+                .endControlFlow()
+                .endControlFlow()
+                .build();
+    }
+
+    private static TypeSpec getEntryTypeSpec(MethodModel method, Names names) {
+        TypeSpec.Builder entry = TypeSpec.classBuilder(ENTRY_CLASS_NAME)
+                .addModifiers(Modifier.STATIC, Modifier.FINAL);
+        MethodSpec.Builder constructor = MethodSpec.constructorBuilder();
+
+        for (FieldModel parameter : method.parameters) {
+            entry.addField(parameter.type, parameter.name, Modifier.FINAL);
+            constructor.addParameter(parameter.type, parameter.name)
+                    .addStatement("this.$L = $L", parameter.name, parameter.name);
+        }
+
+        return entry.addField(method.returnType, names.value, Modifier.FINAL)
+                .addField(boolean.class, names.referenced)
+                .addMethod(constructor.addParameter(method.returnType, names.value)
+                        .addStatement("this.$L = $L", names.value, names.value)
+                        .build())
+                .build();
+    }
+
+    static CodeBlock getArgumentsCode(List<FieldModel> parameters, String prefix) {
+        CodeBlock.Builder arguments = CodeBlock.builder();
+        for (int i = 0; i < parameters.size(); i++) {
+            arguments.add(i == 0 ? prefix + "$L" : ", $L", parameters.get(i).name);
+        }
+
+        return arguments.build();
+    }
+
+    /**
+     * Names of the locals and {@code Entry} fields of the generated code that sit next to the parameters of one
+     * method, with a trailing {@code _} added to those a parameter already uses.
+     */
+    private static class Names {
+        final String hash;
+        final String entry;
+        final String value;
+        final String referenced;
+        final String base;
+        final String index;
+
+        Names(List<FieldModel> parameters) {
+            hash = Utils.getUniqueName("hash", parameters);
+            entry = Utils.getUniqueName("entry", parameters);
+            value = Utils.getUniqueName(VALUE_FIELD_NAME, parameters);
+            referenced = Utils.getUniqueName("referenced", parameters);
+            base = Utils.getUniqueName("base", parameters);
+            index = Utils.getUniqueName("i", parameters);
+        }
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+}
@@ -0,0 +1,442 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.model.BuilderModel;
+import br.me.patterns.annotation.processor.model.FieldModel;
+
+/**
+ * Generates the {@code <Built>View} flyweight of a {@code @Builder(offHeap = true)} class: fixed-size records at
+ * fixed offsets of a {@link ByteBuffer}, which may be direct or a memory-mapped file.
+ *
+ * The buffer holds a header, {@code capacity} records and then a string area. Record fields are laid out from the
+ * widest to the narrowest, so every value is aligned to its size, followed by one bit per boolean and per nullable
+ * field. Strings are stored in the string area as an {@code int} length and UTF-8 bytes, and a record keeps the
+ * position of its string, 0 standing for {@code null}. The string area only grows: setting a string again appends
+ * it. All values use the byte order of the buffer.
+ */
+public class OffHeapViewGenerator {
+
+    static final String CREATED_CLASS_SUFFIX = "View";
+    static final String WRITER_CLASS_NAME = "Writer";
+    static final String BIND_METHOD_NAME = "bind";
+    static final String WRAP_METHOD_NAME = "wrap";
+    static final String WRITE_METHOD_NAME = "write";
+    static final String COUNT_METHOD_NAME = "count";
+    static final String BUFFER_SIZE_METHOD_NAME = "bufferSize";
+
+    static final int LAYOUT_OFFSET = 0;
+    static final int RECORD_SIZE_OFFSET = 4;
+    static final int COUNT_OFFSET = 8;
+    static final int CAPACITY_OFFSET = 12;
+    static final int STRING_END_OFFSET = 16;
+    static final int HEADER_SIZE = 24;
+
+    private static final TypeName STRING = ClassName.get(String.class);
+
+    static JavaFile generate(BuilderModel model, ClassName builtClassName, ClassName builderClassName) {
+        ClassName viewClassName = ClassName.get(model.packageName, builtClassName.simpleName() + CREATED_CLASS_SUFFIX);
+        Layout layout = new Layout(model.fields);
+
+        TypeSpec.Builder viewTypeSpec = TypeSpec.classBuilder(viewClassName)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(getConstantSpec("LAYOUT", layout.getLayoutHash()))
+                .addField(getConstantSpec("RECORD_SIZE", layout.recordSize))
+                .addField(getConstantSpec("HEADER_SIZE", HEADER_SIZE))
+                .addField(getConstantSpec("LAYOUT_OFFSET", LAYOUT_OFFSET))
+                .addField(getConstantSpec("RECORD_SIZE_OFFSET", RECORD_SIZE_OFFSET))
+                .addField(getConstantSpec("COUNT_OFFSET", COUNT_OFFSET))
+                .addField(getConstantSpec("CAPACITY_OFFSET", CAPACITY_OFFSET))
+                .addField(getConstantSpec("STRING_END_OFFSET", STRING_END_OFFSET));
+        for (Map.Entry<FieldModel, Integer> entry : layout.offsets.entrySet()) {
+            viewTypeSpec.addField(getConstantSpec(getOffsetConstantName(entry.getKey()), entry.getValue()));
+        }
+        viewTypeSpec.addField(getConstantSpec("FLAGS_OFFSET", layout.flagsOffset));
+
+        viewTypeSpec.addField(ByteBuffer.class, "buffer", Modifier.PRIVATE)
+                .addField(int.class, "offset", Modifier.PRIVATE)
+                .addField(int.class, "count", Modifier.PRIVATE)
+                .addMethod(getBufferSizeMethodSpec())
+                .addMethod(getCountMethodSpec())
+                .addMethod(getBindMethodSpec(viewClassName))
+                .addMethod(MethodSpec.methodBuilder(COUNT_METHOD_NAME)
+                        .addJavadoc("@return the number of records of the bound buffer when it was bound.\n")
+                        .addModifiers(Modifier.PUBLIC)
+                        .returns(int.class)
+                        .addStatement("return count")
+                        .build())
+                .addMethod(getWrapMethodSpec(viewClassName));
+
+        for (FieldModel field : model.fields) {
+            viewTypeSpec.addMethod(MethodSpec.methodBuilder(BuilderGenerator.getAccessorName(field))
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(field.type)
+                    .addStatement("return $L", getReadCode(layout, field, "offset"))
+                    .build());
+            viewTypeSpec.addMethod(MethodSpec.methodBuilder(BuilderGenerator.getSetterName(field))
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(viewClassName)
+                    .addParameter(field.type, field.name)
+                    .addCode(getWriteCode(layout, field, "offset", CodeBlock.of("$L", field.name),
+                            CodeBlock.of("writeString(buffer, $L)", field.name)))
+                    .addStatement("return this")
+                    .build());
+        }
+
+        addHelperMethods(viewTypeSpec, layout);
+
+        return JavaFile.builder(model.packageName, viewTypeSpec
+                .addType(getWriterTypeSpec(model, layout, builderClassName))
+                .addOriginatingElement(model.originatingElement)
+                .build())
+                .build();
+    }
+
+    private static FieldSpec getConstantSpec(String name, int value) {
+        return FieldSpec.builder(int.class, name, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", value)
+                .build();
+    }
+
+    private static MethodSpec getBufferSizeMethodSpec() {
+        return MethodSpec.methodBuilder(BUFFER_SIZE_METHOD_NAME)
+                .addJavadoc("@return the bytes needed for {@code capacity} records and {@code stringBytes} of UTF-8 strings.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(long.class)
+                .addParameter(int.class, "capacity")
+                .addParameter(long.class, "stringBytes")
+                .addStatement("return HEADER_SIZE + (long) capacity * RECORD_SIZE + stringBytes")
+                .build();
+    }
+
+    private static MethodSpec getCountMethodSpec() {
+        return MethodSpec.methodBuilder(COUNT_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(int.class)
+                .addParameter(ByteBuffer.class, "buffer")
+                .beginControlFlow("if (buffer.getInt(LAYOUT_OFFSET) != LAYOUT || buffer.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE)")
+                .addStatement("throw new $T($S)", IllegalArgumentException.class, "Buffer not written with this layout")
+                .endControlFlow()
+                .addStatement("return buffer.getInt(COUNT_OFFSET)")
+                .build();
+    }
+
+    /**
+     * The header is checked once per buffer rather than once per record, so a scan only pays a bounds check per
+     * {@code wrap}.
+     */
+    private static MethodSpec getBindMethodSpec(ClassName viewClassName) {
+        return MethodSpec.methodBuilder(BIND_METHOD_NAME)
+                .addJavadoc("Points this view at {@code buffer}, after checking its header. The number of records is read now:\n"
+                        + "records written afterwards are only seen after binding the buffer again.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(viewClassName)
+                .addParameter(ByteBuffer.class, "buffer")
+                .addStatement("this.count = $L(buffer)", COUNT_METHOD_NAME)
+                .addStatement("this.buffer = buffer")
+                .addStatement("return this")
+                .build();
+    }
+
+    private static MethodSpec getWrapMethodSpec(ClassName viewClassName) {
+        return MethodSpec.methodBuilder(WRAP_METHOD_NAME)
+                .addJavadoc("Points this view at record {@code index} of the bound buffer; views are meant to be reused.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(viewClassName)
+                .addParameter(int.class, "index")
+                .beginControlFlow("if (index < 0 || index >= count)")
+                .addStatement("throw new $T($S + index + $S + count)", IndexOutOfBoundsException.class, "index: ", ", count: ")
+                .endControlFlow()
+                .addStatement("this.offset = HEADER_SIZE + index * RECORD_SIZE")
+                .addStatement("return this")
+                .build();
+    }
+
+    /**
+     * The writer formats an empty buffer and appends records straight from builders. Equal strings written by the
+     * same writer are stored once.
+     */
+    private static TypeSpec getWriterTypeSpec(BuilderModel model, Layout layout, ClassName builderClassName) {
+        MethodSpec.Builder write = MethodSpec.methodBuilder(WRITE_METHOD_NAME)
+                .addJavadoc("@return the index of the new record.\n")
+                .addModifiers(Modifier.PUBLIC)
+                .returns(int.class)
+                .addParameter(builderClassName, "builder")
+                .addStatement("int index = buffer.getInt(COUNT_OFFSET)")
+                .beginControlFlow("if (index == buffer.getInt(CAPACITY_OFFSET))")
+                .addStatement("throw new $T()", BufferOverflowException.class)
+                .endControlFlow()
+                .addStatement("int position = HEADER_SIZE + index * RECORD_SIZE");
+        for (FieldModel field : model.fields) {
+            write.addCode(getWriteCode(layout, field, "position", CodeBlock.of("builder.$L", field.name),
+                    CodeBlock.of("writeDictionaryString(builder.$L)", field.name)));
+        }
+        write.addStatement("buffer.putInt(COUNT_OFFSET, index + 1)")
+                .addStatement("return index");
+
+        TypeName dictionaryType = ParameterizedTypeName.get(Map.class, String.class, Integer.class);
+        TypeSpec.Builder writer = TypeSpec.classBuilder(WRITER_CLASS_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC, Modifier.FINAL)
+                .addField(ByteBuffer.class, "buffer", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PUBLIC)
+                        .addParameter(ByteBuffer.class, "buffer")
+                        .addParameter(int.class, "capacity")
+                        .beginControlFlow("if (capacity < 0 || $L(capacity, 0) > buffer.limit())", BUFFER_SIZE_METHOD_NAME)
+                        .addStatement("throw new $T($S + capacity)", IllegalArgumentException.class, "Buffer too small for capacity: ")
+                        .endControlFlow()
+                        .addStatement("this.buffer = buffer")
+                        .addStatement("buffer.putInt(LAYOUT_OFFSET, LAYOUT)")
+                        .addStatement("buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE)")
+                        .addStatement("buffer.putInt(COUNT_OFFSET, 0)")
+                        .addStatement("buffer.putInt(CAPACITY_OFFSET, capacity)")
+                        .addStatement("buffer.putInt(STRING_END_OFFSET, HEADER_SIZE + capacity * RECORD_SIZE)")
+                        .build())
+                .addMethod(write.build());
+
+        if (layout.hasStrings) {
+            writer.addField(FieldSpec.builder(dictionaryType, "dictionary", Modifier.PRIVATE, Modifier.FINAL)
+                            .initializer("new $T<>()", HashMap.class)
+                            .build())
+                    .addMethod(MethodSpec.methodBuilder("writeDictionaryString")
+                            .addModifiers(Modifier.PRIVATE)
+                            .returns(int.class)
+                            .addParameter(String.class, "value")
+                            .beginControlFlow("if (value == null)")
+                            .addStatement("return 0")
+                            .endControlFlow()
+                            .addStatement("$T position = dictionary.get(value)", Integer.class)
+                            .beginControlFlow("if (position == null)")
+                            .addStatement("position = writeString(buffer, value)")
+                            .addStatement("dictionary.put(value, position)")
+                            .endControlFlow()
+                            .addStatement("return position")
+                            .build());
+        }
+
+        return writer.build();
+    }
+
+    private static CodeBlock getReadCode(Layout layout, FieldModel field, String base) {
+        TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+        CodeBlock value;
+        if (type.equals(TypeName.BOOLEAN)) {
+            value = getBitCode(layout.getFlag("value:" + field.name), base);
+        } else if (type.equals(STRING)) {
+            return CodeBlock.of("readString(buffer, buffer.getInt($L + $L))", base, getOffsetConstantName(field));
+        } else {
+            value = CodeBlock.of("buffer.$L($L + $L)", getAccessor("get", type), base, getOffsetConstantName(field));
+        }
+
+        if (field.type.isBoxedPrimitive()) {
+            return CodeBlock.of("$L ? null : $T.valueOf($L)", getBitCode(layout.getFlag("null:" + field.name), base), field.type, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * @param stringCode expression writing a string and returning its position.
+     */
+    private static CodeBlock getWriteCode(Layout layout, FieldModel field, String base, CodeBlock value, CodeBlock stringCode) {
+        TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+        CodeBlock.Builder code = CodeBlock.builder();
+        if (type.equals(STRING)) {
+            return code.addStatement("buffer.putInt($L + $L, $L)", base, getOffsetConstantName(field), stringCode).build();
+        }
+
+        if (field.type.isBoxedPrimitive()) {
+            int flag = layout.getFlag("null:" + field.name);
+            code.addStatement("putBit(buffer, $L, $L, $L == null)", getFlagPositionCode(flag, base), 1 << (flag % 8), value)
+                    .beginControlFlow("if ($L != null)", value);
+        }
+
+        if (type.equals(TypeName.BOOLEAN)) {
+            int flag = layout.getFlag("value:" + field.name);
+            code.addStatement("putBit(buffer, $L, $L, $L)", getFlagPositionCode(flag, base), 1 << (flag % 8), value);
+        } else {
+            code.addStatement("buffer.$L($L + $L, $L)", getAccessor("put", type), base, getOffsetConstantName(field), value);
+        }
+
+        if (field.type.isBoxedPrimitive()) {
+            code.endControlFlow();
+        }
+
+        return code.build();
+    }
+
+    private static CodeBlock getBitCode(int flag, String base) {
+        return CodeBlock.of("(buffer.get($L) & $L) != 0", getFlagPositionCode(flag, base), 1 << (flag % 8));
+    }
+
+    private static CodeBlock getFlagPositionCode(int flag, String base) {
+        if (flag < 8) {
+            return CodeBlock.of("$L + FLAGS_OFFSET", base);
+        }
+
+        return CodeBlock.of("$L + FLAGS_OFFSET + $L", base, flag / 8);
+    }
+
+    private static String getAccessor(String prefix, TypeName type) {
+        if (type.equals(TypeName.BYTE)) {
+            return prefix;
+        }
+
+        String name = type.toString();
+        return prefix + name.substring(0, 1).toUpperCase() + name.substring(1);
+    }
+
+    private static String getOffsetConstantName(FieldModel field) {
+        return BuilderGenerator.getConstantName(field) + "_OFFSET";
+    }
+
+    /**
+     * Strings are copied with one bulk {@code get} or {@code put} on a duplicate of the buffer, positioned at the
+     * bytes, so the position of the buffer itself is left alone.
+     */
+    private static void addHelperMethods(TypeSpec.Builder viewTypeSpec, Layout layout) {
+        if (layout.flagCount > 0) {
+            viewTypeSpec.addMethod(MethodSpec.methodBuilder("putBit")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .addParameter(ByteBuffer.class, "buffer")
+                    .addParameter(int.class, "position")
+                    .addParameter(int.class, "mask")
+                    .addParameter(boolean.class, "value")
+                    .addStatement("int flags = buffer.get(position)")
+                    .addStatement("buffer.put(position, (byte) (value ? flags | mask : flags & ~mask))")
+                    .build());
+        }
+
+        if (layout.hasStrings) {
+            viewTypeSpec.addMethod(MethodSpec.methodBuilder("readString")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .returns(String.class)
+                    .addParameter(ByteBuffer.class, "buffer")
+                    .addParameter(int.class, "position")
+                    .beginControlFlow("if (position == 0)")
+                    .addStatement("return null")
+                    .endControlFlow()
+                    .addStatement("byte[] bytes = new byte[buffer.getInt(position)]")
+                    .addStatement("$T bytesBuffer = buffer.duplicate()", ByteBuffer.class)
+                    .addStatement("bytesBuffer.position(position + 4)")
+                    .addStatement("bytesBuffer.get(bytes)")
+                    .addStatement("return new $T(bytes, $T.UTF_8)", String.class, StandardCharsets.class)
+                    .build());
+            viewTypeSpec.addMethod(MethodSpec.methodBuilder("writeString")
+                    .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                    .returns(int.class)
+                    .addParameter(ByteBuffer.class, "buffer")
+                    .addParameter(String.class, "value")
+                    .beginControlFlow("if (value == null)")
+                    .addStatement("return 0")
+                    .endControlFlow()
+                    .addStatement("byte[] bytes = value.getBytes($T.UTF_8)", StandardCharsets.class)
+                    .addStatement("int position = buffer.getInt(STRING_END_OFFSET)")
+                    .beginControlFlow("if ((long) position + 4 + bytes.length > buffer.limit())")
+                    .addStatement("throw new $T()", BufferOverflowException.class)
+                    .endControlFlow()
+                    .addStatement("buffer.putInt(position, bytes.length)")
+                    .addStatement("$T bytesBuffer = buffer.duplicate()", ByteBuffer.class)
+                    .addStatement("bytesBuffer.position(position + 4)")
+                    .addStatement("bytesBuffer.put(bytes)")
+                    .addStatement("buffer.putInt(STRING_END_OFFSET, position + 4 + bytes.length)")
+                    .addStatement("return position")
+                    .build());
+        }
+    }
+
+    /**
+     * Offsets of the fields of one record: values from the widest to the narrowest, strings as their {@code int}
+     * position, then the flag bytes, the record size being rounded to its widest value.
+     */
+    static class Layout {
+        final Map<FieldModel, Integer> offsets = new LinkedHashMap<>();
+        private final Map<String, Integer> flags = new HashMap<>();
+        final int flagsOffset;
+        final int flagCount;
+        final int recordSize;
+        final boolean hasStrings;
+        private final List<FieldModel> fields;
+
+        Layout(List<FieldModel> fields) {
+            this.fields = fields;
+            int offset = 0;
+            int widest = 1;
+            boolean strings = false;
+            for (int width = 8; width >= 1; width /= 2) {
+                for (FieldModel field : fields) {
+                    if (getWidth(field) == width) {
+                        offsets.put(field, offset);
+                        offset += width;
+                        widest = Math.max(widest, width);
+                    }
+                }
+            }
+
+            int flag = 0;
+            for (FieldModel field : fields) {
+                strings |= field.type.equals(STRING);
+                if (field.type.isBoxedPrimitive()) {
+                    flags.put("null:" + field.name, flag++);
+                }
+                if (field.type.equals(TypeName.BOOLEAN) || field.type.equals(TypeName.BOOLEAN.box())) {
+                    flags.put("value:" + field.name, flag++);
+                }
+            }
+
+            this.flagsOffset = offset;
+            this.flagCount = flag;
+            this.hasStrings = strings;
+            int size = offset + (flag + 7) / 8;
+            this.recordSize = Math.max(widest, (size + widest - 1) / widest * widest);
+        }
+
+        int getFlag(String key) {
+            return flags.get(key);
+        }
+
+        /**
+         * Written in the header, so that a buffer is never read with the offsets of another version of the class.
+         */
+        int getLayoutHash() {
+            StringBuilder description = new StringBuilder();
+            for (FieldModel field : fields) {
+                description.append(field.name).append(':').append(field.type).append(';');
+            }
+
+            return description.toString().hashCode();
+        }
+
+        private static int getWidth(FieldModel field) {
+            TypeName type = field.type.isBoxedPrimitive() ? field.type.unbox() : field.type;
+            if (type.equals(TypeName.LONG) || type.equals(TypeName.DOUBLE)) {
+                return 8;
+            } else if (type.equals(TypeName.INT) || type.equals(TypeName.FLOAT) || type.equals(STRING)) {
+                return 4;
+            } else if (type.equals(TypeName.SHORT) || type.equals(TypeName.CHAR)) {
+                return 2;
+            } else if (type.equals(TypeName.BYTE)) {
+                return 1;
+            }
+
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.WildcardTypeName;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.Pooled;
+import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.model.FieldModel;
+import br.me.patterns.annotation.processor.model.PooledModel;
+
+/**
+ * Generates {@code <Type>_}, the pool of the released instances of a {@code @Pooled} class.
+ *
+ * Released instances are kept in array stacks. A {@link Pooled.Scope#GLOBAL} pool has one stack per stripe, as many
+ * as processors rounded up to a power of two, whose size is taken with {@code compareAndSet}: a thread starts with the
+ * stripe picked by its hash and moves on to the next stripe when one is busy, empty or full, so it never waits for
+ * another thread. The stacks share one array and the sizes another, with {@link #PADDING} cells between stripes, so
+ * that threads on different stripes do not write to the same cache line. A {@link Pooled.Scope#THREAD} pool has one
+ * stack per thread and no atomic operations.
+ */
+public class PoolGenerator {
+
+    static final String PATTERN_NAME = "Pooled";
+    static final String CREATED_CLASS_SUFFIX = "_";
+    static final String STACK_CLASS_NAME = "Stack";
+    static final String LEASE_CLASS_NAME = "Lease";
+    static final String CAPACITY_FIELD_NAME = "CAPACITY";
+    static final String STRIPES_FIELD_NAME = "STRIPES";
+    static final String POOL_FIELD_NAME = "POOL";
+    static final String SIZES_FIELD_NAME = "SIZES";
+    static final String DEFAULTS_FIELD_NAME = "DEFAULTS";
+    static final String ACQUIRE_METHOD_NAME = "acquire";
+    static final String RELEASE_METHOD_NAME = "release";
+    static final String RESET_METHOD_NAME = PooledModel.RESET_METHOD_NAME;
+    /**
+     * Cells from the end of the slots of a stripe to the next stripe: 64 bytes of references, even compressed, or of
+     * {@code int} sizes.
+     */
+    static final int PADDING = 16;
+
+    public static JavaFile generate(Element element) {
+        return generate(PooledModel.from(element));
+    }
+
+    public static JavaFile generate(PooledModel model) {
+        ClassName className = getTargetClassName(model.packageName, model.simpleName);
+        ClassName stackClassName = className.nestedClass(STACK_CLASS_NAME);
+        boolean global = model.scope == Pooled.Scope.GLOBAL;
+
+        TypeSpec.Builder poolTypeSpec = TypeSpec.classBuilder(className);
+        if (model.isPublic) {
+            poolTypeSpec.addModifiers(Modifier.PUBLIC);
+        }
+
+        poolTypeSpec.addModifiers(Modifier.FINAL)
+                .addField(FieldSpec.builder(int.class, CAPACITY_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", global ? getCapacity(model.capacity) : model.capacity)
+                        .build());
+
+        if (global) {
+            addGlobalPoolMembers(poolTypeSpec, model.type);
+        } else {
+            addThreadPoolMembers(poolTypeSpec, model.type, stackClassName);
+        }
+
+        if (! model.hasResetMethod && ! model.resetFields.isEmpty()) {
+            poolTypeSpec.addField(FieldSpec.builder(model.type, DEFAULTS_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                    .initializer("new $T()", model.type)
+                    .build());
+        }
+
+        poolTypeSpec.addField(FieldSpec.builder(AtomicLong.class, "CREATED", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T()", AtomicLong.class)
+                        .build())
+                .addField(FieldSpec.builder(AtomicLong.class, "DROPPED", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T()", AtomicLong.class)
+                        .build())
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addModifiers(Modifier.PRIVATE)
+                        .build())
+                .addMethod(getAcquireMethodSpec(model))
+                .addMethod(getReleaseMethodSpec(model))
+                .addMethod(getResetMethodSpec(model))
+                .addMethod(MethodSpec.methodBuilder("created")
+                        .addJavadoc("Instances created by {@code acquire()} because the pool had none to give.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(long.class)
+                        .addStatement("return CREATED.get()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("dropped")
+                        .addJavadoc("Instances released to a full pool and left to the garbage collector.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(long.class)
+                        .addStatement("return DROPPED.get()")
+                        .build());
+
+        if (global) {
+            addGlobalPoolMethods(poolTypeSpec, model.type);
+        } else {
+            addThreadPoolMethods(poolTypeSpec, model.type, stackClassName);
+        }
+
+        if (model.leakDetection) {
+            addLeakDetectionMembers(poolTypeSpec, model.type, className.nestedClass(LEASE_CLASS_NAME));
+        }
+
+        if (! global) {
+            poolTypeSpec.addType(getStackTypeSpec(model.type));
+        }
+
+        return JavaFile.builder(model.packageName, poolTypeSpec
+                .addOriginatingElement(model.originatingElement)
+                .build())
+                .build();
+    }
+
+    public static ClassName getTargetClassName(String packageName, String simpleName) {
+        return ClassName.get(packageName, simpleName + CREATED_CLASS_SUFFIX);
+    }
+
+    static int getCapacity(int capacity) {
+        return Utils.roundUpToPowerOfTwo(capacity);
+    }
+
+    /**
+     * The instance is taken from the pool before it is tracked, and reset before it is returned to the pool, so a
+     * tracked instance is never in the pool.
+     */
+    private static MethodSpec getAcquireMethodSpec(PooledModel model) {
+        MethodSpec.Builder acquire = MethodSpec.methodBuilder(ACQUIRE_METHOD_NAME)
+                .addJavadoc("@return a released instance, or a new one when the pool has none.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(model.type)
+                .addStatement("$T object = poll()", model.type)
+                .beginControlFlow("if (object == null)")
+                .addStatement("CREATED.incrementAndGet()")
+                .addStatement("object = new $T()", model.type)
+                .endControlFlow();
+
+        if (model.leakDetection) {
+            acquire.addStatement("track(object)");
+        }
+
+        return acquire.addStatement("return object")
+                .build();
+    }
+
+    private static MethodSpec getReleaseMethodSpec(PooledModel model) {
+        MethodSpec.Builder release = MethodSpec.methodBuilder(RELEASE_METHOD_NAME)
+                .addJavadoc("Resets {@code object} and keeps it for a later {@code acquire()}, unless the pool is full. The\n"
+                        + "caller must not use it any more.\n")
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(model.type, "object");
+
+        if (model.leakDetection) {
+            release.addStatement("untrack(object)");
+        }
+
+        return release.addStatement("$L(object)", RESET_METHOD_NAME)
+                .beginControlFlow("if (! offer(object))")
+                .addStatement("DROPPED.incrementAndGet()")
+                .endControlFlow()
+                .build();
+    }
+
+    /**
+     * Calls the {@code reset()} of the class, or copies every non-final field from an instance that was never used.
+     */
+    private static MethodSpec getResetMethodSpec(PooledModel model) {
+        MethodSpec.Builder reset = MethodSpec.methodBuilder(RESET_METHOD_NAME)
+                .addModifiers(Modifier.STATIC)
+                .addParameter(model.type, "object");
+
+        if (model.hasResetMethod) {
+            return reset.addStatement("object.$L()", RESET_METHOD_NAME)
+                    .build();
+        }
+
+        for (FieldModel field : model.resetFields) {
+            reset.addStatement("object.$L = $L.$L", field.name, DEFAULTS_FIELD_NAME, field.name);
+        }
+
+        return reset.build();
+    }
+
+    /**
+     * Stripe {@code i} keeps its instances in {@code POOL} from {@code i * STRIDE} and its size in {@code SIZES} at
+     * {@code i * PADDING}, where -1 means that a thread is using the stripe.
+     */
+    private static void addGlobalPoolMembers(TypeSpec.Builder poolTypeSpec, TypeName type) {
+        poolTypeSpec.addField(FieldSpec.builder(int.class, STRIPES_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$T.min($L, $L)", Math.class, CAPACITY_FIELD_NAME, SingletonGenerator.getStripesInitializer(0))
+                        .build())
+                .addField(FieldSpec.builder(int.class, "PADDING", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", PADDING)
+                        .build())
+                .addField(FieldSpec.builder(int.class, "SLOTS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L / $L", CAPACITY_FIELD_NAME, STRIPES_FIELD_NAME)
+                        .build())
+                .addField(FieldSpec.builder(int.class, "STRIDE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("SLOTS + PADDING")
+                        .build())
+                .addField(FieldSpec.builder(ArrayTypeName.of(type), POOL_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T[$L * STRIDE]", type, STRIPES_FIELD_NAME)
+                        .build())
+                .addField(FieldSpec.builder(AtomicIntegerArray.class, SIZES_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T($L * PADDING)", AtomicIntegerArray.class, STRIPES_FIELD_NAME)
+                        .build());
+    }
+
+    /**
+     * Taking a stripe swaps its size for -1, so a stripe that cannot serve the call is skipped without writing to it,
+     * and giving it back writes the new size with {@code lazySet}, after the instances.
+     */
+    private static void addGlobalPoolMethods(TypeSpec.Builder poolTypeSpec, TypeName type) {
+        poolTypeSpec.addMethod(MethodSpec.methodBuilder("poll")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .returns(type)
+                        .addStatement("int start = stripeIndex()")
+                        .beginControlFlow("for (int i = 0; i < $L; i++)", STRIPES_FIELD_NAME)
+                        .addStatement("int stripe = (start + i) & ($L - 1)", STRIPES_FIELD_NAME)
+                        .addStatement("int size = $L.get(stripe * PADDING)", SIZES_FIELD_NAME)
+                        .beginControlFlow("if (size > 0 && $L.compareAndSet(stripe * PADDING, size, -1))", SIZES_FIELD_NAME)
+                        .addStatement("int slot = stripe * STRIDE + --size")
+                        .addStatement("$T object = $L[slot]", type, POOL_FIELD_NAME)
+                        .addStatement("$L[slot] = null", POOL_FIELD_NAME)
+                        .addStatement("$L.lazySet(stripe * PADDING, size)", SIZES_FIELD_NAME)
+                        .addStatement("return object")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return null")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("offer")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .returns(boolean.class)
+                        .addParameter(type, "object")
+                        .addStatement("int start = stripeIndex()")
+                        .beginControlFlow("for (int i = 0; i < $L; i++)", STRIPES_FIELD_NAME)
+                        .addStatement("int stripe = (start + i) & ($L - 1)", STRIPES_FIELD_NAME)
+                        .addStatement("int size = $L.get(stripe * PADDING)", SIZES_FIELD_NAME)
+                        .beginControlFlow("if (size >= 0 && size < SLOTS && $L.compareAndSet(stripe * PADDING, size, -1))", SIZES_FIELD_NAME)
+                        .addStatement("$L[stripe * STRIDE + size] = object", POOL_FIELD_NAME)
+                        .addStatement("$L.lazySet(stripe * PADDING, size + 1)", SIZES_FIELD_NAME)
+                        .addStatement("return true")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("return false")
+                        .build())
+                .addMethod(SingletonGenerator.getStripeIndexMethodSpec());
+    }
+
+    private static void addThreadPoolMembers(TypeSpec.Builder poolTypeSpec, TypeName type, ClassName stackClassName) {
+        TypeName threadLocalType = ParameterizedTypeName.get(ClassName.get(ThreadLocal.class), stackClassName);
+        TypeSpec threadLocalInitializer = TypeSpec.anonymousClassBuilder("")
+                .superclass(threadLocalType)
+                .addMethod(MethodSpec.methodBuilder("initialValue")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .returns(stackClassName)
+                        .addStatement("return new $T($L)", stackClassName, CAPACITY_FIELD_NAME)
+                        .build())
+                .build();
+
+        poolTypeSpec.addField(FieldSpec.builder(threadLocalType, POOL_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", threadLocalInitializer)
+                .build());
+    }
+
+    private static void addThreadPoolMethods(TypeSpec.Builder poolTypeSpec, TypeName type, ClassName stackClassName) {
+        poolTypeSpec.addMethod(MethodSpec.methodBuilder("poll")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .returns(type)
+                        .addStatement("$T stack = $L.get()", stackClassName, POOL_FIELD_NAME)
+                        .beginControlFlow("if (stack.size == 0)")
+                        .addStatement("return null")
+                        .endControlFlow()
+                        .addStatement("$T object = stack.objects[--stack.size]", type)
+                        .addStatement("stack.objects[stack.size] = null")
+                        .addStatement("return object")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("offer")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .returns(boolean.class)
+                        .addParameter(type, "object")
+                        .addStatement("$T stack = $L.get()", stackClassName, POOL_FIELD_NAME)
+                        .beginControlFlow("if (stack.size == stack.objects.length)")
+                        .addStatement("return false")
+                        .endControlFlow()
+                        .addStatement("stack.objects[stack.size++] = object")
+                        .addStatement("return true")
+                        .build());
+    }
+
+    private static TypeSpec getStackTypeSpec(TypeName type) {
+        TypeName arrayType = ArrayTypeName.of(type);
+        return TypeSpec.classBuilder(STACK_CLASS_NAME)
+                .addJavadoc("Released instances of one thread.\n")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addField(arrayType, "objects", Modifier.FINAL)
+                .addField(int.class, "size")
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(int.class, "capacity")
+                        .addStatement("this.objects = new $T[capacity]", type)
+                        .build())
+                .build();
+    }
+
+    /**
+     * Every acquired instance has a {@code Lease}, a weak reference that keeps where it was acquired. Leases are found
+     * by the identity hash of their instance, so instances are not compared with {@code equals}. A lease collected
+     * with its instance is a leak, reported at the next {@code acquire()} or {@code release(object)}.
+     */
+    private static void addLeakDetectionMembers(TypeSpec.Builder poolTypeSpec, TypeName type, ClassName leaseClassName) {
+        TypeName leasesType = ParameterizedTypeName.get(ClassName.get(HashMap.class), ClassName.get(Integer.class), leaseClassName);
+        TypeName queueType = ParameterizedTypeName.get(ClassName.get(ReferenceQueue.class), type);
+        TypeName referenceType = ParameterizedTypeName.get(ClassName.get(Reference.class), WildcardTypeName.subtypeOf(type));
+        String simpleName = type instanceof ClassName ? ((ClassName) type).simpleName() : type.toString();
+
+        poolTypeSpec.addField(FieldSpec.builder(leasesType, "LEASES", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T()", leasesType)
+                        .build())
+                .addField(FieldSpec.builder(queueType, "COLLECTED", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T()", queueType)
+                        .build())
+                .addField(FieldSpec.builder(AtomicLong.class, "LEAKS", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("new $T()", AtomicLong.class)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("leaks")
+                        .addJavadoc("Acquired instances collected without being released.\n")
+                        .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                        .returns(long.class)
+                        .beginControlFlow("synchronized (LEASES)")
+                        .addStatement("reportLeaks()")
+                        .endControlFlow()
+                        .addStatement("return LEAKS.get()")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("track")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .addParameter(type, "object")
+                        .beginControlFlow("synchronized (LEASES)")
+                        .addStatement("reportLeaks()")
+                        .addStatement("int hash = $T.identityHashCode(object)", System.class)
+                        .addStatement("LEASES.put(hash, new $T(object, hash, LEASES.get(hash)))", leaseClassName)
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("untrack")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .addParameter(type, "object")
+                        .beginControlFlow("synchronized (LEASES)")
+                        .addStatement("reportLeaks()")
+                        .addStatement("int hash = $T.identityHashCode(object)", System.class)
+                        .beginControlFlow("for ($T lease = LEASES.get(hash); lease != null; lease = lease.next)", leaseClassName)
+                        .beginControlFlow("if (lease.get() == object)")
+                        .addStatement("remove(lease)")
+                        .addStatement("lease.clear()")
+                        .addStatement("return")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .endControlFlow()
+                        .addStatement("throw new $T($S)", IllegalStateException.class,
+                                simpleName + " released twice or not acquired from the pool")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("reportLeaks")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .beginControlFlow("for ($T collected; (collected = COLLECTED.poll()) != null; )", referenceType)
+                        .addStatement("$T lease = ($T) collected", leaseClassName, leaseClassName)
+                        .addStatement("remove(lease)")
+                        .addStatement("LEAKS.incrementAndGet()")
+                        .addStatement("lease.acquired.printStackTrace()")
+                        .endControlFlow()
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("remove")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                        .addParameter(leaseClassName, "removed")
+                        .addStatement("$T previous = null", leaseClassName)
+                        .beginControlFlow("for ($T lease = LEASES.get(removed.hash); lease != null; previous = lease, lease = lease.next)",
+                                leaseClassName)
+                        .beginControlFlow("if (lease == removed)")
+                        .beginControlFlow("if (previous != null)")
+                        .addStatement("previous.next = lease.next")
+                        .nextControlFlow("else if (lease.next != null)")
+                        .addStatement("LEASES.put(lease.hash, lease.next)")
+                        .nextControlFlow("else")
+                        .addStatement("LEASES.remove(lease.hash)")
+                        .endControlFlow()
+                        .addStatement("return")
+                        .endControlFlow()
+                        .endControlFlow()
+                        .build())
+                .addType(TypeSpec.classBuilder(LEASE_CLASS_NAME)
+                        .addJavadoc("An acquired instance, guarded by {@code LEASES}.\n")
+                        .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .superclass(ParameterizedTypeName.get(ClassName.get(WeakReference.class), type))
+                        .addField(FieldSpec.builder(Throwable.class, "acquired", Modifier.FINAL)
+                                .initializer("new $T($S)", Throwable.class, simpleName + " acquired here was never released")
+                                .build())
+                        .addField(int.class, "hash", Modifier.FINAL)
+                        .addField(leaseClassName, "next")
+                        .addMethod(MethodSpec.constructorBuilder()
+                                .addParameter(type, "object")
+                                .addParameter(int.class, "hash")
+                                .addParameter(leaseClassName, "next")
+                                .addStatement("super(object, COLLECTED)")
+                                .addStatement("this.hash = hash")
+                                .addStatement("this.next = next")
+                                .build())
+                        .build());
+    }
+}
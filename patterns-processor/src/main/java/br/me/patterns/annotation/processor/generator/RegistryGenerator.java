@@ -0,0 +1,199 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.squareup.javapoet.ArrayTypeName;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import com.squareup.javapoet.TypeVariableName;
+import com.squareup.javapoet.WildcardTypeName;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.processor.model.SingletonModel;
+
+/**
+ * Generates the {@code GeneratedSingletons} index of every {@code @Singleton} of a compilation. Lookups go through
+ * {@code switch} statements over the index and over {@link Class#getName()}, so no reflection, classpath scanning or
+ * map is involved.
+ */
+public class RegistryGenerator {
+
+    public static final String REGISTRY_CLASS_NAME = "GeneratedSingletons";
+    static final String PREWARM_FIELD_NAME = "PREWARM";
+    static final String PREWARM_CLASS_NAME = "Prewarm";
+    static final String SIZE_METHOD_NAME = "size";
+    static final String TYPE_METHOD_NAME = "type";
+    static final String GET_METHOD_NAME = "get";
+    static final String INDEX_OF_METHOD_NAME = "indexOf";
+    static final String PREWARM_METHOD_NAME = "prewarm";
+
+    public static JavaFile generate(String packageName, List<SingletonModel> models) {
+        List<SingletonModel> sortedModels = new ArrayList<>(models);
+        sortedModels.sort(Comparator.comparing(model -> model.binaryName));
+
+        TypeSpec.Builder registryTypeSpec = getClassTypeSpecBuilder(sortedModels);
+        for (SingletonModel model : sortedModels) {
+            registryTypeSpec.addOriginatingElement(model.originatingElement);
+        }
+
+        return JavaFile.builder(packageName, registryTypeSpec.build()).build();
+    }
+
+    static TypeSpec.Builder getClassTypeSpecBuilder(List<SingletonModel> models) {
+        return TypeSpec.classBuilder(REGISTRY_CLASS_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+                .addField(getPrewarmFieldSpec(models))
+                .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build())
+                .addMethod(getSizeMethodSpec(models))
+                .addMethod(getTypeMethodSpec(models))
+                .addMethod(getGetByIndexMethodSpec(models))
+                .addMethod(getIndexOfMethodSpec(models))
+                .addMethod(getGetByTypeMethodSpec())
+                .addMethod(getPrewarmMethodSpec())
+                .addType(getPrewarmTypeSpec());
+    }
+
+    private static FieldSpec getPrewarmFieldSpec(List<SingletonModel> models) {
+        CodeBlock.Builder indexes = CodeBlock.builder();
+        for (int i = 0; i < models.size(); i++) {
+            if (models.get(i).prewarm) {
+                indexes.add(indexes.isEmpty() ? "$L" : ", $L", i);
+            }
+        }
+
+        return FieldSpec.builder(ArrayTypeName.of(int.class), PREWARM_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("{$L}", indexes.build())
+                .build();
+    }
+
+    private static MethodSpec getSizeMethodSpec(List<SingletonModel> models) {
+        return MethodSpec.methodBuilder(SIZE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(int.class)
+                .addStatement("return $L", models.size())
+                .build();
+    }
+
+    private static MethodSpec getTypeMethodSpec(List<SingletonModel> models) {
+        CodeBlock.Builder cases = CodeBlock.builder();
+        for (int i = 0; i < models.size(); i++) {
+            cases.add("case $L:\n", i).indent()
+                    .addStatement("return $T.class", getRawType(models.get(i).type))
+                    .unindent();
+        }
+
+        return MethodSpec.methodBuilder(TYPE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class)))
+                .addParameter(int.class, "index")
+                .addCode(getIndexSwitch(cases.build()))
+                .build();
+    }
+
+    private static MethodSpec getGetByIndexMethodSpec(List<SingletonModel> models) {
+        CodeBlock.Builder cases = CodeBlock.builder();
+        for (int i = 0; i < models.size(); i++) {
+            SingletonModel model = models.get(i);
+            cases.add("case $L:\n", i).indent()
+                    .addStatement("return $T.$L()",
+                            ClassName.get(model.packageName, model.simpleName + SingletonGenerator.CREATED_CLASS_SUFFIX),
+                            SingletonGenerator.GET_INSTANCE_METHOD_NAME)
+                    .unindent();
+        }
+
+        return MethodSpec.methodBuilder(GET_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(Object.class)
+                .addParameter(int.class, "index")
+                .addCode(getIndexSwitch(cases.build()))
+                .build();
+    }
+
+    private static CodeBlock getIndexSwitch(CodeBlock cases) {
+        return CodeBlock.builder()
+                .beginControlFlow("switch (index)")
+                .add(cases)
+                .add("default:\n").indent()
+                .addStatement("throw new $T($S + index)", IndexOutOfBoundsException.class, "index: ")
+                .unindent()
+                .endControlFlow()
+                .build();
+    }
+
+    private static MethodSpec getIndexOfMethodSpec(List<SingletonModel> models) {
+        CodeBlock.Builder switchBlock = CodeBlock.builder().beginControlFlow("switch (type.getName())");
+        for (int i = 0; i < models.size(); i++) {
+            switchBlock.add("case $S:\n", models.get(i).binaryName).indent()
+                    .addStatement("return $L", i)
+                    .unindent();
+        }
+        switchBlock.add("default:\n").indent()
+                .addStatement("return -1")
+                .unindent()
+                .endControlFlow();
+
+        return MethodSpec.methodBuilder(INDEX_OF_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(int.class)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), WildcardTypeName.subtypeOf(Object.class)), "type")
+                .addCode(switchBlock.build())
+                .build();
+    }
+
+    private static MethodSpec getGetByTypeMethodSpec() {
+        TypeVariableName t = TypeVariableName.get("T");
+
+        return MethodSpec.methodBuilder(GET_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addTypeVariable(t)
+                .returns(t)
+                .addParameter(ParameterizedTypeName.get(ClassName.get(Class.class), t), "type")
+                .addStatement("int index = $L(type)", INDEX_OF_METHOD_NAME)
+                .beginControlFlow("if (index < 0)")
+                .addStatement("throw new $T($S + type.getName())", IllegalArgumentException.class, "Not a @Singleton: ")
+                .endControlFlow()
+                .addStatement("return type.cast($L(index))", GET_METHOD_NAME)
+                .build();
+    }
+
+    private static MethodSpec getPrewarmMethodSpec() {
+        return MethodSpec.methodBuilder(PREWARM_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addParameter(Executor.class, "executor")
+                .beginControlFlow("for (int index : $L)", PREWARM_FIELD_NAME)
+                .addStatement("executor.execute(new $L(index))", PREWARM_CLASS_NAME)
+                .endControlFlow()
+                .build();
+    }
+
+    private static TypeSpec getPrewarmTypeSpec() {
+        return TypeSpec.classBuilder(PREWARM_CLASS_NAME)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addSuperinterface(Runnable.class)
+                .addField(int.class, "index", Modifier.PRIVATE, Modifier.FINAL)
+                .addMethod(MethodSpec.constructorBuilder()
+                        .addParameter(int.class, "index")
+                        .addStatement("this.index = index")
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("run")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PUBLIC)
+                        .addStatement("$L(index)", GET_METHOD_NAME)
+                        .build())
+                .build();
+    }
+
+    private static TypeName getRawType(TypeName type) {
+        return type instanceof ParameterizedTypeName ? ((ParameterizedTypeName) type).rawType : type;
+    }
+}
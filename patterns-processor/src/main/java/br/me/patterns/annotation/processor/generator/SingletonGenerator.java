@@ -1,16 +1,23 @@
 package br.me.patterns.annotation.processor.generator;
 
 import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeName;
 import com.squareup.javapoet.TypeSpec;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import javax.lang.model.element.Element;
 import javax.lang.model.element.Modifier;
 
+import br.me.patterns.annotation.Singleton;
 import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.model.SingletonModel;
 
 public class SingletonGenerator {
 
@@ -18,42 +25,268 @@ public class SingletonGenerator {
     static final String CREATED_CLASS_SUFFIX = "_";
     static final String GET_INSTANCE_METHOD_NAME = "getInstance";
     static final String INSTANCE_FIELD_NAME = "INSTANCE";
+    static final String VOLATILE_INSTANCE_FIELD_NAME = "instance";
+    static final String HOLDER_CLASS_NAME = "Holder";
+    static final String INSTANCES_FIELD_NAME = "INSTANCES";
+    static final String STRIPES_FIELD_NAME = "STRIPES";
+    static final String STRIPE_INDEX_METHOD_NAME = "stripeIndex";
+    static final String REMOVE_METHOD_NAME = "remove";
+    static final String CLEAR_METHOD_NAME = "clear";
+    static final String COUNTER_CLASS_NAME = "Counter";
+    static final String INCREMENT_METHOD_NAME = "increment";
+    /**
+     * Longs from one stripe of a {@code Counter} to the next, a cache line of 64 bytes.
+     */
+    static final int COUNTER_STRIDE = 8;
 
     public static JavaFile generate(Element element) {
-        String targetFileName = getTargetFileName(element);
-        ClassName className = getTargetClassName(element, targetFileName);
+        return generate(SingletonModel.from(element));
+    }
 
-        TypeName type = TypeName.get(element.asType());
-        TypeSpec singletonTypeSpec = getClassTypeSpec(type, className);
+    public static JavaFile generate(SingletonModel model) {
+        ClassName className = getTargetClassName(model);
+        TypeSpec singletonTypeSpec = getClassTypeSpec(model, className);
 
-        return getJavaFile(element, singletonTypeSpec);
+        return getJavaFile(model, singletonTypeSpec);
     }
 
     static String getTargetFileName(Element element) {
         return element.getSimpleName().toString() + SingletonGenerator.CREATED_CLASS_SUFFIX;
     }
 
-    private static ClassName getTargetClassName(Element element, String targetFileName) {
-        return ClassName.get(Utils.getPackage(element).toString(), targetFileName);
+    private static ClassName getTargetClassName(SingletonModel model) {
+        return getTargetClassName(model.packageName, model.simpleName);
+    }
+
+    public static ClassName getTargetClassName(String packageName, String simpleName) {
+        return ClassName.get(packageName, simpleName + SingletonGenerator.CREATED_CLASS_SUFFIX);
     }
 
     static TypeSpec getClassTypeSpec(TypeName type, ClassName className) {
-        FieldSpec instanceField = getInstanceFieldSpec(type);
-        MethodSpec constructor = getConstructorSpec();
-        MethodSpec getInstanceMethod = getInstanceMethodSpec(type);
+        return getClassTypeSpec(type, className, Singleton.Strategy.EAGER);
+    }
+
+    static TypeSpec getClassTypeSpec(SingletonModel model, ClassName className) {
+        switch (model.scope) {
+            case THREAD:
+                return getThreadScopedClassTypeSpec(model.type, model.instanceType, className);
+            case STRIPED:
+                return getStripedClassTypeSpec(model.type, model.instanceType, className, model.stripes);
+            case GLOBAL:
+            default:
+                return getClassTypeSpec(model.type, model.instanceType, className, model.strategy);
+        }
+    }
+
+    static TypeSpec getThreadScopedClassTypeSpec(TypeName type, ClassName className) {
+        return getThreadScopedClassTypeSpec(type, type, className);
+    }
+
+    /**
+     * @param instanceType the class instantiated, {@code type} or a generated subclass of it.
+     */
+    static TypeSpec getThreadScopedClassTypeSpec(TypeName type, TypeName instanceType, ClassName className) {
+        TypeName threadLocalType = ParameterizedTypeName.get(ClassName.get(ThreadLocal.class), type);
+        TypeSpec threadLocalInitializer = TypeSpec.anonymousClassBuilder("")
+                .superclass(threadLocalType)
+                .addMethod(MethodSpec.methodBuilder("initialValue")
+                        .addAnnotation(Override.class)
+                        .addModifiers(Modifier.PROTECTED)
+                        .returns(type)
+                        .addStatement("return new $T()", instanceType)
+                        .build())
+                .build();
+
+        FieldSpec instancesField = FieldSpec.builder(threadLocalType, INSTANCES_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("$L", threadLocalInitializer)
+                .build();
+
+        MethodSpec getInstanceMethod = MethodSpec.methodBuilder(GET_INSTANCE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(type)
+                .addStatement("return $L.get()", INSTANCES_FIELD_NAME)
+                .build();
+
+        MethodSpec removeMethod = MethodSpec.methodBuilder(REMOVE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .addStatement("$L.remove()", INSTANCES_FIELD_NAME)
+                .build();
 
         return TypeSpec.classBuilder(className)
                 .addModifiers(Modifier.PUBLIC)
                 .superclass(type)
-                .addField(instanceField)
-                .addMethod(constructor)
+                .addField(instancesField)
+                .addMethod(getConstructorSpec())
+                .addMethod(getInstanceMethod)
+                .addMethod(removeMethod)
+                .build();
+    }
+
+    static TypeSpec getStripedClassTypeSpec(TypeName type, ClassName className, int stripes) {
+        return getStripedClassTypeSpec(type, type, className, stripes);
+    }
+
+    static TypeSpec getStripedClassTypeSpec(TypeName type, TypeName instanceType, ClassName className, int stripes) {
+        TypeName instancesType = ParameterizedTypeName.get(ClassName.get(AtomicReferenceArray.class), type);
+
+        FieldSpec stripesField = FieldSpec.builder(int.class, STRIPES_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer(getStripesInitializer(stripes))
+                .build();
+
+        FieldSpec instancesField = FieldSpec.builder(instancesType, INSTANCES_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T($L)", instancesType, STRIPES_FIELD_NAME)
+                .build();
+
+        MethodSpec getInstanceMethod = MethodSpec.methodBuilder(GET_INSTANCE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(type)
+                .addStatement("int index = $L()", STRIPE_INDEX_METHOD_NAME)
+                .addStatement("$T instance", type)
+                .beginControlFlow("while ((instance = $L.get(index)) == null)", INSTANCES_FIELD_NAME)
+                .addStatement("$L.compareAndSet(index, null, new $T())", INSTANCES_FIELD_NAME, instanceType)
+                .endControlFlow()
+                .addStatement("return instance")
+                .build();
+
+        MethodSpec stripeIndexMethod = getStripeIndexMethodSpec();
+
+        MethodSpec clearMethod = MethodSpec.methodBuilder(CLEAR_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .beginControlFlow("for (int i = 0; i < $L; i++)", STRIPES_FIELD_NAME)
+                .addStatement("$L.set(i, null)", INSTANCES_FIELD_NAME)
+                .endControlFlow()
+                .build();
+
+        return TypeSpec.classBuilder(className)
+                .addModifiers(Modifier.PUBLIC)
+                .superclass(type)
+                .addField(stripesField)
+                .addField(instancesField)
+                .addMethod(getConstructorSpec())
                 .addMethod(getInstanceMethod)
+                .addMethod(clearMethod)
+                .addMethod(stripeIndexMethod)
+                .build();
+    }
+
+    /**
+     * Picks one of the {@code STRIPES} of the generated class, a power of two, from the id of the calling thread.
+     */
+    static MethodSpec getStripeIndexMethodSpec() {
+        return MethodSpec.methodBuilder(STRIPE_INDEX_METHOD_NAME)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .returns(int.class)
+                .addStatement("long id = $T.currentThread().getId()", Thread.class)
+                .addStatement("int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9")
+                .addStatement("return (hash ^ (hash >>> 16)) & ($L - 1)", STRIPES_FIELD_NAME)
                 .build();
     }
 
+    static CodeBlock getStripesInitializer(int stripes) {
+        if (stripes > 0) {
+            return CodeBlock.of("$L", Utils.roundUpToPowerOfTwo(stripes));
+        }
+
+        return CodeBlock.of("$T.highestOneBit($T.max(1, $T.getRuntime().availableProcessors()) * 2 - 1)",
+                Integer.class, Math.class, Runtime.class);
+    }
+
+    /**
+     * A counter for hot paths shared by threads, such as cache hits: one {@code AtomicLong} would have every increment
+     * take its cache line away from the other cores, and a plain {@code long} would also lose increments and may tear
+     * on 32-bit devices. {@code LongAdder} needs API level 24, so each thread adds to one of {@code STRIPES} cells of
+     * an {@code AtomicLongArray}, a cache line apart, picked like the stripes of the striped singleton.
+     */
+    static TypeSpec getCounterTypeSpec() {
+        return TypeSpec.classBuilder(COUNTER_CLASS_NAME)
+                .addJavadoc("Count added up over {@code STRIPES} stripes of threads, each in a cache line of its own.\n")
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                .addField(FieldSpec.builder(int.class, "STRIDE", Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer("$L", COUNTER_STRIDE)
+                        .build())
+                .addField(FieldSpec.builder(int.class, STRIPES_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+                        .initializer(getStripesInitializer(0))
+                        .build())
+                .addField(FieldSpec.builder(AtomicLongArray.class, "cells", Modifier.PRIVATE, Modifier.FINAL)
+                        .initializer("new $T($L * STRIDE)", AtomicLongArray.class, STRIPES_FIELD_NAME)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder(INCREMENT_METHOD_NAME)
+                        .addStatement("cells.getAndIncrement($L() * STRIDE)", STRIPE_INDEX_METHOD_NAME)
+                        .build())
+                .addMethod(MethodSpec.methodBuilder("get")
+                        .addJavadoc("Adds up the stripes one by one, so increments made meanwhile may be missed.\n")
+                        .returns(long.class)
+                        .addStatement("long count = 0")
+                        .beginControlFlow("for (int stripe = 0; stripe < $L * STRIDE; stripe += STRIDE)", STRIPES_FIELD_NAME)
+                        .addStatement("count += cells.get(stripe)")
+                        .endControlFlow()
+                        .addStatement("return count")
+                        .build())
+                .addMethod(getStripeIndexMethodSpec())
+                .build();
+    }
+
+    static TypeSpec getClassTypeSpec(TypeName type, ClassName className, Singleton.Strategy strategy) {
+        return getClassTypeSpec(type, type, className, strategy);
+    }
+
+    static TypeSpec getClassTypeSpec(TypeName type, TypeName instanceType, ClassName className, Singleton.Strategy strategy) {
+        TypeSpec.Builder classTypeSpec = TypeSpec.classBuilder(className)
+                .addModifiers(Modifier.PUBLIC)
+                .superclass(type);
+
+        switch (strategy) {
+            case LAZY_HOLDER:
+                classTypeSpec
+                        .addMethod(getConstructorSpec())
+                        .addMethod(getHolderInstanceMethodSpec(type))
+                        .addType(getHolderTypeSpec(type, instanceType));
+                break;
+            case DOUBLE_CHECKED:
+                classTypeSpec
+                        .addField(getVolatileInstanceFieldSpec(type))
+                        .addMethod(getConstructorSpec())
+                        .addMethod(getDoubleCheckedInstanceMethodSpec(type, instanceType, className));
+                break;
+            case EAGER:
+            default:
+                classTypeSpec
+                        .addField(getInstanceFieldSpec(type, instanceType))
+                        .addMethod(getConstructorSpec())
+                        .addMethod(getInstanceMethodSpec(type));
+                break;
+        }
+
+        return classTypeSpec.build();
+    }
+
     static FieldSpec getInstanceFieldSpec(TypeName type) {
+        return getInstanceFieldSpec(type, type);
+    }
+
+    static FieldSpec getInstanceFieldSpec(TypeName type, TypeName instanceType) {
         return FieldSpec.builder(type, SingletonGenerator.INSTANCE_FIELD_NAME, Modifier.PRIVATE, Modifier.FINAL, Modifier.STATIC)
-                .initializer("new $T()", type)
+                .initializer("new $T()", instanceType)
+                .build();
+    }
+
+    static FieldSpec getVolatileInstanceFieldSpec(TypeName type) {
+        return FieldSpec.builder(type, SingletonGenerator.VOLATILE_INSTANCE_FIELD_NAME, Modifier.PRIVATE, Modifier.STATIC, Modifier.VOLATILE)
+                .build();
+    }
+
+    static TypeSpec getHolderTypeSpec(TypeName type) {
+        return getHolderTypeSpec(type, type);
+    }
+
+    static TypeSpec getHolderTypeSpec(TypeName type, TypeName instanceType) {
+        FieldSpec instanceField = FieldSpec.builder(type, SingletonGenerator.INSTANCE_FIELD_NAME, Modifier.STATIC, Modifier.FINAL)
+                .initializer("new $T()", instanceType)
+                .build();
+
+        return TypeSpec.classBuilder(HOLDER_CLASS_NAME)
+                .addModifiers(Modifier.PRIVATE, Modifier.STATIC)
+                .addField(instanceField)
                 .build();
     }
 
@@ -71,7 +304,40 @@ public class SingletonGenerator {
                 .build();
     }
 
-    private static JavaFile getJavaFile(Element element, TypeSpec singletonTypeSpec) {
-        return JavaFile.builder(Utils.getPackage(element).getQualifiedName().toString(), singletonTypeSpec).build();
+    static MethodSpec getHolderInstanceMethodSpec(TypeName type) {
+        return MethodSpec.methodBuilder(GET_INSTANCE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(type)
+                .addStatement("return $L.$L", HOLDER_CLASS_NAME, INSTANCE_FIELD_NAME)
+                .build();
+    }
+
+    static MethodSpec getDoubleCheckedInstanceMethodSpec(TypeName type, ClassName className) {
+        return getDoubleCheckedInstanceMethodSpec(type, type, className);
+    }
+
+    static MethodSpec getDoubleCheckedInstanceMethodSpec(TypeName type, TypeName instanceType, ClassName className) {
+        return MethodSpec.methodBuilder(GET_INSTANCE_METHOD_NAME)
+                .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+                .returns(type)
+                .addStatement("$T result = $L", type, VOLATILE_INSTANCE_FIELD_NAME)
+                .beginControlFlow("if (result == null)")
+                .beginControlFlow("synchronized ($T.class)", className)
+                .addStatement("result = $L", VOLATILE_INSTANCE_FIELD_NAME)
+                .beginControlFlow("if (result == null)")
+                .addStatement("$L = result = new $T()", VOLATILE_INSTANCE_FIELD_NAME, instanceType)
+                .endControlFlow()
+                .endControlFlow()
+                .endControlFlow()
+                .addStatement("return result")
+                .build();
+    }
+
+    private static JavaFile getJavaFile(SingletonModel model, TypeSpec singletonTypeSpec) {
+        TypeSpec isolatedTypeSpec = singletonTypeSpec.toBuilder()
+                .addOriginatingElement(model.originatingElement)
+                .build();
+
+        return JavaFile.builder(model.packageName, isolatedTypeSpec).build();
     }
 }
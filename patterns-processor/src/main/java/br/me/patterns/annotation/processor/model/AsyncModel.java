@@ -0,0 +1,98 @@
+package br.me.patterns.annotation.processor.model;
+
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.Async;
+import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.generator.SingletonGenerator;
+
+/**
+ * Immutable snapshot of an {@code @Async} singleton: the methods to call on an executor. It is read on the javac thread
+ * and can then be handed to {@link br.me.patterns.annotation.processor.generator.AsyncGenerator} on any thread.
+ */
+public class AsyncModel {
+
+    public final String packageName;
+    public final TypeName type;
+    public final String simpleName;
+    /**
+     * The generated {@code *_} whose {@code getInstance()} the calls go through.
+     */
+    public final ClassName singletonClassName;
+    public final boolean isPublic;
+    public final int threads;
+    public final boolean batch;
+    public final List<MethodModel> methods;
+    public final Element originatingElement;
+
+    AsyncModel(String packageName, TypeName type, String simpleName, ClassName singletonClassName, boolean isPublic, int threads,
+               boolean batch, List<MethodModel> methods, Element originatingElement) {
+        this.packageName = packageName;
+        this.type = type;
+        this.simpleName = simpleName;
+        this.singletonClassName = singletonClassName;
+        this.isPublic = isPublic;
+        this.threads = threads;
+        this.batch = batch;
+        this.methods = Collections.unmodifiableList(methods);
+        this.originatingElement = originatingElement;
+    }
+
+    public static AsyncModel from(Element element) {
+        Async annotation = element.getAnnotation(Async.class);
+        String packageName = Utils.getPackage(element).getQualifiedName().toString();
+        String simpleName = element.getSimpleName().toString();
+
+        List<MethodModel> methods = new ArrayList<>();
+        for (Element enclosedElement : element.getEnclosedElements()) {
+            Set<Modifier> modifiers = enclosedElement.getModifiers();
+            if (enclosedElement.getKind() == ElementKind.METHOD && modifiers.contains(Modifier.PUBLIC) && ! modifiers.contains(Modifier.STATIC)
+                    && ((ExecutableElement) enclosedElement).getTypeParameters().isEmpty()) {
+                methods.add(MethodModel.from((ExecutableElement) enclosedElement, 0));
+            }
+        }
+
+        return new AsyncModel(
+                packageName,
+                TypeName.get(element.asType()),
+                simpleName,
+                SingletonGenerator.getTargetClassName(packageName, simpleName),
+                Utils.isPublic(element),
+                annotation != null ? annotation.threads() : 0,
+                annotation != null && annotation.batch(),
+                methods,
+                element);
+    }
+
+    /**
+     * Stable description of everything the generated {@code Async_} file depends on. Two models with the same
+     * fingerprint generate the same file.
+     */
+    public String fingerprint() {
+        StringBuilder fingerprint = new StringBuilder("Async;")
+                .append(packageName).append(';')
+                .append(simpleName).append(';')
+                .append(type).append(';')
+                .append(singletonClassName).append(';')
+                .append(isPublic).append(';')
+                .append(threads).append(';')
+                .append(batch);
+
+        for (MethodModel method : methods) {
+            fingerprint.append(';').append(method.fingerprint());
+        }
+
+        return fingerprint.toString();
+    }
+}
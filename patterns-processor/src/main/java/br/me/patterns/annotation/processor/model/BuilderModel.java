@@ -0,0 +1,129 @@
+package br.me.patterns.annotation.processor.model;
+
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+
+import br.me.patterns.annotation.Builder;
+import br.me.patterns.annotation.Interned;
+import br.me.patterns.annotation.processor.Utils;
+
+/**
+ * Immutable snapshot of a {@code @Builder} class: its package, the generated class names and the fields to copy.
+ * It is read on the javac thread and can then be handed to
+ * {@link br.me.patterns.annotation.processor.generator.BuilderGenerator} on any thread.
+ */
+public class BuilderModel {
+
+    public final String packageName;
+    public final TypeName type;
+    public final String simpleName;
+    public final List<FieldModel> fields;
+    public final boolean reusable;
+    public final int poolSize;
+    public final boolean immutable;
+    public final boolean cacheToString;
+    public final boolean packBooleans;
+    public final boolean batch;
+    public final boolean offHeap;
+    public final boolean withers;
+    public final boolean codec;
+    public final boolean externalizable;
+    public final boolean json;
+    public final Element originatingElement;
+
+    BuilderModel(String packageName, TypeName type, String simpleName, List<FieldModel> fields,
+                 boolean reusable, int poolSize, boolean immutable, boolean cacheToString,
+                 boolean packBooleans, boolean batch, boolean offHeap, boolean withers,
+                 boolean codec, boolean externalizable, boolean json, Element originatingElement) {
+        this.packageName = packageName;
+        this.type = type;
+        this.simpleName = simpleName;
+        this.fields = Collections.unmodifiableList(fields);
+        this.reusable = reusable;
+        this.poolSize = poolSize;
+        this.immutable = immutable;
+        this.cacheToString = cacheToString;
+        this.packBooleans = packBooleans;
+        this.batch = batch;
+        this.offHeap = offHeap;
+        this.withers = withers;
+        this.codec = codec;
+        this.externalizable = externalizable;
+        this.json = json;
+        this.originatingElement = originatingElement;
+    }
+
+    public static BuilderModel from(Element element) {
+        String packageName = Utils.getPackage(element).getQualifiedName().toString();
+        Builder annotation = element.getAnnotation(Builder.class);
+
+        List<FieldModel> fields = new ArrayList<>();
+        for (Element enclosedElement: element.getEnclosedElements()) {
+            if (! isElementToProcess(enclosedElement)) {
+                continue;
+            }
+
+            Interned interned = enclosedElement.getAnnotation(Interned.class);
+            fields.add(new FieldModel(enclosedElement.getSimpleName().toString(), TypeName.get(enclosedElement.asType()),
+                    interned != null, interned != null ? interned.capacity() : 0));
+        }
+
+        return new BuilderModel(
+                packageName,
+                TypeName.get(element.asType()),
+                element.getSimpleName().toString(),
+                fields,
+                annotation != null && annotation.reusable(),
+                annotation != null ? annotation.poolSize() : 0,
+                annotation != null && annotation.immutable(),
+                annotation != null && annotation.cacheToString(),
+                annotation != null && annotation.packBooleans(),
+                annotation != null && annotation.batch(),
+                annotation != null && annotation.offHeap(),
+                annotation != null && annotation.withers(),
+                annotation != null && annotation.codec(),
+                annotation != null && annotation.externalizable(),
+                annotation != null && annotation.json(),
+                element);
+    }
+
+    /**
+     * Stable description of everything the generated files depend on. Two models with the same fingerprint
+     * generate the same files.
+     */
+    public String fingerprint() {
+        StringBuilder fingerprint = new StringBuilder("Builder;")
+                .append(packageName).append(';')
+                .append(simpleName).append(';')
+                .append(type).append(';')
+                .append(reusable).append(';')
+                .append(poolSize).append(';')
+                .append(immutable).append(';')
+                .append(cacheToString).append(';')
+                .append(packBooleans).append(';')
+                .append(batch).append(';')
+                .append(offHeap).append(';')
+                .append(withers).append(';')
+                .append(codec).append(';')
+                .append(externalizable).append(';')
+                .append(json);
+
+        for (FieldModel field : fields) {
+            fingerprint.append(';').append(field.fingerprint());
+        }
+
+        return fingerprint.toString();
+    }
+
+    private static boolean isElementToProcess(Element e) {
+        TypeMirror typeMirror = e.asType();
+        return typeMirror.getKind().isPrimitive() || typeMirror.getKind().equals(TypeKind.DECLARED);
+    }
+}
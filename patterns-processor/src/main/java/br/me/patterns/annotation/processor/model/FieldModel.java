@@ -0,0 +1,33 @@
+package br.me.patterns.annotation.processor.model;
+
+import com.squareup.javapoet.TypeName;
+
+/**
+ * Immutable snapshot of one field of an annotated class, or of one parameter of an annotated method.
+ */
+public class FieldModel {
+
+    public final String name;
+    public final TypeName type;
+    public final boolean interned;
+    public final int internCapacity;
+
+    public FieldModel(String name, TypeName type) {
+        this(name, type, false, 0);
+    }
+
+    public FieldModel(String name, TypeName type, boolean interned, int internCapacity) {
+        this.name = name;
+        this.type = type;
+        this.interned = interned;
+        this.internCapacity = internCapacity;
+    }
+
+    public boolean isPrimitive() {
+        return type.isPrimitive();
+    }
+
+    String fingerprint() {
+        return interned ? name + ":" + type + ":interned=" + internCapacity : name + ":" + type;
+    }
+}
@@ -0,0 +1,80 @@
+package br.me.patterns.annotation.processor.model;
+
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.Flyweight;
+import br.me.patterns.annotation.processor.Utils;
+
+/**
+ * Immutable snapshot of a {@code @Flyweight} class: its instance fields, in declaration order. It is read on the javac
+ * thread and can then be handed to {@link br.me.patterns.annotation.processor.generator.FlyweightGenerator} on any
+ * thread.
+ */
+public class FlyweightModel {
+
+    public final String packageName;
+    public final TypeName type;
+    public final String simpleName;
+    public final boolean isPublic;
+    public final List<FieldModel> fields;
+    public final int initialCapacity;
+    public final Element originatingElement;
+
+    FlyweightModel(String packageName, TypeName type, String simpleName, boolean isPublic, List<FieldModel> fields,
+                   int initialCapacity, Element originatingElement) {
+        this.packageName = packageName;
+        this.type = type;
+        this.simpleName = simpleName;
+        this.isPublic = isPublic;
+        this.fields = Collections.unmodifiableList(fields);
+        this.initialCapacity = initialCapacity;
+        this.originatingElement = originatingElement;
+    }
+
+    public static FlyweightModel from(Element element) {
+        Flyweight annotation = element.getAnnotation(Flyweight.class);
+
+        List<FieldModel> fields = new ArrayList<>();
+        for (Element enclosedElement : element.getEnclosedElements()) {
+            if (enclosedElement.getKind() == ElementKind.FIELD && ! enclosedElement.getModifiers().contains(Modifier.STATIC)) {
+                fields.add(new FieldModel(enclosedElement.getSimpleName().toString(), TypeName.get(enclosedElement.asType())));
+            }
+        }
+
+        return new FlyweightModel(
+                Utils.getPackage(element).getQualifiedName().toString(),
+                TypeName.get(element.asType()),
+                element.getSimpleName().toString(),
+                Utils.isPublic(element),
+                fields,
+                annotation != null ? annotation.initialCapacity() : 256,
+                element);
+    }
+
+    /**
+     * Stable description of everything the generated {@code *_} file depends on. Two models with the same fingerprint
+     * generate the same file.
+     */
+    public String fingerprint() {
+        StringBuilder fingerprint = new StringBuilder("Flyweight;")
+                .append(packageName).append(';')
+                .append(simpleName).append(';')
+                .append(type).append(';')
+                .append(isPublic).append(';')
+                .append(initialCapacity);
+
+        for (FieldModel field : fields) {
+            fingerprint.append(';').append(field.fingerprint());
+        }
+
+        return fingerprint.toString();
+    }
+}
@@ -0,0 +1,113 @@
+package br.me.patterns.annotation.processor.model;
+
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.Instrumented;
+import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.generator.MemoizeGenerator;
+
+/**
+ * Immutable snapshot of an {@code @Instrumented} class: the methods to time and the constructors the generated
+ * subclass has to expose. It is read on the javac thread and can then be handed to
+ * {@link br.me.patterns.annotation.processor.generator.InstrumentedGenerator} on any thread.
+ */
+public class InstrumentedModel {
+
+    public final String packageName;
+    public final TypeName type;
+    /**
+     * The class the generated subclass extends: {@link #type}, or its {@code Memoized_} subclass when it has
+     * {@code @Memoize} methods.
+     */
+    public final TypeName superType;
+    public final String simpleName;
+    public final boolean enabled;
+    public final List<MethodModel> methods;
+    public final List<MethodModel> constructors;
+    public final Element originatingElement;
+
+    InstrumentedModel(String packageName, TypeName type, TypeName superType, String simpleName, boolean enabled,
+                      List<MethodModel> methods, List<MethodModel> constructors, Element originatingElement) {
+        this.packageName = packageName;
+        this.type = type;
+        this.superType = superType;
+        this.simpleName = simpleName;
+        this.enabled = enabled;
+        this.methods = Collections.unmodifiableList(methods);
+        this.constructors = Collections.unmodifiableList(constructors);
+        this.originatingElement = originatingElement;
+    }
+
+    public static InstrumentedModel from(Element element) {
+        Instrumented annotation = element.getAnnotation(Instrumented.class);
+        String packageName = Utils.getPackage(element).getQualifiedName().toString();
+        String simpleName = element.getSimpleName().toString();
+        TypeName type = TypeName.get(element.asType());
+
+        List<MethodModel> methods = new ArrayList<>();
+        List<MethodModel> constructors = new ArrayList<>();
+        for (Element enclosedElement : element.getEnclosedElements()) {
+            if (enclosedElement.getKind() == ElementKind.METHOD && isOverridden((ExecutableElement) enclosedElement)) {
+                methods.add(MethodModel.from((ExecutableElement) enclosedElement, 0));
+            } else if (enclosedElement.getKind() == ElementKind.CONSTRUCTOR && ! enclosedElement.getModifiers().contains(Modifier.PRIVATE)) {
+                constructors.add(MethodModel.from((ExecutableElement) enclosedElement, 0));
+            }
+        }
+
+        return new InstrumentedModel(
+                packageName,
+                type,
+                MemoizeModel.hasMemoizedMethods(element) ? MemoizeGenerator.getTargetClassName(packageName, simpleName) : type,
+                simpleName,
+                annotation == null || annotation.enabled(),
+                methods,
+                constructors,
+                element);
+    }
+
+    private static boolean isOverridden(ExecutableElement method) {
+        Set<Modifier> modifiers = method.getModifiers();
+        return modifiers.contains(Modifier.PUBLIC) && ! modifiers.contains(Modifier.STATIC) && ! modifiers.contains(Modifier.FINAL)
+                && ! modifiers.contains(Modifier.ABSTRACT) && method.getTypeParameters().isEmpty();
+    }
+
+    /**
+     * @return whether {@code element} is {@code @Instrumented}, so that it has an {@code Instrumented_} subclass.
+     */
+    public static boolean isInstrumented(Element element) {
+        return element.getAnnotation(Instrumented.class) != null;
+    }
+
+    /**
+     * Stable description of everything the generated {@code Instrumented_} file depends on. Two models with the same
+     * fingerprint generate the same file.
+     */
+    public String fingerprint() {
+        StringBuilder fingerprint = new StringBuilder("Instrumented;")
+                .append(packageName).append(';')
+                .append(simpleName).append(';')
+                .append(type).append(';')
+                .append(superType).append(';')
+                .append(enabled);
+
+        for (MethodModel constructor : constructors) {
+            fingerprint.append(";new ").append(constructor.fingerprint());
+        }
+
+        for (MethodModel method : methods) {
+            fingerprint.append(';').append(method.fingerprint());
+        }
+
+        return fingerprint.toString();
+    }
+}
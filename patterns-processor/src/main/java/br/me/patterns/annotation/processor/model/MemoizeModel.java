@@ -0,0 +1,99 @@
+package br.me.patterns.annotation.processor.model;
+
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.Memoize;
+import br.me.patterns.annotation.processor.Utils;
+
+/**
+ * Immutable snapshot of a class with {@code @Memoize} methods: the methods to override and the constructors the
+ * generated subclass has to expose. It is read on the javac thread and can then be handed to
+ * {@link br.me.patterns.annotation.processor.generator.MemoizeGenerator} on any thread.
+ */
+public class MemoizeModel {
+
+    public final String packageName;
+    public final TypeName type;
+    public final String simpleName;
+    public final List<MethodModel> methods;
+    public final List<MethodModel> constructors;
+    public final Element originatingElement;
+
+    MemoizeModel(String packageName, TypeName type, String simpleName, List<MethodModel> methods,
+                 List<MethodModel> constructors, Element originatingElement) {
+        this.packageName = packageName;
+        this.type = type;
+        this.simpleName = simpleName;
+        this.methods = Collections.unmodifiableList(methods);
+        this.constructors = Collections.unmodifiableList(constructors);
+        this.originatingElement = originatingElement;
+    }
+
+    public static MemoizeModel from(Element element) {
+        List<MethodModel> methods = new ArrayList<>();
+        List<MethodModel> constructors = new ArrayList<>();
+
+        for (Element enclosedElement : element.getEnclosedElements()) {
+            if (enclosedElement.getKind() == ElementKind.METHOD) {
+                Memoize annotation = enclosedElement.getAnnotation(Memoize.class);
+                if (annotation != null) {
+                    methods.add(MethodModel.from((ExecutableElement) enclosedElement, annotation.maxSize()));
+                }
+            } else if (enclosedElement.getKind() == ElementKind.CONSTRUCTOR && ! enclosedElement.getModifiers().contains(Modifier.PRIVATE)) {
+                constructors.add(MethodModel.from((ExecutableElement) enclosedElement, 0));
+            }
+        }
+
+        return new MemoizeModel(
+                Utils.getPackage(element).getQualifiedName().toString(),
+                TypeName.get(element.asType()),
+                element.getSimpleName().toString(),
+                methods,
+                constructors,
+                element);
+    }
+
+    /**
+     * @return whether {@code element} declares a {@code @Memoize} method, so that it has a {@code Memoized_}
+     * subclass.
+     */
+    public static boolean hasMemoizedMethods(Element element) {
+        for (Element enclosedElement : element.getEnclosedElements()) {
+            if (enclosedElement.getKind() == ElementKind.METHOD && enclosedElement.getAnnotation(Memoize.class) != null) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Stable description of everything the generated {@code Memoized_} file depends on. Two models with the same
+     * fingerprint generate the same file.
+     */
+    public String fingerprint() {
+        StringBuilder fingerprint = new StringBuilder("Memoize;")
+                .append(packageName).append(';')
+                .append(simpleName).append(';')
+                .append(type);
+
+        for (MethodModel constructor : constructors) {
+            fingerprint.append(";new ").append(constructor.fingerprint());
+        }
+
+        for (MethodModel method : methods) {
+            fingerprint.append(';').append(method.fingerprint());
+        }
+
+        return fingerprint.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package br.me.patterns.annotation.processor.model;
+
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+
+/**
+ * Immutable snapshot of the signature of a method or constructor to override or call from a generated subclass.
+ */
+public class MethodModel {
+
+    public final String name;
+    public final TypeName returnType;
+    public final List<FieldModel> parameters;
+    public final List<TypeName> thrownTypes;
+    /**
+     * {@link Modifier#PUBLIC}, {@link Modifier#PROTECTED} or null for package-private.
+     */
+    public final Modifier visibility;
+    public final int maxSize;
+
+    public MethodModel(String name, TypeName returnType, List<FieldModel> parameters, List<TypeName> thrownTypes,
+                       Modifier visibility, int maxSize) {
+        this.name = name;
+        this.returnType = returnType;
+        this.parameters = Collections.unmodifiableList(parameters);
+        this.thrownTypes = Collections.unmodifiableList(thrownTypes);
+        this.visibility = visibility;
+        this.maxSize = maxSize;
+    }
+
+    static MethodModel from(ExecutableElement element, int maxSize) {
+        List<FieldModel> parameters = new ArrayList<>();
+        for (VariableElement parameter : element.getParameters()) {
+            parameters.add(new FieldModel(parameter.getSimpleName().toString(), TypeName.get(parameter.asType())));
+        }
+
+        List<TypeName> thrownTypes = new ArrayList<>();
+        for (TypeMirror thrownType : element.getThrownTypes()) {
+            thrownTypes.add(TypeName.get(thrownType));
+        }
+
+        Modifier visibility = null;
+        if (element.getModifiers().contains(Modifier.PUBLIC)) {
+            visibility = Modifier.PUBLIC;
+        } else if (element.getModifiers().contains(Modifier.PROTECTED)) {
+            visibility = Modifier.PROTECTED;
+        }
+
+        return new MethodModel(element.getSimpleName().toString(), TypeName.get(element.getReturnType()), parameters,
+                thrownTypes, visibility, maxSize);
+    }
+
+    String fingerprint() {
+        StringBuilder fingerprint = new StringBuilder()
+                .append(visibility).append(' ')
+                .append(returnType).append(' ')
+                .append(name).append('(');
+
+        for (FieldModel parameter : parameters) {
+            fingerprint.append(parameter.fingerprint()).append(',');
+        }
+
+        return fingerprint.append(")throws").append(thrownTypes).append(":maxSize=").append(maxSize).toString();
+    }
+}
@@ -0,0 +1,122 @@
+package br.me.patterns.annotation.processor.model;
+
+import com.squareup.javapoet.TypeName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+
+import br.me.patterns.annotation.Pooled;
+import br.me.patterns.annotation.processor.Utils;
+
+/**
+ * Immutable snapshot of a {@code @Pooled} class: how it is reset and where its released instances are kept. It is read
+ * on the javac thread and can then be handed to {@link br.me.patterns.annotation.processor.generator.PoolGenerator} on
+ * any thread.
+ */
+public class PooledModel {
+
+    public static final String RESET_METHOD_NAME = "reset";
+
+    public final String packageName;
+    public final TypeName type;
+    public final String simpleName;
+    public final boolean isPublic;
+    public final int capacity;
+    public final Pooled.Scope scope;
+    /**
+     * Whether the class declares {@code reset()}, which is then called instead of resetting {@link #resetFields}.
+     */
+    public final boolean hasResetMethod;
+    /**
+     * The non-final instance fields, restored to the values of a new instance by the generated reset.
+     */
+    public final List<FieldModel> resetFields;
+    public final boolean leakDetection;
+    public final Element originatingElement;
+
+    PooledModel(String packageName, TypeName type, String simpleName, boolean isPublic, int capacity, Pooled.Scope scope,
+                boolean hasResetMethod, List<FieldModel> resetFields, boolean leakDetection, Element originatingElement) {
+        this.packageName = packageName;
+        this.type = type;
+        this.simpleName = simpleName;
+        this.isPublic = isPublic;
+        this.capacity = capacity;
+        this.scope = scope;
+        this.hasResetMethod = hasResetMethod;
+        this.resetFields = Collections.unmodifiableList(resetFields);
+        this.leakDetection = leakDetection;
+        this.originatingElement = originatingElement;
+    }
+
+    public static PooledModel from(Element element) {
+        return from(element, false);
+    }
+
+    public static PooledModel from(Element element, boolean leakDetection) {
+        Pooled annotation = element.getAnnotation(Pooled.class);
+
+        List<FieldModel> resetFields = new ArrayList<>();
+        for (Element enclosedElement : element.getEnclosedElements()) {
+            Set<Modifier> modifiers = enclosedElement.getModifiers();
+            if (enclosedElement.getKind() == ElementKind.FIELD && ! modifiers.contains(Modifier.STATIC) && ! modifiers.contains(Modifier.FINAL)) {
+                resetFields.add(new FieldModel(enclosedElement.getSimpleName().toString(), TypeName.get(enclosedElement.asType())));
+            }
+        }
+
+        return new PooledModel(
+                Utils.getPackage(element).getQualifiedName().toString(),
+                TypeName.get(element.asType()),
+                element.getSimpleName().toString(),
+                Utils.isPublic(element),
+                annotation != null ? annotation.capacity() : 64,
+                annotation != null ? annotation.scope() : Pooled.Scope.GLOBAL,
+                getResetMethod(element) != null,
+                resetFields,
+                leakDetection,
+                element);
+    }
+
+    /**
+     * @return the {@code reset()} declared by {@code element}, without parameters and not static, or {@code null}.
+     */
+    public static ExecutableElement getResetMethod(Element element) {
+        for (Element enclosedElement : element.getEnclosedElements()) {
+            if (enclosedElement.getKind() == ElementKind.METHOD && enclosedElement.getSimpleName().contentEquals(RESET_METHOD_NAME)
+                    && ((ExecutableElement) enclosedElement).getParameters().isEmpty()
+                    && ! enclosedElement.getModifiers().contains(Modifier.STATIC)) {
+                return (ExecutableElement) enclosedElement;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Stable description of everything the generated {@code *_} file depends on. Two models with the same fingerprint
+     * generate the same file.
+     */
+    public String fingerprint() {
+        StringBuilder fingerprint = new StringBuilder("Pooled;")
+                .append(packageName).append(';')
+                .append(simpleName).append(';')
+                .append(type).append(';')
+                .append(isPublic).append(';')
+                .append(capacity).append(';')
+                .append(scope).append(';')
+                .append(hasResetMethod).append(';')
+                .append(leakDetection);
+
+        for (FieldModel field : resetFields) {
+            fingerprint.append(';').append(field.fingerprint());
+        }
+
+        return fingerprint.toString();
+    }
+}
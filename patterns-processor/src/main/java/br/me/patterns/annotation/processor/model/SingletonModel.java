@@ -0,0 +1,93 @@
+package br.me.patterns.annotation.processor.model;
+
+import com.squareup.javapoet.TypeName;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+
+import br.me.patterns.annotation.Singleton;
+import br.me.patterns.annotation.processor.Utils;
+import br.me.patterns.annotation.processor.generator.InstrumentedGenerator;
+import br.me.patterns.annotation.processor.generator.MemoizeGenerator;
+
+/**
+ * Immutable snapshot of a {@code @Singleton} class. It is read on the javac thread and can then be handed to
+ * {@link br.me.patterns.annotation.processor.generator.SingletonGenerator} on any thread.
+ */
+public class SingletonModel {
+
+    public final String packageName;
+    public final TypeName type;
+    /**
+     * The class the generated {@code *_} instantiates: {@link #type}, its {@code Instrumented_} subclass when it is
+     * {@code @Instrumented}, or else its {@code Memoized_} subclass when it has {@code @Memoize} methods.
+     */
+    public final TypeName instanceType;
+    public final String simpleName;
+    public final String binaryName;
+    public final boolean isPublic;
+    public final Singleton.Strategy strategy;
+    public final Singleton.Scope scope;
+    public final int stripes;
+    public final boolean prewarm;
+    public final Element originatingElement;
+
+    SingletonModel(String packageName, TypeName type, TypeName instanceType, String simpleName, String binaryName, boolean isPublic,
+                   Singleton.Strategy strategy, Singleton.Scope scope, int stripes, boolean prewarm, Element originatingElement) {
+        this.packageName = packageName;
+        this.type = type;
+        this.instanceType = instanceType;
+        this.simpleName = simpleName;
+        this.binaryName = binaryName;
+        this.isPublic = isPublic;
+        this.strategy = strategy;
+        this.scope = scope;
+        this.stripes = stripes;
+        this.prewarm = prewarm;
+        this.originatingElement = originatingElement;
+    }
+
+    public static SingletonModel from(Element element) {
+        return from(element, null);
+    }
+
+    public static SingletonModel from(Element element, Elements elements) {
+        String packageName = Utils.getPackage(element).getQualifiedName().toString();
+        Singleton annotation = element.getAnnotation(Singleton.class);
+        String binaryName = elements != null && element instanceof TypeElement
+                ? elements.getBinaryName((TypeElement) element).toString()
+                : element.toString();
+
+        TypeName type = TypeName.get(element.asType());
+        String simpleName = element.getSimpleName().toString();
+        TypeName instanceType = type;
+        if (InstrumentedModel.isInstrumented(element)) {
+            instanceType = InstrumentedGenerator.getTargetClassName(packageName, simpleName);
+        } else if (MemoizeModel.hasMemoizedMethods(element)) {
+            instanceType = MemoizeGenerator.getTargetClassName(packageName, simpleName);
+        }
+
+        return new SingletonModel(
+                packageName,
+                type,
+                instanceType,
+                simpleName,
+                binaryName,
+                Utils.isPublic(element),
+                annotation != null ? annotation.strategy() : Singleton.Strategy.EAGER,
+                annotation != null ? annotation.scope() : Singleton.Scope.GLOBAL,
+                annotation != null ? annotation.stripes() : 0,
+                annotation != null && annotation.prewarm(),
+                element);
+    }
+
+    /**
+     * Stable description of everything the generated {@code *_} file depends on. Two models with the same
+     * fingerprint generate the same file. The registry-only data ({@link #binaryName}, {@link #isPublic}, {@link #prewarm}) is left
+     * out on purpose.
+     */
+    public String fingerprint() {
+        return "Singleton;" + packageName + ";" + simpleName + ";" + type + ";" + instanceType + ";" + strategy + ";" + scope + ";" + stripes;
+    }
+}
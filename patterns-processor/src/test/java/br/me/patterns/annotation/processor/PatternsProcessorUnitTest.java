@@ -0,0 +1,380 @@
+package br.me.patterns.annotation.processor;
+
+import com.google.common.io.Resources;
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.FileObject;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+@RunWith(JUnit4.class)
+public class PatternsProcessorUnitTest {
+
+    private static final JavaFileObject MATH_SINGLETON = JavaFileObjects.forSourceLines("test.MathSingleton",
+            "package test;",
+            "",
+            "import br.me.patterns.annotation.Singleton;",
+            "",
+            "@Singleton",
+            "public class MathSingleton {",
+            "    public int sum(int a, int b) { return a + b; }",
+            "    MathSingleton() {}",
+            "}");
+
+    private static final JavaFileObject CARRO_BUILDER = JavaFileObjects.forSourceLines("test.CarroBuilder",
+            "package test;",
+            "",
+            "import br.me.patterns.annotation.Builder;",
+            "",
+            "@Builder",
+            "public class CarroBuilder {",
+            "    String cor;",
+            "    int anoFabricacao;",
+            "}");
+
+    private static final JavaFileObject MOTO_BUILDER = JavaFileObjects.forSourceLines("test.MotoBuilder",
+            "package test;",
+            "",
+            "import br.me.patterns.annotation.Builder;",
+            "",
+            "@Builder",
+            "public class MotoBuilder {",
+            "    String cor;",
+            "}");
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void processor_isRegisteredAsDynamic() throws IOException {
+        String registration = Resources.toString(
+                Resources.getResource("META-INF/gradle/incremental.annotation.processors"), StandardCharsets.UTF_8);
+
+        assertThat(registration.trim()).isEqualTo(PatternsProcessor.class.getCanonicalName() + ",dynamic");
+    }
+
+    @Test
+    public void processor_isIsolatingUnlessTheRegistryIsGenerated() {
+        PatternsProcessor isolating = new PatternsProcessor();
+        assertThat(javac().withProcessors(isolating).compile(MATH_SINGLETON)).succeeded();
+        assertThat(isolating.getSupportedOptions()).contains(PatternsProcessor.GRADLE_ISOLATING_OPTION);
+        assertThat(isolating.getSupportedOptions()).doesNotContain(PatternsProcessor.GRADLE_AGGREGATING_OPTION);
+
+        PatternsProcessor aggregating = new PatternsProcessor();
+        assertThat(javac().withProcessors(aggregating).withOptions("-A" + PatternsProcessor.REGISTRY_OPTION + "=test").compile(MATH_SINGLETON)).succeeded();
+        assertThat(aggregating.getSupportedOptions()).contains(PatternsProcessor.GRADLE_AGGREGATING_OPTION);
+        assertThat(aggregating.getSupportedOptions()).doesNotContain(PatternsProcessor.GRADLE_ISOLATING_OPTION);
+    }
+
+    @Test
+    public void registryOption_aggregatesSingletonsAndSkipsPackagePrivateOnes() {
+        JavaFileObject hiddenSingleton = JavaFileObjects.forSourceLines("test.HiddenSingleton",
+                "package test;",
+                "",
+                "@br.me.patterns.annotation.Singleton",
+                "class HiddenSingleton {",
+                "    HiddenSingleton() {}",
+                "}");
+
+        Compilation compilation = javac()
+                .withProcessors(new PatternsProcessor())
+                .withOptions("-A" + PatternsProcessor.REGISTRY_OPTION + "=test.registry")
+                .compile(MATH_SINGLETON, hiddenSingleton, CARRO_BUILDER);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).hadWarningContaining("Singleton nao publico fora do registro GeneratedSingletons");
+        assertThat(compilation).generatedSourceFile("test.registry.GeneratedSingletons").contentsAsUtf8String().contains("case \"test.MathSingleton\":");
+        assertThat(compilation).generatedSourceFile("test.registry.GeneratedSingletons").contentsAsUtf8String().doesNotContain("HiddenSingleton");
+    }
+
+    @Test
+    public void generatedFiles_haveExactlyOneOriginatingElement() {
+        RecordingPatternsProcessor processor = new RecordingPatternsProcessor();
+        Compilation compilation = javac().withProcessors(processor).compile(MATH_SINGLETON, CARRO_BUILDER, MOTO_BUILDER);
+
+        assertThat(compilation).succeeded();
+        assertThat(processor.originatingElements).containsExactly(
+                "test.MathSingleton_", "test.MathSingleton",
+                "test.CarroBuilder_", "test.CarroBuilder",
+                "test.Carro", "test.CarroBuilder",
+                "test.MotoBuilder_", "test.MotoBuilder",
+                "test.Moto", "test.MotoBuilder");
+    }
+
+    @Test
+    public void changedSource_onlyRegeneratesItsOwnFiles() {
+        RecordingPatternsProcessor fullBuild = new RecordingPatternsProcessor();
+        assertThat(javac().withProcessors(fullBuild).compile(MATH_SINGLETON, CARRO_BUILDER, MOTO_BUILDER)).succeeded();
+
+        // Gradle recompiles only the changed source and hands it alone to an isolating processor.
+        RecordingPatternsProcessor incrementalBuild = new RecordingPatternsProcessor();
+        Compilation compilation = javac().withProcessors(incrementalBuild).compile(CARRO_BUILDER);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("test.CarroBuilder_");
+        assertThat(compilation).generatedSourceFile("test.Carro");
+        assertThat(incrementalBuild.originatingElements.keySet()).containsExactly("test.CarroBuilder_", "test.Carro");
+
+        for (Map.Entry<String, String> generated : incrementalBuild.originatingElements.entrySet()) {
+            assertThat(fullBuild.originatingElements).containsEntry(generated.getKey(), generated.getValue());
+        }
+    }
+
+    @Test
+    public void metricsOption_writesJsonReport() throws IOException {
+        File report = new File(temporaryFolder.getRoot(), "metrics/patterns.json");
+        Compilation compilation = javac()
+                .withProcessors(new PatternsProcessor())
+                .withOptions("-A" + PatternsProcessor.METRICS_OPTION + "=" + report.getPath())
+                .compile(MATH_SINGLETON, CARRO_BUILDER);
+
+        assertThat(compilation).succeeded();
+        String content = new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8);
+
+        assertThat(content).contains("\"pattern\": \"Singleton\", \"element\": \"test.MathSingleton\"");
+        assertThat(content).contains("\"pattern\": \"Builder\", \"element\": \"test.CarroBuilder\"");
+        assertThat(content).containsMatch("\"totals\": \\{\"totalNanos\": \\d+, \"elements\": 2, \"files\": 3, \"bytes\": [1-9]\\d*\\}");
+    }
+
+    @Test
+    public void metricsOption_writesCsvReport() throws IOException {
+        File report = temporaryFolder.newFile("patterns.csv");
+        Compilation compilation = javac()
+                .withProcessors(new PatternsProcessor())
+                .withOptions("-A" + PatternsProcessor.METRICS_OPTION + "=" + report.getPath())
+                .compile(CARRO_BUILDER);
+
+        assertThat(compilation).succeeded();
+        List<String> lines = Files.readAllLines(report.toPath(), StandardCharsets.UTF_8);
+
+        assertThat(lines.get(0)).isEqualTo("scope,round,pattern,element,total_ns,generate_ns,render_ns,write_ns,elements,files,bytes,cached");
+        assertThat(lines.get(1)).startsWith("round,1,,,");
+        assertThat(lines.get(lines.size() - 1)).containsMatch("^element,1,Builder,test.CarroBuilder,\\d+,\\d+,\\d+,\\d+,,2,[1-9]\\d*,false$");
+    }
+
+    @Test
+    public void withoutMetricsOption_noReportIsWritten() {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(CARRO_BUILDER);
+
+        assertThat(compilation).succeeded();
+        assertThat(temporaryFolder.getRoot().list()).isEmpty();
+    }
+
+    @Test
+    public void parallelOption_generatesSameFilesAsSerialGeneration() throws IOException {
+        List<JavaFileObject> sources = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            sources.add(JavaFileObjects.forSourceLines("test.Model" + i + "Builder",
+                    "package test;",
+                    "",
+                    "@br.me.patterns.annotation.Builder",
+                    "public class Model" + i + "Builder {",
+                    "    String name;",
+                    "    int value" + i + ";",
+                    "}"));
+            sources.add(JavaFileObjects.forSourceLines("test.Service" + i,
+                    "package test;",
+                    "",
+                    "@br.me.patterns.annotation.Singleton",
+                    "public class Service" + i + " {",
+                    "    Service" + i + "() {}",
+                    "}"));
+        }
+
+        Compilation serial = javac().withProcessors(new PatternsProcessor()).compile(sources);
+        Compilation parallel = javac()
+                .withProcessors(new PatternsProcessor())
+                .withOptions("-A" + PatternsProcessor.PARALLEL_OPTION + "=4")
+                .compile(sources);
+
+        assertThat(serial).succeeded();
+        assertThat(parallel).succeeded();
+        assertThat(parallel.generatedSourceFiles()).hasSize(150);
+
+        assertThat(getContents(parallel)).containsExactlyEntriesIn(getContents(serial));
+    }
+
+    @Test
+    public void cacheOption_reusesRenderedSourcesForUnchangedModels() throws IOException {
+        File cacheDirectory = temporaryFolder.newFolder("cache");
+        String cacheOption = "-A" + PatternsProcessor.CACHE_OPTION + "=" + cacheDirectory.getPath();
+
+        Compilation firstBuild = javac().withProcessors(new PatternsProcessor()).withOptions(cacheOption).compile(MATH_SINGLETON, CARRO_BUILDER);
+        assertThat(firstBuild).succeeded();
+        assertThat(cacheDirectory.list()).hasLength(2);
+
+        // A hit must reuse the cached source as is, without generating it again (same length keeps the entry valid).
+        for (File entry : cacheDirectory.listFiles()) {
+            String content = new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8);
+            Files.write(entry.toPath(), content.replace("INSTANCE", "INSTANZE").getBytes(StandardCharsets.UTF_8));
+        }
+
+        File report = new File(temporaryFolder.getRoot(), "metrics.csv");
+        Compilation secondBuild = javac()
+                .withProcessors(new PatternsProcessor())
+                .withOptions(cacheOption, "-A" + PatternsProcessor.METRICS_OPTION + "=" + report.getPath())
+                .compile(MATH_SINGLETON, CARRO_BUILDER);
+
+        assertThat(secondBuild).succeeded();
+        assertThat(secondBuild).generatedSourceFile("test.MathSingleton_").contentsAsUtf8String().contains("return INSTANZE;");
+        assertThat(getContents(secondBuild).keySet()).containsExactlyElementsIn(getContents(firstBuild).keySet());
+        for (String line : Files.readAllLines(report.toPath(), StandardCharsets.UTF_8)) {
+            if (line.startsWith("element,")) {
+                assertThat(line).endsWith(",true");
+            }
+        }
+    }
+
+    @Test
+    public void cacheKeys_dependOnAHashOfTheProcessorClasses() {
+        assertThat(GeneratedSourceCache.GENERATOR_VERSION).matches("[0-9a-f]{64}");
+    }
+
+    @Test
+    public void cacheOption_regeneratesChangedModels() throws IOException {
+        File cacheDirectory = temporaryFolder.newFolder("cache");
+        String cacheOption = "-A" + PatternsProcessor.CACHE_OPTION + "=" + cacheDirectory.getPath();
+        JavaFileObject changedCarroBuilder = JavaFileObjects.forSourceLines("test.CarroBuilder",
+                "package test;",
+                "",
+                "import br.me.patterns.annotation.Builder;",
+                "",
+                "@Builder",
+                "public class CarroBuilder {",
+                "    String cor;",
+                "    int anoFabricacao;",
+                "    String placa;",
+                "}");
+
+        assertThat(javac().withProcessors(new PatternsProcessor()).withOptions(cacheOption).compile(CARRO_BUILDER)).succeeded();
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).withOptions(cacheOption).compile(changedCarroBuilder);
+
+        assertThat(compilation).succeeded();
+        assertThat(compilation).generatedSourceFile("test.Carro").contentsAsUtf8String().contains("public String placa;");
+        assertThat(cacheDirectory.list()).hasLength(2);
+    }
+
+    private static Map<String, String> getContents(Compilation compilation) throws IOException {
+        Map<String, String> contents = new LinkedHashMap<>();
+        for (JavaFileObject generated : compilation.generatedSourceFiles()) {
+            contents.put(generated.getName(), generated.getCharContent(true).toString());
+        }
+
+        return contents;
+    }
+
+    static class RecordingPatternsProcessor extends PatternsProcessor {
+        final Map<String, String> originatingElements = new LinkedHashMap<>();
+
+        @Override
+        public synchronized void init(ProcessingEnvironment processingEnv) {
+            super.init(new RecordingProcessingEnvironment(processingEnv, originatingElements));
+        }
+    }
+
+    static class RecordingProcessingEnvironment implements ProcessingEnvironment {
+        private final ProcessingEnvironment delegate;
+        private final Filer filer;
+
+        RecordingProcessingEnvironment(ProcessingEnvironment delegate, Map<String, String> originatingElements) {
+            this.delegate = delegate;
+            this.filer = new RecordingFiler(delegate.getFiler(), originatingElements);
+        }
+
+        @Override
+        public Map<String, String> getOptions() {
+            return delegate.getOptions();
+        }
+
+        @Override
+        public Messager getMessager() {
+            return delegate.getMessager();
+        }
+
+        @Override
+        public Filer getFiler() {
+            return filer;
+        }
+
+        @Override
+        public Elements getElementUtils() {
+            return delegate.getElementUtils();
+        }
+
+        @Override
+        public Types getTypeUtils() {
+            return delegate.getTypeUtils();
+        }
+
+        @Override
+        public SourceVersion getSourceVersion() {
+            return delegate.getSourceVersion();
+        }
+
+        @Override
+        public Locale getLocale() {
+            return delegate.getLocale();
+        }
+    }
+
+    static class RecordingFiler implements Filer {
+        private final Filer delegate;
+        private final Map<String, String> originatingElements;
+
+        RecordingFiler(Filer delegate, Map<String, String> originatingElements) {
+            this.delegate = delegate;
+            this.originatingElements = originatingElements;
+        }
+
+        @Override
+        public JavaFileObject createSourceFile(CharSequence name, Element... originatingElements) throws IOException {
+            assertThat(originatingElements).hasLength(1);
+            this.originatingElements.put(name.toString(), ((TypeElement) originatingElements[0]).getQualifiedName().toString());
+            return delegate.createSourceFile(name, originatingElements);
+        }
+
+        @Override
+        public JavaFileObject createClassFile(CharSequence name, Element... originatingElements) throws IOException {
+            return delegate.createClassFile(name, originatingElements);
+        }
+
+        @Override
+        public FileObject createResource(JavaFileManager.Location location, CharSequence pkg, CharSequence relativeName, Element... originatingElements) throws IOException {
+            return delegate.createResource(location, pkg, relativeName, originatingElements);
+        }
+
+        @Override
+        public FileObject getResource(JavaFileManager.Location location, CharSequence pkg, CharSequence relativeName) throws IOException {
+            return delegate.getResource(location, pkg, relativeName);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.google.testing.compile.JavaFileObjects;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.lang.model.element.TypeElement;
+
+import br.me.patterns.annotation.Async;
+import br.me.patterns.annotation.Singleton;
+import br.me.patterns.annotation.processor.PatternsProcessor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class AsyncGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    @Test
+    public void generatedFileContent_matchesTemplate() {
+        TypeElement element = compilationRule.getElements().getTypeElement(ArquivoToTest.class.getCanonicalName());
+        JavaFile generatedFile = AsyncGenerator.generate(element);
+
+        assertThat(generatedFile.toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.ReflectiveOperationException;\n" +
+                "import java.lang.Runnable;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.Thread;\n" +
+                "import java.lang.Throwable;\n" +
+                "import java.lang.Void;\n" +
+                "import java.util.concurrent.Callable;\n" +
+                "import java.util.concurrent.CompletableFuture;\n" +
+                "import java.util.concurrent.Executor;\n" +
+                "import java.util.concurrent.Executors;\n" +
+                "import java.util.concurrent.LinkedBlockingQueue;\n" +
+                "import java.util.concurrent.RejectedExecutionException;\n" +
+                "import java.util.concurrent.ThreadPoolExecutor;\n" +
+                "import java.util.concurrent.TimeUnit;\n" +
+                "import java.util.concurrent.atomic.AtomicInteger;\n" +
+                "\n" +
+                "final class ArquivoToTestAsync_ {\n" +
+                "  private static volatile Executor executor;\n" +
+                "\n" +
+                "  private ArquivoToTestAsync_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Runs the later calls on {@code executor}, or on the default executor when null.\n" +
+                "   */\n" +
+                "  public static void setExecutor(Executor executor) {\n" +
+                "    ArquivoToTestAsync_.executor = executor;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * @return the executor given to {@code setExecutor}, or the default one, created on first use.\n" +
+                "   */\n" +
+                "  public static Executor getExecutor() {\n" +
+                "    Executor executor = ArquivoToTestAsync_.executor;\n" +
+                "    return executor != null ? executor : DefaultExecutor.INSTANCE;\n" +
+                "  }\n" +
+                "\n" +
+                "  public static CompletableFuture<String> read(String arg0) {\n" +
+                "    return submit(() -> ArquivoToTest_.getInstance().read(arg0));\n" +
+                "  }\n" +
+                "\n" +
+                "  public static CompletableFuture<Void> write(String arg0, byte[] arg1) {\n" +
+                "    return submit(() -> {\n" +
+                "      ArquivoToTest_.getInstance().write(arg0, arg1);\n" +
+                "      return null;\n" +
+                "    });\n" +
+                "  }\n" +
+                "\n" +
+                "  private static <T> CompletableFuture<T> submit(Callable<T> call) {\n" +
+                "    CompletableFuture<T> future = new CompletableFuture<T>();\n" +
+                "    Runnable task = () -> {\n" +
+                "      try {\n" +
+                "        future.complete(call.call());\n" +
+                "      } catch (Throwable e) {\n" +
+                "        future.completeExceptionally(e);\n" +
+                "      }\n" +
+                "    };\n" +
+                "    try {\n" +
+                "      getExecutor().execute(task);\n" +
+                "    } catch (RejectedExecutionException e) {\n" +
+                "      future.completeExceptionally(e);\n" +
+                "    }\n" +
+                "    return future;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * A virtual thread per call on Java 21 and later, otherwise a pool of daemon threads that stop after\n" +
+                "   * 60 idle seconds. Created on the first call without an executor.\n" +
+                "   */\n" +
+                "  private static final class DefaultExecutor {\n" +
+                "    static final Executor INSTANCE = create();\n" +
+                "\n" +
+                "    private static Executor create() {\n" +
+                "      try {\n" +
+                "        return (Executor) Executors.class.getMethod(\"newVirtualThreadPerTaskExecutor\").invoke(null);\n" +
+                "      } catch (ReflectiveOperationException e) {\n" +
+                "        int threads = 4;\n" +
+                "        AtomicInteger created = new AtomicInteger();\n" +
+                "        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), runnable -> {\n" +
+                "          Thread thread = new Thread(runnable, \"ArquivoToTestAsync_-\" + created.incrementAndGet());\n" +
+                "          thread.setDaemon(true);\n" +
+                "          return thread;\n" +
+                "        });\n" +
+                "        pool.allowCoreThreadTimeOut(true);\n" +
+                "        return pool;\n" +
+                "      }\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void calls_completeOnTheDefaultExecutor() throws Exception {
+        Class<?> asyncClass = compileAsync("@Async");
+        Method dobro = asyncClass.getMethod("dobro", int.class);
+
+        assertThat(((CompletableFuture<?>) dobro.invoke(null, 21)).get(10, TimeUnit.SECONDS)).isEqualTo(42);
+        Object thread = ((CompletableFuture<?>) asyncClass.getMethod("thread").invoke(null)).get(10, TimeUnit.SECONDS);
+        assertThat(thread).isNotEqualTo(Thread.currentThread().getName());
+        assertThat(((CompletableFuture<?>) asyncClass.getMethod("anota", String.class).invoke(null, "x")).get(10, TimeUnit.SECONDS)).isNull();
+
+        try {
+            ((CompletableFuture<?>) asyncClass.getMethod("falha").invoke(null)).get(10, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause()).isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    public void calls_runOnTheGivenExecutor() throws Exception {
+        Class<?> asyncClass = compileAsync("@Async");
+        List<Runnable> tasks = new ArrayList<>();
+        asyncClass.getMethod(AsyncGenerator.SET_EXECUTOR_METHOD_NAME, Executor.class).invoke(null, (Executor) tasks::add);
+
+        CompletableFuture<?> first = (CompletableFuture<?>) asyncClass.getMethod("dobro", int.class).invoke(null, 1);
+        CompletableFuture<?> second = (CompletableFuture<?>) asyncClass.getMethod("dobro", int.class).invoke(null, 2);
+        assertThat(first.isDone()).isFalse();
+        assertThat(tasks).hasSize(2);
+
+        tasks.get(1).run();
+        assertThat(second.getNow(null)).isEqualTo(4);
+        assertThat(first.isDone()).isFalse();
+
+        asyncClass.getMethod(AsyncGenerator.SET_EXECUTOR_METHOD_NAME, Executor.class).invoke(null, (Executor) task -> {
+            throw new RejectedExecutionException();
+        });
+        CompletableFuture<?> rejected = (CompletableFuture<?>) asyncClass.getMethod("dobro", int.class).invoke(null, 3);
+        assertThat(rejected.isCompletedExceptionally()).isTrue();
+    }
+
+    @Test
+    public void batchedCalls_runInOneTaskInOrder() throws Exception {
+        Class<?> asyncClass = compileAsync("@Async(batch = true)");
+        List<Runnable> tasks = new ArrayList<>();
+        asyncClass.getMethod(AsyncGenerator.SET_EXECUTOR_METHOD_NAME, Executor.class).invoke(null, (Executor) tasks::add);
+        Method anota = asyncClass.getMethod("anota", String.class);
+
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add((CompletableFuture<?>) anota.invoke(null, "nota" + i));
+        }
+        assertThat(tasks).hasSize(1);
+
+        tasks.get(0).run();
+        for (CompletableFuture<?> future : futures) {
+            assertThat(future.isDone()).isTrue();
+        }
+        Object notas = ((CompletableFuture<?>) asyncClass.getMethod("notas").invoke(null));
+        assertThat(tasks).hasSize(2);
+        tasks.get(1).run();
+        assertThat(((CompletableFuture<?>) notas).getNow(null)).isEqualTo("nota0,nota1,nota2,nota3,nota4");
+    }
+
+    @Test
+    public void batchedCalls_fromManyThreadsAllComplete() throws Exception {
+        Class<?> asyncClass = compileAsync("@Async(batch = true, threads = 2)");
+        Method dobro = asyncClass.getMethod("dobro", int.class);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            List<Future<List<CompletableFuture<?>>>> submitted = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                submitted.add(executor.submit(() -> {
+                    List<CompletableFuture<?>> futures = new ArrayList<>();
+                    for (int i = 0; i < 5_000; i++) {
+                        futures.add((CompletableFuture<?>) dobro.invoke(null, i));
+                    }
+                    return futures;
+                }));
+            }
+
+            for (Future<List<CompletableFuture<?>>> futures : submitted) {
+                List<CompletableFuture<?>> results = futures.get();
+                for (int i = 0; i < results.size(); i++) {
+                    assertThat(results.get(i).get(10, TimeUnit.SECONDS)).isEqualTo(2 * i);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void batchedCalls_queuedWhileTheDrainIsRejected_allComplete() throws Exception {
+        Class<?> asyncClass = compileAsync("@Async(batch = true)");
+        Method setExecutor = asyncClass.getMethod(AsyncGenerator.SET_EXECUTOR_METHOD_NAME, Executor.class);
+        Method dobro = asyncClass.getMethod("dobro", int.class);
+        AtomicReference<CompletableFuture<?>> queued = new AtomicReference<>();
+        setExecutor.invoke(null, (Executor) task -> {
+            Thread caller = new Thread(() -> {
+                try {
+                    queued.set((CompletableFuture<?>) dobro.invoke(null, 2));
+                } catch (ReflectiveOperationException e) {
+                    throw new AssertionError(e);
+                }
+            });
+            caller.start();
+            try {
+                caller.join();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            throw new RejectedExecutionException();
+        });
+
+        CompletableFuture<?> rejected = (CompletableFuture<?>) dobro.invoke(null, 1);
+        assertThat(rejected.isCompletedExceptionally()).isTrue();
+        assertThat(queued.get().isCompletedExceptionally()).isTrue();
+
+        List<Runnable> tasks = new ArrayList<>();
+        setExecutor.invoke(null, (Executor) tasks::add);
+        CompletableFuture<?> next = (CompletableFuture<?>) dobro.invoke(null, 3);
+        assertThat(tasks).hasSize(1);
+        tasks.get(0).run();
+        assertThat(next.getNow(null)).isEqualTo(6);
+    }
+
+    @Test
+    public void invalidTypes_failTheCompilation() {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(
+                JavaFileObjects.forSourceLines("test.SemSingleton",
+                        "package test;",
+                        "",
+                        "@br.me.patterns.annotation.Async(threads = -1)",
+                        "public class SemSingleton {",
+                        "    public int dobro(int x) { return 2 * x; }",
+                        "}"),
+                JavaFileObjects.forSourceLines("test.PorThread",
+                        "package test;",
+                        "",
+                        "import br.me.patterns.annotation.Singleton;",
+                        "",
+                        "@Singleton(scope = Singleton.Scope.THREAD)",
+                        "@br.me.patterns.annotation.Async",
+                        "public class PorThread {",
+                        "    public int dobro(int x) { return 2 * x; }",
+                        "}"));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("@Async so pode ser usado em classes @Singleton: test.SemSingleton");
+        assertThat(compilation).hadErrorContaining("Numero de threads invalido em @Async: -1 test.SemSingleton");
+        assertThat(compilation).hadErrorContaining("@Async nao pode ser usado com @Singleton(scope = THREAD): test.PorThread");
+    }
+
+    private static Class<?> compileAsync(String annotation) throws ClassNotFoundException {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test.Servico",
+                "package test;",
+                "",
+                "import java.io.IOException;",
+                "import br.me.patterns.annotation.Async;",
+                "",
+                "@br.me.patterns.annotation.Singleton",
+                annotation,
+                "public class Servico {",
+                "    private final StringBuilder notas = new StringBuilder();",
+                "",
+                "    public int dobro(int x) { return 2 * x; }",
+                "    public String thread() { return Thread.currentThread().getName(); }",
+                "    public void falha() throws IOException { throw new IOException(); }",
+                "    public synchronized void anota(String nota) { notas.append(notas.length() == 0 ? \"\" : \",\").append(nota); }",
+                "    public synchronized String notas() { return notas.toString(); }",
+                "}"));
+
+        assertThat(compilation).succeeded();
+        return new GeneratedClassLoader(compilation).loadClass("test.Servico" + AsyncGenerator.CREATED_CLASS_SUFFIX);
+    }
+
+    @Singleton
+    @Async(threads = 4)
+    static class ArquivoToTest {
+
+        public String read(String path) throws IOException {
+            return path;
+        }
+
+        public void write(String path, byte[] data) {
+        }
+
+        int packagePrivate() {
+            return 0;
+        }
+    }
+}
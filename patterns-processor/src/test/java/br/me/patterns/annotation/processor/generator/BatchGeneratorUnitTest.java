@@ -0,0 +1,345 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.CompilationRule;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import br.me.patterns.annotation.Builder;
+
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.ONIBUS_FIELDS;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compileBuilder;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.generate;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class BatchGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    @Test
+    public void batchBuilder_matchesTemplate() {
+        JavaFile[] generatedFiles = generate(compilationRule, OnibusBuilder.class);
+
+        assertThat(generatedFiles).hasLength(3);
+        assertThat(generatedFiles[2].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.IllegalArgumentException;\n" +
+                "import java.lang.IndexOutOfBoundsException;\n" +
+                "import java.lang.Math;\n" +
+                "import java.lang.String;\n" +
+                "import java.util.Arrays;\n" +
+                "\n" +
+                "public final class OnibusBatch {\n" +
+                "  private static final int DEFAULT_CAPACITY = 16;\n" +
+                "\n" +
+                "  private int size;\n" +
+                "\n" +
+                "  private int capacity;\n" +
+                "\n" +
+                "  private String[] linha;\n" +
+                "\n" +
+                "  private int[] lugares;\n" +
+                "\n" +
+                "  private long[] articulado;\n" +
+                "\n" +
+                "  public OnibusBatch() {\n" +
+                "    this(DEFAULT_CAPACITY);\n" +
+                "  }\n" +
+                "\n" +
+                "  public OnibusBatch(int capacity) {\n" +
+                "    if (capacity < 0) {\n" +
+                "      throw new IllegalArgumentException(\"capacity: \" + capacity);\n" +
+                "    }\n" +
+                "    this.capacity = capacity;\n" +
+                "    this.linha = new String[capacity];\n" +
+                "    this.lugares = new int[capacity];\n" +
+                "    this.articulado = new long[(capacity + 63) >>> 6];\n" +
+                "  }\n" +
+                "\n" +
+                "  public String getLinha(int index) {\n" +
+                "    checkIndex(index);\n" +
+                "    return this.linha[index];\n" +
+                "  }\n" +
+                "\n" +
+                "  public void setLinha(int index, String linha) {\n" +
+                "    checkIndex(index);\n" +
+                "    this.linha[index] = linha;\n" +
+                "  }\n" +
+                "\n" +
+                "  public int getLugares(int index) {\n" +
+                "    checkIndex(index);\n" +
+                "    return this.lugares[index];\n" +
+                "  }\n" +
+                "\n" +
+                "  public void setLugares(int index, int lugares) {\n" +
+                "    checkIndex(index);\n" +
+                "    this.lugares[index] = lugares;\n" +
+                "  }\n" +
+                "\n" +
+                "  public boolean isArticulado(int index) {\n" +
+                "    checkIndex(index);\n" +
+                "    return (this.articulado[index >>> 6] & (1L << index)) != 0;\n" +
+                "  }\n" +
+                "\n" +
+                "  public void setArticulado(int index, boolean articulado) {\n" +
+                "    checkIndex(index);\n" +
+                "    if (articulado) {\n" +
+                "      this.articulado[index >>> 6] |= 1L << index;\n" +
+                "    } else {\n" +
+                "      this.articulado[index >>> 6] &= ~(1L << index);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  public int size() {\n" +
+                "    return size;\n" +
+                "  }\n" +
+                "\n" +
+                "  public void ensureCapacity(int minCapacity) {\n" +
+                "    if (minCapacity <= capacity) {\n" +
+                "      return;\n" +
+                "    }\n" +
+                "    capacity = Math.max(minCapacity, capacity + (capacity >> 1) + 1);\n" +
+                "    this.linha = Arrays.copyOf(this.linha, capacity);\n" +
+                "    this.lugares = Arrays.copyOf(this.lugares, capacity);\n" +
+                "    this.articulado = Arrays.copyOf(this.articulado, (capacity + 63) >>> 6);\n" +
+                "  }\n" +
+                "\n" +
+                "  public void add(OnibusBuilder_ builder) {\n" +
+                "    ensureCapacity(size + 1);\n" +
+                "    this.linha[size] = builder.linha;\n" +
+                "    this.lugares[size] = builder.lugares;\n" +
+                "    if (builder.articulado) {\n" +
+                "      this.articulado[size >>> 6] |= 1L << size;\n" +
+                "    } else {\n" +
+                "      this.articulado[size >>> 6] &= ~(1L << size);\n" +
+                "    }\n" +
+                "    size++;\n" +
+                "  }\n" +
+                "\n" +
+                "  public void add(Onibus value) {\n" +
+                "    ensureCapacity(size + 1);\n" +
+                "    this.linha[size] = value.linha;\n" +
+                "    this.lugares[size] = value.lugares;\n" +
+                "    if (value.articulado) {\n" +
+                "      this.articulado[size >>> 6] |= 1L << size;\n" +
+                "    } else {\n" +
+                "      this.articulado[size >>> 6] &= ~(1L << size);\n" +
+                "    }\n" +
+                "    size++;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Onibus get(int index) {\n" +
+                "    checkIndex(index);\n" +
+                "    Onibus value = new Onibus();\n" +
+                "    value.linha = this.linha[index];\n" +
+                "    value.lugares = this.lugares[index];\n" +
+                "    value.articulado = (this.articulado[index >>> 6] & (1L << index)) != 0;\n" +
+                "    return value;\n" +
+                "  }\n" +
+                "\n" +
+                "  public void forEach(Visitor visitor) {\n" +
+                "    Cursor cursor = new Cursor();\n" +
+                "    for (int index = 0; index < size; index++) {\n" +
+                "      cursor.index = index;\n" +
+                "      visitor.visit(cursor);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  public Onibus[] toArray() {\n" +
+                "    Onibus[] values = new Onibus[size];\n" +
+                "    for (int index = 0; index < size; index++) {\n" +
+                "      values[index] = get(index);\n" +
+                "    }\n" +
+                "    return values;\n" +
+                "  }\n" +
+                "\n" +
+                "  public static OnibusBatch fromArray(Onibus[] values) {\n" +
+                "    OnibusBatch batch = new OnibusBatch(values.length);\n" +
+                "    for (Onibus value : values) {\n" +
+                "      batch.add(value);\n" +
+                "    }\n" +
+                "    return batch;\n" +
+                "  }\n" +
+                "\n" +
+                "  public void clear() {\n" +
+                "    Arrays.fill(this.linha, 0, size, null);\n" +
+                "    size = 0;\n" +
+                "  }\n" +
+                "\n" +
+                "  private void checkIndex(int index) {\n" +
+                "    if (index < 0 || index >= size) {\n" +
+                "      throw new IndexOutOfBoundsException(\"index: \" + index + \", size: \" + size);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Flyweight over one row of the batch, moved by {@link OnibusBatch#forEach}.\n" +
+                "   */\n" +
+                "  public final class Cursor {\n" +
+                "    private int index;\n" +
+                "\n" +
+                "    private Cursor() {\n" +
+                "    }\n" +
+                "\n" +
+                "    public int index() {\n" +
+                "      return index;\n" +
+                "    }\n" +
+                "\n" +
+                "    public String getLinha() {\n" +
+                "      return linha[index];\n" +
+                "    }\n" +
+                "\n" +
+                "    public int getLugares() {\n" +
+                "      return lugares[index];\n" +
+                "    }\n" +
+                "\n" +
+                "    public boolean isArticulado() {\n" +
+                "      return (articulado[index >>> 6] & (1L << index)) != 0;\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  public interface Visitor {\n" +
+                "    void visit(Cursor cursor);\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void batch_growsAndKeepsEveryColumn() throws Exception {
+        ClassLoader classLoader = compileBuilder("OnibusBuilder", "@Builder(batch = true)", ONIBUS_FIELDS);
+        Class<?> builderClass = classLoader.loadClass("test.OnibusBuilder_");
+        Class<?> batchClass = classLoader.loadClass("test.OnibusBatch");
+        Object batch = batchClass.getConstructor(int.class).newInstance(1);
+        Object builder = builderClass.getConstructor().newInstance();
+
+        for (int i = 0; i < 130; i++) {
+            builderClass.getMethod("setLinha", String.class).invoke(builder, "L" + i);
+            builderClass.getMethod("setLugares", int.class).invoke(builder, i);
+            builderClass.getMethod("setArticulado", boolean.class).invoke(builder, i % 3 == 0);
+            batchClass.getMethod(BatchGenerator.ADD_METHOD_NAME, builderClass).invoke(batch, builder);
+        }
+
+        assertThat(batchClass.getMethod("size").invoke(batch)).isEqualTo(130);
+        assertThat(batchClass.getMethod("getLinha", int.class).invoke(batch, 129)).isEqualTo("L129");
+        assertThat(batchClass.getMethod("getLugares", int.class).invoke(batch, 64)).isEqualTo(64);
+        for (int i = 0; i < 130; i++) {
+            assertThat(batchClass.getMethod("isArticulado", int.class).invoke(batch, i)).isEqualTo(i % 3 == 0);
+        }
+
+        batchClass.getMethod("setArticulado", int.class, boolean.class).invoke(batch, 0, false);
+        assertThat(batchClass.getMethod("isArticulado", int.class).invoke(batch, 0)).isEqualTo(false);
+        assertThat(batchClass.getMethod("isArticulado", int.class).invoke(batch, 3)).isEqualTo(true);
+
+        try {
+            batchClass.getMethod("getLugares", int.class).invoke(batch, 130);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IndexOutOfBoundsException.class);
+        }
+    }
+
+    @Test
+    public void batch_visitsEveryRowWithOneCursor() throws Exception {
+        ClassLoader classLoader = compileBuilder("OnibusBuilder", "@Builder(batch = true)", ONIBUS_FIELDS);
+        Class<?> batchClass = classLoader.loadClass("test.OnibusBatch");
+        Class<?> onibusClass = classLoader.loadClass("test.Onibus");
+        Object onibusArray = java.lang.reflect.Array.newInstance(onibusClass, 3);
+        for (int i = 0; i < 3; i++) {
+            Object onibus = onibusClass.getConstructor().newInstance();
+            onibusClass.getField("lugares").set(onibus, 40 + i);
+            java.lang.reflect.Array.set(onibusArray, i, onibus);
+        }
+        Object batch = batchClass.getMethod(BatchGenerator.FROM_ARRAY_METHOD_NAME, onibusArray.getClass()).invoke(null, onibusArray);
+
+        Class<?> visitorClass = classLoader.loadClass("test.OnibusBatch$Visitor");
+        Class<?> cursorClass = classLoader.loadClass("test.OnibusBatch$Cursor");
+        Method getLugares = cursorClass.getMethod("getLugares");
+        List<Object> cursors = new ArrayList<>();
+        int[] total = new int[1];
+        Object visitor = java.lang.reflect.Proxy.newProxyInstance(classLoader, new Class<?>[] {visitorClass}, (proxy, method, args) -> {
+            cursors.add(args[0]);
+            total[0] += (int) getLugares.invoke(args[0]);
+            return null;
+        });
+        batchClass.getMethod(BatchGenerator.FOR_EACH_METHOD_NAME, visitorClass).invoke(batch, visitor);
+
+        assertThat(total[0]).isEqualTo(40 + 41 + 42);
+        assertThat(cursors).hasSize(3);
+        assertThat(cursors.get(0)).isSameAs(cursors.get(2));
+        assertThat((Object[]) batchClass.getMethod(BatchGenerator.TO_ARRAY_METHOD_NAME).invoke(batch)).isEqualTo((Object[]) onibusArray);
+    }
+
+    @Test
+    public void batch_withFieldsNamedLikeItsBookkeeping_keepsEveryColumn() throws Exception {
+        ClassLoader classLoader = compileBuilder("PedidoBuilder", "@Builder(batch = true)", "int size;", "long capacity;", "String index;", "boolean DEFAULT_CAPACITY;");
+        Class<?> builderClass = classLoader.loadClass("test.PedidoBuilder_");
+        Class<?> batchClass = classLoader.loadClass("test.PedidoBatch");
+        Object batch = batchClass.getConstructor(int.class).newInstance(1);
+        Object builder = builderClass.getConstructor().newInstance();
+        for (int i = 0; i < 70; i++) {
+            builderClass.getMethod("setSize", int.class).invoke(builder, i);
+            builderClass.getMethod("setCapacity", long.class).invoke(builder, 100L + i);
+            builderClass.getMethod("setIndex", String.class).invoke(builder, "P" + i);
+            builderClass.getMethod("setDEFAULT_CAPACITY", boolean.class).invoke(builder, i % 2 == 0);
+            batchClass.getMethod(BatchGenerator.ADD_METHOD_NAME, builderClass).invoke(batch, builder);
+        }
+
+        assertThat(batchClass.getMethod("size").invoke(batch)).isEqualTo(70);
+        Object pedido = batchClass.getMethod(BatchGenerator.GET_METHOD_NAME, int.class).invoke(batch, 69);
+        assertThat(pedido.getClass().getField("size").get(pedido)).isEqualTo(69);
+        assertThat(pedido.getClass().getField("capacity").get(pedido)).isEqualTo(169L);
+        assertThat(pedido.getClass().getField("index").get(pedido)).isEqualTo("P69");
+        assertThat(pedido.getClass().getField("DEFAULT_CAPACITY").get(pedido)).isEqualTo(false);
+
+        Class<?> visitorClass = classLoader.loadClass("test.PedidoBatch$Visitor");
+        Class<?> cursorClass = classLoader.loadClass("test.PedidoBatch$Cursor");
+        List<String> indexes = new ArrayList<>();
+        Object visitor = java.lang.reflect.Proxy.newProxyInstance(classLoader, new Class<?>[] {visitorClass}, (proxy, method, args) -> {
+            indexes.add(cursorClass.getMethod("index").invoke(args[0]) + ":" + cursorClass.getMethod("getIndex").invoke(args[0]));
+            return null;
+        });
+        batchClass.getMethod(BatchGenerator.FOR_EACH_METHOD_NAME, visitorClass).invoke(batch, visitor);
+
+        assertThat(indexes).hasSize(70);
+        assertThat(indexes.get(42)).isEqualTo("42:P42");
+    }
+
+    @Test
+    public void immutableBatch_rebuildsRowsThroughTheBuilder() throws Exception {
+        ClassLoader classLoader = compileBuilder("OnibusBuilder", "@Builder(batch = true, immutable = true, packBooleans = true)", ONIBUS_FIELDS);
+        Class<?> builderClass = classLoader.loadClass("test.OnibusBuilder_");
+        Class<?> batchClass = classLoader.loadClass("test.OnibusBatch");
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setLinha", String.class).invoke(builder, "875A");
+        builderClass.getMethod("setArticulado", boolean.class).invoke(builder, true);
+        Object onibus = builderClass.getMethod("build").invoke(builder);
+        Object batch = batchClass.getConstructor().newInstance();
+
+        batchClass.getMethod(BatchGenerator.ADD_METHOD_NAME, onibus.getClass()).invoke(batch, onibus);
+        batchClass.getMethod(BatchGenerator.ADD_METHOD_NAME, builderClass).invoke(batch, builder);
+        batchClass.getMethod("clear").invoke(batch);
+        batchClass.getMethod(BatchGenerator.ADD_METHOD_NAME, onibus.getClass()).invoke(batch, onibus);
+
+        assertThat(batchClass.getMethod("size").invoke(batch)).isEqualTo(1);
+        assertThat(batchClass.getMethod(BatchGenerator.GET_METHOD_NAME, int.class).invoke(batch, 0)).isEqualTo(onibus);
+    }
+
+    @Builder(batch = true)
+    static class OnibusBuilder {
+        String linha;
+        int lugares;
+        boolean articulado;
+    }
+}
@@ -0,0 +1,479 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import br.me.patterns.annotation.Builder;
+
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.TODOS_FIELDS;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compile;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compileBuilder;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.generate;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class BinaryCodecGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    @Test
+    public void codecBuilder_matchesTemplate() {
+        JavaFile[] generatedFiles = generate(compilationRule, BarcoBuilder.class);
+
+        assertThat(generatedFiles[1].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.io.DataInput;\n" +
+                "import java.io.DataOutput;\n" +
+                "import java.io.Externalizable;\n" +
+                "import java.io.IOException;\n" +
+                "import java.io.ObjectInput;\n" +
+                "import java.io.ObjectOutput;\n" +
+                "import java.io.Serializable;\n" +
+                "import java.lang.Appendable;\n" +
+                "import java.lang.Boolean;\n" +
+                "import java.lang.IllegalArgumentException;\n" +
+                "import java.lang.Math;\n" +
+                "import java.lang.Object;\n" +
+                "import java.lang.Override;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.StringBuilder;\n" +
+                "import java.nio.ByteBuffer;\n" +
+                "import java.nio.charset.StandardCharsets;\n" +
+                "import java.util.Arrays;\n" +
+                "\n" +
+                "public class Barco implements Serializable, Externalizable {\n" +
+                "  private static final int TO_STRING_CAPACITY = 118;\n" +
+                "\n" +
+                "  public String nome;\n" +
+                "\n" +
+                "  public int comprimento;\n" +
+                "\n" +
+                "  public long registro;\n" +
+                "\n" +
+                "  public boolean motor;\n" +
+                "\n" +
+                "  public Boolean vela;\n" +
+                "\n" +
+                "  public Barco() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public StringBuilder appendTo(StringBuilder builder) {\n" +
+                "    builder.append(\"Barco {\");\n" +
+                "    builder.append(\"nome=\").append(this.nome).append(',');\n" +
+                "    builder.append(\"comprimento=\").append(this.comprimento).append(',');\n" +
+                "    builder.append(\"registro=\").append(this.registro).append(',');\n" +
+                "    builder.append(\"motor=\").append(this.motor).append(',');\n" +
+                "    builder.append(\"vela=\").append(this.vela).append(',');\n" +
+                "    builder.append('}');\n" +
+                "    return builder;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Appendable appendTo(Appendable appendable) throws IOException {\n" +
+                "    if (appendable instanceof StringBuilder) {\n" +
+                "      return appendTo((StringBuilder) appendable);\n" +
+                "    }\n" +
+                "    appendable.append(\"Barco {\");\n" +
+                "    appendable.append(\"nome=\").append(String.valueOf(this.nome)).append(',');\n" +
+                "    appendable.append(\"comprimento=\").append(String.valueOf(this.comprimento)).append(',');\n" +
+                "    appendable.append(\"registro=\").append(String.valueOf(this.registro)).append(',');\n" +
+                "    appendable.append(\"motor=\").append(String.valueOf(this.motor)).append(',');\n" +
+                "    appendable.append(\"vela=\").append(String.valueOf(this.vela)).append(',');\n" +
+                "    appendable.append('}');\n" +
+                "    return appendable;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public boolean equals(Object o) {\n" +
+                "    if (this == o) {\n" +
+                "      return true;\n" +
+                "    }\n" +
+                "    if (o == null || getClass() != o.getClass()) {\n" +
+                "      return false;\n" +
+                "    }\n" +
+                "    Barco other = (Barco) o;\n" +
+                "    return this.comprimento == other.comprimento && this.registro == other.registro\n" +
+                "        && this.motor == other.motor\n" +
+                "        && (this.nome == null ? other.nome == null : this.nome.equals(other.nome))\n" +
+                "        && (this.vela == null ? other.vela == null : this.vela.equals(other.vela));\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public int hashCode() {\n" +
+                "    int result = 1;\n" +
+                "    result = 31 * result + (this.nome == null ? 0 : this.nome.hashCode());\n" +
+                "    result = 31 * result + this.comprimento;\n" +
+                "    result = 31 * result + (int) (this.registro ^ (this.registro >>> 32));\n" +
+                "    result = 31 * result + (this.motor ? 1231 : 1237);\n" +
+                "    result = 31 * result + (this.vela == null ? 0 : this.vela.hashCode());\n" +
+                "    return result;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public String toString() {\n" +
+                "    return appendTo(new StringBuilder(TO_STRING_CAPACITY)).toString();\n" +
+                "  }\n" +
+                "\n" +
+                "  public void writeTo(DataOutput out) throws IOException {\n" +
+                "    long flags0 = 0L;\n" +
+                "    if (this.nome == null) flags0 |= 0x1L;\n" +
+                "    if (this.motor) flags0 |= 0x2L;\n" +
+                "    if (this.vela == null) flags0 |= 0x4L;\n" +
+                "    if (this.vela != null && this.vela) flags0 |= 0x8L;\n" +
+                "    out.writeByte((int) flags0);\n" +
+                "    if (this.nome != null) writeString(out, this.nome);\n" +
+                "    writeVarInt(out, (this.comprimento << 1) ^ (this.comprimento >> 31));\n" +
+                "    writeVarLong(out, (this.registro << 1) ^ (this.registro >> 63));\n" +
+                "  }\n" +
+                "\n" +
+                "  public static Barco readFrom(DataInput in) throws IOException {\n" +
+                "    long flags0 = in.readUnsignedByte();\n" +
+                "    Barco barco = new Barco();\n" +
+                "    barco.nome = (flags0 & 0x1L) != 0 ? null : readString(in);\n" +
+                "    barco.comprimento = decodeZigZag(readVarInt(in));\n" +
+                "    barco.registro = decodeZigZag(readVarLong(in));\n" +
+                "    barco.motor = (flags0 & 0x2L) != 0;\n" +
+                "    barco.vela = (flags0 & 0x4L) != 0 ? null : Boolean.valueOf((flags0 & 0x8L) != 0);\n" +
+                "    return barco;\n" +
+                "  }\n" +
+                "\n" +
+                "  public void writeTo(ByteBuffer buffer) {\n" +
+                "    long flags0 = 0L;\n" +
+                "    if (this.nome == null) flags0 |= 0x1L;\n" +
+                "    if (this.motor) flags0 |= 0x2L;\n" +
+                "    if (this.vela == null) flags0 |= 0x4L;\n" +
+                "    if (this.vela != null && this.vela) flags0 |= 0x8L;\n" +
+                "    buffer.put((byte) ((int) flags0));\n" +
+                "    if (this.nome != null) writeString(buffer, this.nome);\n" +
+                "    writeVarInt(buffer, (this.comprimento << 1) ^ (this.comprimento >> 31));\n" +
+                "    writeVarLong(buffer, (this.registro << 1) ^ (this.registro >> 63));\n" +
+                "  }\n" +
+                "\n" +
+                "  public static Barco readFrom(ByteBuffer buffer) {\n" +
+                "    long flags0 = (buffer.get() & 0xFF);\n" +
+                "    Barco barco = new Barco();\n" +
+                "    barco.nome = (flags0 & 0x1L) != 0 ? null : readString(buffer);\n" +
+                "    barco.comprimento = decodeZigZag(readVarInt(buffer));\n" +
+                "    barco.registro = decodeZigZag(readVarLong(buffer));\n" +
+                "    barco.motor = (flags0 & 0x2L) != 0;\n" +
+                "    barco.vela = (flags0 & 0x4L) != 0 ? null : Boolean.valueOf((flags0 & 0x8L) != 0);\n" +
+                "    return barco;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public void writeExternal(ObjectOutput out) throws IOException {\n" +
+                "    writeTo(out);\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public void readExternal(ObjectInput in) throws IOException {\n" +
+                "    long flags0 = in.readUnsignedByte();\n" +
+                "    this.nome = (flags0 & 0x1L) != 0 ? null : readString(in);\n" +
+                "    this.comprimento = decodeZigZag(readVarInt(in));\n" +
+                "    this.registro = decodeZigZag(readVarLong(in));\n" +
+                "    this.motor = (flags0 & 0x2L) != 0;\n" +
+                "    this.vela = (flags0 & 0x4L) != 0 ? null : Boolean.valueOf((flags0 & 0x8L) != 0);\n" +
+                "  }\n" +
+                "\n" +
+                "  private static void writeVarInt(DataOutput out, int value) throws IOException {\n" +
+                "    while ((value & ~0x7F) != 0) {\n" +
+                "      out.writeByte((value & 0x7F) | 0x80);\n" +
+                "      value >>>= 7;\n" +
+                "    }\n" +
+                "    out.writeByte(value);\n" +
+                "  }\n" +
+                "\n" +
+                "  private static int readVarInt(DataInput in) throws IOException {\n" +
+                "    int value = 0;\n" +
+                "    for (int shift = 0; shift < 32; shift += 7) {\n" +
+                "      int b = in.readUnsignedByte();\n" +
+                "      value |= (b & 0x7F) << shift;\n" +
+                "      if ((b & 0x80) == 0) {\n" +
+                "        return value;\n" +
+                "      }\n" +
+                "    }\n" +
+                "    throw new IOException(\"Malformed varint\");\n" +
+                "  }\n" +
+                "\n" +
+                "  private static void writeVarLong(DataOutput out, long value) throws IOException {\n" +
+                "    while ((value & ~0x7FL) != 0) {\n" +
+                "      out.writeByte((int) ((value & 0x7F) | 0x80));\n" +
+                "      value >>>= 7;\n" +
+                "    }\n" +
+                "    out.writeByte((int) value);\n" +
+                "  }\n" +
+                "\n" +
+                "  private static long readVarLong(DataInput in) throws IOException {\n" +
+                "    long value = 0L;\n" +
+                "    for (int shift = 0; shift < 64; shift += 7) {\n" +
+                "      int b = in.readUnsignedByte();\n" +
+                "      value |= (long) (b & 0x7F) << shift;\n" +
+                "      if ((b & 0x80) == 0) {\n" +
+                "        return value;\n" +
+                "      }\n" +
+                "    }\n" +
+                "    throw new IOException(\"Malformed varint\");\n" +
+                "  }\n" +
+                "\n" +
+                "  private static void writeString(DataOutput out, String value) throws IOException {\n" +
+                "    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);\n" +
+                "    writeVarInt(out, bytes.length);\n" +
+                "    out.write(bytes);\n" +
+                "  }\n" +
+                "\n" +
+                "  private static String readString(DataInput in) throws IOException {\n" +
+                "    int length = readVarInt(in);\n" +
+                "    if (length < 0) {\n" +
+                "      throw new IOException(\"Malformed string length\");\n" +
+                "    }\n" +
+                "    byte[] bytes = new byte[Math.min(length, 8192)];\n" +
+                "    in.readFully(bytes);\n" +
+                "    while (bytes.length < length) {\n" +
+                "      int read = bytes.length;\n" +
+                "      bytes = Arrays.copyOf(bytes, read + Math.min(length - read, read));\n" +
+                "      in.readFully(bytes, read, bytes.length - read);\n" +
+                "    }\n" +
+                "    return new String(bytes, StandardCharsets.UTF_8);\n" +
+                "  }\n" +
+                "\n" +
+                "  private static int decodeZigZag(int value) {\n" +
+                "    return (value >>> 1) ^ -(value & 1);\n" +
+                "  }\n" +
+                "\n" +
+                "  private static long decodeZigZag(long value) {\n" +
+                "    return (value >>> 1) ^ -(value & 1);\n" +
+                "  }\n" +
+                "\n" +
+                "  private static void writeVarInt(ByteBuffer buffer, int value) {\n" +
+                "    while ((value & ~0x7F) != 0) {\n" +
+                "      buffer.put((byte) ((value & 0x7F) | 0x80));\n" +
+                "      value >>>= 7;\n" +
+                "    }\n" +
+                "    buffer.put((byte) (value));\n" +
+                "  }\n" +
+                "\n" +
+                "  private static int readVarInt(ByteBuffer buffer) {\n" +
+                "    int value = 0;\n" +
+                "    for (int shift = 0; shift < 32; shift += 7) {\n" +
+                "      int b = (buffer.get() & 0xFF);\n" +
+                "      value |= (b & 0x7F) << shift;\n" +
+                "      if ((b & 0x80) == 0) {\n" +
+                "        return value;\n" +
+                "      }\n" +
+                "    }\n" +
+                "    throw new IllegalArgumentException(\"Malformed varint\");\n" +
+                "  }\n" +
+                "\n" +
+                "  private static void writeVarLong(ByteBuffer buffer, long value) {\n" +
+                "    while ((value & ~0x7FL) != 0) {\n" +
+                "      buffer.put((byte) ((int) ((value & 0x7F) | 0x80)));\n" +
+                "      value >>>= 7;\n" +
+                "    }\n" +
+                "    buffer.put((byte) ((int) value));\n" +
+                "  }\n" +
+                "\n" +
+                "  private static long readVarLong(ByteBuffer buffer) {\n" +
+                "    long value = 0L;\n" +
+                "    for (int shift = 0; shift < 64; shift += 7) {\n" +
+                "      int b = (buffer.get() & 0xFF);\n" +
+                "      value |= (long) (b & 0x7F) << shift;\n" +
+                "      if ((b & 0x80) == 0) {\n" +
+                "        return value;\n" +
+                "      }\n" +
+                "    }\n" +
+                "    throw new IllegalArgumentException(\"Malformed varint\");\n" +
+                "  }\n" +
+                "\n" +
+                "  private static void writeString(ByteBuffer buffer, String value) {\n" +
+                "    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);\n" +
+                "    writeVarInt(buffer, bytes.length);\n" +
+                "    buffer.put(bytes);\n" +
+                "  }\n" +
+                "\n" +
+                "  private static String readString(ByteBuffer buffer) {\n" +
+                "    int length = readVarInt(buffer);\n" +
+                "    if (length < 0 || length > buffer.remaining()) {\n" +
+                "      throw new IllegalArgumentException(\"Malformed string length\");\n" +
+                "    }\n" +
+                "    byte[] bytes = new byte[length];\n" +
+                "    buffer.get(bytes);\n" +
+                "    return new String(bytes, StandardCharsets.UTF_8);\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void codec_roundTripsEveryFieldThroughDataOutputAndByteBuffer() throws Exception {
+        Class<?> builderClass = compileBuilder("TodosBuilder", "@Builder(codec = true)", TODOS_FIELDS).loadClass("test.TodosBuilder_");
+        Object todos = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance());
+        Class<?> todosClass = todos.getClass();
+        todosClass.getField("texto").set(todos, "a\u00e7\u00e3o");
+        todosClass.getField("inteiro").set(todos, Integer.MIN_VALUE);
+        todosClass.getField("longo").set(todos, -1L);
+        todosClass.getField("curto").set(todos, Short.MAX_VALUE);
+        todosClass.getField("octeto").set(todos, (byte) -128);
+        todosClass.getField("letra").set(todos, '\uffff');
+        todosClass.getField("real").set(todos, Float.NaN);
+        todosClass.getField("duplo").set(todos, -0.0);
+        todosClass.getField("ligado").set(todos, true);
+        todosClass.getField("caixa").set(todos, 300);
+        todosClass.getField("talvez").set(todos, false);
+        todosClass.getField("grande").set(todos, Long.MAX_VALUE);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        todosClass.getMethod(BinaryCodecGenerator.WRITE_TO_METHOD_NAME, DataOutput.class).invoke(todos, new DataOutputStream(bytes));
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.size());
+        todosClass.getMethod(BinaryCodecGenerator.WRITE_TO_METHOD_NAME, ByteBuffer.class).invoke(todos, buffer);
+        buffer.flip();
+
+        assertThat(buffer.array()).isEqualTo(bytes.toByteArray());
+        assertThat(todosClass.getMethod(BinaryCodecGenerator.READ_FROM_METHOD_NAME, DataInput.class)
+                .invoke(null, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())))).isEqualTo(todos);
+        assertThat(todosClass.getMethod(BinaryCodecGenerator.READ_FROM_METHOD_NAME, ByteBuffer.class).invoke(null, buffer)).isEqualTo(todos);
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void codec_keepsNullsAndBooleansInTheBitmapAndSmallNumbersInOneByte() throws Exception {
+        Class<?> builderClass = compileBuilder("TodosBuilder", "@Builder(codec = true)", TODOS_FIELDS).loadClass("test.TodosBuilder_");
+        Object todos = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance());
+        Method writeTo = todos.getClass().getMethod(BinaryCodecGenerator.WRITE_TO_METHOD_NAME, ByteBuffer.class);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        writeTo.invoke(todos, buffer);
+
+        // 1 bitmap byte for 6 null and 2 boolean flags, 1 byte per varint and byte, 4 for the float and 8 for the double
+        assertThat(buffer.position()).isEqualTo(1 + 4 + 1 + 4 + 8);
+        buffer.flip();
+        assertThat(todos.getClass().getMethod(BinaryCodecGenerator.READ_FROM_METHOD_NAME, ByteBuffer.class).invoke(null, buffer)).isEqualTo(todos);
+
+        todos.getClass().getField("inteiro").set(todos, -64);
+        todos.getClass().getField("longo").set(todos, 64L);
+        buffer.clear();
+        writeTo.invoke(todos, buffer);
+
+        assertThat(buffer.position()).isEqualTo(1 + 4 + 1 + 4 + 8 + 1);
+    }
+
+    @Test
+    public void codec_rejectsMalformedVarints() throws Exception {
+        Class<?> builderClass = compileBuilder("TodosBuilder", "@Builder(codec = true)", TODOS_FIELDS).loadClass("test.TodosBuilder_");
+        Class<?> todosClass = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance()).getClass();
+        byte[][] malformed = {
+                {(byte) 0xff, -1, -1, -1, -1, -1, -1},
+                {0x00, -1, -1, -1, -1, 0x0f},
+                {0x00, -1, -1, -1, -1, 0x07},
+        };
+
+        for (byte[] bytes : malformed) {
+            try {
+                todosClass.getMethod(BinaryCodecGenerator.READ_FROM_METHOD_NAME, ByteBuffer.class).invoke(null, ByteBuffer.wrap(bytes));
+                fail();
+            } catch (InvocationTargetException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+            }
+            try {
+                todosClass.getMethod(BinaryCodecGenerator.READ_FROM_METHOD_NAME, DataInput.class)
+                        .invoke(null, new DataInputStream(new ByteArrayInputStream(bytes)));
+                fail();
+            } catch (InvocationTargetException e) {
+                assertThat(e.getCause()).isInstanceOf(IOException.class);
+            }
+        }
+    }
+
+    @Test
+    public void externalizableBuiltClass_isWrittenByObjectOutputStreamWithTheCodec() throws Exception {
+        Class<?> builderClass = compileBuilder("TodosBuilder", "@Builder(codec = true, externalizable = true)", TODOS_FIELDS).loadClass("test.TodosBuilder_");
+        Object todos = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance());
+        todos.getClass().getField("texto").set(todos, "barco");
+        todos.getClass().getField("talvez").set(todos, true);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(todos);
+        }
+        Object read;
+        try (ObjectInputStream in = new GeneratedObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()), builderClass.getClassLoader())) {
+            read = in.readObject();
+        }
+
+        assertThat(todos).isInstanceOf(Externalizable.class);
+        assertThat(read).isEqualTo(todos);
+    }
+
+    @Test
+    public void immutableBuiltClass_isReadThroughItsBuilder() throws Exception {
+        Class<?> builderClass = compileBuilder("TodosBuilder", "@Builder(codec = true, immutable = true, externalizable = true)", TODOS_FIELDS).loadClass("test.TodosBuilder_");
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setTexto", String.class).invoke(builder, "casco");
+        builderClass.getMethod("setCaixa", Integer.class).invoke(builder, -7);
+        Object todos = builderClass.getMethod("build").invoke(builder);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+
+        todos.getClass().getMethod(BinaryCodecGenerator.WRITE_TO_METHOD_NAME, ByteBuffer.class).invoke(todos, buffer);
+        buffer.flip();
+
+        assertThat(todos).isNotInstanceOf(Externalizable.class);
+        assertThat(todos.getClass().getMethod(BinaryCodecGenerator.READ_FROM_METHOD_NAME, ByteBuffer.class).invoke(null, buffer)).isEqualTo(todos);
+    }
+
+    @Test
+    public void codec_withUnsupportedFieldType_failsTheCompilation() {
+        Compilation compilation = compile("ListaBuilder", "@Builder(codec = true)", "java.util.List<String> itens;");
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Tipo nao suportado pelo codec binario: java.util.List<java.lang.String> itens");
+    }
+
+    /**
+     * Resolves the generated classes, which the default {@link ObjectInputStream} cannot see.
+     */
+    private static class GeneratedObjectInputStream extends ObjectInputStream {
+        private final ClassLoader classLoader;
+
+        GeneratedObjectInputStream(InputStream in, ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            return Class.forName(desc.getName(), false, classLoader);
+        }
+    }
+
+    @Builder(codec = true, externalizable = true)
+    static class BarcoBuilder {
+        String nome;
+        int comprimento;
+        long registro;
+        boolean motor;
+        Boolean vela;
+    }
+}
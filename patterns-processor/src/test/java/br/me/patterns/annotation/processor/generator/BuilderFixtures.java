@@ -0,0 +1,86 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.google.testing.compile.JavaFileObjects;
+import com.squareup.javapoet.JavaFile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import br.me.patterns.annotation.processor.PatternsProcessor;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+/**
+ * Builder sources shared by the tests of the generators that extend a {@code @Builder}: the built class, its codecs
+ * and its companions.
+ */
+final class BuilderFixtures {
+
+    /**
+     * One field of every type the codecs support, primitive and boxed.
+     */
+    static final String[] TODOS_FIELDS = {
+            "String texto;",
+            "int inteiro;",
+            "long longo;",
+            "short curto;",
+            "byte octeto;",
+            "char letra;",
+            "float real;",
+            "double duplo;",
+            "boolean ligado;",
+            "Integer caixa;",
+            "Boolean talvez;",
+            "Long grande;",
+            "Character simbolo;",
+    };
+
+    /**
+     * A reference, an int and a boolean field.
+     */
+    static final String[] ONIBUS_FIELDS = {
+            "String linha;",
+            "int lugares;",
+            "boolean articulado;",
+    };
+
+    private BuilderFixtures() {
+    }
+
+    /**
+     * @return the files generated for a {@code @Builder} class nested in a test, the builder first.
+     */
+    static JavaFile[] generate(CompilationRule compilationRule, Class<?> builderClass) {
+        return BuilderGenerator.generate(compilationRule.getElements().getTypeElement(builderClass.getCanonicalName()));
+    }
+
+    /**
+     * Compiles {@code test.<simpleName>}, annotated with {@code annotation} and declaring {@code members}, one per
+     * line. {@code Builder} and {@code Interned} are imported.
+     */
+    static Compilation compile(String simpleName, String annotation, String... members) {
+        List<String> lines = new ArrayList<>();
+        Collections.addAll(lines, "package test;", "", "import br.me.patterns.annotation.Builder;",
+                "import br.me.patterns.annotation.Interned;", "", annotation, "public class " + simpleName + " {");
+        for (String member : members) {
+            lines.add("    " + member);
+        }
+        lines.add("}");
+
+        return javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test." + simpleName, lines));
+    }
+
+    /**
+     * @return the classes of a successful {@link #compile}.
+     */
+    static ClassLoader compileBuilder(String simpleName, String annotation, String... members) {
+        Compilation compilation = compile(simpleName, annotation, members);
+
+        assertThat(compilation).succeeded();
+        return new GeneratedClassLoader(compilation);
+    }
+}
@@ -14,11 +14,25 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import java.io.Serializable;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 
+import br.me.patterns.annotation.Builder;
+
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compileBuilder;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.generate;
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
 
 @RunWith(JUnit4.class)
 public class BuilderGeneratorUnitTest {
@@ -95,6 +109,835 @@ public class BuilderGeneratorUnitTest {
         assertThat(constructor.modifiers).contains(Modifier.PUBLIC);
     }
 
+    @Test
+    public void reusableBuilder_matchesTemplate() {
+        TypeElement elementToApplyPattern = compilationRule.getElements().getTypeElement(MotoBuilder.class.getCanonicalName());
+        JavaFile[] generatedFiles = BuilderGenerator.generate(elementToApplyPattern);
+
+        assertThat(generatedFiles[0].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.IllegalStateException;\n" +
+                "import java.lang.Override;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.ThreadLocal;\n" +
+                "\n" +
+                "public class MotoBuilder_ extends BuilderGeneratorUnitTest.MotoBuilder {\n" +
+                "  private static final int POOL_SIZE = 4;\n" +
+                "\n" +
+                "  private static final MotoBuilder_ DEFAULTS = new MotoBuilder_();\n" +
+                "\n" +
+                "  private static final ThreadLocal<Pool> POOL = new ThreadLocal<Pool>() {\n" +
+                "    @Override\n" +
+                "    protected Pool initialValue() {\n" +
+                "      return new Pool();\n" +
+                "    }\n" +
+                "  };\n" +
+                "\n" +
+                "  private boolean pooled;\n" +
+                "\n" +
+                "  public MotoBuilder_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public MotoBuilder_ setCor(String cor) {\n" +
+                "    super.cor=cor;\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public MotoBuilder_ setCilindradas(int cilindradas) {\n" +
+                "    super.cilindradas=cilindradas;\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Moto build() {\n" +
+                "    Moto moto = new Moto();\n" +
+                "    moto.cor = cor;\n" +
+                "    moto.cilindradas = cilindradas;\n" +
+                "    return moto;\n" +
+                "  }\n" +
+                "\n" +
+                "  public MotoBuilder_ reset() {\n" +
+                "    this.cor = DEFAULTS.cor;\n" +
+                "    this.cilindradas = DEFAULTS.cilindradas;\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Moto buildInto(Moto moto) {\n" +
+                "    moto.cor = cor;\n" +
+                "    moto.cilindradas = cilindradas;\n" +
+                "    return moto;\n" +
+                "  }\n" +
+                "\n" +
+                "  public static MotoBuilder_ acquire() {\n" +
+                "    Pool pool = POOL.get();\n" +
+                "    if (pool.size == 0) {\n" +
+                "      return new MotoBuilder_();\n" +
+                "    }\n" +
+                "    MotoBuilder_ builder = pool.builders[--pool.size];\n" +
+                "    pool.builders[pool.size] = null;\n" +
+                "    builder.pooled = false;\n" +
+                "    return builder;\n" +
+                "  }\n" +
+                "\n" +
+                "  public void release() {\n" +
+                "    if (pooled) {\n" +
+                "      throw new IllegalStateException(\"MotoBuilder_ already released\");\n" +
+                "    }\n" +
+                "    reset();\n" +
+                "    Pool pool = POOL.get();\n" +
+                "    if (pool.size < POOL_SIZE) {\n" +
+                "      pooled = true;\n" +
+                "      pool.builders[pool.size++] = this;\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  private static final class Pool {\n" +
+                "    final MotoBuilder_[] builders = new MotoBuilder_[POOL_SIZE];\n" +
+                "\n" +
+                "    int size;\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void reusableBuilder_recyclesBuildersAndBuiltObjects() throws Exception {
+        ClassLoader classLoader = compileReusableBuilder();
+        Class<?> builderClass = classLoader.loadClass("test.MotoBuilder_");
+        Class<?> motoClass = classLoader.loadClass("test.Moto");
+        Method acquire = builderClass.getMethod(BuilderGenerator.ACQUIRE_METHOD_NAME);
+        Method release = builderClass.getMethod(BuilderGenerator.RELEASE_METHOD_NAME);
+        Method buildInto = builderClass.getMethod(BuilderGenerator.BUILD_INTO_METHOD_NAME, motoClass);
+
+        Object builder = acquire.invoke(null);
+        builderClass.getMethod("setCor", String.class).invoke(builder, "azul");
+        builderClass.getMethod("setCilindradas", int.class).invoke(builder, 300);
+
+        Object moto = motoClass.getConstructor().newInstance();
+        assertThat(buildInto.invoke(builder, moto)).isSameAs(moto);
+        assertThat(motoClass.getField("cor").get(moto)).isEqualTo("azul");
+        assertThat(motoClass.getField("cilindradas").get(moto)).isEqualTo(300);
+
+        release.invoke(builder);
+        Object recycled = acquire.invoke(null);
+
+        assertThat(recycled).isSameAs(builder);
+        assertThat(buildInto.invoke(recycled, moto)).isSameAs(moto);
+        assertThat(motoClass.getField("cor").get(moto)).isEqualTo("preta");
+        assertThat(motoClass.getField("cilindradas").get(moto)).isEqualTo(0);
+    }
+
+    @Test
+    public void reusableBuilder_poolIsBoundedAndRejectsDoubleRelease() throws Exception {
+        ClassLoader classLoader = compileReusableBuilder();
+        Class<?> builderClass = classLoader.loadClass("test.MotoBuilder_");
+        Method acquire = builderClass.getMethod(BuilderGenerator.ACQUIRE_METHOD_NAME);
+        Method release = builderClass.getMethod(BuilderGenerator.RELEASE_METHOD_NAME);
+
+        Object[] builders = {acquire.invoke(null), acquire.invoke(null), acquire.invoke(null)};
+        for (Object builder : builders) {
+            release.invoke(builder);
+        }
+
+        assertThat(acquire.invoke(null)).isSameAs(builders[1]);
+        assertThat(acquire.invoke(null)).isSameAs(builders[0]);
+        assertThat(acquire.invoke(null)).isNoneOf(builders[0], builders[1], builders[2]);
+
+        release.invoke(builders[0]);
+        try {
+            release.invoke(builders[0]);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void reusableBuilder_withAFieldNamedLikeThePoolFlag_keepsBoth() throws Exception {
+        ClassLoader classLoader = compileBuilder("BarcoBuilder", "@Builder(reusable = true)", "String nome;", "boolean pooled;");
+        Class<?> builderClass = classLoader.loadClass("test.BarcoBuilder_");
+        Class<?> barcoClass = classLoader.loadClass("test.Barco");
+        Method acquire = builderClass.getMethod(BuilderGenerator.ACQUIRE_METHOD_NAME);
+        Method release = builderClass.getMethod(BuilderGenerator.RELEASE_METHOD_NAME);
+        Method build = builderClass.getMethod("build");
+
+        Object builder = acquire.invoke(null);
+        builderClass.getMethod("setPooled", boolean.class).invoke(builder, true);
+        assertThat(barcoClass.getField("pooled").get(build.invoke(builder))).isEqualTo(true);
+
+        release.invoke(builder);
+        Object recycled = acquire.invoke(null);
+        assertThat(recycled).isSameAs(builder);
+        assertThat(barcoClass.getField("pooled").get(build.invoke(recycled))).isEqualTo(false);
+
+        builderClass.getMethod("setPooled", boolean.class).invoke(recycled, true);
+        release.invoke(recycled);
+        try {
+            release.invoke(recycled);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void immutableBuilder_matchesTemplate() {
+        TypeElement elementToApplyPattern = compilationRule.getElements().getTypeElement(AviaoBuilder.class.getCanonicalName());
+        JavaFile[] generatedFiles = BuilderGenerator.generate(elementToApplyPattern);
+
+        assertThat(generatedFiles[0].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.String;\n" +
+                "\n" +
+                "public class AviaoBuilder_ extends BuilderGeneratorUnitTest.AviaoBuilder {\n" +
+                "  public AviaoBuilder_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public AviaoBuilder_ setModelo(String modelo) {\n" +
+                "    super.modelo=modelo;\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public AviaoBuilder_ setAutonomia(long autonomia) {\n" +
+                "    super.autonomia=autonomia;\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public AviaoBuilder_ setJato(boolean jato) {\n" +
+                "    super.jato=jato;\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Aviao build() {\n" +
+                "    return new Aviao(modelo, autonomia, jato);\n" +
+                "  }\n" +
+                "}\n");
+        assertThat(generatedFiles[1].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.io.IOException;\n" +
+                "import java.io.Serializable;\n" +
+                "import java.lang.Appendable;\n" +
+                "import java.lang.Object;\n" +
+                "import java.lang.Override;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.StringBuilder;\n" +
+                "\n" +
+                "public final class Aviao implements Serializable {\n" +
+                "  private static final int TO_STRING_CAPACITY = 74;\n" +
+                "\n" +
+                "  private final String modelo;\n" +
+                "\n" +
+                "  private final long autonomia;\n" +
+                "\n" +
+                "  private final boolean jato;\n" +
+                "\n" +
+                "  private transient int cachedHashCode;\n" +
+                "\n" +
+                "  public Aviao(String modelo, long autonomia, boolean jato) {\n" +
+                "    this.modelo = modelo;\n" +
+                "    this.autonomia = autonomia;\n" +
+                "    this.jato = jato;\n" +
+                "  }\n" +
+                "\n" +
+                "  public String getModelo() {\n" +
+                "    return modelo;\n" +
+                "  }\n" +
+                "\n" +
+                "  public long getAutonomia() {\n" +
+                "    return autonomia;\n" +
+                "  }\n" +
+                "\n" +
+                "  public boolean isJato() {\n" +
+                "    return jato;\n" +
+                "  }\n" +
+                "\n" +
+                "  public StringBuilder appendTo(StringBuilder builder) {\n" +
+                "    builder.append(\"Aviao {\");\n" +
+                "    builder.append(\"modelo=\").append(this.modelo).append(',');\n" +
+                "    builder.append(\"autonomia=\").append(this.autonomia).append(',');\n" +
+                "    builder.append(\"jato=\").append(this.jato).append(',');\n" +
+                "    builder.append('}');\n" +
+                "    return builder;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Appendable appendTo(Appendable appendable) throws IOException {\n" +
+                "    if (appendable instanceof StringBuilder) {\n" +
+                "      return appendTo((StringBuilder) appendable);\n" +
+                "    }\n" +
+                "    appendable.append(\"Aviao {\");\n" +
+                "    appendable.append(\"modelo=\").append(String.valueOf(this.modelo)).append(',');\n" +
+                "    appendable.append(\"autonomia=\").append(String.valueOf(this.autonomia)).append(',');\n" +
+                "    appendable.append(\"jato=\").append(String.valueOf(this.jato)).append(',');\n" +
+                "    appendable.append('}');\n" +
+                "    return appendable;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public boolean equals(Object o) {\n" +
+                "    if (this == o) {\n" +
+                "      return true;\n" +
+                "    }\n" +
+                "    if (o == null || getClass() != o.getClass()) {\n" +
+                "      return false;\n" +
+                "    }\n" +
+                "    Aviao other = (Aviao) o;\n" +
+                "    return this.autonomia == other.autonomia && this.jato == other.jato\n" +
+                "        && (this.modelo == null ? other.modelo == null : this.modelo.equals(other.modelo));\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public int hashCode() {\n" +
+                "    int result = cachedHashCode;\n" +
+                "    if (result != 0) {\n" +
+                "      return result;\n" +
+                "    }\n" +
+                "    result = 1;\n" +
+                "    result = 31 * result + (this.modelo == null ? 0 : this.modelo.hashCode());\n" +
+                "    result = 31 * result + (int) (this.autonomia ^ (this.autonomia >>> 32));\n" +
+                "    result = 31 * result + (this.jato ? 1231 : 1237);\n" +
+                "    cachedHashCode = result;\n" +
+                "    return result;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public String toString() {\n" +
+                "    return appendTo(new StringBuilder(TO_STRING_CAPACITY)).toString();\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void immutableBuiltClass_hasOnlyFinalFieldsAndAccessors() throws Exception {
+        ClassLoader classLoader = compileBuilder("AviaoBuilder", "@Builder(immutable = true)", "String modelo;", "long autonomia;", "boolean jato;");
+        Class<?> builderClass = classLoader.loadClass("test.AviaoBuilder_");
+        Class<?> aviaoClass = classLoader.loadClass("test.Aviao");
+
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setModelo", String.class).invoke(builder, "A320");
+        builderClass.getMethod("setAutonomia", long.class).invoke(builder, 6100L);
+        builderClass.getMethod("setJato", boolean.class).invoke(builder, true);
+        Object aviao = builderClass.getMethod("build").invoke(builder);
+
+        assertThat(aviaoClass.getMethod("getModelo").invoke(aviao)).isEqualTo("A320");
+        assertThat(aviaoClass.getMethod("getAutonomia").invoke(aviao)).isEqualTo(6100L);
+        assertThat(aviaoClass.getMethod("isJato").invoke(aviao)).isEqualTo(true);
+        assertThat(java.lang.reflect.Modifier.isFinal(aviaoClass.getModifiers())).isTrue();
+        assertThat(aviaoClass.getConstructors()).hasLength(1);
+        for (Field field : aviaoClass.getDeclaredFields()) {
+            if (java.lang.reflect.Modifier.isTransient(field.getModifiers())) {
+                // memoized hashCode, derived from the final fields
+                continue;
+            }
+            assertThat(java.lang.reflect.Modifier.isPrivate(field.getModifiers())).isTrue();
+            assertThat(java.lang.reflect.Modifier.isFinal(field.getModifiers())).isTrue();
+        }
+    }
+
+    @Test
+    public void immutableBuiltClass_withTooManyFieldsForAConstructor_isBuiltFromTheBuilder() throws Exception {
+        String[] fields = new String[130];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = "long field" + i + " = " + i + ";";
+        }
+
+        Class<?> builderClass = compileBuilder("LargeBuilder", "@Builder(immutable = true)", fields).loadClass("test.LargeBuilder_");
+        Object large = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance());
+
+        assertThat(large.getClass().getMethod("getField129").invoke(large)).isEqualTo(129L);
+    }
+
+    @Test
+    public void builtClass_appendsTheSameTextAsToString() throws Exception {
+        ClassLoader classLoader = compileReusableBuilder();
+        Class<?> motoClass = classLoader.loadClass("test.Moto");
+        Object builder = classLoader.loadClass("test.MotoBuilder_").getConstructor().newInstance();
+        Object moto = builder.getClass().getMethod("build").invoke(builder);
+
+        StringBuilder stringBuilder = new StringBuilder("> ");
+        assertThat(motoClass.getMethod(BuilderGenerator.APPEND_TO_METHOD_NAME, StringBuilder.class).invoke(moto, stringBuilder)).isSameAs(stringBuilder);
+        StringWriter writer = new StringWriter();
+        motoClass.getMethod(BuilderGenerator.APPEND_TO_METHOD_NAME, Appendable.class).invoke(moto, writer);
+
+        assertThat(moto.toString()).isEqualTo("Moto {cor=preta,cilindradas=0,}");
+        assertThat(stringBuilder.toString()).isEqualTo("> " + moto);
+        assertThat(writer.toString()).isEqualTo(moto.toString());
+    }
+
+    @Test
+    public void immutableBuiltClass_withCacheToString_returnsTheSameString() throws Exception {
+        Class<?> builderClass = compileBuilder("AviaoBuilder", "@Builder(immutable = true, cacheToString = true)", "String modelo = \"A320\";", "char classe = 'C';").loadClass("test.AviaoBuilder_");
+        Object aviao = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance());
+        StringWriter writer = new StringWriter();
+        aviao.getClass().getMethod(BuilderGenerator.APPEND_TO_METHOD_NAME, Appendable.class).invoke(aviao, writer);
+
+        assertThat(aviao.toString()).isEqualTo("Aviao {modelo=A320,classe=C,}");
+        assertThat(aviao.toString()).isSameAs(aviao.toString());
+        assertThat(writer.toString()).isEqualTo(aviao.toString());
+    }
+
+    @Test
+    public void immutableBuiltClass_withFieldsNamedLikeTheToStringMembers_keepsThem() throws Exception {
+        Class<?> builderClass = compileBuilder("AviaoBuilder", "@Builder(immutable = true, cacheToString = true)", "String cachedToString = \"A320\";", "int TO_STRING_CAPACITY = 180;").loadClass("test.AviaoBuilder_");
+        Object aviao = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance());
+
+        assertThat(aviao.toString()).isEqualTo("Aviao {cachedToString=A320,TO_STRING_CAPACITY=180,}");
+        assertThat(aviao.toString()).isSameAs(aviao.toString());
+        assertThat(aviao.getClass().getMethod("getCachedToString").invoke(aviao)).isEqualTo("A320");
+    }
+
+    @Test
+    public void builtClass_equalsAndHashCode_compareFieldsLikeObjectsHash() throws Exception {
+        Class<?> builderClass = compileBuilder("PecaBuilder", "@Builder", "String nome;", "long codigo;", "double peso;", "float preco;", "boolean original;", "char tipo;", "Integer estoque;").loadClass("test.PecaBuilder_");
+        Object peca = newPeca(builderClass, "filtro", 0.0);
+        Object samePeca = newPeca(builderClass, "filtro", 0.0);
+
+        assertThat(peca).isEqualTo(samePeca);
+        assertThat(peca.hashCode()).isEqualTo(samePeca.hashCode());
+        assertThat(peca.hashCode()).isEqualTo(Objects.hash("filtro", 42L, 0.0, 1.5f, true, 'F', null));
+        assertThat(peca).isNotEqualTo(newPeca(builderClass, "vela", 0.0));
+        assertThat(peca).isNotEqualTo(newPeca(builderClass, null, 0.0));
+        assertThat(peca).isNotEqualTo(newPeca(builderClass, "filtro", -0.0));
+        assertThat(newPeca(builderClass, "filtro", Double.NaN)).isEqualTo(newPeca(builderClass, "filtro", Double.NaN));
+        assertThat(peca).isNotEqualTo(null);
+    }
+
+    private static Object newPeca(Class<?> builderClass, String nome, double peso) throws Exception {
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setNome", String.class).invoke(builder, nome);
+        builderClass.getMethod("setCodigo", long.class).invoke(builder, 42L);
+        builderClass.getMethod("setPeso", double.class).invoke(builder, peso);
+        builderClass.getMethod("setPreco", float.class).invoke(builder, 1.5f);
+        builderClass.getMethod("setOriginal", boolean.class).invoke(builder, true);
+        builderClass.getMethod("setTipo", char.class).invoke(builder, 'F');
+
+        return builderClass.getMethod("build").invoke(builder);
+    }
+
+    @Test
+    public void immutableBuiltClass_memoizesItsHashCode() throws Exception {
+        ClassLoader classLoader = compileBuilder("AviaoBuilder", "@Builder(immutable = true)", "String modelo = \"A320\";", "long autonomia = 6100;");
+        Class<?> builderClass = classLoader.loadClass("test.AviaoBuilder_");
+        Object aviao = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance());
+        Field cachedHashCode = aviao.getClass().getDeclaredField(BuilderGenerator.CACHED_HASH_CODE_FIELD_NAME);
+        cachedHashCode.setAccessible(true);
+
+        assertThat(cachedHashCode.getInt(aviao)).isEqualTo(0);
+        assertThat(aviao.hashCode()).isEqualTo(Objects.hash("A320", 6100L));
+        assertThat(cachedHashCode.getInt(aviao)).isEqualTo(aviao.hashCode());
+        assertThat(aviao).isEqualTo(builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance()));
+    }
+
+    @Test
+    public void immutableBuiltClass_withAFieldNamedLikeTheHashCache_hashesIt() throws Exception {
+        ClassLoader classLoader = compileBuilder("AviaoBuilder", "@Builder(immutable = true)", "String modelo = \"A320\";", "int cachedHashCode = 7;");
+        Class<?> builderClass = classLoader.loadClass("test.AviaoBuilder_");
+        Object aviao = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance());
+
+        assertThat(aviao.hashCode()).isEqualTo(Objects.hash("A320", 7));
+        assertThat(aviao.hashCode()).isEqualTo(Objects.hash("A320", 7));
+        assertThat(aviao.getClass().getMethod("getCachedHashCode").invoke(aviao)).isEqualTo(7);
+    }
+
+    @Test
+    public void packedBooleansBuilder_matchesTemplate() {
+        JavaFile[] generatedFiles = generate(compilationRule, BicicletaBuilder.class);
+
+        assertThat(generatedFiles[0].toString()).contains("bicicleta.setEletrica(eletrica);");
+        assertThat(generatedFiles[1].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.io.IOException;\n" +
+                "import java.io.Serializable;\n" +
+                "import java.lang.Appendable;\n" +
+                "import java.lang.Object;\n" +
+                "import java.lang.Override;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.StringBuilder;\n" +
+                "\n" +
+                "public class Bicicleta implements Serializable {\n" +
+                "  private static final int TO_STRING_CAPACITY = 85;\n" +
+                "\n" +
+                "  public String marca;\n" +
+                "\n" +
+                "  private int flags;\n" +
+                "\n" +
+                "  public int marchas;\n" +
+                "\n" +
+                "  public Bicicleta() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public boolean isEletrica() {\n" +
+                "    return (this.flags & 0x1) != 0;\n" +
+                "  }\n" +
+                "\n" +
+                "  public void setEletrica(boolean eletrica) {\n" +
+                "    if (eletrica) {\n" +
+                "      this.flags |= 0x1;\n" +
+                "    } else {\n" +
+                "      this.flags &= ~0x1;\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  public boolean isDobravel() {\n" +
+                "    return (this.flags & 0x2) != 0;\n" +
+                "  }\n" +
+                "\n" +
+                "  public void setDobravel(boolean dobravel) {\n" +
+                "    if (dobravel) {\n" +
+                "      this.flags |= 0x2;\n" +
+                "    } else {\n" +
+                "      this.flags &= ~0x2;\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  public StringBuilder appendTo(StringBuilder builder) {\n" +
+                "    builder.append(\"Bicicleta {\");\n" +
+                "    builder.append(\"marca=\").append(this.marca).append(',');\n" +
+                "    builder.append(\"eletrica=\").append((this.flags & 0x1) != 0).append(',');\n" +
+                "    builder.append(\"marchas=\").append(this.marchas).append(',');\n" +
+                "    builder.append(\"dobravel=\").append((this.flags & 0x2) != 0).append(',');\n" +
+                "    builder.append('}');\n" +
+                "    return builder;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Appendable appendTo(Appendable appendable) throws IOException {\n" +
+                "    if (appendable instanceof StringBuilder) {\n" +
+                "      return appendTo((StringBuilder) appendable);\n" +
+                "    }\n" +
+                "    appendable.append(\"Bicicleta {\");\n" +
+                "    appendable.append(\"marca=\").append(String.valueOf(this.marca)).append(',');\n" +
+                "    appendable.append(\"eletrica=\").append(String.valueOf((this.flags & 0x1) != 0)).append(',');\n" +
+                "    appendable.append(\"marchas=\").append(String.valueOf(this.marchas)).append(',');\n" +
+                "    appendable.append(\"dobravel=\").append(String.valueOf((this.flags & 0x2) != 0)).append(',');\n" +
+                "    appendable.append('}');\n" +
+                "    return appendable;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public boolean equals(Object o) {\n" +
+                "    if (this == o) {\n" +
+                "      return true;\n" +
+                "    }\n" +
+                "    if (o == null || getClass() != o.getClass()) {\n" +
+                "      return false;\n" +
+                "    }\n" +
+                "    Bicicleta other = (Bicicleta) o;\n" +
+                "    return this.flags == other.flags && this.marchas == other.marchas\n" +
+                "        && (this.marca == null ? other.marca == null : this.marca.equals(other.marca));\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public int hashCode() {\n" +
+                "    int result = 1;\n" +
+                "    result = 31 * result + (this.marca == null ? 0 : this.marca.hashCode());\n" +
+                "    result = 31 * result + ((this.flags & 0x1) != 0 ? 1231 : 1237);\n" +
+                "    result = 31 * result + this.marchas;\n" +
+                "    result = 31 * result + ((this.flags & 0x2) != 0 ? 1231 : 1237);\n" +
+                "    return result;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public String toString() {\n" +
+                "    return appendTo(new StringBuilder(TO_STRING_CAPACITY)).toString();\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void packedBooleans_keepTheValuesEqualsAndHashCodeOfBooleanFields() throws Exception {
+        ClassLoader classLoader = compilePackedBooleansBuilder("@Builder(packBooleans = true, codec = true)", 3);
+        Class<?> builderClass = classLoader.loadClass("test.SensoresBuilder_");
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setSensor0", boolean.class).invoke(builder, true);
+        builderClass.getMethod("setSensor2", boolean.class).invoke(builder, true);
+        Object sensores = builderClass.getMethod("build").invoke(builder);
+        Class<?> sensoresClass = sensores.getClass();
+
+        assertThat(sensoresClass.getMethod("isSensor0").invoke(sensores)).isEqualTo(true);
+        assertThat(sensoresClass.getMethod("isSensor1").invoke(sensores)).isEqualTo(false);
+        assertThat(sensores.toString()).isEqualTo("Sensores {nome=null,sensor0=true,sensor1=false,sensor2=true,}");
+        assertThat(sensores.hashCode()).isEqualTo(Objects.hash(null, true, false, true));
+
+        Object other = builderClass.getMethod("build").invoke(builder);
+        sensoresClass.getMethod("setSensor1", boolean.class).invoke(other, true);
+        assertThat(other).isNotEqualTo(sensores);
+        sensoresClass.getMethod("setSensor1", boolean.class).invoke(other, false);
+        assertThat(other).isEqualTo(sensores);
+
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        sensoresClass.getMethod(BinaryCodecGenerator.WRITE_TO_METHOD_NAME, ByteBuffer.class).invoke(sensores, buffer);
+        buffer.flip();
+        assertThat(sensoresClass.getMethod(BinaryCodecGenerator.READ_FROM_METHOD_NAME, ByteBuffer.class).invoke(null, buffer)).isEqualTo(sensores);
+    }
+
+    @Test
+    public void packedBooleans_replaceTheBooleanFieldsByIntAndLongWords() throws Exception {
+        Class<?> fewClass = compilePackedBooleansBuilder("@Builder(packBooleans = true)", 3).loadClass("test.Sensores");
+        Class<?> manyClass = compilePackedBooleansBuilder("@Builder(packBooleans = true, immutable = true)", 70).loadClass("test.Sensores");
+
+        assertThat(getInstanceFieldTypes(fewClass)).containsExactly(String.class, int.class);
+        assertThat(getInstanceFieldTypes(manyClass)).containsExactly(String.class, long.class, long.class);
+    }
+
+    @Test
+    public void immutablePackedBooleans_areSetOnceByTheConstructor() throws Exception {
+        Class<?> builderClass = compilePackedBooleansBuilder("@Builder(packBooleans = true, immutable = true)", 70).loadClass("test.SensoresBuilder_");
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setSensor0", boolean.class).invoke(builder, true);
+        builderClass.getMethod("setSensor63", boolean.class).invoke(builder, true);
+        builderClass.getMethod("setSensor64", boolean.class).invoke(builder, true);
+        Object sensores = builderClass.getMethod("build").invoke(builder);
+
+        for (int i = 0; i < 70; i++) {
+            assertThat(sensores.getClass().getMethod("isSensor" + i).invoke(sensores)).isEqualTo(i == 0 || i == 63 || i == 64);
+        }
+    }
+
+    @Test
+    public void packedBooleans_withFieldsNamedLikeTheFlagsWords_keepThem() throws Exception {
+        for (int booleans : new int[] {3, 70}) {
+            List<String> fields = new ArrayList<>();
+            Collections.addAll(fields, "String flags = \"verde\";", "int flags1 = 1;");
+            for (int i = 0; i < booleans; i++) {
+                fields.add("boolean luz" + i + ";");
+            }
+
+            Class<?> builderClass = compileBuilder("PainelBuilder", "@Builder(packBooleans = true)", fields.toArray(new String[0]))
+                    .loadClass("test.PainelBuilder_");
+            Object builder = builderClass.getConstructor().newInstance();
+            builderClass.getMethod("setLuz" + (booleans - 1), boolean.class).invoke(builder, true);
+            Object painel = builderClass.getMethod("build").invoke(builder);
+
+            assertThat(painel.getClass().getField("flags").get(painel)).isEqualTo("verde");
+            assertThat(painel.getClass().getField("flags1").get(painel)).isEqualTo(1);
+            assertThat(painel.getClass().getMethod("isLuz" + (booleans - 1)).invoke(painel)).isEqualTo(true);
+            assertThat(painel.getClass().getMethod("isLuz0").invoke(painel)).isEqualTo(false);
+        }
+    }
+
+    private static List<Class<?>> getInstanceFieldTypes(Class<?> builtClass) {
+        List<Class<?>> types = new ArrayList<>();
+        for (Field field : builtClass.getDeclaredFields()) {
+            if (! java.lang.reflect.Modifier.isStatic(field.getModifiers()) && ! java.lang.reflect.Modifier.isTransient(field.getModifiers())) {
+                types.add(field.getType());
+            }
+        }
+
+        return types;
+    }
+
+    private static ClassLoader compilePackedBooleansBuilder(String annotation, int booleans) {
+        String[] fields = new String[booleans + 1];
+        fields[0] = "String nome;";
+        for (int i = 0; i < booleans; i++) {
+            fields[i + 1] = "boolean sensor" + i + ";";
+        }
+
+        return compileBuilder("SensoresBuilder", annotation, fields);
+    }
+
+    @Test
+    public void withersBuilder_matchesTemplate() {
+        JavaFile[] generatedFiles = generate(compilationRule, CaminhaoBuilder.class);
+
+        assertThat(generatedFiles).hasLength(2);
+        assertThat(generatedFiles[1].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.io.IOException;\n" +
+                "import java.io.Serializable;\n" +
+                "import java.lang.Appendable;\n" +
+                "import java.lang.Double;\n" +
+                "import java.lang.Object;\n" +
+                "import java.lang.Override;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.StringBuilder;\n" +
+                "\n" +
+                "public final class Caminhao implements Serializable {\n" +
+                "  private static final int TO_STRING_CAPACITY = 76;\n" +
+                "\n" +
+                "  private final String modelo;\n" +
+                "\n" +
+                "  private final double carga;\n" +
+                "\n" +
+                "  private final int flags;\n" +
+                "\n" +
+                "  private transient int cachedHashCode;\n" +
+                "\n" +
+                "  public Caminhao(String modelo, double carga, boolean bau) {\n" +
+                "    this.modelo = modelo;\n" +
+                "    this.carga = carga;\n" +
+                "    this.flags = (bau ? 0x1 : 0);\n" +
+                "  }\n" +
+                "\n" +
+                "  public String getModelo() {\n" +
+                "    return modelo;\n" +
+                "  }\n" +
+                "\n" +
+                "  public double getCarga() {\n" +
+                "    return carga;\n" +
+                "  }\n" +
+                "\n" +
+                "  public boolean isBau() {\n" +
+                "    return (this.flags & 0x1) != 0;\n" +
+                "  }\n" +
+                "\n" +
+                "  public StringBuilder appendTo(StringBuilder builder) {\n" +
+                "    builder.append(\"Caminhao {\");\n" +
+                "    builder.append(\"modelo=\").append(this.modelo).append(',');\n" +
+                "    builder.append(\"carga=\").append(this.carga).append(',');\n" +
+                "    builder.append(\"bau=\").append((this.flags & 0x1) != 0).append(',');\n" +
+                "    builder.append('}');\n" +
+                "    return builder;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Appendable appendTo(Appendable appendable) throws IOException {\n" +
+                "    if (appendable instanceof StringBuilder) {\n" +
+                "      return appendTo((StringBuilder) appendable);\n" +
+                "    }\n" +
+                "    appendable.append(\"Caminhao {\");\n" +
+                "    appendable.append(\"modelo=\").append(String.valueOf(this.modelo)).append(',');\n" +
+                "    appendable.append(\"carga=\").append(String.valueOf(this.carga)).append(',');\n" +
+                "    appendable.append(\"bau=\").append(String.valueOf((this.flags & 0x1) != 0)).append(',');\n" +
+                "    appendable.append('}');\n" +
+                "    return appendable;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public boolean equals(Object o) {\n" +
+                "    if (this == o) {\n" +
+                "      return true;\n" +
+                "    }\n" +
+                "    if (o == null || getClass() != o.getClass()) {\n" +
+                "      return false;\n" +
+                "    }\n" +
+                "    Caminhao other = (Caminhao) o;\n" +
+                "    return Double.doubleToLongBits(this.carga) == Double.doubleToLongBits(other.carga)\n" +
+                "        && this.flags == other.flags\n" +
+                "        && (this.modelo == null ? other.modelo == null : this.modelo.equals(other.modelo));\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public int hashCode() {\n" +
+                "    int result = cachedHashCode;\n" +
+                "    if (result != 0) {\n" +
+                "      return result;\n" +
+                "    }\n" +
+                "    result = 1;\n" +
+                "    result = 31 * result + (this.modelo == null ? 0 : this.modelo.hashCode());\n" +
+                "    long bits = Double.doubleToLongBits(this.carga);\n" +
+                "    result = 31 * result + (int) (bits ^ (bits >>> 32));\n" +
+                "    result = 31 * result + ((this.flags & 0x1) != 0 ? 1231 : 1237);\n" +
+                "    cachedHashCode = result;\n" +
+                "    return result;\n" +
+                "  }\n" +
+                "\n" +
+                "  public CaminhaoBuilder_ toBuilder() {\n" +
+                "    CaminhaoBuilder_ builder = new CaminhaoBuilder_();\n" +
+                "    builder.modelo = this.modelo;\n" +
+                "    builder.carga = this.carga;\n" +
+                "    builder.bau = (this.flags & 0x1) != 0;\n" +
+                "    return builder;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Caminhao withModelo(String modelo) {\n" +
+                "    if (modelo == null ? this.modelo == null : modelo.equals(this.modelo)) {\n" +
+                "      return this;\n" +
+                "    }\n" +
+                "    return new Caminhao(modelo, this.carga, (this.flags & 0x1) != 0);\n" +
+                "  }\n" +
+                "\n" +
+                "  public Caminhao withCarga(double carga) {\n" +
+                "    if (Double.doubleToLongBits(carga) == Double.doubleToLongBits(this.carga)) {\n" +
+                "      return this;\n" +
+                "    }\n" +
+                "    return new Caminhao(this.modelo, carga, (this.flags & 0x1) != 0);\n" +
+                "  }\n" +
+                "\n" +
+                "  public Caminhao withBau(boolean bau) {\n" +
+                "    if (bau == ((this.flags & 0x1) != 0)) {\n" +
+                "      return this;\n" +
+                "    }\n" +
+                "    return new Caminhao(this.modelo, this.carga, bau);\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public String toString() {\n" +
+                "    return appendTo(new StringBuilder(TO_STRING_CAPACITY)).toString();\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void immutableWithers_copyOnlyWhenTheValueChanges() throws Exception {
+        ClassLoader classLoader = compileWithersBuilder("@Builder(immutable = true, withers = true)");
+        Class<?> builderClass = classLoader.loadClass("test.CaminhaoBuilder_");
+        Class<?> caminhaoClass = classLoader.loadClass("test.Caminhao");
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setModelo", String.class).invoke(builder, "FH 540");
+        builderClass.getMethod("setCarga", double.class).invoke(builder, 40.5);
+        builderClass.getMethod("setEixos", int.class).invoke(builder, 3);
+        Object caminhao = builderClass.getMethod("build").invoke(builder);
+
+        assertThat(caminhaoClass.getMethod("withModelo", String.class).invoke(caminhao, new String("FH 540"))).isSameAs(caminhao);
+        assertThat(caminhaoClass.getMethod("withCarga", double.class).invoke(caminhao, 40.5)).isSameAs(caminhao);
+        assertThat(caminhaoClass.getMethod("withBau", boolean.class).invoke(caminhao, false)).isSameAs(caminhao);
+
+        Object changed = caminhaoClass.getMethod("withEixos", int.class).invoke(caminhao, 4);
+        assertThat(changed).isNotSameAs(caminhao);
+        assertThat(caminhaoClass.getMethod("getEixos").invoke(changed)).isEqualTo(4);
+        assertThat(caminhaoClass.getMethod("getModelo").invoke(changed)).isEqualTo("FH 540");
+        assertThat(caminhaoClass.getMethod("getCarga").invoke(changed)).isEqualTo(40.5);
+        assertThat(caminhaoClass.getMethod("getEixos").invoke(caminhao)).isEqualTo(3);
+        assertThat(caminhaoClass.getMethod("withEixos", int.class).invoke(changed, 3)).isEqualTo(caminhao);
+
+        Object copy = caminhaoClass.getMethod(BuilderGenerator.TO_BUILDER_METHOD_NAME).invoke(caminhao);
+        assertThat(copy).isInstanceOf(builderClass);
+        assertThat(builderClass.getMethod("build").invoke(copy)).isEqualTo(caminhao);
+    }
+
+    @Test
+    public void mutableWithers_leaveTheOriginalUntouched() throws Exception {
+        ClassLoader classLoader = compileWithersBuilder("@Builder(packBooleans = true, withers = true)");
+        Class<?> builderClass = classLoader.loadClass("test.CaminhaoBuilder_");
+        Class<?> caminhaoClass = classLoader.loadClass("test.Caminhao");
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setModelo", String.class).invoke(builder, "FH 540");
+        builderClass.getMethod("setBau", boolean.class).invoke(builder, true);
+        Object caminhao = builderClass.getMethod("build").invoke(builder);
+
+        Object changed = caminhaoClass.getMethod("withBau", boolean.class).invoke(caminhao, false);
+        assertThat(caminhaoClass.getMethod("isBau").invoke(changed)).isEqualTo(false);
+        assertThat(caminhaoClass.getMethod("isBau").invoke(caminhao)).isEqualTo(true);
+        assertThat(caminhaoClass.getField("modelo").get(changed)).isEqualTo("FH 540");
+
+        Object renamed = caminhaoClass.getMethod("withModelo", String.class).invoke(caminhao, "R 450");
+        assertThat(caminhaoClass.getMethod("isBau").invoke(renamed)).isEqualTo(true);
+        assertThat(caminhaoClass.getField("modelo").get(caminhao)).isEqualTo("FH 540");
+        assertThat(caminhaoClass.getMethod("withCarga", double.class).invoke(caminhao, Double.NaN)).isNotSameAs(caminhao);
+    }
+
+    @Test
+    public void immutableWithers_withTooManyFields_goThroughTheBuilder() throws Exception {
+        Class<?> builderClass = compilePackedBooleansBuilder("@Builder(immutable = true, withers = true)", 300).loadClass("test.SensoresBuilder_");
+        Object sensores = builderClass.getMethod("build").invoke(builderClass.getConstructor().newInstance());
+
+        Object changed = sensores.getClass().getMethod("withSensor299", boolean.class).invoke(sensores, true);
+
+        assertThat(sensores.getClass().getMethod("isSensor299").invoke(changed)).isEqualTo(true);
+        assertThat(sensores.getClass().getMethod("isSensor299").invoke(sensores)).isEqualTo(false);
+        assertThat(sensores.getClass().getMethod("withSensor0", boolean.class).invoke(sensores, false)).isSameAs(sensores);
+    }
+
+    private static ClassLoader compileWithersBuilder(String annotation) {
+        return compileBuilder("CaminhaoBuilder", annotation, "String modelo;", "double carga;", "int eixos;", "boolean bau;");
+    }
+
+    private static ClassLoader compileReusableBuilder() {
+        return compileBuilder("MotoBuilder", "@Builder(reusable = true, poolSize = 2)", "String cor = \"preta\";", "int cilindradas;");
+    }
+
     private String getExpectedFullBuilderClassString() {
         return "" +
                 "package br.me.patterns.annotation.processor.generator;\n" +
@@ -200,11 +1043,17 @@ public class BuilderGeneratorUnitTest {
         return "" +
                 "package br.me.patterns.annotation.processor.generator;\n" +
                 "\n" +
+                "import java.io.IOException;\n" +
                 "import java.io.Serializable;\n" +
+                "import java.lang.Appendable;\n" +
+                "import java.lang.Object;\n" +
                 "import java.lang.Override;\n" +
                 "import java.lang.String;\n" +
+                "import java.lang.StringBuilder;\n" +
                 "\n" +
                 "public class Carro implements Serializable {\n" +
+                "  private static final int TO_STRING_CAPACITY = 336;\n" +
+                "\n" +
                 "  public String cor;\n" +
                 "\n" +
                 "  public String marca;\n" +
@@ -236,27 +1085,125 @@ public class BuilderGeneratorUnitTest {
                 "  public Carro() {\n" +
                 "  }\n" +
                 "\n" +
+                "  public StringBuilder appendTo(StringBuilder builder) {\n" +
+                "    builder.append(\"Carro {\");\n" +
+                "    builder.append(\"cor=\").append(this.cor).append(',');\n" +
+                "    builder.append(\"marca=\").append(this.marca).append(',');\n" +
+                "    builder.append(\"anoFabricacao=\").append(this.anoFabricacao).append(',');\n" +
+                "    builder.append(\"modelo=\").append(this.modelo).append(',');\n" +
+                "    builder.append(\"combustivel=\").append(this.combustivel).append(',');\n" +
+                "    builder.append(\"placa=\").append(this.placa).append(',');\n" +
+                "    builder.append(\"quilometragem=\").append(this.quilometragem).append(',');\n" +
+                "    builder.append(\"arCondicionado=\").append(this.arCondicionado).append(',');\n" +
+                "    builder.append(\"direcaoEletrica=\").append(this.direcaoEletrica).append(',');\n" +
+                "    builder.append(\"direcaoHidraulica=\").append(this.direcaoHidraulica).append(',');\n" +
+                "    builder.append(\"vidrosEletricos=\").append(this.vidrosEletricos).append(',');\n" +
+                "    builder.append(\"arQuente=\").append(this.arQuente).append(',');\n" +
+                "    builder.append(\"sensorEstacionamento=\").append(this.sensorEstacionamento).append(',');\n" +
+                "    builder.append(\"rodasLigaLeve=\").append(this.rodasLigaLeve).append(',');\n" +
+                "    builder.append('}');\n" +
+                "    return builder;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Appendable appendTo(Appendable appendable) throws IOException {\n" +
+                "    if (appendable instanceof StringBuilder) {\n" +
+                "      return appendTo((StringBuilder) appendable);\n" +
+                "    }\n" +
+                "    appendable.append(\"Carro {\");\n" +
+                "    appendable.append(\"cor=\").append(String.valueOf(this.cor)).append(',');\n" +
+                "    appendable.append(\"marca=\").append(String.valueOf(this.marca)).append(',');\n" +
+                "    appendable.append(\"anoFabricacao=\").append(String.valueOf(this.anoFabricacao)).append(',');\n" +
+                "    appendable.append(\"modelo=\").append(String.valueOf(this.modelo)).append(',');\n" +
+                "    appendable.append(\"combustivel=\").append(String.valueOf(this.combustivel)).append(',');\n" +
+                "    appendable.append(\"placa=\").append(String.valueOf(this.placa)).append(',');\n" +
+                "    appendable.append(\"quilometragem=\").append(String.valueOf(this.quilometragem)).append(',');\n" +
+                "    appendable.append(\"arCondicionado=\").append(String.valueOf(this.arCondicionado)).append(',');\n" +
+                "    appendable.append(\"direcaoEletrica=\").append(String.valueOf(this.direcaoEletrica)).append(',');\n" +
+                "    appendable.append(\"direcaoHidraulica=\").append(String.valueOf(this.direcaoHidraulica)).append(',');\n" +
+                "    appendable.append(\"vidrosEletricos=\").append(String.valueOf(this.vidrosEletricos)).append(',');\n" +
+                "    appendable.append(\"arQuente=\").append(String.valueOf(this.arQuente)).append(',');\n" +
+                "    appendable.append(\"sensorEstacionamento=\").append(String.valueOf(this.sensorEstacionamento)).append(',');\n" +
+                "    appendable.append(\"rodasLigaLeve=\").append(String.valueOf(this.rodasLigaLeve)).append(',');\n" +
+                "    appendable.append('}');\n" +
+                "    return appendable;\n" +
+                "  }\n" +
+                "\n" +
                 "  @Override\n" +
-                "  public String toString() {\n" +
-                "    return \"\" + \n" +
-                "          \"Carro {\" +\n" +
-                "          \"cor=\" + cor + \",\" +\n" +
-                "          \"marca=\" + marca + \",\" +\n" +
-                "          \"anoFabricacao=\" + anoFabricacao + \",\" +\n" +
-                "          \"modelo=\" + modelo + \",\" +\n" +
-                "          \"combustivel=\" + combustivel + \",\" +\n" +
-                "          \"placa=\" + placa + \",\" +\n" +
-                "          \"quilometragem=\" + quilometragem + \",\" +\n" +
-                "          \"arCondicionado=\" + arCondicionado + \",\" +\n" +
-                "          \"direcaoEletrica=\" + direcaoEletrica + \",\" +\n" +
-                "          \"direcaoHidraulica=\" + direcaoHidraulica + \",\" +\n" +
-                "          \"vidrosEletricos=\" + vidrosEletricos + \",\" +\n" +
-                "          \"arQuente=\" + arQuente + \",\" +\n" +
-                "          \"sensorEstacionamento=\" + sensorEstacionamento + \",\" +\n" +
-                "          \"rodasLigaLeve=\" + rodasLigaLeve + \",\" +\n" +
-                "          \"}\";\n" +
+                "  public boolean equals(Object o) {\n" +
+                "    if (this == o) {\n" +
+                "      return true;\n" +
+                "    }\n" +
+                "    if (o == null || getClass() != o.getClass()) {\n" +
+                "      return false;\n" +
                 "    }\n" +
-                "  }\n";
+                "    Carro other = (Carro) o;\n" +
+                "    return this.anoFabricacao == other.anoFabricacao && this.arCondicionado == other.arCondicionado\n" +
+                "        && this.direcaoEletrica == other.direcaoEletrica\n" +
+                "        && this.direcaoHidraulica == other.direcaoHidraulica\n" +
+                "        && this.vidrosEletricos == other.vidrosEletricos && this.arQuente == other.arQuente\n" +
+                "        && this.sensorEstacionamento == other.sensorEstacionamento\n" +
+                "        && this.rodasLigaLeve == other.rodasLigaLeve\n" +
+                "        && (this.cor == null ? other.cor == null : this.cor.equals(other.cor))\n" +
+                "        && (this.marca == null ? other.marca == null : this.marca.equals(other.marca))\n" +
+                "        && (this.modelo == null ? other.modelo == null : this.modelo.equals(other.modelo))\n" +
+                "        && (this.combustivel == null ? other.combustivel == null : this.combustivel.equals(other.combustivel))\n" +
+                "        && (this.placa == null ? other.placa == null : this.placa.equals(other.placa))\n" +
+                "        && (this.quilometragem == null ? other.quilometragem == null : this.quilometragem.equals(other.quilometragem));\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public int hashCode() {\n" +
+                "    int result = 1;\n" +
+                "    result = 31 * result + (this.cor == null ? 0 : this.cor.hashCode());\n" +
+                "    result = 31 * result + (this.marca == null ? 0 : this.marca.hashCode());\n" +
+                "    result = 31 * result + this.anoFabricacao;\n" +
+                "    result = 31 * result + (this.modelo == null ? 0 : this.modelo.hashCode());\n" +
+                "    result = 31 * result + (this.combustivel == null ? 0 : this.combustivel.hashCode());\n" +
+                "    result = 31 * result + (this.placa == null ? 0 : this.placa.hashCode());\n" +
+                "    result = 31 * result + (this.quilometragem == null ? 0 : this.quilometragem.hashCode());\n" +
+                "    result = 31 * result + (this.arCondicionado ? 1231 : 1237);\n" +
+                "    result = 31 * result + (this.direcaoEletrica ? 1231 : 1237);\n" +
+                "    result = 31 * result + (this.direcaoHidraulica ? 1231 : 1237);\n" +
+                "    result = 31 * result + (this.vidrosEletricos ? 1231 : 1237);\n" +
+                "    result = 31 * result + (this.arQuente ? 1231 : 1237);\n" +
+                "    result = 31 * result + (this.sensorEstacionamento ? 1231 : 1237);\n" +
+                "    result = 31 * result + (this.rodasLigaLeve ? 1231 : 1237);\n" +
+                "    return result;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public String toString() {\n" +
+                "    return appendTo(new StringBuilder(TO_STRING_CAPACITY)).toString();\n" +
+                "  }\n" +
+                "}\n";
+    }
+
+    @Builder(reusable = true, poolSize = 4)
+    static class MotoBuilder {
+        String cor = "preta";
+        int cilindradas;
+    }
+
+    @Builder(immutable = true)
+    static class AviaoBuilder {
+        String modelo;
+        long autonomia;
+        boolean jato;
+    }
+
+    @Builder(packBooleans = true)
+    static class BicicletaBuilder {
+        String marca;
+        boolean eletrica;
+        int marchas;
+        boolean dobravel;
+    }
+
+    @Builder(immutable = true, packBooleans = true, withers = true)
+    static class CaminhaoBuilder {
+        String modelo;
+        double carga;
+        boolean bau;
     }
 
     class CarroBuilder {
@@ -275,4 +1222,4 @@ public class BuilderGeneratorUnitTest {
         boolean sensorEstacionamento;
         boolean rodasLigaLeve;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,473 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.google.testing.compile.JavaFileObjects;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.lang.model.element.TypeElement;
+
+import br.me.patterns.annotation.Flyweight;
+import br.me.patterns.annotation.processor.PatternsProcessor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+@RunWith(JUnit4.class)
+public class FlyweightGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    @Test
+    public void generatedFileContent_matchesTemplate() {
+        TypeElement element = compilationRule.getElements().getTypeElement(CorToTest.class.getCanonicalName());
+        JavaFile generatedFile = FlyweightGenerator.generate(element);
+
+        assertThat(generatedFile.toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.Integer;\n" +
+                "import java.lang.Math;\n" +
+                "import java.lang.Runtime;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.Thread;\n" +
+                "import java.lang.ref.Reference;\n" +
+                "import java.lang.ref.ReferenceQueue;\n" +
+                "import java.lang.ref.WeakReference;\n" +
+                "import java.util.concurrent.atomic.AtomicLongArray;\n" +
+                "import java.util.concurrent.atomic.AtomicReferenceArray;\n" +
+                "\n" +
+                "final class CorToTest_ {\n" +
+                "  private static final int SEGMENT_SHIFT = 28;\n" +
+                "\n" +
+                "  private static final Segment[] SEGMENTS = new Segment[1 << (32 - SEGMENT_SHIFT)];\n" +
+                "\n" +
+                "  private static final Counter HITS = new Counter();\n" +
+                "\n" +
+                "  static {\n" +
+                "    for (int i = 0; i < SEGMENTS.length; i++) {\n" +
+                "      SEGMENTS[i] = new Segment(8);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  private CorToTest_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * @return the instance holding these values, created by the first call with them.\n" +
+                "   */\n" +
+                "  public static FlyweightGeneratorUnitTest.CorToTest of(int vermelho, int verde, int azul,\n" +
+                "      String nome) {\n" +
+                "    int hash = hash(vermelho, verde, azul, nome);\n" +
+                "    return CorToTest_.SEGMENTS[hash >>> CorToTest_.SEGMENT_SHIFT].get(hash, vermelho, verde, azul, nome);\n" +
+                "  }\n" +
+                "\n" +
+                "  static int hash(int vermelho, int verde, int azul, String nome) {\n" +
+                "    int hash = 1;\n" +
+                "    hash = 31 * hash + vermelho;\n" +
+                "    hash = 31 * hash + verde;\n" +
+                "    hash = 31 * hash + azul;\n" +
+                "    hash = 31 * hash + (nome == null ? 0 : nome.hashCode());\n" +
+                "    hash *= 0x9E3779B9;\n" +
+                "    return hash ^ (hash >>> 16);\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Calls of {@code of} that returned an existing instance.\n" +
+                "   */\n" +
+                "  public static long hits() {\n" +
+                "    return HITS.get();\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Calls of {@code of} that created an instance.\n" +
+                "   */\n" +
+                "  public static long misses() {\n" +
+                "    long misses = 0;\n" +
+                "    for (Segment segment : SEGMENTS) {\n" +
+                "      misses += segment.misses;\n" +
+                "    }\n" +
+                "    return misses;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Instances in the table, including collected ones not dropped yet.\n" +
+                "   */\n" +
+                "  public static int size() {\n" +
+                "    int size = 0;\n" +
+                "    for (Segment segment : SEGMENTS) {\n" +
+                "      size += segment.count;\n" +
+                "    }\n" +
+                "    return size;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Calls of {@code of} per instance created, 1 when no value was asked for twice.\n" +
+                "   */\n" +
+                "  public static double dedupRatio() {\n" +
+                "    long misses = misses();\n" +
+                "    return misses == 0 ? 1 : (double) (hits() + misses) / misses;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Chained hash table of the instances whose hash starts with the index of the segment. Written\n" +
+                "   * under its lock, read without it.\n" +
+                "   */\n" +
+                "  private static final class Segment {\n" +
+                "    private final ReferenceQueue<FlyweightGeneratorUnitTest.CorToTest> queue = new ReferenceQueue<FlyweightGeneratorUnitTest.CorToTest>();\n" +
+                "\n" +
+                "    private volatile AtomicReferenceArray<Entry> table;\n" +
+                "\n" +
+                "    volatile int count;\n" +
+                "\n" +
+                "    volatile long misses;\n" +
+                "\n" +
+                "    Segment(int capacity) {\n" +
+                "      this.table = new AtomicReferenceArray<Entry>(capacity);\n" +
+                "    }\n" +
+                "\n" +
+                "    FlyweightGeneratorUnitTest.CorToTest get(int hash, int vermelho, int verde, int azul,\n" +
+                "        String nome) {\n" +
+                "      AtomicReferenceArray<Entry> table = this.table;\n" +
+                "      for (Entry entry = table.get(hash & (table.length() - 1)); entry != null; entry = entry.next) {\n" +
+                "        FlyweightGeneratorUnitTest.CorToTest value;\n" +
+                "        if (entry.hash == hash && (value = entry.get()) != null && value.vermelho == vermelho && value.verde == verde && value.azul == azul && (value.nome == nome || (nome != null && nome.equals(value.nome)))) {\n" +
+                "          CorToTest_.HITS.increment();\n" +
+                "          return value;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      return create(hash, vermelho, verde, azul, nome);\n" +
+                "    }\n" +
+                "\n" +
+                "    private synchronized FlyweightGeneratorUnitTest.CorToTest create(int hash, int vermelho,\n" +
+                "        int verde, int azul, String nome) {\n" +
+                "      purge();\n" +
+                "      AtomicReferenceArray<Entry> table = this.table;\n" +
+                "      int index = hash & (table.length() - 1);\n" +
+                "      Entry head = table.get(index);\n" +
+                "      for (Entry entry = head; entry != null; entry = entry.next) {\n" +
+                "        FlyweightGeneratorUnitTest.CorToTest value;\n" +
+                "        if (entry.hash == hash && (value = entry.get()) != null && value.vermelho == vermelho && value.verde == verde && value.azul == azul && (value.nome == nome || (nome != null && nome.equals(value.nome)))) {\n" +
+                "          CorToTest_.HITS.increment();\n" +
+                "          return value;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      FlyweightGeneratorUnitTest.CorToTest value = new FlyweightGeneratorUnitTest.CorToTest(vermelho, verde, azul, nome);\n" +
+                "      table.set(index, new Entry(value, hash, head, this.queue));\n" +
+                "      this.misses++;\n" +
+                "      if (++this.count > table.length() - (table.length() >>> 2)) {\n" +
+                "        resize(table);\n" +
+                "      }\n" +
+                "      return value;\n" +
+                "    }\n" +
+                "\n" +
+                "    private void purge() {\n" +
+                "      for (Reference<? extends FlyweightGeneratorUnitTest.CorToTest> cleared; (cleared = queue.poll()) != null; ) {\n" +
+                "        remove((Entry) cleared);\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Unlinks {@code cleared}, unless a resize already dropped it.\n" +
+                "     */\n" +
+                "    private void remove(Entry cleared) {\n" +
+                "      AtomicReferenceArray<Entry> table = this.table;\n" +
+                "      int index = cleared.hash & (table.length() - 1);\n" +
+                "      Entry previous = null;\n" +
+                "      for (Entry entry = table.get(index); entry != null; previous = entry, entry = entry.next) {\n" +
+                "        if (entry == cleared) {\n" +
+                "          if (previous == null) {\n" +
+                "            table.set(index, entry.next);\n" +
+                "          } else {\n" +
+                "            previous.next = entry.next;\n" +
+                "          }\n" +
+                "          count--;\n" +
+                "          return;\n" +
+                "        }\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    private void resize(AtomicReferenceArray<Entry> table) {\n" +
+                "      AtomicReferenceArray<Entry> resized = new AtomicReferenceArray<Entry>(table.length() * 2);\n" +
+                "      int live = 0;\n" +
+                "      for (int i = 0; i < table.length(); i++) {\n" +
+                "        for (Entry entry = table.get(i); entry != null; entry = entry.next) {\n" +
+                "          FlyweightGeneratorUnitTest.CorToTest value = entry.get();\n" +
+                "          if (value != null) {\n" +
+                "            int index = entry.hash & (resized.length() - 1);\n" +
+                "            resized.set(index, new Entry(value, entry.hash, resized.get(index), queue));\n" +
+                "            live++;\n" +
+                "          }\n" +
+                "        }\n" +
+                "      }\n" +
+                "      this.table = resized;\n" +
+                "      this.count = live;\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  private static final class Entry extends WeakReference<FlyweightGeneratorUnitTest.CorToTest> {\n" +
+                "    final int hash;\n" +
+                "\n" +
+                "    volatile Entry next;\n" +
+                "\n" +
+                "    Entry(FlyweightGeneratorUnitTest.CorToTest value, int hash, Entry next,\n" +
+                "        ReferenceQueue<FlyweightGeneratorUnitTest.CorToTest> queue) {\n" +
+                "      super(value, queue);\n" +
+                "      this.hash = hash;\n" +
+                "      this.next = next;\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Count added up over {@code STRIPES} stripes of threads, each in a cache line of its own.\n" +
+                "   */\n" +
+                "  private static final class Counter {\n" +
+                "    private static final int STRIDE = 8;\n" +
+                "\n" +
+                "    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);\n" +
+                "\n" +
+                "    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);\n" +
+                "\n" +
+                "    void increment() {\n" +
+                "      cells.getAndIncrement(stripeIndex() * STRIDE);\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Adds up the stripes one by one, so increments made meanwhile may be missed.\n" +
+                "     */\n" +
+                "    long get() {\n" +
+                "      long count = 0;\n" +
+                "      for (int stripe = 0; stripe < STRIPES * STRIDE; stripe += STRIDE) {\n" +
+                "        count += cells.get(stripe);\n" +
+                "      }\n" +
+                "      return count;\n" +
+                "    }\n" +
+                "\n" +
+                "    private static int stripeIndex() {\n" +
+                "      long id = Thread.currentThread().getId();\n" +
+                "      int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;\n" +
+                "      return (hash ^ (hash >>> 16)) & (STRIPES - 1);\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void segmentCapacity_holdsTheInitialCapacityUnderTheLoadFactor() {
+        assertThat(FlyweightGenerator.getSegmentCapacity(1)).isEqualTo(2);
+        assertThat(FlyweightGenerator.getSegmentCapacity(16)).isEqualTo(2);
+        assertThat(FlyweightGenerator.getSegmentCapacity(64)).isEqualTo(8);
+        assertThat(FlyweightGenerator.getSegmentCapacity(256)).isEqualTo(32);
+        assertThat(FlyweightGenerator.getSegmentCapacity(1_000_000)).isEqualTo(131_072);
+    }
+
+    @Test
+    public void equalValues_shareOneInstance() throws Exception {
+        Class<?> flyweightClass = compileFlyweight("@Flyweight");
+        Method of = flyweightClass.getMethod(FlyweightGenerator.OF_METHOD_NAME, int.class, double.class, String.class);
+
+        Object metro = of.invoke(null, 1, 0.5, "m");
+        assertThat(of.invoke(null, 1, 0.5, new String("m"))).isSameAs(metro);
+        assertThat(of.invoke(null, 1, 0.5, null)).isNotSameAs(metro);
+        assertThat(of.invoke(null, 1, 0.5, null)).isSameAs(of.invoke(null, 1, 0.5, null));
+        assertThat(of.invoke(null, 1, Double.NaN, "m")).isSameAs(of.invoke(null, 1, Double.NaN, "m"));
+        assertThat(of.invoke(null, 1, -0.0, "m")).isNotSameAs(of.invoke(null, 1, 0.0, "m"));
+        assertThat(of.invoke(null, 2, 0.5, "m")).isNotSameAs(metro);
+        assertThat(metro.toString()).isEqualTo("1:0.5:m");
+
+        assertThat(flyweightClass.getMethod("misses").invoke(null)).isEqualTo(6L);
+        assertThat(flyweightClass.getMethod("hits").invoke(null)).isEqualTo(4L);
+        assertThat(flyweightClass.getMethod("size").invoke(null)).isEqualTo(6);
+        assertThat(flyweightClass.getMethod("dedupRatio").invoke(null)).isEqualTo(10.0 / 6);
+    }
+
+    @Test
+    public void growingTable_keepsEveryInstanceCanonical() throws Exception {
+        Class<?> flyweightClass = compileFlyweight("@Flyweight(initialCapacity = 16)");
+        Method of = flyweightClass.getMethod(FlyweightGenerator.OF_METHOD_NAME, int.class, double.class, String.class);
+
+        List<Object> instances = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            instances.add(of.invoke(null, i, i / 2.0, "m"));
+        }
+
+        for (int i = 0; i < 5_000; i++) {
+            assertThat(of.invoke(null, i, i / 2.0, "m")).isSameAs(instances.get(i));
+        }
+
+        assertThat(flyweightClass.getMethod("misses").invoke(null)).isEqualTo(5_000L);
+        assertThat(flyweightClass.getMethod("size").invoke(null)).isEqualTo(5_000);
+    }
+
+    @Test
+    public void unreferencedInstances_areDroppedOnLaterMisses() throws Exception {
+        Class<?> flyweightClass = compileFlyweight("@Flyweight");
+        Method of = flyweightClass.getMethod(FlyweightGenerator.OF_METHOD_NAME, int.class, double.class, String.class);
+        Method size = flyweightClass.getMethod("size");
+
+        Object kept = of.invoke(null, -1, 0, "kept");
+        List<Object> dropped = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            dropped.add(of.invoke(null, i, 0, "dropped"));
+        }
+        assertThat(size.invoke(null)).isEqualTo(10_001);
+        dropped.clear();
+
+        for (int i = 0; i < 50 && (Integer) size.invoke(null) > 1_000; i++) {
+            System.gc();
+            for (int j = 0; j < 64; j++) {
+                of.invoke(null, j, 1, "probe");
+            }
+        }
+
+        assertThat((Integer) size.invoke(null)).isLessThan(1_000);
+        assertThat(of.invoke(null, -1, 0, "kept")).isSameAs(kept);
+    }
+
+    @Test
+    public void concurrentCalls_createOneInstancePerValue() throws Exception {
+        Class<?> flyweightClass = compileFlyweight("@Flyweight(initialCapacity = 16)");
+        Method of = flyweightClass.getMethod(FlyweightGenerator.OF_METHOD_NAME, int.class, double.class, String.class);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Object[]> results = new ArrayList<>();
+
+        try {
+            List<Future<Object[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                futures.add(executor.submit((Callable<Object[]>) () -> {
+                    Object[] instances = new Object[500];
+                    for (int i = 0; i < 20_000; i++) {
+                        int value = (i * 31 + seed) % 500;
+                        Object instance = of.invoke(null, value, 1.5, "m");
+                        if (instances[value] == null) {
+                            instances[value] = instance;
+                        }
+                        assertThat(instance).isSameAs(instances[value]);
+                    }
+                    return instances;
+                }));
+            }
+
+            for (Future<Object[]> future : futures) {
+                results.add(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (Object[] instances : results) {
+            for (int value = 0; value < 500; value++) {
+                assertThat(instances[value]).isSameAs(results.get(0)[value]);
+            }
+        }
+
+        assertThat(flyweightClass.getMethod("misses").invoke(null)).isEqualTo(500L);
+        assertThat(flyweightClass.getMethod("hits").invoke(null)).isEqualTo(160_000L - 500);
+        assertThat(flyweightClass.getMethod("size").invoke(null)).isEqualTo(500);
+    }
+
+    @Test
+    public void invalidFlyweights_failTheCompilation() {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(
+                JavaFileObjects.forSourceLines("test.Mutavel",
+                        "package test;",
+                        "",
+                        "import br.me.patterns.annotation.Flyweight;",
+                        "",
+                        "@Flyweight(initialCapacity = 0)",
+                        "public class Mutavel {",
+                        "    int x;",
+                        "    private final int y;",
+                        "    final int[] z;",
+                        "    Mutavel(int x, int y, int[] z) { this.x = x; this.y = y; this.z = z; }",
+                        "}"),
+                JavaFileObjects.forSourceLines("test.SemConstrutor",
+                        "package test;",
+                        "",
+                        "@br.me.patterns.annotation.Flyweight",
+                        "public abstract class SemConstrutor {",
+                        "    final String nome;",
+                        "    final int ordem;",
+                        "    SemConstrutor(int ordem, String nome) { this.nome = nome; this.ordem = ordem; }",
+                        "}"),
+                JavaFileObjects.forSourceLines("test.Enorme",
+                        "package test;",
+                        "",
+                        "@br.me.patterns.annotation.Flyweight(initialCapacity = (1 << 30) + 1)",
+                        "public class Enorme {",
+                        "    final int x;",
+                        "    Enorme(int x) { this.x = x; }",
+                        "}"));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Capacidade invalida em @Flyweight: 0 test.Mutavel");
+        assertThat(compilation).hadErrorContaining("Capacidade invalida em @Flyweight: 1073741825 test.Enorme");
+        assertThat(compilation).hadErrorContaining("Campo de @Flyweight precisa ser final e nao private: x");
+        assertThat(compilation).hadErrorContaining("Campo de @Flyweight precisa ser final e nao private: y");
+        assertThat(compilation).hadErrorContaining("Campo array nao suportado por @Flyweight: int[] z");
+        assertThat(compilation).hadErrorContaining("@Flyweight so pode ser usado em classes concretas, nao genericas e nao internas: test.SemConstrutor");
+        assertThat(compilation).hadErrorContaining("@Flyweight precisa de um construtor nao privado com os campos na ordem de declaracao: test.SemConstrutor");
+    }
+
+    /**
+     * The fields are named like the locals of the generated code, which have to be renamed.
+     */
+    private static Class<?> compileFlyweight(String annotation) throws ClassNotFoundException {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test.Medida",
+                "package test;",
+                "",
+                "import br.me.patterns.annotation.Flyweight;",
+                "",
+                annotation,
+                "public class Medida {",
+                "    final int index;",
+                "    final double value;",
+                "    final String entry;",
+                "",
+                "    Medida(int index, double value, String entry) {",
+                "        this.index = index;",
+                "        this.value = value;",
+                "        this.entry = entry;",
+                "    }",
+                "",
+                "    @Override",
+                "    public String toString() { return index + \":\" + value + \":\" + entry; }",
+                "}"));
+
+        assertThat(compilation).succeeded();
+        return new GeneratedClassLoader(compilation).loadClass("test.Medida" + FlyweightGenerator.CREATED_CLASS_SUFFIX);
+    }
+
+    @Flyweight(initialCapacity = 64)
+    static class CorToTest {
+        static final CorToTest PRETO = new CorToTest(0, 0, 0, "preto");
+
+        final int vermelho;
+        final int verde;
+        final int azul;
+        final String nome;
+
+        CorToTest(int vermelho, int verde, int azul, String nome) {
+            this.vermelho = vermelho;
+            this.verde = verde;
+            this.azul = azul;
+            this.nome = nome;
+        }
+    }
+}
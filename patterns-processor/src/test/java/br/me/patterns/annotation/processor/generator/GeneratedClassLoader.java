@@ -0,0 +1,40 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.common.io.ByteStreams;
+import com.google.testing.compile.Compilation;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.tools.JavaFileObject;
+
+/**
+ * Loads the classes of a successful {@link Compilation}, so tests can run the generated code.
+ */
+class GeneratedClassLoader extends ClassLoader {
+
+    private final Compilation compilation;
+
+    GeneratedClassLoader(Compilation compilation) {
+        super(GeneratedClassLoader.class.getClassLoader());
+        this.compilation = compilation;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = "/" + name.replace('.', '/') + JavaFileObject.Kind.CLASS.extension;
+
+        for (JavaFileObject file : compilation.generatedFiles()) {
+            if (file.getKind() == JavaFileObject.Kind.CLASS && file.toUri().getPath().endsWith(path)) {
+                try (InputStream input = file.openInputStream()) {
+                    byte[] bytes = ByteStreams.toByteArray(input);
+                    return defineClass(name, bytes, 0, bytes.length);
+                } catch (IOException e) {
+                    throw new ClassNotFoundException(name, e);
+                }
+            }
+        }
+
+        throw new ClassNotFoundException(name);
+    }
+}
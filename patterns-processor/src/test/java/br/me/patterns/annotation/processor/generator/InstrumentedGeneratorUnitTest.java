@@ -0,0 +1,432 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.google.testing.compile.JavaFileObjects;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.lang.model.element.TypeElement;
+
+import br.me.patterns.annotation.Instrumented;
+import br.me.patterns.annotation.processor.PatternsProcessor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class InstrumentedGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    private GeneratedClassLoader loader;
+
+    @Test
+    public void generatedFileContent_matchesTemplate() {
+        TypeElement element = compilationRule.getElements().getTypeElement(CalculadoraToTest.class.getCanonicalName());
+        JavaFile generatedFile = InstrumentedGenerator.generate(element);
+
+        assertThat(generatedFile.toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.io.IOException;\n" +
+                "import java.lang.Integer;\n" +
+                "import java.lang.Long;\n" +
+                "import java.lang.Math;\n" +
+                "import java.lang.Override;\n" +
+                "import java.lang.Runtime;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.System;\n" +
+                "import java.lang.Thread;\n" +
+                "import java.util.Collections;\n" +
+                "import java.util.LinkedHashMap;\n" +
+                "import java.util.List;\n" +
+                "import java.util.Map;\n" +
+                "import java.util.concurrent.atomic.AtomicLongArray;\n" +
+                "\n" +
+                "public class CalculadoraToTestInstrumented_ extends InstrumentedGeneratorUnitTest.CalculadoraToTest {\n" +
+                "  /**\n" +
+                "   * Whether calls are recorded, read once. When false, the overrides only call {@code super}.\n" +
+                "   */\n" +
+                "  public static final boolean ENABLED = ! \"false\".equals(System.getProperty(\"patterns.instrumented\"));\n" +
+                "\n" +
+                "  private static final Metrics SUM_METRICS = new Metrics(\"sum(int, int)\");\n" +
+                "\n" +
+                "  private static final Metrics SUM2_METRICS = new Metrics(\"sum(double, double)\");\n" +
+                "\n" +
+                "  private static final Metrics LOG_RESULT_METRICS = new Metrics(\"logResult(List<String>)\");\n" +
+                "\n" +
+                "  CalculadoraToTestInstrumented_() {\n" +
+                "    super();\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public int sum(int arg0, int arg1) {\n" +
+                "    if (! ENABLED) {\n" +
+                "      return super.sum(arg0, arg1);\n" +
+                "    }\n" +
+                "    long start = System.nanoTime();\n" +
+                "    try {\n" +
+                "      return super.sum(arg0, arg1);\n" +
+                "    } finally {\n" +
+                "      SUM_METRICS.record(System.nanoTime() - start);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public double sum(double arg0, double arg1) {\n" +
+                "    if (! ENABLED) {\n" +
+                "      return super.sum(arg0, arg1);\n" +
+                "    }\n" +
+                "    long start = System.nanoTime();\n" +
+                "    try {\n" +
+                "      return super.sum(arg0, arg1);\n" +
+                "    } finally {\n" +
+                "      SUM2_METRICS.record(System.nanoTime() - start);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public void logResult(List<String> arg0) throws IOException {\n" +
+                "    if (! ENABLED) {\n" +
+                "      super.logResult(arg0);\n" +
+                "      return;\n" +
+                "    }\n" +
+                "    long start = System.nanoTime();\n" +
+                "    try {\n" +
+                "      super.logResult(arg0);\n" +
+                "    } finally {\n" +
+                "      LOG_RESULT_METRICS.record(System.nanoTime() - start);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * @return the calls and latency of every instrumented method until now, by signature, in declaration\n" +
+                "   * order.\n" +
+                "   */\n" +
+                "  public static Map<String, Metrics.Snapshot> metrics() {\n" +
+                "    Map<String, Metrics.Snapshot> metrics = new LinkedHashMap<String, Metrics.Snapshot>();\n" +
+                "    metrics.put(SUM_METRICS.name, SUM_METRICS.snapshot());\n" +
+                "    metrics.put(SUM2_METRICS.name, SUM2_METRICS.snapshot());\n" +
+                "    metrics.put(LOG_RESULT_METRICS.name, LOG_RESULT_METRICS.snapshot());\n" +
+                "    return Collections.unmodifiableMap(metrics);\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Calls and latency of one method, added up over {@code STRIPES} stripes of threads. A stripe is\n" +
+                "   * the total time followed by the calls in each bucket.\n" +
+                "   */\n" +
+                "  public static final class Metrics {\n" +
+                "    private static final int BUCKETS = 40;\n" +
+                "\n" +
+                "    private static final int STRIDE = 1 + BUCKETS + 8;\n" +
+                "\n" +
+                "    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);\n" +
+                "\n" +
+                "    final String name;\n" +
+                "\n" +
+                "    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);\n" +
+                "\n" +
+                "    Metrics(String name) {\n" +
+                "      this.name = name;\n" +
+                "    }\n" +
+                "\n" +
+                "    void record(long nanos) {\n" +
+                "      int stripe = stripeIndex() * STRIDE;\n" +
+                "      cells.getAndAdd(stripe, nanos);\n" +
+                "      cells.getAndIncrement(stripe + 1 + Math.min(64 - Long.numberOfLeadingZeros(nanos), BUCKETS - 1));\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Adds up the stripes cell by cell, so calls recorded meanwhile may be counted in the total time\n" +
+                "     * and not in the buckets, or the other way around.\n" +
+                "     */\n" +
+                "    public Snapshot snapshot() {\n" +
+                "      long totalNanos = 0;\n" +
+                "      long[] buckets = new long[BUCKETS];\n" +
+                "      for (int stripe = 0; stripe < STRIPES * STRIDE; stripe += STRIDE) {\n" +
+                "        totalNanos += cells.get(stripe);\n" +
+                "        for (int i = 0; i < BUCKETS; i++) {\n" +
+                "          buckets[i] += cells.get(stripe + 1 + i);\n" +
+                "        }\n" +
+                "      }\n" +
+                "      return new Snapshot(name, totalNanos, buckets);\n" +
+                "    }\n" +
+                "\n" +
+                "    private static int stripeIndex() {\n" +
+                "      long id = Thread.currentThread().getId();\n" +
+                "      int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;\n" +
+                "      return (hash ^ (hash >>> 16)) & (STRIPES - 1);\n" +
+                "    }\n" +
+                "\n" +
+                "    public static final class Snapshot {\n" +
+                "      public final String name;\n" +
+                "\n" +
+                "      public final long count;\n" +
+                "\n" +
+                "      public final long totalNanos;\n" +
+                "\n" +
+                "      private final long[] buckets;\n" +
+                "\n" +
+                "      Snapshot(String name, long totalNanos, long[] buckets) {\n" +
+                "        long count = 0;\n" +
+                "        for (long bucket : buckets) {\n" +
+                "          count += bucket;\n" +
+                "        }\n" +
+                "        this.name = name;\n" +
+                "        this.count = count;\n" +
+                "        this.totalNanos = totalNanos;\n" +
+                "        this.buckets = buckets;\n" +
+                "      }\n" +
+                "\n" +
+                "      public double meanNanos() {\n" +
+                "        return count == 0 ? 0 : (double) totalNanos / count;\n" +
+                "      }\n" +
+                "\n" +
+                "      /**\n" +
+                "       * @return the calls that took no time for bucket 0, and from {@code 2^(bucket-1)} up to\n" +
+                "       * {@code 2^bucket} nanoseconds for the others. The last bucket counts every longer call too.\n" +
+                "       */\n" +
+                "      public long bucketCount(int bucket) {\n" +
+                "        return buckets[bucket];\n" +
+                "      }\n" +
+                "\n" +
+                "      public int buckets() {\n" +
+                "        return buckets.length;\n" +
+                "      }\n" +
+                "\n" +
+                "      /**\n" +
+                "       * @return the upper bound of the bucket holding the given percentile, between 0 and 100, so\n" +
+                "       * the real latency is at most this and more than half of it.\n" +
+                "       */\n" +
+                "      public long percentileNanos(double percentile) {\n" +
+                "        long rank = (long) Math.ceil(count * percentile / 100);\n" +
+                "        long calls = 0;\n" +
+                "        for (int i = 0; i < buckets.length; i++) {\n" +
+                "          calls += buckets[i];\n" +
+                "          if (calls >= rank && calls > 0) {\n" +
+                "            return i == 0 ? 0 : 1L << i;\n" +
+                "          }\n" +
+                "        }\n" +
+                "        return 0;\n" +
+                "      }\n" +
+                "\n" +
+                "      @Override\n" +
+                "      public String toString() {\n" +
+                "        return name + \": \" + count + \" calls, mean \" + (long) meanNanos() + \" ns, p50 <= \" + percentileNanos(50) + \" ns, p99 <= \" + percentileNanos(99) + \" ns\";\n" +
+                "      }\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void names_tellOverloadsApart() {
+        assertThat(InstrumentedGenerator.getConstantName("sum")).isEqualTo("SUM");
+        assertThat(InstrumentedGenerator.getConstantName("logResult2")).isEqualTo("LOG_RESULT2");
+    }
+
+    @Test
+    public void calls_areCountedAndTimed() throws Exception {
+        Class<?> instrumentedClass = compileInstrumented("@Instrumented", "");
+        Object servico = getInstance();
+        assertThat(servico.getClass()).isSameAs(instrumentedClass);
+
+        Method dobro = instrumentedClass.getMethod("dobro", int.class);
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(dobro.invoke(servico, i)).isEqualTo(2 * i);
+        }
+        instrumentedClass.getMethod("espera", long.class).invoke(servico, 5L);
+        try {
+            instrumentedClass.getMethod("falha").invoke(servico);
+            fail("Expected IOException");
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IOException.class);
+        }
+
+        Map<String, ?> metrics = getMetrics(instrumentedClass);
+        assertThat(metrics.keySet()).containsExactly("dobro(int)", "espera(long)", "falha()").inOrder();
+        assertThat(getCount(metrics.get("dobro(int)"))).isEqualTo(1_000L);
+        assertThat(getCount(metrics.get("falha()"))).isEqualTo(1L);
+
+        Object espera = metrics.get("espera(long)");
+        assertThat(getCount(espera)).isEqualTo(1L);
+        assertThat((Long) espera.getClass().getField("totalNanos").get(espera)).isAtLeast(5_000_000L);
+        assertThat((Long) espera.getClass().getMethod("percentileNanos", double.class).invoke(espera, 50.0)).isAtLeast(5_000_000L);
+        assertThat(espera.toString()).startsWith("espera(long): 1 calls, mean ");
+    }
+
+    @Test
+    public void overloads_skipTheNamesOfOtherMethods() throws Exception {
+        Class<?> instrumentedClass = compileInstrumented("@Instrumented",
+                "    public long dobro(long x) { return 2 * x; }\n"
+                        + "    public int dobro2(int x) { return 4 * x; }\n"
+                        + "    public int Dobro3(int x) { return 6 * x; }");
+        Object servico = getInstance();
+
+        instrumentedClass.getMethod("dobro", long.class).invoke(servico, 1L);
+        instrumentedClass.getMethod("dobro2", int.class).invoke(servico, 1);
+        instrumentedClass.getMethod("dobro2", int.class).invoke(servico, 1);
+
+        Map<String, ?> metrics = getMetrics(instrumentedClass);
+        assertThat(getCount(metrics.get("dobro(long)"))).isEqualTo(1L);
+        assertThat(getCount(metrics.get("dobro2(int)"))).isEqualTo(2L);
+        assertThat(getCount(metrics.get("Dobro3(int)"))).isEqualTo(0L);
+        assertThat(instrumentedClass.getDeclaredField("DOBRO4" + InstrumentedGenerator.METRICS_FIELD_SUFFIX)).isNotNull();
+    }
+
+    @Test
+    public void disabledInstrumentation_onlyCallsSuper() throws Exception {
+        Class<?> instrumentedClass = compileInstrumented("@Instrumented(enabled = false)", "");
+        Object servico = getInstance();
+
+        assertThat(instrumentedClass.getField(InstrumentedGenerator.ENABLED_FIELD_NAME).get(null)).isEqualTo(false);
+        assertThat(instrumentedClass.getMethod("dobro", int.class).invoke(servico, 21)).isEqualTo(42);
+        assertThat(getCount(getMetrics(instrumentedClass).get("dobro(int)"))).isEqualTo(0L);
+    }
+
+    @Test
+    public void memoizedMethods_areTimedThroughTheCache() throws Exception {
+        Class<?> instrumentedClass = compileInstrumented("@Instrumented",
+                "    int calculos;\n"
+                        + "    @br.me.patterns.annotation.Memoize\n"
+                        + "    public long quadrado(long x) { calculos++; return x * x; }");
+        Object servico = getInstance();
+
+        assertThat(instrumentedClass.getSuperclass().getName()).isEqualTo("test.Servico" + MemoizeGenerator.CREATED_CLASS_SUFFIX);
+        Method quadrado = instrumentedClass.getMethod("quadrado", long.class);
+        assertThat(quadrado.invoke(servico, 12L)).isEqualTo(144L);
+        assertThat(quadrado.invoke(servico, 12L)).isEqualTo(144L);
+
+        Field calculos = instrumentedClass.getSuperclass().getSuperclass().getDeclaredField("calculos");
+        calculos.setAccessible(true);
+        assertThat(calculos.getInt(servico)).isEqualTo(1);
+        assertThat(getCount(getMetrics(instrumentedClass).get("quadrado(long)"))).isEqualTo(2L);
+    }
+
+    @Test
+    public void concurrentCalls_areAllCounted() throws Exception {
+        Class<?> instrumentedClass = compileInstrumented("@Instrumented", "");
+        Object servico = getInstance();
+        Method dobro = instrumentedClass.getMethod("dobro", int.class);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        dobro.invoke(servico, i);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(getCount(getMetrics(instrumentedClass).get("dobro(int)"))).isEqualTo(80_000L);
+    }
+
+    @Test
+    public void invalidTypes_failTheCompilation() {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test.Final",
+                "package test;",
+                "",
+                "@br.me.patterns.annotation.Instrumented",
+                "public final class Final {",
+                "    public int dobro(int x) { return 2 * x; }",
+                "}"));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("@Instrumented so pode ser usado em classes nao finais, nao genericas e com construtor nao privado: test.Final");
+    }
+
+    private Class<?> compileInstrumented(String annotation, String members) throws ClassNotFoundException {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test.Servico",
+                "package test;",
+                "",
+                "import java.io.IOException;",
+                "import br.me.patterns.annotation.Instrumented;",
+                "",
+                "@br.me.patterns.annotation.Singleton",
+                annotation,
+                "public class Servico {",
+                "    public int dobro(int start) { return 2 * start; }",
+                "    public void espera(long millis) throws InterruptedException { Thread.sleep(millis); }",
+                "    public void falha() throws IOException { throw new IOException(); }",
+                "    private int privado() { return 0; }",
+                members,
+                "}"));
+
+        assertThat(compilation).succeeded();
+        loader = new GeneratedClassLoader(compilation);
+        return loader.loadClass("test.Servico" + InstrumentedGenerator.CREATED_CLASS_SUFFIX);
+    }
+
+    private Object getInstance() throws Exception {
+        return loader.loadClass("test.Servico" + SingletonGenerator.CREATED_CLASS_SUFFIX).getMethod("getInstance").invoke(null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, ?> getMetrics(Class<?> instrumentedClass) throws ReflectiveOperationException {
+        return (Map<String, ?>) instrumentedClass.getMethod(InstrumentedGenerator.METRICS_METHOD_NAME).invoke(null);
+    }
+
+    private static long getCount(Object snapshot) throws ReflectiveOperationException {
+        return (Long) snapshot.getClass().getField("count").get(snapshot);
+    }
+
+    @Instrumented
+    static class CalculadoraToTest {
+
+        CalculadoraToTest() {
+        }
+
+        public int sum(int a, int b) {
+            return a + b;
+        }
+
+        public double sum(double a, double b) {
+            return a + b;
+        }
+
+        public void logResult(List<String> results) throws IOException {
+        }
+
+        int packagePrivate() {
+            return 0;
+        }
+
+        public static int staticMethod() {
+            return 0;
+        }
+
+        public final int finalMethod() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import br.me.patterns.annotation.Builder;
+import br.me.patterns.annotation.Interned;
+
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compile;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compileBuilder;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.generate;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+
+@RunWith(JUnit4.class)
+public class InternerGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    @Test
+    public void internedBuilder_matchesTemplate() {
+        JavaFile[] generatedFiles = generate(compilationRule, TaxiBuilder.class);
+
+        assertThat(generatedFiles).hasLength(2);
+        assertThat(generatedFiles[0].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.Integer;\n" +
+                "import java.lang.Math;\n" +
+                "import java.lang.Runtime;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.Thread;\n" +
+                "import java.util.concurrent.atomic.AtomicLongArray;\n" +
+                "import java.util.concurrent.atomic.AtomicReferenceArray;\n" +
+                "\n" +
+                "public class TaxiBuilder_ extends InternerGeneratorUnitTest.TaxiBuilder {\n" +
+                "  public static final Interner COR_INTERNER = new Interner(64);\n" +
+                "\n" +
+                "  public TaxiBuilder_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public TaxiBuilder_ setCor(String cor) {\n" +
+                "    super.cor=TaxiBuilder_.COR_INTERNER.intern(cor);\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public TaxiBuilder_ setPlaca(String placa) {\n" +
+                "    super.placa=placa;\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Taxi build() {\n" +
+                "    Taxi taxi = new Taxi();\n" +
+                "    taxi.cor = cor;\n" +
+                "    taxi.placa = placa;\n" +
+                "    return taxi;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Bounded table of canonical strings; {@code size} is a power of two.\n" +
+                "   */\n" +
+                "  public static final class Interner {\n" +
+                "    private final AtomicReferenceArray<String> table;\n" +
+                "\n" +
+                "    private final int mask;\n" +
+                "\n" +
+                "    private final Counter hits = new Counter();\n" +
+                "\n" +
+                "    private final Counter misses = new Counter();\n" +
+                "\n" +
+                "    Interner(int size) {\n" +
+                "      this.table = new AtomicReferenceArray<String>(size);\n" +
+                "      this.mask = size - 1;\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * @return an instance equal to {@code value} seen before, or {@code value}.\n" +
+                "     */\n" +
+                "    public String intern(String value) {\n" +
+                "      if (value == null) {\n" +
+                "        return null;\n" +
+                "      }\n" +
+                "      int hash = value.hashCode();\n" +
+                "      int index = (hash ^ (hash >>> 16)) & mask;\n" +
+                "      String canonical = table.get(index);\n" +
+                "      if (canonical != null && canonical.equals(value)) {\n" +
+                "        hits.increment();\n" +
+                "        return canonical;\n" +
+                "      }\n" +
+                "      table.lazySet(index, value);\n" +
+                "      misses.increment();\n" +
+                "      return value;\n" +
+                "    }\n" +
+                "\n" +
+                "    public long hits() {\n" +
+                "      return hits.get();\n" +
+                "    }\n" +
+                "\n" +
+                "    public long misses() {\n" +
+                "      return misses.get();\n" +
+                "    }\n" +
+                "\n" +
+                "    public int size() {\n" +
+                "      return table.length();\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Count added up over {@code STRIPES} stripes of threads, each in a cache line of its own.\n" +
+                "     */\n" +
+                "    private static final class Counter {\n" +
+                "      private static final int STRIDE = 8;\n" +
+                "\n" +
+                "      private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);\n" +
+                "\n" +
+                "      private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);\n" +
+                "\n" +
+                "      void increment() {\n" +
+                "        cells.getAndIncrement(stripeIndex() * STRIDE);\n" +
+                "      }\n" +
+                "\n" +
+                "      /**\n" +
+                "       * Adds up the stripes one by one, so increments made meanwhile may be missed.\n" +
+                "       */\n" +
+                "      long get() {\n" +
+                "        long count = 0;\n" +
+                "        for (int stripe = 0; stripe < STRIPES * STRIDE; stripe += STRIDE) {\n" +
+                "          count += cells.get(stripe);\n" +
+                "        }\n" +
+                "        return count;\n" +
+                "      }\n" +
+                "\n" +
+                "      private static int stripeIndex() {\n" +
+                "        long id = Thread.currentThread().getId();\n" +
+                "        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;\n" +
+                "        return (hash ^ (hash >>> 16)) & (STRIPES - 1);\n" +
+                "      }\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void interned_sharesEqualValuesAndCountsHits() throws Exception {
+        ClassLoader classLoader = compileBuilder("TaxiBuilder", "@Builder", "@Interned(capacity = 64)", "String cor;", "String placa;");
+        Class<?> builderClass = classLoader.loadClass("test.TaxiBuilder_");
+        Object interner = builderClass.getField("COR_INTERNER").get(null);
+        Class<?> internerClass = interner.getClass();
+        Method setCor = builderClass.getMethod("setCor", String.class);
+        Method setPlaca = builderClass.getMethod("setPlaca", String.class);
+        Method build = builderClass.getMethod("build");
+
+        Object builder = builderClass.getConstructor().newInstance();
+        Object first = build.invoke(setPlaca.invoke(setCor.invoke(builder, new String("amarelo")), new String("ABC1234")));
+        Object second = build.invoke(setPlaca.invoke(setCor.invoke(builder, new String("amarelo")), new String("ABC1234")));
+        setCor.invoke(builder, (Object) null);
+
+        assertThat(first.getClass().getField("cor").get(first)).isSameAs(second.getClass().getField("cor").get(second));
+        assertThat(first.getClass().getField("placa").get(first)).isNotSameAs(second.getClass().getField("placa").get(second));
+        assertThat(internerClass.getMethod("hits").invoke(interner)).isEqualTo(1L);
+        assertThat(internerClass.getMethod("misses").invoke(interner)).isEqualTo(1L);
+        assertThat(internerClass.getMethod("size").invoke(interner)).isEqualTo(64);
+    }
+
+    @Test
+    public void interned_replacesTheValueOfAFullSlot() throws Exception {
+        ClassLoader classLoader = compileBuilder("TaxiBuilder", "@Builder", "@Interned(capacity = 1)", "String cor;", "String placa;");
+        Class<?> builderClass = classLoader.loadClass("test.TaxiBuilder_");
+        Object interner = builderClass.getField("COR_INTERNER").get(null);
+        Method intern = interner.getClass().getMethod(InternerGenerator.INTERN_METHOD_NAME, String.class);
+        String amarelo = new String("amarelo");
+
+        assertThat(intern.invoke(interner, amarelo)).isSameAs(amarelo);
+        assertThat(intern.invoke(interner, new String("amarelo"))).isSameAs(amarelo);
+        assertThat(intern.invoke(interner, "branco")).isEqualTo("branco");
+        assertThat(intern.invoke(interner, new String("amarelo"))).isNotSameAs(amarelo);
+        assertThat(interner.getClass().getMethod("misses").invoke(interner)).isEqualTo(3L);
+    }
+
+    @Test
+    public void interned_concurrentCalls_areAllCounted() throws Exception {
+        ClassLoader classLoader = compileBuilder("TaxiBuilder", "@Builder", "@Interned(capacity = 64)", "String cor;", "String placa;");
+        Class<?> builderClass = classLoader.loadClass("test.TaxiBuilder_");
+        Object interner = builderClass.getField("COR_INTERNER").get(null);
+        Method intern = interner.getClass().getMethod(InternerGenerator.INTERN_METHOD_NAME, String.class);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        intern.invoke(interner, new String("amarelo"));
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long hits = (Long) interner.getClass().getMethod("hits").invoke(interner);
+        long misses = (Long) interner.getClass().getMethod("misses").invoke(interner);
+        assertThat(hits + misses).isEqualTo(80_000L);
+    }
+
+    @Test
+    public void interned_decodedValuesAreShared() throws Exception {
+        ClassLoader classLoader = compileBuilder("TaxiBuilder", "@Builder(codec = true)", "@Interned", "String cor;", "String placa;");
+        Class<?> builderClass = classLoader.loadClass("test.TaxiBuilder_");
+        Class<?> taxiClass = classLoader.loadClass("test.Taxi");
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setCor", String.class).invoke(builder, "amarelo");
+        Object taxi = builderClass.getMethod("build").invoke(builder);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        taxiClass.getMethod(BinaryCodecGenerator.WRITE_TO_METHOD_NAME, ByteBuffer.class).invoke(taxi, buffer);
+        buffer.flip();
+
+        Object decoded = taxiClass.getMethod(BinaryCodecGenerator.READ_FROM_METHOD_NAME, ByteBuffer.class).invoke(null, buffer);
+
+        assertThat(taxiClass.getField("cor").get(decoded)).isSameAs(taxiClass.getField("cor").get(taxi));
+    }
+
+    @Test
+    public void invalidInternedFields_failTheCompilation() {
+        Compilation compilation = compile("ContadorBuilder", "@Builder", "@Interned", "Integer total;", "@Interned(capacity = (1 << 30) + 1)", "String nome;");
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("@Interned so pode ser usado em campos String: java.lang.Integer total");
+        assertThat(compilation).hadErrorContaining("Capacidade invalida em @Interned: 1073741825 nome");
+    }
+
+    @Builder
+    static class TaxiBuilder {
+        @Interned(capacity = 50)
+        String cor;
+        String placa;
+    }
+}
@@ -0,0 +1,727 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import br.me.patterns.annotation.Builder;
+
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.TODOS_FIELDS;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compile;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compileBuilder;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.generate;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class JsonGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    @Test
+    public void jsonBuilder_matchesTemplate() {
+        JavaFile[] generatedFiles = generate(compilationRule, MetroBuilder.class);
+
+        assertThat(generatedFiles).hasLength(3);
+        assertThat(generatedFiles[2].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.io.IOException;\n" +
+                "import java.io.Reader;\n" +
+                "import java.lang.Appendable;\n" +
+                "import java.lang.CharSequence;\n" +
+                "import java.lang.Double;\n" +
+                "import java.lang.IllegalArgumentException;\n" +
+                "import java.lang.Integer;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.StringBuilder;\n" +
+                "\n" +
+                "public final class MetroJson {\n" +
+                "  private static final String LINHA_NAME = \"{\\\"linha\\\":\";\n" +
+                "\n" +
+                "  private static final String ESTACOES_NAME = \",\\\"estacoes\\\":\";\n" +
+                "\n" +
+                "  private static final String EXTENSAO_NAME = \",\\\"extensao\\\":\";\n" +
+                "\n" +
+                "  private static final String AUTOMATICO_NAME = \",\\\"automatico\\\":\";\n" +
+                "\n" +
+                "  private static final String[] NAMES = {\"linha\", \"estacoes\", \"extensao\", \"automatico\"};\n" +
+                "\n" +
+                "  private static final int CAPACITY = 81;\n" +
+                "\n" +
+                "  private static final String HEX_DIGITS = \"0123456789abcdef\";\n" +
+                "\n" +
+                "  private MetroJson() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public static String toJson(Metro value) {\n" +
+                "    return write(value, new StringBuilder(CAPACITY)).toString();\n" +
+                "  }\n" +
+                "\n" +
+                "  public static StringBuilder write(Metro value, StringBuilder out) {\n" +
+                "    out.append(LINHA_NAME);\n" +
+                "    if (value.linha == null) {\n" +
+                "      out.append(\"null\");\n" +
+                "    } else {\n" +
+                "      writeString(out, value.linha);\n" +
+                "    }\n" +
+                "    out.append(ESTACOES_NAME);\n" +
+                "    out.append(value.estacoes);\n" +
+                "    out.append(EXTENSAO_NAME);\n" +
+                "    if (value.extensao == null) {\n" +
+                "      out.append(\"null\");\n" +
+                "    } else {\n" +
+                "      if (Double.isNaN(value.extensao.doubleValue()) || Double.isInfinite(value.extensao.doubleValue())) {\n" +
+                "        throw new IllegalArgumentException(\"Not a JSON number in extensao: \" + value.extensao.doubleValue());\n" +
+                "      }\n" +
+                "      out.append(value.extensao.doubleValue());\n" +
+                "    }\n" +
+                "    out.append(AUTOMATICO_NAME);\n" +
+                "    out.append(value.automatico);\n" +
+                "    out.append(\"}\");\n" +
+                "    return out;\n" +
+                "  }\n" +
+                "\n" +
+                "  public static Appendable write(Metro value, Appendable out) throws IOException {\n" +
+                "    if (out instanceof StringBuilder) {\n" +
+                "      return write(value, (StringBuilder) out);\n" +
+                "    }\n" +
+                "    out.append(LINHA_NAME);\n" +
+                "    if (value.linha == null) {\n" +
+                "      out.append(\"null\");\n" +
+                "    } else {\n" +
+                "      writeString(out, value.linha);\n" +
+                "    }\n" +
+                "    out.append(ESTACOES_NAME);\n" +
+                "    out.append(String.valueOf(value.estacoes));\n" +
+                "    out.append(EXTENSAO_NAME);\n" +
+                "    if (value.extensao == null) {\n" +
+                "      out.append(\"null\");\n" +
+                "    } else {\n" +
+                "      if (Double.isNaN(value.extensao.doubleValue()) || Double.isInfinite(value.extensao.doubleValue())) {\n" +
+                "        throw new IllegalArgumentException(\"Not a JSON number in extensao: \" + value.extensao.doubleValue());\n" +
+                "      }\n" +
+                "      out.append(String.valueOf(value.extensao.doubleValue()));\n" +
+                "    }\n" +
+                "    out.append(AUTOMATICO_NAME);\n" +
+                "    out.append(String.valueOf(value.automatico));\n" +
+                "    out.append(\"}\");\n" +
+                "    return out;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Reads one JSON object from {@code in}. Input is read ahead in blocks, so what follows the object is consumed.\n" +
+                "   */\n" +
+                "  public static Metro read(Reader in) throws IOException {\n" +
+                "    return read(new Parser(in));\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Reads {@code json}, which must hold exactly one JSON object.\n" +
+                "   */\n" +
+                "  public static Metro read(CharSequence json) {\n" +
+                "    try {\n" +
+                "      Parser parser = new Parser(json.toString().toCharArray());\n" +
+                "      Metro value = read(parser);\n" +
+                "      parser.end();\n" +
+                "      return value;\n" +
+                "    } catch (IOException e) {\n" +
+                "      throw new IllegalArgumentException(e.getMessage(), e);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  private static Metro read(Parser parser) throws IOException {\n" +
+                "    MetroBuilder_ builder = new MetroBuilder_();\n" +
+                "    parser.expect('{');\n" +
+                "    if (! parser.consume('}')) {\n" +
+                "      int expected = 0;\n" +
+                "      do {\n" +
+                "        int member = parser.readName(NAMES, expected);\n" +
+                "        parser.expect(':');\n" +
+                "        switch (member) {\n" +
+                "          case 0:\n" +
+                "            builder.setLinha(parser.readNull() ? null : parser.readString());\n" +
+                "            break;\n" +
+                "          case 1:\n" +
+                "            builder.setEstacoes((int) parser.readLong(Integer.MIN_VALUE, Integer.MAX_VALUE));\n" +
+                "            break;\n" +
+                "          case 2:\n" +
+                "            builder.setExtensao(parser.readNull() ? null : Double.valueOf(parser.readDouble()));\n" +
+                "            break;\n" +
+                "          case 3:\n" +
+                "            builder.setAutomatico(parser.readBoolean());\n" +
+                "            break;\n" +
+                "          default:\n" +
+                "            parser.skipValue();\n" +
+                "        }\n" +
+                "        expected = member + 1;\n" +
+                "      } while (parser.consume(','));\n" +
+                "      parser.expect('}');\n" +
+                "    }\n" +
+                "    return builder.build();\n" +
+                "  }\n" +
+                "\n" +
+                "  private static void writeString(StringBuilder out, String value) {\n" +
+                "    out.append('\"');\n" +
+                "    int start = 0;\n" +
+                "    for (int i = 0; i < value.length(); i++) {\n" +
+                "      char c = value.charAt(i);\n" +
+                "      if (c >= 0x20 && c != '\"' && c != '\\\\') {\n" +
+                "        continue;\n" +
+                "      }\n" +
+                "      out.append(value, start, i);\n" +
+                "      start = i + 1;\n" +
+                "      switch (c) {\n" +
+                "        case '\"':\n" +
+                "          out.append(\"\\\\\\\"\");\n" +
+                "          break;\n" +
+                "        case '\\\\':\n" +
+                "          out.append(\"\\\\\\\\\");\n" +
+                "          break;\n" +
+                "        case '\\n':\n" +
+                "          out.append(\"\\\\n\");\n" +
+                "          break;\n" +
+                "        case '\\r':\n" +
+                "          out.append(\"\\\\r\");\n" +
+                "          break;\n" +
+                "        case '\\t':\n" +
+                "          out.append(\"\\\\t\");\n" +
+                "          break;\n" +
+                "        default:\n" +
+                "          out.append(\"\\\\u00\").append(HEX_DIGITS.charAt(c >> 4)).append(HEX_DIGITS.charAt(c & 0xf));\n" +
+                "      }\n" +
+                "    }\n" +
+                "    out.append(value, start, value.length()).append('\"');\n" +
+                "  }\n" +
+                "\n" +
+                "  private static void writeString(Appendable out, String value) throws IOException {\n" +
+                "    out.append('\"');\n" +
+                "    int start = 0;\n" +
+                "    for (int i = 0; i < value.length(); i++) {\n" +
+                "      char c = value.charAt(i);\n" +
+                "      if (c >= 0x20 && c != '\"' && c != '\\\\') {\n" +
+                "        continue;\n" +
+                "      }\n" +
+                "      out.append(value, start, i);\n" +
+                "      start = i + 1;\n" +
+                "      switch (c) {\n" +
+                "        case '\"':\n" +
+                "          out.append(\"\\\\\\\"\");\n" +
+                "          break;\n" +
+                "        case '\\\\':\n" +
+                "          out.append(\"\\\\\\\\\");\n" +
+                "          break;\n" +
+                "        case '\\n':\n" +
+                "          out.append(\"\\\\n\");\n" +
+                "          break;\n" +
+                "        case '\\r':\n" +
+                "          out.append(\"\\\\r\");\n" +
+                "          break;\n" +
+                "        case '\\t':\n" +
+                "          out.append(\"\\\\t\");\n" +
+                "          break;\n" +
+                "        default:\n" +
+                "          out.append(\"\\\\u00\").append(HEX_DIGITS.charAt(c >> 4)).append(HEX_DIGITS.charAt(c & 0xf));\n" +
+                "      }\n" +
+                "    }\n" +
+                "    out.append(value, start, value.length()).append('\"');\n" +
+                "  }\n" +
+                "\n" +
+                "  private static final class Parser {\n" +
+                "    private final Reader reader;\n" +
+                "\n" +
+                "    private final char[] buffer;\n" +
+                "\n" +
+                "    private final StringBuilder text = new StringBuilder();\n" +
+                "\n" +
+                "    private int position;\n" +
+                "\n" +
+                "    private int limit;\n" +
+                "\n" +
+                "    private int consumed;\n" +
+                "\n" +
+                "    Parser(Reader reader) {\n" +
+                "      this.reader = reader;\n" +
+                "      this.buffer = new char[1024];\n" +
+                "    }\n" +
+                "\n" +
+                "    Parser(char[] chars) {\n" +
+                "      this.reader = null;\n" +
+                "      this.buffer = chars;\n" +
+                "      this.limit = chars.length;\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * @return the next char without consuming it, or -1 at the end of the input.\n" +
+                "     */\n" +
+                "    int peek() throws IOException {\n" +
+                "      if (position == limit) {\n" +
+                "        if (reader == null) {\n" +
+                "          return -1;\n" +
+                "        }\n" +
+                "        consumed += limit;\n" +
+                "        position = 0;\n" +
+                "        limit = Math.max(reader.read(buffer, 0, buffer.length), 0);\n" +
+                "        if (limit == 0) {\n" +
+                "          return -1;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      return buffer[position];\n" +
+                "    }\n" +
+                "\n" +
+                "    char next() throws IOException {\n" +
+                "      if (peek() < 0) {\n" +
+                "        throw error(\"unexpected end of input\");\n" +
+                "      }\n" +
+                "      return buffer[position++];\n" +
+                "    }\n" +
+                "\n" +
+                "    int skipWhitespace() throws IOException {\n" +
+                "      int c = peek();\n" +
+                "      while (c == ' ' || c == '\\n' || c == '\\r' || c == '\\t') {\n" +
+                "        position++;\n" +
+                "        c = peek();\n" +
+                "      }\n" +
+                "      return c;\n" +
+                "    }\n" +
+                "\n" +
+                "    void expect(char expected) throws IOException {\n" +
+                "      if (skipWhitespace() != expected) {\n" +
+                "        throw error(\"expected '\" + expected + \"'\");\n" +
+                "      }\n" +
+                "      position++;\n" +
+                "    }\n" +
+                "\n" +
+                "    boolean consume(char expected) throws IOException {\n" +
+                "      if (skipWhitespace() != expected) {\n" +
+                "        return false;\n" +
+                "      }\n" +
+                "      position++;\n" +
+                "      return true;\n" +
+                "    }\n" +
+                "\n" +
+                "    void end() throws IOException {\n" +
+                "      if (skipWhitespace() >= 0) {\n" +
+                "        throw error(\"unexpected content after the object\");\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    void readLiteral(String literal) throws IOException {\n" +
+                "      skipWhitespace();\n" +
+                "      for (int i = 0; i < literal.length(); i++) {\n" +
+                "        if (next() != literal.charAt(i)) {\n" +
+                "          throw error(\"expected \" + literal);\n" +
+                "        }\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Consumes {@code null} if it comes next.\n" +
+                "     */\n" +
+                "    boolean readNull() throws IOException {\n" +
+                "      if (skipWhitespace() != 'n') {\n" +
+                "        return false;\n" +
+                "      }\n" +
+                "      readLiteral(\"null\");\n" +
+                "      return true;\n" +
+                "    }\n" +
+                "\n" +
+                "    String readString() throws IOException {\n" +
+                "      expect('\"');\n" +
+                "      int start = position;\n" +
+                "      while (position < limit) {\n" +
+                "        char c = buffer[position];\n" +
+                "        if (c == '\"') {\n" +
+                "          return new String(buffer, start, position++ - start);\n" +
+                "        } else if (c == '\\\\' || c < 0x20) {\n" +
+                "          break;\n" +
+                "        }\n" +
+                "        position++;\n" +
+                "      }\n" +
+                "      return readEscaped(start);\n" +
+                "    }\n" +
+                "\n" +
+                "    String readEscaped(int start) throws IOException {\n" +
+                "      text.setLength(0);\n" +
+                "      text.append(buffer, start, position - start);\n" +
+                "      while (true) {\n" +
+                "        char c = next();\n" +
+                "        if (c == '\"') {\n" +
+                "          return text.toString();\n" +
+                "        } else if (c < 0x20) {\n" +
+                "          throw error(\"control character in string\");\n" +
+                "        } else if (c != '\\\\') {\n" +
+                "          text.append(c);\n" +
+                "          continue;\n" +
+                "        }\n" +
+                "        c = next();\n" +
+                "        switch (c) {\n" +
+                "          case '\"':\n" +
+                "          case '\\\\':\n" +
+                "          case '/':\n" +
+                "            text.append(c);\n" +
+                "            break;\n" +
+                "          case 'b':\n" +
+                "            text.append('\\b');\n" +
+                "            break;\n" +
+                "          case 'f':\n" +
+                "            text.append('\\f');\n" +
+                "            break;\n" +
+                "          case 'n':\n" +
+                "            text.append('\\n');\n" +
+                "            break;\n" +
+                "          case 'r':\n" +
+                "            text.append('\\r');\n" +
+                "            break;\n" +
+                "          case 't':\n" +
+                "            text.append('\\t');\n" +
+                "            break;\n" +
+                "          case 'u':\n" +
+                "            int code = 0;\n" +
+                "            for (int i = 0; i < 4; i++) {\n" +
+                "              int digit = Character.digit(next(), 16);\n" +
+                "              if (digit < 0) {\n" +
+                "                throw error(\"invalid unicode escape\");\n" +
+                "              }\n" +
+                "              code = code << 4 | digit;\n" +
+                "            }\n" +
+                "            text.append((char) code);\n" +
+                "            break;\n" +
+                "          default:\n" +
+                "            throw error(\"invalid escape: \\\\\" + c);\n" +
+                "        }\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * @return the index of the member name read in {@code names}, or -1 when it is not there.\n" +
+                "     */\n" +
+                "    int readName(String[] names, int expected) throws IOException {\n" +
+                "      expect('\"');\n" +
+                "      int start = position;\n" +
+                "      char[] chars = buffer;\n" +
+                "      while (position < limit && buffer[position] >= 0x20 && buffer[position] != '\"' && buffer[position] != '\\\\') {\n" +
+                "        position++;\n" +
+                "      }\n" +
+                "      int length = position - start;\n" +
+                "      if (position < limit && buffer[position] == '\"') {\n" +
+                "        position++;\n" +
+                "      } else {\n" +
+                "        // escaped or split by a refill: decoded the slow way\n" +
+                "        chars = readEscaped(start).toCharArray();\n" +
+                "        start = 0;\n" +
+                "        length = chars.length;\n" +
+                "      }\n" +
+                "      if (expected < names.length && matches(names[expected], chars, start, length)) {\n" +
+                "        return expected;\n" +
+                "      }\n" +
+                "      for (int i = 0; i < names.length; i++) {\n" +
+                "        if (matches(names[i], chars, start, length)) {\n" +
+                "          return i;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      return -1;\n" +
+                "    }\n" +
+                "\n" +
+                "    static boolean matches(String name, char[] chars, int start, int length) {\n" +
+                "      if (name.length() != length) {\n" +
+                "        return false;\n" +
+                "      }\n" +
+                "      for (int i = 0; i < length; i++) {\n" +
+                "        if (name.charAt(i) != chars[start + i]) {\n" +
+                "          return false;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      return true;\n" +
+                "    }\n" +
+                "\n" +
+                "    boolean readBoolean() throws IOException {\n" +
+                "      if (skipWhitespace() == 't') {\n" +
+                "        readLiteral(\"true\");\n" +
+                "        return true;\n" +
+                "      }\n" +
+                "      readLiteral(\"false\");\n" +
+                "      return false;\n" +
+                "    }\n" +
+                "\n" +
+                "    long readLong(long min, long max) throws IOException {\n" +
+                "      boolean negative = skipWhitespace() == '-';\n" +
+                "      if (negative) {\n" +
+                "        position++;\n" +
+                "      }\n" +
+                "      // accumulated negatively, so that Long.MIN_VALUE fits\n" +
+                "      long value = 0;\n" +
+                "      int digits = 0;\n" +
+                "      int c = peek();\n" +
+                "      while (c >= '0' && c <= '9') {\n" +
+                "        if (digits == 1 && value == 0) {\n" +
+                "          throw error(\"number with a leading zero\");\n" +
+                "        }\n" +
+                "        if (value < Long.MIN_VALUE / 10 || value * 10 < Long.MIN_VALUE + (c - '0')) {\n" +
+                "          throw error(\"number out of range\");\n" +
+                "        }\n" +
+                "        value = value * 10 - (c - '0');\n" +
+                "        digits++;\n" +
+                "        position++;\n" +
+                "        c = peek();\n" +
+                "      }\n" +
+                "      if (digits == 0) {\n" +
+                "        throw error(\"expected a value\");\n" +
+                "      } else if (c == '.' || c == 'e' || c == 'E') {\n" +
+                "        throw error(\"not an integer\");\n" +
+                "      } else if (! negative && value == Long.MIN_VALUE) {\n" +
+                "        throw error(\"number out of range\");\n" +
+                "      }\n" +
+                "      value = negative ? value : -value;\n" +
+                "      if (value < min || value > max) {\n" +
+                "        throw error(\"number out of range\");\n" +
+                "      }\n" +
+                "      return value;\n" +
+                "    }\n" +
+                "\n" +
+                "    double readDouble() throws IOException {\n" +
+                "      return Double.parseDouble(readNumber());\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Reads a number as the JSON grammar spells it: no plus sign before it, no leading zeros, and\n" +
+                "     * digits on both sides of the point and in the exponent.\n" +
+                "     */\n" +
+                "    String readNumber() throws IOException {\n" +
+                "      skipWhitespace();\n" +
+                "      text.setLength(0);\n" +
+                "      if (peek() == '-') {\n" +
+                "        text.append(next());\n" +
+                "      }\n" +
+                "      int start = text.length();\n" +
+                "      int digits = readDigits();\n" +
+                "      if (digits == 0) {\n" +
+                "        throw error(\"expected a value\");\n" +
+                "      } else if (digits > 1 && text.charAt(start) == '0') {\n" +
+                "        throw error(\"number with a leading zero\");\n" +
+                "      }\n" +
+                "      if (peek() == '.') {\n" +
+                "        text.append(next());\n" +
+                "        if (readDigits() == 0) {\n" +
+                "          throw error(\"expected a digit after the point\");\n" +
+                "        }\n" +
+                "      }\n" +
+                "      int c = peek();\n" +
+                "      if (c == 'e' || c == 'E') {\n" +
+                "        text.append(next());\n" +
+                "        c = peek();\n" +
+                "        if (c == '+' || c == '-') {\n" +
+                "          text.append(next());\n" +
+                "        }\n" +
+                "        if (readDigits() == 0) {\n" +
+                "          throw error(\"expected a digit in the exponent\");\n" +
+                "        }\n" +
+                "      }\n" +
+                "      return text.toString();\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Appends the digits that come next to {@code text}.\n" +
+                "     *\n" +
+                "     * @return how many there were.\n" +
+                "     */\n" +
+                "    int readDigits() throws IOException {\n" +
+                "      int start = text.length();\n" +
+                "      int c = peek();\n" +
+                "      while (c >= '0' && c <= '9') {\n" +
+                "        text.append((char) c);\n" +
+                "        position++;\n" +
+                "        c = peek();\n" +
+                "      }\n" +
+                "      return text.length() - start;\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Skips the value of an unknown member, nested objects and arrays included.\n" +
+                "     */\n" +
+                "    void skipValue() throws IOException {\n" +
+                "      int c = skipWhitespace();\n" +
+                "      if (c == '\"') {\n" +
+                "        readString();\n" +
+                "      } else if (c == '{') {\n" +
+                "        position++;\n" +
+                "        if (! consume('}')) {\n" +
+                "          do {\n" +
+                "            readString();\n" +
+                "            expect(':');\n" +
+                "            skipValue();\n" +
+                "          } while (consume(','));\n" +
+                "          expect('}');\n" +
+                "        }\n" +
+                "      } else if (c == '[') {\n" +
+                "        position++;\n" +
+                "        if (! consume(']')) {\n" +
+                "          do {\n" +
+                "            skipValue();\n" +
+                "          } while (consume(','));\n" +
+                "          expect(']');\n" +
+                "        }\n" +
+                "      } else if (c == 't') {\n" +
+                "        readLiteral(\"true\");\n" +
+                "      } else if (c == 'f') {\n" +
+                "        readLiteral(\"false\");\n" +
+                "      } else if (c == 'n') {\n" +
+                "        readLiteral(\"null\");\n" +
+                "      } else {\n" +
+                "        readNumber();\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    IOException error(String message) {\n" +
+                "      return new IOException(\"Malformed JSON at \" + (consumed + position) + \": \" + message);\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void json_writesEveryTypeAndReadsItBack() throws Exception {
+        ClassLoader classLoader = compileBuilder("TodosBuilder", "@Builder(json = true)", TODOS_FIELDS);
+        Class<?> builderClass = classLoader.loadClass("test.TodosBuilder_");
+        Class<?> todosClass = classLoader.loadClass("test.Todos");
+        Class<?> jsonClass = classLoader.loadClass("test.TodosJson");
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setTexto", String.class).invoke(builder, "a\"b\\c\nd\u0001\u00e7\ud83d\ude00");
+        builderClass.getMethod("setInteiro", int.class).invoke(builder, Integer.MIN_VALUE);
+        builderClass.getMethod("setLongo", long.class).invoke(builder, Long.MAX_VALUE);
+        builderClass.getMethod("setCurto", short.class).invoke(builder, (short) -300);
+        builderClass.getMethod("setOcteto", byte.class).invoke(builder, (byte) 7);
+        builderClass.getMethod("setLetra", char.class).invoke(builder, '"');
+        builderClass.getMethod("setReal", float.class).invoke(builder, 1.5f);
+        builderClass.getMethod("setDuplo", double.class).invoke(builder, 1e-300);
+        builderClass.getMethod("setLigado", boolean.class).invoke(builder, true);
+        builderClass.getMethod("setCaixa", Integer.class).invoke(builder, 42);
+        builderClass.getMethod("setGrande", Long.class).invoke(builder, (Object) null);
+        Object todos = builderClass.getMethod("build").invoke(builder);
+
+        String json = (String) jsonClass.getMethod(JsonGenerator.TO_JSON_METHOD_NAME, todosClass).invoke(null, todos);
+        StringWriter writer = new StringWriter();
+        jsonClass.getMethod(JsonGenerator.WRITE_METHOD_NAME, todosClass, Appendable.class).invoke(null, todos, writer);
+
+        assertThat(json).isEqualTo("{\"texto\":\"a\\\"b\\\\c\\nd\\u0001\u00e7\ud83d\ude00\",\"inteiro\":-2147483648,"
+                + "\"longo\":9223372036854775807,\"curto\":-300,\"octeto\":7,\"letra\":\"\\\"\",\"real\":1.5,\"duplo\":1.0E-300,"
+                + "\"ligado\":true,\"caixa\":42,\"talvez\":null,\"grande\":null,\"simbolo\":null}");
+        assertThat(writer.toString()).isEqualTo(json);
+        assertThat(jsonClass.getMethod(JsonGenerator.READ_METHOD_NAME, CharSequence.class).invoke(null, json)).isEqualTo(todos);
+    }
+
+    @Test
+    public void json_readsAnyWellFormedObject() throws Exception {
+        ClassLoader classLoader = compileBuilder("TodosBuilder", "@Builder(json = true)", TODOS_FIELDS);
+        Class<?> todosClass = classLoader.loadClass("test.Todos");
+        Class<?> jsonClass = classLoader.loadClass("test.TodosJson");
+        String json = " {\n\t\"extra\" : {\"a\": [1, -2.5e3, \"x\", true, false, null, {}, []]},\r\n"
+                + "  \"te\\u0078to\": \"\\u00e7\\/\\b\\f\\r\\t\", \"inteiro\": -0, \"duplo\": 25E-1,"
+                + " \"caixa\": null, \"talvez\": false, \"inteiro\": 12 , \"letra\": \"\\n\" } ";
+        Reader reader = new FilterReader(new StringReader(json)) {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        };
+
+        Object todos = jsonClass.getMethod(JsonGenerator.READ_METHOD_NAME, Reader.class).invoke(null, reader);
+
+        assertThat(todosClass.getField("texto").get(todos)).isEqualTo("\u00e7/\b\f\r\t");
+        assertThat(todosClass.getField("inteiro").get(todos)).isEqualTo(12);
+        assertThat(todosClass.getField("duplo").get(todos)).isEqualTo(2.5);
+        assertThat(todosClass.getField("caixa").get(todos)).isNull();
+        assertThat(todosClass.getField("talvez").get(todos)).isEqualTo(false);
+        assertThat(todosClass.getField("letra").get(todos)).isEqualTo('\n');
+        assertThat(jsonClass.getMethod(JsonGenerator.READ_METHOD_NAME, CharSequence.class).invoke(null, json)).isEqualTo(todos);
+        assertThat(jsonClass.getMethod(JsonGenerator.READ_METHOD_NAME, CharSequence.class).invoke(null, "{}"))
+                .isEqualTo(todosClass.getConstructor().newInstance());
+    }
+
+    @Test
+    public void json_rejectsMalformedInput() throws Exception {
+        ClassLoader classLoader = compileBuilder("TodosBuilder", "@Builder(json = true)", TODOS_FIELDS);
+        Method read = classLoader.loadClass("test.TodosJson").getMethod(JsonGenerator.READ_METHOD_NAME, CharSequence.class);
+        String[] inputs = {
+                "", "[]", "{\"inteiro\" 1}", "{\"inteiro\":1,}", "{\"inteiro\":1} {}", "{\"texto\":\"aberto}",
+                "{\"texto\":5}", "{\"texto\":\"\\x\"}", "{\"texto\":\"a\nb\"}", "{\"inteiro\":3000000000}",
+                "{\"octeto\":128}", "{\"inteiro\":1.5}", "{\"inteiro\":null}", "{\"ligado\":1}", "{\"letra\":\"ab\"}",
+                "{\"longo\":9223372036854775808}", "{\"longo\":-}", "{\"extra\":[1 2]}", "{\"caixa\":nul}",
+                "{\"inteiro\":01}", "{\"inteiro\":-01}", "{\"inteiro\":+1}", "{\"duplo\":+1}", "{\"duplo\":1.}",
+                "{\"duplo\":.5}", "{\"duplo\":1e}", "{\"duplo\":1e+}", "{\"duplo\":00.5}", "{\"duplo\":-}",
+                "{\"extra\":1-2+e}", "{\"extra\":+1}", "{\"extra\":1.}", "{\"extra\":.5}", "{\"extra\":01}"
+        };
+
+        for (String input : inputs) {
+            try {
+                read.invoke(null, input);
+                fail(input);
+            } catch (InvocationTargetException e) {
+                assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+                assertThat(e.getCause()).hasMessageThat().startsWith("Malformed JSON at ");
+            }
+        }
+    }
+
+    @Test
+    public void json_rejectsNonFiniteNumbers() throws Exception {
+        ClassLoader classLoader = compileBuilder("TodosBuilder", "@Builder(json = true)", TODOS_FIELDS);
+        Class<?> todosClass = classLoader.loadClass("test.Todos");
+        Object todos = todosClass.getConstructor().newInstance();
+        todosClass.getField("duplo").set(todos, Double.NaN);
+
+        try {
+            classLoader.loadClass("test.TodosJson").getMethod(JsonGenerator.TO_JSON_METHOD_NAME, todosClass).invoke(null, todos);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+            assertThat(e.getCause()).hasMessageThat().isEqualTo("Not a JSON number in duplo: NaN");
+        }
+    }
+
+    @Test
+    public void json_withFieldsOfTheSameConstantName_writesEach() throws Exception {
+        ClassLoader classLoader = compileBuilder("PlacaBuilder", "@Builder(json = true)", "String placaAtual;", "String placa_atual;");
+        Class<?> placaClass = classLoader.loadClass("test.Placa");
+        Class<?> jsonClass = classLoader.loadClass("test.PlacaJson");
+        Object placa = placaClass.getConstructor().newInstance();
+        placaClass.getField("placaAtual").set(placa, "ABC1234");
+        placaClass.getField("placa_atual").set(placa, "XYZ9876");
+
+        String json = (String) jsonClass.getMethod(JsonGenerator.TO_JSON_METHOD_NAME, placaClass).invoke(null, placa);
+
+        assertThat(json).isEqualTo("{\"placaAtual\":\"ABC1234\",\"placa_atual\":\"XYZ9876\"}");
+        assertThat(jsonClass.getMethod(JsonGenerator.READ_METHOD_NAME, CharSequence.class).invoke(null, json)).isEqualTo(placa);
+    }
+
+    @Test
+    public void json_withUnsupportedFieldType_failsTheCompilation() {
+        Compilation compilation = compile("ListaBuilder", "@Builder(json = true)", "java.util.List<String> itens;");
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Tipo nao suportado pelo JSON: java.util.List<java.lang.String> itens");
+    }
+
+    @Builder(json = true)
+    static class MetroBuilder {
+        String linha;
+        int estacoes;
+        Double extensao;
+        boolean automatico;
+    }
+}
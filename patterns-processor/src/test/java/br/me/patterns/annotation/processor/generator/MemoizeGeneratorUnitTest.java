@@ -0,0 +1,647 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.google.testing.compile.JavaFileObjects;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.lang.model.element.TypeElement;
+import javax.tools.JavaFileObject;
+
+import br.me.patterns.annotation.Memoize;
+import br.me.patterns.annotation.processor.PatternsProcessor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class MemoizeGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    @Test
+    public void generatedFileContent_matchesTemplate() {
+        TypeElement element = compilationRule.getElements().getTypeElement(CalculadoraToTest.class.getCanonicalName());
+        JavaFile generatedFile = MemoizeGenerator.generate(element);
+
+        assertThat(generatedFile.toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.io.IOException;\n" +
+                "import java.lang.Float;\n" +
+                "import java.lang.Integer;\n" +
+                "import java.lang.Math;\n" +
+                "import java.lang.Override;\n" +
+                "import java.lang.Runtime;\n" +
+                "import java.lang.String;\n" +
+                "import java.lang.Thread;\n" +
+                "import java.util.concurrent.atomic.AtomicLong;\n" +
+                "import java.util.concurrent.atomic.AtomicLongArray;\n" +
+                "import java.util.concurrent.atomic.AtomicReferenceArray;\n" +
+                "\n" +
+                "public class CalculadoraToTestMemoized_ extends MemoizeGeneratorUnitTest.CalculadoraToTest {\n" +
+                "  public final PotenciaCache potenciaCache = new PotenciaCache(32);\n" +
+                "\n" +
+                "  public final FormatarCache formatarCache = new FormatarCache(256);\n" +
+                "\n" +
+                "  CalculadoraToTestMemoized_() {\n" +
+                "    super();\n" +
+                "  }\n" +
+                "\n" +
+                "  public CalculadoraToTestMemoized_(String arg0) throws IOException {\n" +
+                "    super(arg0);\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  public long potencia(int arg0, int arg1) {\n" +
+                "    int hash = PotenciaCache.hash(arg0, arg1);\n" +
+                "    PotenciaCache.Entry entry = potenciaCache.get(hash, arg0, arg1);\n" +
+                "    if (entry != null) {\n" +
+                "      return entry.value;\n" +
+                "    }\n" +
+                "    long value = super.potencia(arg0, arg1);\n" +
+                "    potenciaCache.put(hash, new PotenciaCache.Entry(arg0, arg1, value));\n" +
+                "    return value;\n" +
+                "  }\n" +
+                "\n" +
+                "  @Override\n" +
+                "  protected String formatar(float arg0, String arg1) throws IOException {\n" +
+                "    int hash = FormatarCache.hash(arg0, arg1);\n" +
+                "    FormatarCache.Entry entry = formatarCache.get(hash, arg0, arg1);\n" +
+                "    if (entry != null) {\n" +
+                "      return entry.value;\n" +
+                "    }\n" +
+                "    String value = super.formatar(arg0, arg1);\n" +
+                "    formatarCache.put(hash, new FormatarCache.Entry(arg0, arg1, value));\n" +
+                "    return value;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Results of {@code potencia}, in sets of 4 entries picked by the hash of the arguments.\n" +
+                "   */\n" +
+                "  public static final class PotenciaCache {\n" +
+                "    private static final int WAYS = 4;\n" +
+                "\n" +
+                "    private final AtomicReferenceArray<Entry> entries;\n" +
+                "\n" +
+                "    private final int mask;\n" +
+                "\n" +
+                "    private final Counter hits = new Counter();\n" +
+                "\n" +
+                "    private final AtomicLong misses = new AtomicLong();\n" +
+                "\n" +
+                "    private final AtomicLong evictions = new AtomicLong();\n" +
+                "\n" +
+                "    PotenciaCache(int sets) {\n" +
+                "      this.entries = new AtomicReferenceArray<Entry>(sets * WAYS);\n" +
+                "      this.mask = sets - 1;\n" +
+                "    }\n" +
+                "\n" +
+                "    static int hash(int arg0, int arg1) {\n" +
+                "      int hash = 1;\n" +
+                "      hash = 31 * hash + arg0;\n" +
+                "      hash = 31 * hash + arg1;\n" +
+                "      hash *= 0x9E3779B9;\n" +
+                "      return hash ^ (hash >>> 16);\n" +
+                "    }\n" +
+                "\n" +
+                "    Entry get(int hash, int arg0, int arg1) {\n" +
+                "      int base = (hash & this.mask) * WAYS;\n" +
+                "      for (int i = base; i < base + WAYS; i++) {\n" +
+                "        Entry entry = this.entries.get(i);\n" +
+                "        if (entry != null && entry.arg0 == arg0 && entry.arg1 == arg1) {\n" +
+                "          if (! entry.referenced) {\n" +
+                "            entry.referenced = true;\n" +
+                "          }\n" +
+                "          this.hits.increment();\n" +
+                "          return entry;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      this.misses.incrementAndGet();\n" +
+                "      return null;\n" +
+                "    }\n" +
+                "\n" +
+                "    void put(int hash, Entry created) {\n" +
+                "      int base = (hash & mask) * WAYS;\n" +
+                "      for (int i = base; i < base + WAYS; i++) {\n" +
+                "        if (entries.get(i) == null && entries.compareAndSet(i, null, created)) {\n" +
+                "          return;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      for (int sweep = 0; sweep < 2; sweep++) {\n" +
+                "        for (int i = base; i < base + WAYS; i++) {\n" +
+                "          Entry entry = entries.get(i);\n" +
+                "          if (entry == null || ! entry.referenced) {\n" +
+                "            if (entries.compareAndSet(i, entry, created) && entry != null) {\n" +
+                "              evictions.incrementAndGet();\n" +
+                "            }\n" +
+                "            return;\n" +
+                "          }\n" +
+                "          entry.referenced = false;\n" +
+                "        }\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    public long hits() {\n" +
+                "      return hits.get();\n" +
+                "    }\n" +
+                "\n" +
+                "    public long misses() {\n" +
+                "      return misses.get();\n" +
+                "    }\n" +
+                "\n" +
+                "    public long evictions() {\n" +
+                "      return evictions.get();\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * @return the number of cached results, counted slot by slot.\n" +
+                "     */\n" +
+                "    public int size() {\n" +
+                "      int size = 0;\n" +
+                "      for (int i = 0; i < entries.length(); i++) {\n" +
+                "        if (entries.get(i) != null) {\n" +
+                "          size++;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      return size;\n" +
+                "    }\n" +
+                "\n" +
+                "    public int capacity() {\n" +
+                "      return entries.length();\n" +
+                "    }\n" +
+                "\n" +
+                "    public void clear() {\n" +
+                "      for (int i = 0; i < entries.length(); i++) {\n" +
+                "        entries.set(i, null);\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    static final class Entry {\n" +
+                "      final int arg0;\n" +
+                "\n" +
+                "      final int arg1;\n" +
+                "\n" +
+                "      final long value;\n" +
+                "\n" +
+                "      boolean referenced;\n" +
+                "\n" +
+                "      Entry(int arg0, int arg1, long value) {\n" +
+                "        this.arg0 = arg0;\n" +
+                "        this.arg1 = arg1;\n" +
+                "        this.value = value;\n" +
+                "      }\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Results of {@code formatar}, in sets of 4 entries picked by the hash of the arguments.\n" +
+                "   */\n" +
+                "  public static final class FormatarCache {\n" +
+                "    private static final int WAYS = 4;\n" +
+                "\n" +
+                "    private final AtomicReferenceArray<Entry> entries;\n" +
+                "\n" +
+                "    private final int mask;\n" +
+                "\n" +
+                "    private final Counter hits = new Counter();\n" +
+                "\n" +
+                "    private final AtomicLong misses = new AtomicLong();\n" +
+                "\n" +
+                "    private final AtomicLong evictions = new AtomicLong();\n" +
+                "\n" +
+                "    FormatarCache(int sets) {\n" +
+                "      this.entries = new AtomicReferenceArray<Entry>(sets * WAYS);\n" +
+                "      this.mask = sets - 1;\n" +
+                "    }\n" +
+                "\n" +
+                "    static int hash(float arg0, String arg1) {\n" +
+                "      int hash = 1;\n" +
+                "      hash = 31 * hash + Float.floatToIntBits(arg0);\n" +
+                "      hash = 31 * hash + (arg1 == null ? 0 : arg1.hashCode());\n" +
+                "      hash *= 0x9E3779B9;\n" +
+                "      return hash ^ (hash >>> 16);\n" +
+                "    }\n" +
+                "\n" +
+                "    Entry get(int hash, float arg0, String arg1) {\n" +
+                "      int base = (hash & this.mask) * WAYS;\n" +
+                "      for (int i = base; i < base + WAYS; i++) {\n" +
+                "        Entry entry = this.entries.get(i);\n" +
+                "        if (entry != null && Float.floatToIntBits(entry.arg0) == Float.floatToIntBits(arg0) && (entry.arg1 == arg1 || (arg1 != null && arg1.equals(entry.arg1)))) {\n" +
+                "          if (! entry.referenced) {\n" +
+                "            entry.referenced = true;\n" +
+                "          }\n" +
+                "          this.hits.increment();\n" +
+                "          return entry;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      this.misses.incrementAndGet();\n" +
+                "      return null;\n" +
+                "    }\n" +
+                "\n" +
+                "    void put(int hash, Entry created) {\n" +
+                "      int base = (hash & mask) * WAYS;\n" +
+                "      for (int i = base; i < base + WAYS; i++) {\n" +
+                "        if (entries.get(i) == null && entries.compareAndSet(i, null, created)) {\n" +
+                "          return;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      for (int sweep = 0; sweep < 2; sweep++) {\n" +
+                "        for (int i = base; i < base + WAYS; i++) {\n" +
+                "          Entry entry = entries.get(i);\n" +
+                "          if (entry == null || ! entry.referenced) {\n" +
+                "            if (entries.compareAndSet(i, entry, created) && entry != null) {\n" +
+                "              evictions.incrementAndGet();\n" +
+                "            }\n" +
+                "            return;\n" +
+                "          }\n" +
+                "          entry.referenced = false;\n" +
+                "        }\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    public long hits() {\n" +
+                "      return hits.get();\n" +
+                "    }\n" +
+                "\n" +
+                "    public long misses() {\n" +
+                "      return misses.get();\n" +
+                "    }\n" +
+                "\n" +
+                "    public long evictions() {\n" +
+                "      return evictions.get();\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * @return the number of cached results, counted slot by slot.\n" +
+                "     */\n" +
+                "    public int size() {\n" +
+                "      int size = 0;\n" +
+                "      for (int i = 0; i < entries.length(); i++) {\n" +
+                "        if (entries.get(i) != null) {\n" +
+                "          size++;\n" +
+                "        }\n" +
+                "      }\n" +
+                "      return size;\n" +
+                "    }\n" +
+                "\n" +
+                "    public int capacity() {\n" +
+                "      return entries.length();\n" +
+                "    }\n" +
+                "\n" +
+                "    public void clear() {\n" +
+                "      for (int i = 0; i < entries.length(); i++) {\n" +
+                "        entries.set(i, null);\n" +
+                "      }\n" +
+                "    }\n" +
+                "\n" +
+                "    static final class Entry {\n" +
+                "      final float arg0;\n" +
+                "\n" +
+                "      final String arg1;\n" +
+                "\n" +
+                "      final String value;\n" +
+                "\n" +
+                "      boolean referenced;\n" +
+                "\n" +
+                "      Entry(float arg0, String arg1, String value) {\n" +
+                "        this.arg0 = arg0;\n" +
+                "        this.arg1 = arg1;\n" +
+                "        this.value = value;\n" +
+                "      }\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Count added up over {@code STRIPES} stripes of threads, each in a cache line of its own.\n" +
+                "   */\n" +
+                "  private static final class Counter {\n" +
+                "    private static final int STRIDE = 8;\n" +
+                "\n" +
+                "    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);\n" +
+                "\n" +
+                "    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);\n" +
+                "\n" +
+                "    void increment() {\n" +
+                "      cells.getAndIncrement(stripeIndex() * STRIDE);\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * Adds up the stripes one by one, so increments made meanwhile may be missed.\n" +
+                "     */\n" +
+                "    long get() {\n" +
+                "      long count = 0;\n" +
+                "      for (int stripe = 0; stripe < STRIPES * STRIDE; stripe += STRIDE) {\n" +
+                "        count += cells.get(stripe);\n" +
+                "      }\n" +
+                "      return count;\n" +
+                "    }\n" +
+                "\n" +
+                "    private static int stripeIndex() {\n" +
+                "      long id = Thread.currentThread().getId();\n" +
+                "      int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;\n" +
+                "      return (hash ^ (hash >>> 16)) & (STRIPES - 1);\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void sets_areRoundedUpToPowerOfTwo() {
+        assertThat(MemoizeGenerator.getSets(1)).isEqualTo(1);
+        assertThat(MemoizeGenerator.getSets(4)).isEqualTo(1);
+        assertThat(MemoizeGenerator.getSets(5)).isEqualTo(2);
+        assertThat(MemoizeGenerator.getSets(100)).isEqualTo(32);
+        assertThat(MemoizeGenerator.getSets(1024)).isEqualTo(256);
+    }
+
+    @Test
+    public void memoizedMethod_isCalledOncePerDistinctArguments() throws Exception {
+        Class<?> memoizedClass = compileMemoized("@Memoize");
+        Object memoized = memoizedClass.getDeclaredConstructor().newInstance();
+        Method distancia = memoizedClass.getMethod("distancia", int.class, long.class, double.class, String.class);
+        Object cache = memoizedClass.getField("distanciaCache").get(memoized);
+
+        assertThat(distancia.invoke(memoized, 1, 2L, 0.5, "km")).isEqualTo("1:2:0.5:km");
+        assertThat(distancia.invoke(memoized, 1, 2L, 0.5, new String("km"))).isEqualTo("1:2:0.5:km");
+        assertThat(distancia.invoke(memoized, 1, 2L, 0.5, null)).isEqualTo("1:2:0.5:null");
+        assertThat(distancia.invoke(memoized, 1, 2L, 0.5, null)).isEqualTo("1:2:0.5:null");
+        assertThat(distancia.invoke(memoized, 1, 2L, Double.NaN, "km")).isEqualTo("1:2:NaN:km");
+        assertThat(distancia.invoke(memoized, 1, 2L, Double.NaN, "km")).isEqualTo("1:2:NaN:km");
+        assertThat(distancia.invoke(memoized, 1, 2L, -0.0, "km")).isEqualTo("1:2:-0.0:km");
+        assertThat(distancia.invoke(memoized, 1, 2L, 0.0, "km")).isEqualTo("1:2:0.0:km");
+        assertThat(distancia.invoke(memoized, 1, 3L, 0.5, "km")).isEqualTo("1:3:0.5:km");
+
+        assertThat(getCalls(memoizedClass)).isEqualTo(6);
+        assertThat(cache.getClass().getMethod("hits").invoke(cache)).isEqualTo(3L);
+        assertThat(cache.getClass().getMethod("misses").invoke(cache)).isEqualTo(6L);
+        assertThat(cache.getClass().getMethod("evictions").invoke(cache)).isEqualTo(0L);
+        assertThat(cache.getClass().getMethod("size").invoke(cache)).isEqualTo(6);
+
+        cache.getClass().getMethod("clear").invoke(cache);
+        distancia.invoke(memoized, 1, 2L, 0.5, "km");
+        assertThat(getCalls(memoizedClass)).isEqualTo(7);
+    }
+
+    @Test
+    public void fullSet_evictsAnEntryNotReadSinceTheLastSweep() throws Exception {
+        Class<?> memoizedClass = compileMemoized("@Memoize(maxSize = 4)");
+        Object memoized = memoizedClass.getDeclaredConstructor().newInstance();
+        Method quadrado = memoizedClass.getMethod("quadrado", int.class);
+        Object cache = memoizedClass.getField("quadradoCache").get(memoized);
+        assertThat(cache.getClass().getMethod("capacity").invoke(cache)).isEqualTo(4);
+
+        for (int i = 0; i < 4; i++) {
+            quadrado.invoke(memoized, i);
+        }
+        quadrado.invoke(memoized, 0);
+        quadrado.invoke(memoized, 4);
+        assertThat(getCalls(memoizedClass)).isEqualTo(5);
+        assertThat(cache.getClass().getMethod("evictions").invoke(cache)).isEqualTo(1L);
+        assertThat(cache.getClass().getMethod("size").invoke(cache)).isEqualTo(4);
+
+        quadrado.invoke(memoized, 0);
+        assertThat(getCalls(memoizedClass)).isEqualTo(5);
+        quadrado.invoke(memoized, 1);
+        assertThat(getCalls(memoizedClass)).isEqualTo(6);
+    }
+
+    @Test
+    public void overloadsAndMethodsWithoutArguments_haveTheirOwnCaches() throws Exception {
+        Class<?> memoizedClass = compileMemoized("@Memoize");
+        Object memoized = memoizedClass.getDeclaredConstructor().newInstance();
+
+        assertThat(memoizedClass.getMethod("quadrado", int.class).invoke(memoized, 3)).isEqualTo(9);
+        assertThat(memoizedClass.getMethod("quadrado", long.class).invoke(memoized, 3L)).isEqualTo(9L);
+        assertThat(memoizedClass.getMethod("versao").invoke(memoized)).isEqualTo("v1");
+        assertThat(memoizedClass.getMethod("versao").invoke(memoized)).isEqualTo("v1");
+
+        assertThat(getCalls(memoizedClass)).isEqualTo(3);
+        assertThat(memoizedClass.getField("quadradoCache").getType().getSimpleName()).isEqualTo("QuadradoCache");
+        assertThat(memoizedClass.getField("quadrado2Cache").getType().getSimpleName()).isEqualTo("Quadrado2Cache");
+        assertThat(memoizedClass.getField("versaoCache").getType().getSimpleName()).isEqualTo("VersaoCache");
+    }
+
+    @Test
+    public void overloads_skipTheNamesOfOtherMethods() throws Exception {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test.Potencia",
+                "package test;",
+                "",
+                "import br.me.patterns.annotation.Memoize;",
+                "",
+                "public class Potencia {",
+                "    @Memoize public int quadrado(int a) { return a * a; }",
+                "    @Memoize public long quadrado(long a) { return a * a; }",
+                "    @Memoize public int quadrado2(int a) { return a * a * 2; }",
+                "    @Memoize public int Quadrado3(int a) { return a * a * 3; }",
+                "    @Memoize public double quadrado(double a) { return a * a; }",
+                "}"));
+        assertThat(compilation).succeeded();
+
+        Class<?> memoizedClass = new GeneratedClassLoader(compilation).loadClass("test.PotenciaMemoized_");
+        Object memoized = memoizedClass.getDeclaredConstructor().newInstance();
+
+        assertThat(memoizedClass.getMethod("quadrado2", int.class).invoke(memoized, 3)).isEqualTo(18);
+        assertThat(memoizedClass.getMethod("quadrado", double.class).invoke(memoized, 3.0)).isEqualTo(9.0);
+        assertThat(memoizedClass.getField("quadrado2Cache").getType().getSimpleName()).isEqualTo("Quadrado2Cache");
+        assertThat(memoizedClass.getField("Quadrado3Cache").getType().getSimpleName()).isEqualTo("Quadrado3Cache");
+        assertThat(memoizedClass.getField("quadrado4Cache").getType().getSimpleName()).isEqualTo("Quadrado4Cache");
+        assertThat(memoizedClass.getField("quadrado5Cache").getType().getSimpleName()).isEqualTo("Quadrado5Cache");
+    }
+
+    @Test
+    public void exceptions_areNotCached() throws Exception {
+        Class<?> memoizedClass = compileMemoized("@Memoize");
+        Object memoized = memoizedClass.getDeclaredConstructor().newInstance();
+        Method ler = memoizedClass.getMethod("ler", String.class);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                ler.invoke(memoized, "");
+                fail();
+            } catch (InvocationTargetException e) {
+                assertThat(e.getCause()).isInstanceOf(IOException.class);
+            }
+        }
+
+        assertThat(getCalls(memoizedClass)).isEqualTo(2);
+    }
+
+    @Test
+    public void concurrentCalls_alwaysReturnTheResultOfTheirOwnArguments() throws Exception {
+        Class<?> memoizedClass = compileMemoized("@Memoize(maxSize = 64)");
+        Object memoized = memoizedClass.getDeclaredConstructor().newInstance();
+        Method distancia = memoizedClass.getMethod("distancia", int.class, long.class, double.class, String.class);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                futures.add(executor.submit((Callable<Integer>) () -> {
+                    int checked = 0;
+                    for (int i = 0; i < 20_000; i++) {
+                        int a = (i * 31 + seed) % 200;
+                        long b = a % 7;
+                        assertThat(distancia.invoke(memoized, a, b, 1.5, "m")).isEqualTo(a + ":" + b + ":1.5:m");
+                        checked++;
+                    }
+                    return checked;
+                }));
+            }
+
+            for (Future<Integer> future : futures) {
+                assertThat(future.get()).isEqualTo(20_000);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Object cache = memoizedClass.getField("distanciaCache").get(memoized);
+        long misses = (Long) cache.getClass().getMethod("misses").invoke(cache);
+        assertThat(misses).isAtLeast(200L);
+        assertThat(getCalls(memoizedClass)).isEqualTo((int) misses);
+        assertThat((Long) cache.getClass().getMethod("hits").invoke(cache)).isEqualTo(160_000L - misses);
+        assertThat((Integer) cache.getClass().getMethod("size").invoke(cache)).isAtMost(64);
+    }
+
+    @Test
+    public void singletonWithMemoizedMethods_holdsTheMemoizedSubclass() throws Exception {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test.Tabela",
+                "package test;",
+                "",
+                "import br.me.patterns.annotation.Memoize;",
+                "import br.me.patterns.annotation.Singleton;",
+                "",
+                "@Singleton(strategy = Singleton.Strategy.LAZY_HOLDER)",
+                "public class Tabela {",
+                "    @Memoize",
+                "    public int fatorial(int n) { return n <= 1 ? 1 : n * fatorial(n - 1); }",
+                "",
+                "    Tabela() {}",
+                "}"));
+
+        assertThat(compilation).succeeded();
+        ClassLoader classLoader = new GeneratedClassLoader(compilation);
+        Object instance = classLoader.loadClass("test.Tabela_").getMethod(SingletonGenerator.GET_INSTANCE_METHOD_NAME).invoke(null);
+
+        assertThat(instance.getClass().getName()).isEqualTo("test.TabelaMemoized_");
+        assertThat(instance.getClass().getMethod("fatorial", int.class).invoke(instance, 5)).isEqualTo(120);
+        Object cache = instance.getClass().getField("fatorialCache").get(instance);
+        assertThat(cache.getClass().getMethod("size").invoke(cache)).isEqualTo(5);
+    }
+
+    @Test
+    public void invalidMemoizedMethods_failTheCompilation() {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(
+                JavaFileObjects.forSourceLines("test.Invalida",
+                        "package test;",
+                        "",
+                        "import br.me.patterns.annotation.Memoize;",
+                        "",
+                        "public class Invalida {",
+                        "    @Memoize public final int fixo(int a) { return a; }",
+                        "    @Memoize public void nada(int a) {}",
+                        "    @Memoize public int soma(int[] valores) { return valores.length; }",
+                        "    @Memoize(maxSize = 0) public int vazio(int a) { return a; }",
+                        "    @Memoize(maxSize = (1 << 30) + 1) public int enorme(int a) { return a; }",
+                        "}"),
+                JavaFileObjects.forSourceLines("test.Fechada",
+                        "package test;",
+                        "",
+                        "public class Fechada {",
+                        "    @br.me.patterns.annotation.Memoize public int dobro(int a) { return 2 * a; }",
+                        "    private Fechada() {}",
+                        "}"));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Metodo @Memoize nao pode ser private, static, final nem abstract: fixo(int)");
+        assertThat(compilation).hadErrorContaining("Metodo @Memoize precisa retornar um valor e nao pode ser generico: nada(int)");
+        assertThat(compilation).hadErrorContaining("Parametro array nao suportado por @Memoize: int[] valores");
+        assertThat(compilation).hadErrorContaining("Tamanho invalido em @Memoize: 0 vazio(int)");
+        assertThat(compilation).hadErrorContaining("Tamanho invalido em @Memoize: 1073741825 enorme(int)");
+        assertThat(compilation).hadErrorContaining("@Memoize so pode ser usado em classes nao finais, nao genericas e com construtor nao privado: test.Fechada");
+    }
+
+    private static Class<?> compileMemoized(String annotation) throws ClassNotFoundException {
+        JavaFileObject source = JavaFileObjects.forSourceLines("test.Medidor",
+                "package test;",
+                "",
+                "import java.io.IOException;",
+                "import java.util.concurrent.atomic.AtomicInteger;",
+                "import br.me.patterns.annotation.Memoize;",
+                "",
+                "public class Medidor {",
+                "    public static final AtomicInteger CALLS = new AtomicInteger();",
+                "",
+                "    " + annotation,
+                "    public String distancia(int i, long base, double value, String entry) {",
+                "        CALLS.incrementAndGet();",
+                "        return i + \":\" + base + \":\" + value + \":\" + entry;",
+                "    }",
+                "",
+                "    " + annotation,
+                "    public int quadrado(int a) { CALLS.incrementAndGet(); return a * a; }",
+                "",
+                "    " + annotation,
+                "    public long quadrado(long a) { CALLS.incrementAndGet(); return a * a; }",
+                "",
+                "    " + annotation,
+                "    public String versao() { CALLS.incrementAndGet(); return \"v1\"; }",
+                "",
+                "    " + annotation,
+                "    public String ler(String nome) throws IOException {",
+                "        CALLS.incrementAndGet();",
+                "        throw new IOException(nome);",
+                "    }",
+                "}");
+
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(source);
+
+        assertThat(compilation).succeeded();
+        return new GeneratedClassLoader(compilation).loadClass("test.Medidor" + MemoizeGenerator.CREATED_CLASS_SUFFIX);
+    }
+
+    private static int getCalls(Class<?> memoizedClass) throws ReflectiveOperationException {
+        return ((AtomicInteger) memoizedClass.getSuperclass().getField("CALLS").get(null)).get();
+    }
+
+    static class CalculadoraToTest {
+        @Memoize(maxSize = 100)
+        public long potencia(int base, int expoente) {
+            long result = 1;
+            for (int i = 0; i < expoente; i++) {
+                result *= base;
+            }
+            return result;
+        }
+
+        @Memoize
+        protected String formatar(float valor, String moeda) throws IOException {
+            return moeda + valor;
+        }
+
+        CalculadoraToTest() {}
+
+        public CalculadoraToTest(String nome) throws IOException {}
+    }
+}
@@ -0,0 +1,468 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import br.me.patterns.annotation.Builder;
+
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.ONIBUS_FIELDS;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.TODOS_FIELDS;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compile;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.compileBuilder;
+import static br.me.patterns.annotation.processor.generator.BuilderFixtures.generate;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class OffHeapViewGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void offHeapBuilder_matchesTemplate() {
+        JavaFile[] generatedFiles = generate(compilationRule, TremBuilder.class);
+
+        assertThat(generatedFiles).hasLength(3);
+        assertThat(generatedFiles[2].toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.IllegalArgumentException;\n" +
+                "import java.lang.IndexOutOfBoundsException;\n" +
+                "import java.lang.Integer;\n" +
+                "import java.lang.String;\n" +
+                "import java.nio.BufferOverflowException;\n" +
+                "import java.nio.ByteBuffer;\n" +
+                "import java.nio.charset.StandardCharsets;\n" +
+                "import java.util.HashMap;\n" +
+                "import java.util.Map;\n" +
+                "\n" +
+                "public final class TremView {\n" +
+                "  private static final int LAYOUT = -415992960;\n" +
+                "\n" +
+                "  private static final int RECORD_SIZE = 24;\n" +
+                "\n" +
+                "  private static final int HEADER_SIZE = 24;\n" +
+                "\n" +
+                "  private static final int LAYOUT_OFFSET = 0;\n" +
+                "\n" +
+                "  private static final int RECORD_SIZE_OFFSET = 4;\n" +
+                "\n" +
+                "  private static final int COUNT_OFFSET = 8;\n" +
+                "\n" +
+                "  private static final int CAPACITY_OFFSET = 12;\n" +
+                "\n" +
+                "  private static final int STRING_END_OFFSET = 16;\n" +
+                "\n" +
+                "  private static final int SERIE_OFFSET = 0;\n" +
+                "\n" +
+                "  private static final int LINHA_OFFSET = 8;\n" +
+                "\n" +
+                "  private static final int VAGOES_OFFSET = 12;\n" +
+                "\n" +
+                "  private static final int VELOCIDADE_OFFSET = 16;\n" +
+                "\n" +
+                "  private static final int FLAGS_OFFSET = 18;\n" +
+                "\n" +
+                "  private ByteBuffer buffer;\n" +
+                "\n" +
+                "  private int offset;\n" +
+                "\n" +
+                "  private int count;\n" +
+                "\n" +
+                "  /**\n" +
+                "   * @return the bytes needed for {@code capacity} records and {@code stringBytes} of UTF-8 strings.\n" +
+                "   */\n" +
+                "  public static long bufferSize(int capacity, long stringBytes) {\n" +
+                "    return HEADER_SIZE + (long) capacity * RECORD_SIZE + stringBytes;\n" +
+                "  }\n" +
+                "\n" +
+                "  public static int count(ByteBuffer buffer) {\n" +
+                "    if (buffer.getInt(LAYOUT_OFFSET) != LAYOUT || buffer.getInt(RECORD_SIZE_OFFSET) != RECORD_SIZE) {\n" +
+                "      throw new IllegalArgumentException(\"Buffer not written with this layout\");\n" +
+                "    }\n" +
+                "    return buffer.getInt(COUNT_OFFSET);\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Points this view at {@code buffer}, after checking its header. The number of records is read now:\n" +
+                "   * records written afterwards are only seen after binding the buffer again.\n" +
+                "   */\n" +
+                "  public TremView bind(ByteBuffer buffer) {\n" +
+                "    this.count = count(buffer);\n" +
+                "    this.buffer = buffer;\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * @return the number of records of the bound buffer when it was bound.\n" +
+                "   */\n" +
+                "  public int count() {\n" +
+                "    return count;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Points this view at record {@code index} of the bound buffer; views are meant to be reused.\n" +
+                "   */\n" +
+                "  public TremView wrap(int index) {\n" +
+                "    if (index < 0 || index >= count) {\n" +
+                "      throw new IndexOutOfBoundsException(\"index: \" + index + \", count: \" + count);\n" +
+                "    }\n" +
+                "    this.offset = HEADER_SIZE + index * RECORD_SIZE;\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public String getLinha() {\n" +
+                "    return readString(buffer, buffer.getInt(offset + LINHA_OFFSET));\n" +
+                "  }\n" +
+                "\n" +
+                "  public TremView setLinha(String linha) {\n" +
+                "    buffer.putInt(offset + LINHA_OFFSET, writeString(buffer, linha));\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public long getSerie() {\n" +
+                "    return buffer.getLong(offset + SERIE_OFFSET);\n" +
+                "  }\n" +
+                "\n" +
+                "  public TremView setSerie(long serie) {\n" +
+                "    buffer.putLong(offset + SERIE_OFFSET, serie);\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public Integer getVagoes() {\n" +
+                "    return (buffer.get(offset + FLAGS_OFFSET) & 1) != 0 ? null : Integer.valueOf(buffer.getInt(offset + VAGOES_OFFSET));\n" +
+                "  }\n" +
+                "\n" +
+                "  public TremView setVagoes(Integer vagoes) {\n" +
+                "    putBit(buffer, offset + FLAGS_OFFSET, 1, vagoes == null);\n" +
+                "    if (vagoes != null) {\n" +
+                "      buffer.putInt(offset + VAGOES_OFFSET, vagoes);\n" +
+                "    }\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public short getVelocidade() {\n" +
+                "    return buffer.getShort(offset + VELOCIDADE_OFFSET);\n" +
+                "  }\n" +
+                "\n" +
+                "  public TremView setVelocidade(short velocidade) {\n" +
+                "    buffer.putShort(offset + VELOCIDADE_OFFSET, velocidade);\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  public boolean isEletrico() {\n" +
+                "    return (buffer.get(offset + FLAGS_OFFSET) & 2) != 0;\n" +
+                "  }\n" +
+                "\n" +
+                "  public TremView setEletrico(boolean eletrico) {\n" +
+                "    putBit(buffer, offset + FLAGS_OFFSET, 2, eletrico);\n" +
+                "    return this;\n" +
+                "  }\n" +
+                "\n" +
+                "  private static void putBit(ByteBuffer buffer, int position, int mask, boolean value) {\n" +
+                "    int flags = buffer.get(position);\n" +
+                "    buffer.put(position, (byte) (value ? flags | mask : flags & ~mask));\n" +
+                "  }\n" +
+                "\n" +
+                "  private static String readString(ByteBuffer buffer, int position) {\n" +
+                "    if (position == 0) {\n" +
+                "      return null;\n" +
+                "    }\n" +
+                "    byte[] bytes = new byte[buffer.getInt(position)];\n" +
+                "    ByteBuffer bytesBuffer = buffer.duplicate();\n" +
+                "    bytesBuffer.position(position + 4);\n" +
+                "    bytesBuffer.get(bytes);\n" +
+                "    return new String(bytes, StandardCharsets.UTF_8);\n" +
+                "  }\n" +
+                "\n" +
+                "  private static int writeString(ByteBuffer buffer, String value) {\n" +
+                "    if (value == null) {\n" +
+                "      return 0;\n" +
+                "    }\n" +
+                "    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);\n" +
+                "    int position = buffer.getInt(STRING_END_OFFSET);\n" +
+                "    if ((long) position + 4 + bytes.length > buffer.limit()) {\n" +
+                "      throw new BufferOverflowException();\n" +
+                "    }\n" +
+                "    buffer.putInt(position, bytes.length);\n" +
+                "    ByteBuffer bytesBuffer = buffer.duplicate();\n" +
+                "    bytesBuffer.position(position + 4);\n" +
+                "    bytesBuffer.put(bytes);\n" +
+                "    buffer.putInt(STRING_END_OFFSET, position + 4 + bytes.length);\n" +
+                "    return position;\n" +
+                "  }\n" +
+                "\n" +
+                "  public static final class Writer {\n" +
+                "    private final ByteBuffer buffer;\n" +
+                "\n" +
+                "    private final Map<String, Integer> dictionary = new HashMap<>();\n" +
+                "\n" +
+                "    public Writer(ByteBuffer buffer, int capacity) {\n" +
+                "      if (capacity < 0 || bufferSize(capacity, 0) > buffer.limit()) {\n" +
+                "        throw new IllegalArgumentException(\"Buffer too small for capacity: \" + capacity);\n" +
+                "      }\n" +
+                "      this.buffer = buffer;\n" +
+                "      buffer.putInt(LAYOUT_OFFSET, LAYOUT);\n" +
+                "      buffer.putInt(RECORD_SIZE_OFFSET, RECORD_SIZE);\n" +
+                "      buffer.putInt(COUNT_OFFSET, 0);\n" +
+                "      buffer.putInt(CAPACITY_OFFSET, capacity);\n" +
+                "      buffer.putInt(STRING_END_OFFSET, HEADER_SIZE + capacity * RECORD_SIZE);\n" +
+                "    }\n" +
+                "\n" +
+                "    /**\n" +
+                "     * @return the index of the new record.\n" +
+                "     */\n" +
+                "    public int write(TremBuilder_ builder) {\n" +
+                "      int index = buffer.getInt(COUNT_OFFSET);\n" +
+                "      if (index == buffer.getInt(CAPACITY_OFFSET)) {\n" +
+                "        throw new BufferOverflowException();\n" +
+                "      }\n" +
+                "      int position = HEADER_SIZE + index * RECORD_SIZE;\n" +
+                "      buffer.putInt(position + LINHA_OFFSET, writeDictionaryString(builder.linha));\n" +
+                "      buffer.putLong(position + SERIE_OFFSET, builder.serie);\n" +
+                "      putBit(buffer, position + FLAGS_OFFSET, 1, builder.vagoes == null);\n" +
+                "      if (builder.vagoes != null) {\n" +
+                "        buffer.putInt(position + VAGOES_OFFSET, builder.vagoes);\n" +
+                "      }\n" +
+                "      buffer.putShort(position + VELOCIDADE_OFFSET, builder.velocidade);\n" +
+                "      putBit(buffer, position + FLAGS_OFFSET, 2, builder.eletrico);\n" +
+                "      buffer.putInt(COUNT_OFFSET, index + 1);\n" +
+                "      return index;\n" +
+                "    }\n" +
+                "\n" +
+                "    private int writeDictionaryString(String value) {\n" +
+                "      if (value == null) {\n" +
+                "        return 0;\n" +
+                "      }\n" +
+                "      Integer position = dictionary.get(value);\n" +
+                "      if (position == null) {\n" +
+                "        position = writeString(buffer, value);\n" +
+                "        dictionary.put(value, position);\n" +
+                "      }\n" +
+                "      return position;\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void offHeap_writesAndReadsEveryTypeInPlace() throws Exception {
+        ClassLoader classLoader = compileBuilder("TodosBuilder", "@Builder(offHeap = true)", TODOS_FIELDS);
+        Class<?> builderClass = classLoader.loadClass("test.TodosBuilder_");
+        Class<?> viewClass = classLoader.loadClass("test.TodosView");
+        Class<?> writerClass = classLoader.loadClass("test.TodosView$Writer");
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) (long) viewClass.getMethod(OffHeapViewGenerator.BUFFER_SIZE_METHOD_NAME, int.class, long.class).invoke(null, 2, 32));
+        Object writer = writerClass.getConstructor(ByteBuffer.class, int.class).newInstance(buffer, 2);
+        Method write = writerClass.getMethod(OffHeapViewGenerator.WRITE_METHOD_NAME, builderClass);
+
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setTexto", String.class).invoke(builder, "a\u00e7\u00e3o");
+        builderClass.getMethod("setInteiro", int.class).invoke(builder, -5);
+        builderClass.getMethod("setLongo", long.class).invoke(builder, Long.MIN_VALUE);
+        builderClass.getMethod("setCurto", short.class).invoke(builder, (short) 300);
+        builderClass.getMethod("setOcteto", byte.class).invoke(builder, (byte) -1);
+        builderClass.getMethod("setLetra", char.class).invoke(builder, 'z');
+        builderClass.getMethod("setReal", float.class).invoke(builder, 1.5f);
+        builderClass.getMethod("setDuplo", double.class).invoke(builder, -0.25);
+        builderClass.getMethod("setLigado", boolean.class).invoke(builder, true);
+        builderClass.getMethod("setCaixa", Integer.class).invoke(builder, 7);
+        builderClass.getMethod("setTalvez", Boolean.class).invoke(builder, false);
+        assertThat(write.invoke(writer, builder)).isEqualTo(0);
+        builderClass.getMethod("setCaixa", Integer.class).invoke(builder, (Object) null);
+        builderClass.getMethod("setLigado", boolean.class).invoke(builder, false);
+        assertThat(write.invoke(writer, builder)).isEqualTo(1);
+
+        Object view = viewClass.getConstructor().newInstance();
+        Method wrap = viewClass.getMethod(OffHeapViewGenerator.WRAP_METHOD_NAME, int.class);
+        assertThat(viewClass.getMethod(OffHeapViewGenerator.COUNT_METHOD_NAME, ByteBuffer.class).invoke(null, buffer)).isEqualTo(2);
+        assertThat(viewClass.getMethod(OffHeapViewGenerator.BIND_METHOD_NAME, ByteBuffer.class).invoke(view, buffer)).isSameAs(view);
+        assertThat(viewClass.getMethod(OffHeapViewGenerator.COUNT_METHOD_NAME).invoke(view)).isEqualTo(2);
+        assertThat(wrap.invoke(view, 0)).isSameAs(view);
+        assertThat(viewClass.getMethod("getTexto").invoke(view)).isEqualTo("a\u00e7\u00e3o");
+        assertThat(viewClass.getMethod("getInteiro").invoke(view)).isEqualTo(-5);
+        assertThat(viewClass.getMethod("getLongo").invoke(view)).isEqualTo(Long.MIN_VALUE);
+        assertThat(viewClass.getMethod("getCurto").invoke(view)).isEqualTo((short) 300);
+        assertThat(viewClass.getMethod("getOcteto").invoke(view)).isEqualTo((byte) -1);
+        assertThat(viewClass.getMethod("getLetra").invoke(view)).isEqualTo('z');
+        assertThat(viewClass.getMethod("getReal").invoke(view)).isEqualTo(1.5f);
+        assertThat(viewClass.getMethod("getDuplo").invoke(view)).isEqualTo(-0.25);
+        assertThat(viewClass.getMethod("isLigado").invoke(view)).isEqualTo(true);
+        assertThat(viewClass.getMethod("getCaixa").invoke(view)).isEqualTo(7);
+        assertThat(viewClass.getMethod("getTalvez").invoke(view)).isEqualTo(false);
+        assertThat(viewClass.getMethod("getGrande").invoke(view)).isNull();
+        assertThat(viewClass.getMethod("getSimbolo").invoke(view)).isNull();
+
+        wrap.invoke(view, 1);
+        assertThat(viewClass.getMethod("getTexto").invoke(view)).isEqualTo("a\u00e7\u00e3o");
+        assertThat(viewClass.getMethod("getCaixa").invoke(view)).isNull();
+        assertThat(viewClass.getMethod("isLigado").invoke(view)).isEqualTo(false);
+
+        viewClass.getMethod("setCaixa", Integer.class).invoke(view, 9);
+        viewClass.getMethod("setLigado", boolean.class).invoke(view, true);
+        viewClass.getMethod("setTexto", String.class).invoke(view, (Object) null);
+        assertThat(viewClass.getMethod("getCaixa").invoke(view)).isEqualTo(9);
+        assertThat(viewClass.getMethod("isLigado").invoke(view)).isEqualTo(true);
+        assertThat(viewClass.getMethod("getTexto").invoke(view)).isNull();
+        assertThat(viewClass.getMethod("getTalvez").invoke(view)).isEqualTo(false);
+
+        viewClass.getMethod("setTexto", String.class).invoke(view, "trem bala");
+        assertThat(viewClass.getMethod("getTexto").invoke(view)).isEqualTo("trem bala");
+        assertThat(buffer.position()).isEqualTo(0);
+    }
+
+    @Test
+    public void offHeap_storesEqualStringsOnceAndRejectsOverflow() throws Exception {
+        ClassLoader classLoader = compileBuilder("OnibusBuilder", "@Builder(offHeap = true)", ONIBUS_FIELDS);
+        Class<?> builderClass = classLoader.loadClass("test.OnibusBuilder_");
+        Class<?> viewClass = classLoader.loadClass("test.OnibusView");
+        Class<?> writerClass = classLoader.loadClass("test.OnibusView$Writer");
+        ByteBuffer buffer = ByteBuffer.allocate((int) (long) viewClass.getMethod(OffHeapViewGenerator.BUFFER_SIZE_METHOD_NAME, int.class, long.class).invoke(null, 100, 8));
+        Object writer = writerClass.getConstructor(ByteBuffer.class, int.class).newInstance(buffer, 100);
+        Method write = writerClass.getMethod(OffHeapViewGenerator.WRITE_METHOD_NAME, builderClass);
+        Object builder = builderClass.getConstructor().newInstance();
+        builderClass.getMethod("setLinha", String.class).invoke(builder, "875A");
+
+        for (int i = 0; i < 100; i++) {
+            builderClass.getMethod("setLugares", int.class).invoke(builder, i);
+            write.invoke(writer, builder);
+        }
+
+        try {
+            write.invoke(writer, builder);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(BufferOverflowException.class);
+        }
+
+        Object view = viewClass.getConstructor().newInstance();
+        try {
+            viewClass.getMethod(OffHeapViewGenerator.WRAP_METHOD_NAME, int.class).invoke(view, 0);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IndexOutOfBoundsException.class);
+        }
+
+        viewClass.getMethod(OffHeapViewGenerator.BIND_METHOD_NAME, ByteBuffer.class).invoke(view, buffer);
+        viewClass.getMethod(OffHeapViewGenerator.WRAP_METHOD_NAME, int.class).invoke(view, 99);
+        assertThat(viewClass.getMethod("getLugares").invoke(view)).isEqualTo(99);
+        try {
+            viewClass.getMethod("setLinha", String.class).invoke(view, "875A");
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(BufferOverflowException.class);
+        }
+
+        try {
+            viewClass.getMethod(OffHeapViewGenerator.WRAP_METHOD_NAME, int.class).invoke(view, 100);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IndexOutOfBoundsException.class);
+        }
+    }
+
+    @Test
+    public void offHeap_seesRecordsWrittenAfterBindOnceBoundAgain() throws Exception {
+        ClassLoader classLoader = compileBuilder("OnibusBuilder", "@Builder(offHeap = true)", ONIBUS_FIELDS);
+        Class<?> builderClass = classLoader.loadClass("test.OnibusBuilder_");
+        Class<?> viewClass = classLoader.loadClass("test.OnibusView");
+        Class<?> writerClass = classLoader.loadClass("test.OnibusView$Writer");
+        ByteBuffer buffer = ByteBuffer.allocate((int) (long) viewClass.getMethod(OffHeapViewGenerator.BUFFER_SIZE_METHOD_NAME, int.class, long.class).invoke(null, 2, 0));
+        Object writer = writerClass.getConstructor(ByteBuffer.class, int.class).newInstance(buffer, 2);
+        Method write = writerClass.getMethod(OffHeapViewGenerator.WRITE_METHOD_NAME, builderClass);
+        Method bind = viewClass.getMethod(OffHeapViewGenerator.BIND_METHOD_NAME, ByteBuffer.class);
+        Method wrap = viewClass.getMethod(OffHeapViewGenerator.WRAP_METHOD_NAME, int.class);
+        Object builder = builderClass.getConstructor().newInstance();
+        Object view = viewClass.getConstructor().newInstance();
+
+        write.invoke(writer, builderClass.getMethod("setLugares", int.class).invoke(builder, 40));
+        bind.invoke(view, buffer);
+        write.invoke(writer, builderClass.getMethod("setLugares", int.class).invoke(builder, 80));
+        try {
+            wrap.invoke(view, 1);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IndexOutOfBoundsException.class);
+        }
+
+        bind.invoke(view, buffer);
+        assertThat(viewClass.getMethod(OffHeapViewGenerator.COUNT_METHOD_NAME).invoke(view)).isEqualTo(2);
+        assertThat(viewClass.getMethod("getLugares").invoke(wrap.invoke(view, 1))).isEqualTo(80);
+    }
+
+    @Test
+    public void offHeap_readsAMappedFileWrittenBefore() throws Exception {
+        ClassLoader classLoader = compileBuilder("OnibusBuilder", "@Builder(offHeap = true)", ONIBUS_FIELDS);
+        Class<?> builderClass = classLoader.loadClass("test.OnibusBuilder_");
+        Class<?> viewClass = classLoader.loadClass("test.OnibusView");
+        Class<?> writerClass = classLoader.loadClass("test.OnibusView$Writer");
+        long size = (long) viewClass.getMethod(OffHeapViewGenerator.BUFFER_SIZE_METHOD_NAME, int.class, long.class).invoke(null, 10, 100);
+        File file = temporaryFolder.newFile("onibus.bin");
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Object writer = writerClass.getConstructor(ByteBuffer.class, int.class)
+                    .newInstance(channel.map(FileChannel.MapMode.READ_WRITE, 0, size), 10);
+            Object builder = builderClass.getConstructor().newInstance();
+            for (int i = 0; i < 10; i++) {
+                builderClass.getMethod("setLinha", String.class).invoke(builder, "L" + i);
+                builderClass.getMethod("setArticulado", boolean.class).invoke(builder, i % 2 == 0);
+                writerClass.getMethod(OffHeapViewGenerator.WRITE_METHOD_NAME, builderClass).invoke(writer, builder);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Object view = viewClass.getConstructor().newInstance();
+            assertThat(viewClass.getMethod(OffHeapViewGenerator.COUNT_METHOD_NAME, ByteBuffer.class).invoke(null, buffer)).isEqualTo(10);
+            viewClass.getMethod(OffHeapViewGenerator.BIND_METHOD_NAME, ByteBuffer.class).invoke(view, buffer);
+            for (int i = 0; i < 10; i++) {
+                viewClass.getMethod(OffHeapViewGenerator.WRAP_METHOD_NAME, int.class).invoke(view, i);
+                assertThat(viewClass.getMethod("getLinha").invoke(view)).isEqualTo("L" + i);
+                assertThat(viewClass.getMethod("isArticulado").invoke(view)).isEqualTo(i % 2 == 0);
+            }
+        }
+
+        try {
+            viewClass.getMethod(OffHeapViewGenerator.COUNT_METHOD_NAME, ByteBuffer.class).invoke(null, ByteBuffer.allocate(64));
+            fail();
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void offHeap_withUnsupportedFieldType_failsTheCompilation() {
+        Compilation compilation = compile("ListaBuilder", "@Builder(offHeap = true)", "java.util.List<String> itens;");
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Tipo nao suportado pelo layout off-heap: java.util.List<java.lang.String> itens");
+    }
+
+    @Builder(offHeap = true)
+    static class TremBuilder {
+        String linha;
+        long serie;
+        Integer vagoes;
+        short velocidade;
+        boolean eletrico;
+    }
+}
@@ -0,0 +1,430 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.CompilationRule;
+import com.google.testing.compile.JavaFileObjects;
+import com.squareup.javapoet.JavaFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.lang.model.element.TypeElement;
+
+import br.me.patterns.annotation.Pooled;
+import br.me.patterns.annotation.processor.PatternsProcessor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public class PoolGeneratorUnitTest {
+
+    @Rule
+    public CompilationRule compilationRule = new CompilationRule();
+
+    @Test
+    public void generatedFileContent_matchesTemplate() {
+        TypeElement element = compilationRule.getElements().getTypeElement(PacoteToTest.class.getCanonicalName());
+        JavaFile generatedFile = PoolGenerator.generate(element);
+
+        assertThat(generatedFile.toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.Integer;\n" +
+                "import java.lang.Math;\n" +
+                "import java.lang.Runtime;\n" +
+                "import java.lang.Thread;\n" +
+                "import java.util.concurrent.atomic.AtomicIntegerArray;\n" +
+                "import java.util.concurrent.atomic.AtomicLong;\n" +
+                "\n" +
+                "final class PacoteToTest_ {\n" +
+                "  private static final int CAPACITY = 16;\n" +
+                "\n" +
+                "  private static final int STRIPES = Math.min(CAPACITY, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1));\n" +
+                "\n" +
+                "  private static final int PADDING = 16;\n" +
+                "\n" +
+                "  private static final int SLOTS = CAPACITY / STRIPES;\n" +
+                "\n" +
+                "  private static final int STRIDE = SLOTS + PADDING;\n" +
+                "\n" +
+                "  private static final PoolGeneratorUnitTest.PacoteToTest[] POOL = new PoolGeneratorUnitTest.PacoteToTest[STRIPES * STRIDE];\n" +
+                "\n" +
+                "  private static final AtomicIntegerArray SIZES = new AtomicIntegerArray(STRIPES * PADDING);\n" +
+                "\n" +
+                "  private static final PoolGeneratorUnitTest.PacoteToTest DEFAULTS = new PoolGeneratorUnitTest.PacoteToTest();\n" +
+                "\n" +
+                "  private static final AtomicLong CREATED = new AtomicLong();\n" +
+                "\n" +
+                "  private static final AtomicLong DROPPED = new AtomicLong();\n" +
+                "\n" +
+                "  private PacoteToTest_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * @return a released instance, or a new one when the pool has none.\n" +
+                "   */\n" +
+                "  public static PoolGeneratorUnitTest.PacoteToTest acquire() {\n" +
+                "    PoolGeneratorUnitTest.PacoteToTest object = poll();\n" +
+                "    if (object == null) {\n" +
+                "      CREATED.incrementAndGet();\n" +
+                "      object = new PoolGeneratorUnitTest.PacoteToTest();\n" +
+                "    }\n" +
+                "    return object;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Resets {@code object} and keeps it for a later {@code acquire()}, unless the pool is full. The\n" +
+                "   * caller must not use it any more.\n" +
+                "   */\n" +
+                "  public static void release(PoolGeneratorUnitTest.PacoteToTest object) {\n" +
+                "    reset(object);\n" +
+                "    if (! offer(object)) {\n" +
+                "      DROPPED.incrementAndGet();\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  static void reset(PoolGeneratorUnitTest.PacoteToTest object) {\n" +
+                "    object.tamanho = DEFAULTS.tamanho;\n" +
+                "    object.recebidoEm = DEFAULTS.recebidoEm;\n" +
+                "    object.origem = DEFAULTS.origem;\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Instances created by {@code acquire()} because the pool had none to give.\n" +
+                "   */\n" +
+                "  public static long created() {\n" +
+                "    return CREATED.get();\n" +
+                "  }\n" +
+                "\n" +
+                "  /**\n" +
+                "   * Instances released to a full pool and left to the garbage collector.\n" +
+                "   */\n" +
+                "  public static long dropped() {\n" +
+                "    return DROPPED.get();\n" +
+                "  }\n" +
+                "\n" +
+                "  private static PoolGeneratorUnitTest.PacoteToTest poll() {\n" +
+                "    int start = stripeIndex();\n" +
+                "    for (int i = 0; i < STRIPES; i++) {\n" +
+                "      int stripe = (start + i) & (STRIPES - 1);\n" +
+                "      int size = SIZES.get(stripe * PADDING);\n" +
+                "      if (size > 0 && SIZES.compareAndSet(stripe * PADDING, size, -1)) {\n" +
+                "        int slot = stripe * STRIDE + --size;\n" +
+                "        PoolGeneratorUnitTest.PacoteToTest object = POOL[slot];\n" +
+                "        POOL[slot] = null;\n" +
+                "        SIZES.lazySet(stripe * PADDING, size);\n" +
+                "        return object;\n" +
+                "      }\n" +
+                "    }\n" +
+                "    return null;\n" +
+                "  }\n" +
+                "\n" +
+                "  private static boolean offer(PoolGeneratorUnitTest.PacoteToTest object) {\n" +
+                "    int start = stripeIndex();\n" +
+                "    for (int i = 0; i < STRIPES; i++) {\n" +
+                "      int stripe = (start + i) & (STRIPES - 1);\n" +
+                "      int size = SIZES.get(stripe * PADDING);\n" +
+                "      if (size >= 0 && size < SLOTS && SIZES.compareAndSet(stripe * PADDING, size, -1)) {\n" +
+                "        POOL[stripe * STRIDE + size] = object;\n" +
+                "        SIZES.lazySet(stripe * PADDING, size + 1);\n" +
+                "        return true;\n" +
+                "      }\n" +
+                "    }\n" +
+                "    return false;\n" +
+                "  }\n" +
+                "\n" +
+                "  private static int stripeIndex() {\n" +
+                "    long id = Thread.currentThread().getId();\n" +
+                "    int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;\n" +
+                "    return (hash ^ (hash >>> 16)) & (STRIPES - 1);\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void capacity_isRoundedUpToAPowerOfTwo() {
+        assertThat(PoolGenerator.getCapacity(1)).isEqualTo(1);
+        assertThat(PoolGenerator.getCapacity(3)).isEqualTo(4);
+        assertThat(PoolGenerator.getCapacity(64)).isEqualTo(64);
+        assertThat(PoolGenerator.getCapacity(65)).isEqualTo(128);
+    }
+
+    @Test
+    public void releasedInstances_areReusedAfterTheGeneratedReset() throws Exception {
+        Class<?> poolClass = compilePool("@Pooled", "");
+        Method acquire = poolClass.getMethod(PoolGenerator.ACQUIRE_METHOD_NAME);
+        Method release = poolClass.getMethod(PoolGenerator.RELEASE_METHOD_NAME, acquire.getReturnType());
+
+        Object buffer = acquire.invoke(null);
+        Object data = getField(buffer, "data");
+        setField(buffer, "length", 12);
+        setField(buffer, "owner", "teste");
+        setField(buffer, "retries", 3);
+        release.invoke(null, buffer);
+
+        Object reused = acquire.invoke(null);
+        assertThat(reused).isSameAs(buffer);
+        assertThat(getField(reused, "data")).isSameAs(data);
+        assertThat(getField(reused, "length")).isEqualTo(0);
+        assertThat(getField(reused, "owner")).isEqualTo("livre");
+        assertThat(getField(reused, "retries")).isNull();
+        assertThat(acquire.invoke(null)).isNotSameAs(buffer);
+
+        assertThat(poolClass.getMethod("created").invoke(null)).isEqualTo(2L);
+        assertThat(poolClass.getMethod("dropped").invoke(null)).isEqualTo(0L);
+    }
+
+    @Test
+    public void userReset_isCalledInsteadOfTheGeneratedOne() throws Exception {
+        Class<?> poolClass = compilePool("@Pooled", "    void reset() { length = -1; }");
+        Method acquire = poolClass.getMethod(PoolGenerator.ACQUIRE_METHOD_NAME);
+        Method release = poolClass.getMethod(PoolGenerator.RELEASE_METHOD_NAME, acquire.getReturnType());
+
+        Object buffer = acquire.invoke(null);
+        setField(buffer, "owner", "teste");
+        release.invoke(null, buffer);
+
+        assertThat(getField(buffer, "length")).isEqualTo(-1);
+        assertThat(getField(buffer, "owner")).isEqualTo("teste");
+    }
+
+    @Test
+    public void fullPool_dropsReleasedInstances() throws Exception {
+        Class<?> poolClass = compilePool("@Pooled(capacity = 3)", "");
+        Method acquire = poolClass.getMethod(PoolGenerator.ACQUIRE_METHOD_NAME);
+        Method release = poolClass.getMethod(PoolGenerator.RELEASE_METHOD_NAME, acquire.getReturnType());
+
+        List<Object> buffers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            buffers.add(acquire.invoke(null));
+        }
+        for (Object buffer : buffers) {
+            release.invoke(null, buffer);
+        }
+
+        assertThat(poolClass.getMethod("created").invoke(null)).isEqualTo(10L);
+        assertThat(poolClass.getMethod("dropped").invoke(null)).isEqualTo(6L);
+
+        Set<Object> reused = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < 4; i++) {
+            reused.add(acquire.invoke(null));
+        }
+        assertThat(reused).hasSize(4);
+        assertThat(buffers).containsAllIn(reused);
+        assertThat(poolClass.getMethod("created").invoke(null)).isEqualTo(10L);
+
+        acquire.invoke(null);
+        assertThat(poolClass.getMethod("created").invoke(null)).isEqualTo(11L);
+    }
+
+    @Test
+    public void threadScope_keepsInstancesInTheReleasingThread() throws Exception {
+        Class<?> poolClass = compilePool("@Pooled(capacity = 2, scope = Pooled.Scope.THREAD)", "");
+        Method acquire = poolClass.getMethod(PoolGenerator.ACQUIRE_METHOD_NAME);
+        Method release = poolClass.getMethod(PoolGenerator.RELEASE_METHOD_NAME, acquire.getReturnType());
+
+        Object buffer = acquire.invoke(null);
+        release.invoke(null, buffer);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertThat(executor.submit(() -> acquire.invoke(null)).get()).isNotSameAs(buffer);
+            executor.submit(() -> {
+                for (int i = 0; i < 3; i++) {
+                    release.invoke(null, acquire.getReturnType().getDeclaredConstructor().newInstance());
+                }
+                return null;
+            }).get();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(acquire.invoke(null)).isSameAs(buffer);
+        assertThat(poolClass.getMethod("created").invoke(null)).isEqualTo(2L);
+        assertThat(poolClass.getMethod("dropped").invoke(null)).isEqualTo(1L);
+    }
+
+    @Test
+    public void concurrentCalls_neverHandOutAnInstanceTwice() throws Exception {
+        Class<?> poolClass = compilePool("@Pooled(capacity = 8)", "");
+        Method acquire = poolClass.getMethod(PoolGenerator.ACQUIRE_METHOD_NAME);
+        Method release = poolClass.getMethod(PoolGenerator.RELEASE_METHOD_NAME, acquire.getReturnType());
+        Field length = acquire.getReturnType().getDeclaredField("length");
+        length.setAccessible(true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int owner = t + 1;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        Object first = acquire.invoke(null);
+                        Object second = acquire.invoke(null);
+                        assertThat(length.getInt(first)).isEqualTo(0);
+                        assertThat(length.getInt(second)).isEqualTo(0);
+                        length.setInt(first, owner);
+                        length.setInt(second, owner);
+                        Thread.yield();
+                        assertThat(length.getInt(first)).isEqualTo(owner);
+                        assertThat(length.getInt(second)).isEqualTo(owner);
+                        release.invoke(null, second);
+                        release.invoke(null, first);
+                    }
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long created = (Long) poolClass.getMethod("created").invoke(null);
+        long dropped = (Long) poolClass.getMethod("dropped").invoke(null);
+        assertThat(created).isAtMost(320_000L);
+        assertThat(created - dropped).isAtMost(8L);
+    }
+
+    @Test
+    public void leakDetection_reportsDoubleReleasesAndLeaks() throws Exception {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor())
+                .withOptions("-Apatterns.leakDetection=true")
+                .compile(getBufferSource("@Pooled", ""));
+        assertThat(compilation).succeeded();
+
+        Class<?> poolClass = new GeneratedClassLoader(compilation).loadClass("test.Buffer" + PoolGenerator.CREATED_CLASS_SUFFIX);
+        Method acquire = poolClass.getMethod(PoolGenerator.ACQUIRE_METHOD_NAME);
+        Method release = poolClass.getMethod(PoolGenerator.RELEASE_METHOD_NAME, acquire.getReturnType());
+        Method leaks = poolClass.getMethod("leaks");
+
+        Object buffer = acquire.invoke(null);
+        release.invoke(null, buffer);
+        try {
+            release.invoke(null, buffer);
+            fail("Expected IllegalStateException");
+        } catch (InvocationTargetException e) {
+            assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+            assertThat(e.getCause()).hasMessageThat().isEqualTo("Buffer released twice or not acquired from the pool");
+        }
+
+        Object kept = acquire.invoke(null);
+        for (int i = 0; i < 10; i++) {
+            acquire.invoke(null);
+        }
+
+        for (int i = 0; i < 50 && (Long) leaks.invoke(null) < 10; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        assertThat(leaks.invoke(null)).isEqualTo(10L);
+        release.invoke(null, kept);
+    }
+
+    @Test
+    public void invalidPools_failTheCompilation() {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(
+                JavaFileObjects.forSourceLines("test.Conexao",
+                        "package test;",
+                        "",
+                        "import br.me.patterns.annotation.Pooled;",
+                        "",
+                        "@Pooled(capacity = 0)",
+                        "public class Conexao {",
+                        "    private int porta;",
+                        "    StringBuilder log;",
+                        "    final byte[] buffer = new byte[16];",
+                        "    String host;",
+                        "}"),
+                JavaFileObjects.forSourceLines("test.SemConstrutor",
+                        "package test;",
+                        "",
+                        "@br.me.patterns.annotation.Pooled",
+                        "@br.me.patterns.annotation.Flyweight",
+                        "public class SemConstrutor {",
+                        "    final String nome;",
+                        "    SemConstrutor(String nome) { this.nome = nome; }",
+                        "}"),
+                JavaFileObjects.forSourceLines("test.Enorme",
+                        "package test;",
+                        "",
+                        "@br.me.patterns.annotation.Pooled(capacity = (1 << 30) + 1)",
+                        "public class Enorme {",
+                        "}"));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Capacidade invalida em @Pooled: 0 test.Conexao");
+        assertThat(compilation).hadErrorContaining("Capacidade invalida em @Pooled: 1073741825 test.Enorme");
+        assertThat(compilation).hadErrorContaining("@Pooled precisa de um metodo reset() para o campo: porta");
+        assertThat(compilation).hadErrorContaining("@Pooled precisa de um metodo reset() para o campo: log");
+        assertThat(compilation).hadErrorContaining("@Pooled so pode ser usado em classes concretas, nao genericas, nao internas e com construtor sem parametros nao privado: test.SemConstrutor");
+        assertThat(compilation).hadErrorContaining("@Pooled nao pode ser usado junto com @Singleton nem @Flyweight: test.SemConstrutor");
+    }
+
+    private static Class<?> compilePool(String annotation, String resetMethod) throws ClassNotFoundException {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(getBufferSource(annotation, resetMethod));
+
+        assertThat(compilation).succeeded();
+        return new GeneratedClassLoader(compilation).loadClass("test.Buffer" + PoolGenerator.CREATED_CLASS_SUFFIX);
+    }
+
+    private static javax.tools.JavaFileObject getBufferSource(String annotation, String resetMethod) {
+        return JavaFileObjects.forSourceLines("test.Buffer",
+                "package test;",
+                "",
+                "import br.me.patterns.annotation.Pooled;",
+                "",
+                annotation,
+                "public class Buffer {",
+                "    final byte[] data = new byte[1024];",
+                "    int length;",
+                "    String owner = \"livre\";",
+                "    Integer retries;",
+                "",
+                resetMethod,
+                "}");
+    }
+
+    private static Object getField(Object object, String name) throws ReflectiveOperationException {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(object);
+    }
+
+    private static void setField(Object object, String name, Object value) throws ReflectiveOperationException {
+        Field field = object.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(object, value);
+    }
+
+    @Pooled(capacity = 12)
+    static class PacoteToTest {
+        static final int TAMANHO_MAXIMO = 1500;
+
+        final byte[] dados = new byte[TAMANHO_MAXIMO];
+        int tamanho;
+        long recebidoEm = -1;
+        String origem;
+    }
+}
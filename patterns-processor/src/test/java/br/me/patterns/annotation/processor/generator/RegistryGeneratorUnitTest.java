@@ -0,0 +1,208 @@
+package br.me.patterns.annotation.processor.generator;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.tools.JavaFileObject;
+
+import br.me.patterns.annotation.processor.PatternsProcessor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+@RunWith(JUnit4.class)
+public class RegistryGeneratorUnitTest {
+
+    private static final String REGISTRY_PACKAGE = "test.registry";
+
+    private static final JavaFileObject MATH_SINGLETON = JavaFileObjects.forSourceLines("test.MathSingleton",
+            "package test;",
+            "",
+            "import br.me.patterns.annotation.Singleton;",
+            "",
+            "@Singleton",
+            "public class MathSingleton {",
+            "    public static int created;",
+            "",
+            "    MathSingleton() { created++; }",
+            "}");
+
+    private static final JavaFileObject SERVICES = JavaFileObjects.forSourceLines("test.Services",
+            "package test;",
+            "",
+            "import br.me.patterns.annotation.Singleton;",
+            "",
+            "public class Services {",
+            "    @Singleton(strategy = Singleton.Strategy.LAZY_HOLDER, prewarm = true)",
+            "    public static class Clock {",
+            "        public static int created;",
+            "",
+            "        Clock() { created++; }",
+            "    }",
+            "}");
+
+    @Test
+    public void generatedFileContent_matchesTemplate() {
+        Compilation compilation = compileWithRegistry();
+
+        assertThat(compilation).generatedSourceFile(REGISTRY_PACKAGE + "." + RegistryGenerator.REGISTRY_CLASS_NAME)
+                .contentsAsUtf8String().isEqualTo("" +
+                "package test.registry;\n" +
+                "\n" +
+                "import java.lang.Class;\n" +
+                "import java.lang.IllegalArgumentException;\n" +
+                "import java.lang.IndexOutOfBoundsException;\n" +
+                "import java.lang.Object;\n" +
+                "import java.lang.Override;\n" +
+                "import java.lang.Runnable;\n" +
+                "import java.util.concurrent.Executor;\n" +
+                "import test.Clock_;\n" +
+                "import test.MathSingleton;\n" +
+                "import test.MathSingleton_;\n" +
+                "import test.Services;\n" +
+                "\n" +
+                "public final class GeneratedSingletons {\n" +
+                "  private static final int[] PREWARM = {1};\n" +
+                "\n" +
+                "  private GeneratedSingletons() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public static int size() {\n" +
+                "    return 2;\n" +
+                "  }\n" +
+                "\n" +
+                "  public static Class<?> type(int index) {\n" +
+                "    switch (index) {\n" +
+                "      case 0:\n" +
+                "        return MathSingleton.class;\n" +
+                "      case 1:\n" +
+                "        return Services.Clock.class;\n" +
+                "      default:\n" +
+                "        throw new IndexOutOfBoundsException(\"index: \" + index);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  public static Object get(int index) {\n" +
+                "    switch (index) {\n" +
+                "      case 0:\n" +
+                "        return MathSingleton_.getInstance();\n" +
+                "      case 1:\n" +
+                "        return Clock_.getInstance();\n" +
+                "      default:\n" +
+                "        throw new IndexOutOfBoundsException(\"index: \" + index);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  public static int indexOf(Class<?> type) {\n" +
+                "    switch (type.getName()) {\n" +
+                "      case \"test.MathSingleton\":\n" +
+                "        return 0;\n" +
+                "      case \"test.Services$Clock\":\n" +
+                "        return 1;\n" +
+                "      default:\n" +
+                "        return -1;\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  public static <T> T get(Class<T> type) {\n" +
+                "    int index = indexOf(type);\n" +
+                "    if (index < 0) {\n" +
+                "      throw new IllegalArgumentException(\"Not a @Singleton: \" + type.getName());\n" +
+                "    }\n" +
+                "    return type.cast(get(index));\n" +
+                "  }\n" +
+                "\n" +
+                "  public static void prewarm(Executor executor) {\n" +
+                "    for (int index : PREWARM) {\n" +
+                "      executor.execute(new Prewarm(index));\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  private static final class Prewarm implements Runnable {\n" +
+                "    private final int index;\n" +
+                "\n" +
+                "    Prewarm(int index) {\n" +
+                "      this.index = index;\n" +
+                "    }\n" +
+                "\n" +
+                "    @Override\n" +
+                "    public void run() {\n" +
+                "      get(index);\n" +
+                "    }\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void registry_looksUpSingletonsByIndexAndByType() throws Exception {
+        ClassLoader classLoader = new GeneratedClassLoader(compileWithRegistry());
+        Class<?> registry = classLoader.loadClass(REGISTRY_PACKAGE + "." + RegistryGenerator.REGISTRY_CLASS_NAME);
+        Class<?> mathSingleton = classLoader.loadClass("test.MathSingleton");
+        Class<?> clock = classLoader.loadClass("test.Services$Clock");
+
+        assertThat(registry.getMethod(RegistryGenerator.SIZE_METHOD_NAME).invoke(null)).isEqualTo(2);
+        assertThat(registry.getMethod(RegistryGenerator.TYPE_METHOD_NAME, int.class).invoke(null, 0)).isEqualTo(mathSingleton);
+        assertThat(registry.getMethod(RegistryGenerator.INDEX_OF_METHOD_NAME, Class.class).invoke(null, clock)).isEqualTo(1);
+        assertThat(registry.getMethod(RegistryGenerator.INDEX_OF_METHOD_NAME, Class.class).invoke(null, String.class)).isEqualTo(-1);
+
+        Object instance = registry.getMethod(RegistryGenerator.GET_METHOD_NAME, Class.class).invoke(null, clock);
+        assertThat(instance).isInstanceOf(clock);
+        assertThat(registry.getMethod(RegistryGenerator.GET_METHOD_NAME, int.class).invoke(null, 1)).isSameAs(instance);
+        assertThat(classLoader.loadClass("test.Clock_").getMethod(SingletonGenerator.GET_INSTANCE_METHOD_NAME).invoke(null)).isSameAs(instance);
+    }
+
+    @Test
+    public void prewarm_createsOnlySelectedSingletonsOnTheExecutor() throws Exception {
+        ClassLoader classLoader = new GeneratedClassLoader(compileWithRegistry());
+        Class<?> registry = classLoader.loadClass(REGISTRY_PACKAGE + "." + RegistryGenerator.REGISTRY_CLASS_NAME);
+        Class<?> clock = classLoader.loadClass("test.Services$Clock");
+        List<Runnable> tasks = new ArrayList<>();
+
+        registry.getMethod(RegistryGenerator.PREWARM_METHOD_NAME, Executor.class).invoke(null, (Executor) tasks::add);
+
+        assertThat(tasks).hasSize(1);
+        assertThat(clock.getField("created").getInt(null)).isEqualTo(0);
+
+        tasks.get(0).run();
+
+        assertThat(clock.getField("created").getInt(null)).isEqualTo(1);
+        assertThat(classLoader.loadClass("test.MathSingleton").getField("created").getInt(null)).isEqualTo(0);
+    }
+
+    @Test
+    public void prewarmOfThreadSingleton_failsTheCompilation() {
+        Compilation compilation = javac()
+                .withProcessors(new PatternsProcessor())
+                .withOptions("-Apatterns.registry=" + REGISTRY_PACKAGE)
+                .compile(JavaFileObjects.forSourceLines("test.PorThread",
+                        "package test;",
+                        "",
+                        "import br.me.patterns.annotation.Singleton;",
+                        "",
+                        "@Singleton(scope = Singleton.Scope.THREAD, prewarm = true)",
+                        "public class PorThread {",
+                        "}"));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("prewarm nao pode ser usado com @Singleton(scope = THREAD): test.PorThread");
+    }
+
+    private static Compilation compileWithRegistry() {
+        Compilation compilation = javac()
+                .withProcessors(new PatternsProcessor())
+                .withOptions("-Apatterns.registry=" + REGISTRY_PACKAGE)
+                .compile(MATH_SINGLETON, SERVICES);
+
+        assertThat(compilation).succeeded();
+        return compilation;
+    }
+}
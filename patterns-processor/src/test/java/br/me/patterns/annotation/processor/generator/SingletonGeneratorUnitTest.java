@@ -1,6 +1,8 @@
 package br.me.patterns.annotation.processor.generator;
 
+import com.google.testing.compile.Compilation;
 import com.google.testing.compile.CompilationRule;
+import com.google.testing.compile.JavaFileObjects;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.FieldSpec;
 import com.squareup.javapoet.JavaFile;
@@ -14,10 +16,29 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 
+import br.me.patterns.annotation.Singleton;
+import br.me.patterns.annotation.processor.PatternsProcessor;
+import br.me.patterns.annotation.processor.Utils;
+
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
 
 @RunWith(JUnit4.class)
 public class SingletonGeneratorUnitTest {
@@ -25,10 +46,16 @@ public class SingletonGeneratorUnitTest {
     @Rule
     public CompilationRule compilationRule = new CompilationRule();
 
+    private static final int CONTENDING_THREADS = 16;
+
     private TypeElement getElementToApplyPattern() {
         return compilationRule.getElements().getTypeElement(MathSingletonToTest.class.getCanonicalName());
     }
 
+    private TypeElement getElementToApplyPattern(Class<?> annotatedClass) {
+        return compilationRule.getElements().getTypeElement(annotatedClass.getCanonicalName());
+    }
+
     @Test
     public void generatedFileContent_matchesTemplate() {
         TypeElement elementToApplyPattern = getElementToApplyPattern();
@@ -87,6 +114,291 @@ public class SingletonGeneratorUnitTest {
         assertThat(classType.name).isEqualTo(fileToCreate);
     }
 
+    @Test
+    public void generatedFileContent_lazyHolder_matchesTemplate() {
+        JavaFile generatedFile = SingletonGenerator.generate(getElementToApplyPattern(LazyHolderSingletonToTest.class));
+
+        assertThat(generatedFile.toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "public class LazyHolderSingletonToTest_ extends SingletonGeneratorUnitTest.LazyHolderSingletonToTest {\n" +
+                "  private LazyHolderSingletonToTest_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public static SingletonGeneratorUnitTest.LazyHolderSingletonToTest getInstance() {\n" +
+                "    return Holder.INSTANCE;\n" +
+                "  }\n" +
+                "\n" +
+                "  private static class Holder {\n" +
+                "    static final SingletonGeneratorUnitTest.LazyHolderSingletonToTest INSTANCE = new SingletonGeneratorUnitTest.LazyHolderSingletonToTest();\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void generatedFileContent_doubleChecked_matchesTemplate() {
+        JavaFile generatedFile = SingletonGenerator.generate(getElementToApplyPattern(DoubleCheckedSingletonToTest.class));
+
+        assertThat(generatedFile.toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "public class DoubleCheckedSingletonToTest_ extends SingletonGeneratorUnitTest.DoubleCheckedSingletonToTest {\n" +
+                "  private static volatile SingletonGeneratorUnitTest.DoubleCheckedSingletonToTest instance;\n" +
+                "\n" +
+                "  private DoubleCheckedSingletonToTest_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public static SingletonGeneratorUnitTest.DoubleCheckedSingletonToTest getInstance() {\n" +
+                "    SingletonGeneratorUnitTest.DoubleCheckedSingletonToTest result = instance;\n" +
+                "    if (result == null) {\n" +
+                "      synchronized (DoubleCheckedSingletonToTest_.class) {\n" +
+                "        result = instance;\n" +
+                "        if (result == null) {\n" +
+                "          instance = result = new SingletonGeneratorUnitTest.DoubleCheckedSingletonToTest();\n" +
+                "        }\n" +
+                "      }\n" +
+                "    }\n" +
+                "    return result;\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void volatileInstanceField_isPrivateStaticAndVolatile() {
+        TypeName mockType = ParameterizedTypeName.get(MathSingletonToTest.class);
+        FieldSpec instanceField = SingletonGenerator.getVolatileInstanceFieldSpec(mockType);
+
+        assertThat(instanceField.modifiers).containsExactly(Modifier.PRIVATE, Modifier.STATIC, Modifier.VOLATILE);
+        assertThat(instanceField.name).isEqualTo(SingletonGenerator.VOLATILE_INSTANCE_FIELD_NAME);
+    }
+
+    @Test
+    public void getInstance_underContention_constructsExactlyOnce() throws Exception {
+        for (Singleton.Strategy strategy : Singleton.Strategy.values()) {
+            Class<?> singletonClass = compileContendedSingleton(strategy);
+            AtomicInteger constructions = getConstructions(singletonClass);
+
+            Set<Object> instances = callGetInstanceConcurrently(singletonClass);
+
+            assertThat(constructions.get()).named("constructions with " + strategy).isEqualTo(1);
+            assertThat(instances).named("instances with " + strategy).hasSize(1);
+        }
+    }
+
+    @Test
+    public void lazyStrategies_doNotConstructOnClassInitialization() throws Exception {
+        for (Singleton.Strategy strategy : new Singleton.Strategy[] {Singleton.Strategy.LAZY_HOLDER, Singleton.Strategy.DOUBLE_CHECKED}) {
+            Class<?> singletonClass = compileContendedSingleton(strategy);
+            Class.forName(singletonClass.getName(), true, singletonClass.getClassLoader());
+
+            assertThat(getConstructions(singletonClass).get()).named("constructions with " + strategy).isEqualTo(0);
+
+            singletonClass.getMethod(SingletonGenerator.GET_INSTANCE_METHOD_NAME).invoke(null);
+            assertThat(getConstructions(singletonClass).get()).named("constructions with " + strategy).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void generatedFileContent_threadScope_matchesTemplate() {
+        JavaFile generatedFile = SingletonGenerator.generate(getElementToApplyPattern(ThreadScopedSingletonToTest.class));
+
+        assertThat(generatedFile.toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.Override;\n" +
+                "import java.lang.ThreadLocal;\n" +
+                "\n" +
+                "public class ThreadScopedSingletonToTest_ extends SingletonGeneratorUnitTest.ThreadScopedSingletonToTest {\n" +
+                "  private static final ThreadLocal<SingletonGeneratorUnitTest.ThreadScopedSingletonToTest> INSTANCES = new ThreadLocal<SingletonGeneratorUnitTest.ThreadScopedSingletonToTest>() {\n" +
+                "    @Override\n" +
+                "    protected SingletonGeneratorUnitTest.ThreadScopedSingletonToTest initialValue() {\n" +
+                "      return new SingletonGeneratorUnitTest.ThreadScopedSingletonToTest();\n" +
+                "    }\n" +
+                "  };\n" +
+                "\n" +
+                "  private ThreadScopedSingletonToTest_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public static SingletonGeneratorUnitTest.ThreadScopedSingletonToTest getInstance() {\n" +
+                "    return INSTANCES.get();\n" +
+                "  }\n" +
+                "\n" +
+                "  public static void remove() {\n" +
+                "    INSTANCES.remove();\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void generatedFileContent_stripedScope_matchesTemplate() {
+        JavaFile generatedFile = SingletonGenerator.generate(getElementToApplyPattern(StripedSingletonToTest.class));
+
+        assertThat(generatedFile.toString()).isEqualTo("" +
+                "package br.me.patterns.annotation.processor.generator;\n" +
+                "\n" +
+                "import java.lang.Thread;\n" +
+                "import java.util.concurrent.atomic.AtomicReferenceArray;\n" +
+                "\n" +
+                "public class StripedSingletonToTest_ extends SingletonGeneratorUnitTest.StripedSingletonToTest {\n" +
+                "  private static final int STRIPES = 4;\n" +
+                "\n" +
+                "  private static final AtomicReferenceArray<SingletonGeneratorUnitTest.StripedSingletonToTest> INSTANCES = new AtomicReferenceArray<SingletonGeneratorUnitTest.StripedSingletonToTest>(STRIPES);\n" +
+                "\n" +
+                "  private StripedSingletonToTest_() {\n" +
+                "  }\n" +
+                "\n" +
+                "  public static SingletonGeneratorUnitTest.StripedSingletonToTest getInstance() {\n" +
+                "    int index = stripeIndex();\n" +
+                "    SingletonGeneratorUnitTest.StripedSingletonToTest instance;\n" +
+                "    while ((instance = INSTANCES.get(index)) == null) {\n" +
+                "      INSTANCES.compareAndSet(index, null, new SingletonGeneratorUnitTest.StripedSingletonToTest());\n" +
+                "    }\n" +
+                "    return instance;\n" +
+                "  }\n" +
+                "\n" +
+                "  public static void clear() {\n" +
+                "    for (int i = 0; i < STRIPES; i++) {\n" +
+                "      INSTANCES.set(i, null);\n" +
+                "    }\n" +
+                "  }\n" +
+                "\n" +
+                "  private static int stripeIndex() {\n" +
+                "    long id = Thread.currentThread().getId();\n" +
+                "    int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;\n" +
+                "    return (hash ^ (hash >>> 16)) & (STRIPES - 1);\n" +
+                "  }\n" +
+                "}\n");
+    }
+
+    @Test
+    public void stripesInitializer_roundsUpToPowerOfTwo() {
+        assertThat(SingletonGenerator.getStripesInitializer(1).toString()).isEqualTo("1");
+        assertThat(SingletonGenerator.getStripesInitializer(3).toString()).isEqualTo("4");
+        assertThat(SingletonGenerator.getStripesInitializer(8).toString()).isEqualTo("8");
+        assertThat(SingletonGenerator.getStripesInitializer(9).toString()).isEqualTo("16");
+        assertThat(SingletonGenerator.getStripesInitializer(Utils.MAX_POWER_OF_TWO).toString()).isEqualTo("1073741824");
+        assertThat(SingletonGenerator.getStripesInitializer(0).toString())
+                .isEqualTo("java.lang.Integer.highestOneBit(java.lang.Math.max(1, java.lang.Runtime.getRuntime().availableProcessors()) * 2 - 1)");
+    }
+
+    @Test
+    public void tooManyStripes_failTheCompilation() {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test.Listras",
+                "package test;",
+                "",
+                "import br.me.patterns.annotation.Singleton;",
+                "",
+                "@Singleton(scope = Singleton.Scope.STRIPED, stripes = (1 << 30) + 1)",
+                "public class Listras {",
+                "}"));
+
+        assertThat(compilation).failed();
+        assertThat(compilation).hadErrorContaining("Numero de stripes invalido em @Singleton: 1073741825 test.Listras");
+    }
+
+    @Test
+    public void threadScope_keepsOneInstancePerThreadUntilRemoved() throws Exception {
+        Class<?> singletonClass = compileScopedSingleton("scope = Singleton.Scope.THREAD");
+        Method getInstance = singletonClass.getMethod(SingletonGenerator.GET_INSTANCE_METHOD_NAME);
+
+        Object instance = getInstance.invoke(null);
+        assertThat(getInstance.invoke(null)).isSameAs(instance);
+
+        Set<Object> instances = callGetInstanceConcurrently(singletonClass);
+        assertThat(instances).hasSize(CONTENDING_THREADS);
+        assertThat(instances).doesNotContain(instance);
+
+        singletonClass.getMethod(SingletonGenerator.REMOVE_METHOD_NAME).invoke(null);
+        assertThat(getInstance.invoke(null)).isNotSameAs(instance);
+    }
+
+    @Test
+    public void stripedScope_sharesAtMostOneInstancePerStripe() throws Exception {
+        Class<?> singletonClass = compileScopedSingleton("scope = Singleton.Scope.STRIPED, stripes = 4");
+        Method getInstance = singletonClass.getMethod(SingletonGenerator.GET_INSTANCE_METHOD_NAME);
+
+        Object instance = getInstance.invoke(null);
+        assertThat(getInstance.invoke(null)).isSameAs(instance);
+
+        Set<Object> instances = callGetInstanceConcurrently(singletonClass);
+        assertThat(instances.size()).isAtMost(4);
+
+        singletonClass.getMethod(SingletonGenerator.CLEAR_METHOD_NAME).invoke(null);
+        assertThat(getInstance.invoke(null)).isNotSameAs(instance);
+    }
+
+    private Class<?> compileScopedSingleton(String attributes) throws ClassNotFoundException {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test.Formatter",
+                "package test;",
+                "",
+                "import br.me.patterns.annotation.Singleton;",
+                "",
+                "@Singleton(" + attributes + ")",
+                "public class Formatter {",
+                "    final StringBuilder buffer = new StringBuilder();",
+                "",
+                "    Formatter() {}",
+                "}"));
+
+        assertThat(compilation).succeeded();
+        return new GeneratedClassLoader(compilation).loadClass("test.Formatter_");
+    }
+
+    private Class<?> compileContendedSingleton(Singleton.Strategy strategy) throws ClassNotFoundException {
+        Compilation compilation = javac().withProcessors(new PatternsProcessor()).compile(JavaFileObjects.forSourceLines("test.HeavySingleton",
+                "package test;",
+                "",
+                "import java.util.concurrent.atomic.AtomicInteger;",
+                "import br.me.patterns.annotation.Singleton;",
+                "",
+                "@Singleton(strategy = Singleton.Strategy." + strategy + ")",
+                "public class HeavySingleton {",
+                "    public static final AtomicInteger CONSTRUCTIONS = new AtomicInteger();",
+                "",
+                "    HeavySingleton() {",
+                "        CONSTRUCTIONS.incrementAndGet();",
+                "        try {",
+                "            Thread.sleep(20);",
+                "        } catch (InterruptedException e) {",
+                "            Thread.currentThread().interrupt();",
+                "        }",
+                "    }",
+                "}"));
+
+        assertThat(compilation).succeeded();
+        return new GeneratedClassLoader(compilation).loadClass("test.HeavySingleton_");
+    }
+
+    private static AtomicInteger getConstructions(Class<?> singletonClass) throws ReflectiveOperationException {
+        return (AtomicInteger) singletonClass.getSuperclass().getField("CONSTRUCTIONS").get(null);
+    }
+
+    private static Set<Object> callGetInstanceConcurrently(Class<?> singletonClass) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(CONTENDING_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < CONTENDING_THREADS; i++) {
+                futures.add(executor.submit((Callable<Object>) () -> {
+                    start.await();
+                    return singletonClass.getMethod(SingletonGenerator.GET_INSTANCE_METHOD_NAME).invoke(null);
+                }));
+            }
+
+            start.countDown();
+
+            Set<Object> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<Object> future : futures) {
+                instances.add(future.get());
+            }
+
+            return instances;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private String expectedFileContent() {
         return "" +
                 "package br.me.patterns.annotation.processor.generator;\n" +
@@ -118,4 +430,24 @@ public class SingletonGeneratorUnitTest {
         }
         MathSingletonToTest() {}
     }
+
+    @Singleton(strategy = Singleton.Strategy.LAZY_HOLDER)
+    class LazyHolderSingletonToTest {
+        LazyHolderSingletonToTest() {}
+    }
+
+    @Singleton(strategy = Singleton.Strategy.DOUBLE_CHECKED)
+    class DoubleCheckedSingletonToTest {
+        DoubleCheckedSingletonToTest() {}
+    }
+
+    @Singleton(scope = Singleton.Scope.THREAD)
+    class ThreadScopedSingletonToTest {
+        ThreadScopedSingletonToTest() {}
+    }
+
+    @Singleton(scope = Singleton.Scope.STRIPED, stripes = 4)
+    class StripedSingletonToTest {
+        StripedSingletonToTest() {}
+    }
 }
\ No newline at end of file